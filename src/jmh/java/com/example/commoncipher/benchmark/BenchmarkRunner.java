@@ -0,0 +1,44 @@
+package com.example.commoncipher.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * ClassName: BenchmarkRunner <br/>
+ * Description: 依次以1、8、32线程运行基准测试，并通过GC profiler输出分配速率 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 参数为需要运行的基准类名正则，不传时运行本包下全部基准；线程数可通过-Dbenchmark.threads=1,8覆盖
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,8,32";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        run(args.length == 0 ? new String[]{BenchmarkRunner.class.getPackage().getName()} : args);
+    }
+
+    /**
+     * 按配置的每个线程数运行一次匹配的基准
+     *
+     * @param includes 基准类名正则
+     * @throws RunnerException 运行失败
+     */
+    public static void run(String... includes) throws RunnerException {
+        for (String threads : System.getProperty("benchmark.threads", DEFAULT_THREADS).split(",")) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class);
+            for (String include : includes) {
+                options.include(include);
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.commoncipher.benchmark;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.io.FileUtil;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.remote.RemoteCipherServer;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+import com.example.commoncipher.service.impl.DefaultNoCipherServiceImpl;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import com.example.commoncipher.service.impl.RemoteCipherServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassName: CipherServiceBenchmark <br/>
+ * Description: EnDecryptService各方法在不同实现、不同数据大小下的耗时，数据大小32B~16MB；
+ * remote为连接本机TCP挡板的远程客户端 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+//16MB数据在32线程下同时存在多份副本
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CipherServiceBenchmark {
+
+    //批量方法每次调用的数据条数
+    private static final int BATCH_SIZE = 4;
+
+    @Param({"none", "hutool", "remote"})
+    public String service;
+
+    @Param({"32", "1024", "65536", "1048576", "16777216"})
+    public int payloadSize;
+
+    private EnDecryptService enDecryptService;
+
+    private RemoteCipherServer remoteServer;
+
+    private byte[] plainByte;
+
+    private String plainBase64;
+
+    private byte[] cipherByte;
+
+    private String cipherBase64;
+
+    private DecryptMacParam byteMacParam;
+
+    private DecryptMacParam base64MacParam;
+
+    private List<byte[]> plainBytes;
+
+    private List<String> plainBase64s;
+
+    private List<byte[]> cipherBytes;
+
+    private List<String> cipherBase64s;
+
+    private List<DecryptMacParam> byteMacParams;
+
+    private List<DecryptMacParam> base64MacParams;
+
+    @Setup
+    public void setup() throws IOException {
+        enDecryptService = switch (service) {
+            case "none" -> new DefaultNoCipherServiceImpl();
+            case "remote" -> remoteService();
+            default -> new HutoolBaffleServiceImpl();
+        };
+
+        plainByte = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(plainByte);
+        plainBase64 = Base64.encode(plainByte);
+        cipherByte = enDecryptService.encryptByte(plainByte).getData();
+        cipherBase64 = enDecryptService.encryptBase64(plainBase64).getData();
+
+        EncryptMacResult byteMac = enDecryptService.encryptMacByte(plainByte).getData();
+        byteMacParam = new DecryptMacParam(byteMac.getCipherByte(), byteMac.getMac());
+        EncryptMacResult base64Mac = enDecryptService.encryptMacBase64(plainBase64).getData();
+        base64MacParam = new DecryptMacParam(base64Mac.getCipherBase64(), base64Mac.getMac());
+
+        plainBytes = Collections.nCopies(BATCH_SIZE, plainByte);
+        plainBase64s = Collections.nCopies(BATCH_SIZE, plainBase64);
+        cipherBytes = Collections.nCopies(BATCH_SIZE, cipherByte);
+        cipherBase64s = Collections.nCopies(BATCH_SIZE, cipherBase64);
+        byteMacParams = Collections.nCopies(BATCH_SIZE, byteMacParam);
+        base64MacParams = Collections.nCopies(BATCH_SIZE, base64MacParam);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (enDecryptService instanceof RemoteCipherServiceImpl remote) remote.close();
+        if (null != remoteServer) remoteServer.close();
+    }
+
+    private EnDecryptService remoteService() throws IOException {
+        remoteServer = new RemoteCipherServer(new HutoolBaffleServiceImpl(), 0,
+                Runtime.getRuntime().availableProcessors()).start();
+
+        RemoteCipherServiceImpl remote = new RemoteCipherServiceImpl();
+        remote.port = remoteServer.getPort();
+        //16MB数据在多线程下排队时间较长
+        remote.requestTimeout = 60_000;
+        return remote;
+    }
+
+    /**
+     * 文件加解密使用的临时文件，每个线程单独一组，避免互相覆盖
+     */
+    @State(Scope.Thread)
+    public static class FileState {
+
+        private Path dir;
+
+        private Path plainFile;
+
+        private Path cipherFile;
+
+        private Path outFile;
+
+        private String mac;
+
+        @Setup(Level.Trial)
+        public void setup(CipherServiceBenchmark benchmark) throws IOException {
+            dir = Files.createTempDirectory("cipher-benchmark");
+            plainFile = Files.write(dir.resolve("plain"), benchmark.plainByte);
+            cipherFile = dir.resolve("cipher");
+            outFile = dir.resolve("out");
+            mac = benchmark.enDecryptService.encryptFile(plainFile, cipherFile).getData();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            FileUtil.del(dir);
+        }
+    }
+
+    @Benchmark
+    public ExampleCommonResult<byte[]> encryptByte() {
+        return enDecryptService.encryptByte(plainByte);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> encryptBase64() {
+        return enDecryptService.encryptBase64(plainBase64);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<byte[]> decryptByte() {
+        return enDecryptService.decryptByte(cipherByte);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> decryptBase64() {
+        return enDecryptService.decryptBase64(cipherBase64);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> generateMacByte() {
+        return enDecryptService.generateMacByte(byteMacParam.getCipherByte());
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> generateMacBase64() {
+        return enDecryptService.generateMacBase64(base64MacParam.getCipherBase64());
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> verifyMacByte() {
+        return enDecryptService.verifyMacByte(byteMacParam);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> verifyMacBase64() {
+        return enDecryptService.verifyMacBase64(base64MacParam);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<EncryptMacResult> encryptMacByte() {
+        return enDecryptService.encryptMacByte(plainByte);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<EncryptMacResult> encryptMacBase64() {
+        return enDecryptService.encryptMacBase64(plainBase64);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<byte[]> decryptMacByte() {
+        return enDecryptService.decryptMacByte(byteMacParam);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> decryptMacBase64() {
+        return enDecryptService.decryptMacBase64(base64MacParam);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> isEncryptByte() {
+        return enDecryptService.isEncrypt(cipherByte);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> isEncryptBase64() {
+        return enDecryptService.isEncrypt(cipherBase64);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> isEncryptBuffer() {
+        return enDecryptService.isEncrypt(ByteBuffer.wrap(cipherByte));
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<byte[]>> encryptByteBatch() {
+        return enDecryptService.encryptByteBatch(plainBytes);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<String>> encryptBase64Batch() {
+        return enDecryptService.encryptBase64Batch(plainBase64s);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<byte[]>> decryptByteBatch() {
+        return enDecryptService.decryptByteBatch(cipherBytes);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<String>> decryptBase64Batch() {
+        return enDecryptService.decryptBase64Batch(cipherBase64s);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacByteBatch() {
+        return enDecryptService.encryptMacByteBatch(plainBytes);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacBase64Batch() {
+        return enDecryptService.encryptMacBase64Batch(plainBase64s);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<byte[]>> decryptMacByteBatch() {
+        return enDecryptService.decryptMacByteBatch(byteMacParams);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<List<String>> decryptMacBase64Batch() {
+        return enDecryptService.decryptMacBase64Batch(base64MacParams);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> encryptStream() {
+        return enDecryptService.encryptStream(new ByteArrayInputStream(plainByte), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> decryptStream() {
+        return enDecryptService.decryptStream(new ByteArrayInputStream(byteMacParam.getCipherByte()),
+                OutputStream.nullOutputStream(), byteMacParam.getMac());
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> encryptChannel() {
+        return enDecryptService.encryptChannel(Channels.newChannel(new ByteArrayInputStream(plainByte)),
+                Channels.newChannel(OutputStream.nullOutputStream()));
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> decryptChannel() {
+        return enDecryptService.decryptChannel(
+                Channels.newChannel(new ByteArrayInputStream(byteMacParam.getCipherByte())),
+                Channels.newChannel(OutputStream.nullOutputStream()), byteMacParam.getMac());
+    }
+
+    @Benchmark
+    public ExampleCommonResult<String> encryptFile(FileState file) {
+        return enDecryptService.encryptFile(file.plainFile, file.outFile);
+    }
+
+    @Benchmark
+    public ExampleCommonResult<Boolean> decryptFile(FileState file) {
+        return enDecryptService.decryptFile(file.cipherFile, file.outFile, file.mac);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.run(CipherServiceBenchmark.class.getSimpleName());
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.commoncipher.benchmark;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.example.commoncipher.annotation.EnDecryptField;
+import com.example.commoncipher.annotation.EnDecryptMapperMethod;
+import com.example.commoncipher.aop.EnDecryptFieldAspect;
+import com.example.commoncipher.service.impl.DefaultNoCipherServiceImpl;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassName: FieldAspectBenchmark <br/>
+ * Description: EnDecryptFieldAspect对单个实体及1、100、10000行列表的加解密开销，区分有无mac字段；
+ * direct开头的方法直接调用未代理的mapper作为基线 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FieldAspectBenchmark {
+
+    /**
+     * 不带mac字段的实体
+     */
+    public static class PlainRow {
+
+        @EnDecryptField
+        private String name;
+
+        @EnDecryptField
+        private String idCard;
+
+        @EnDecryptField
+        private byte[] photo;
+
+        private long id;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getIdCard() {
+            return idCard;
+        }
+
+        public void setIdCard(String idCard) {
+            this.idCard = idCard;
+        }
+
+        public byte[] getPhoto() {
+            return photo;
+        }
+
+        public void setPhoto(byte[] photo) {
+            this.photo = photo;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * 带mac字段的实体，字段与PlainRow相同
+     */
+    public static class MacRow {
+
+        @EnDecryptField
+        private String name;
+
+        @EnDecryptField(macField = "idCardMac")
+        private String idCard;
+
+        private String idCardMac;
+
+        @EnDecryptField(macField = "photoMac")
+        private byte[] photo;
+
+        private String photoMac;
+
+        private long id;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getIdCard() {
+            return idCard;
+        }
+
+        public void setIdCard(String idCard) {
+            this.idCard = idCard;
+        }
+
+        public String getIdCardMac() {
+            return idCardMac;
+        }
+
+        public void setIdCardMac(String idCardMac) {
+            this.idCardMac = idCardMac;
+        }
+
+        public byte[] getPhoto() {
+            return photo;
+        }
+
+        public void setPhoto(byte[] photo) {
+            this.photo = photo;
+        }
+
+        public String getPhotoMac() {
+            return photoMac;
+        }
+
+        public void setPhotoMac(String photoMac) {
+            this.photoMac = photoMac;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * 模拟mapper：insert只记录参数，select返回准备好的密文行；非原地模式下切面不修改传入及返回的实体
+     */
+    public static class RowMapper {
+
+        private List<Object> inserted;
+
+        private List<Object> selected;
+
+        @EnDecryptMapperMethod
+        public int insert(Object row) {
+            return 1;
+        }
+
+        @EnDecryptMapperMethod
+        public int insertList(List<Object> rows) {
+            inserted = rows;
+            return rows.size();
+        }
+
+        @EnDecryptMapperMethod
+        public Object selectOne() {
+            return selected.get(0);
+        }
+
+        @EnDecryptMapperMethod
+        public List<Object> selectList() {
+            return selected;
+        }
+    }
+
+    /**
+     * 切面代理及测试数据
+     */
+    static final class Fixture {
+
+        final RowMapper direct = new RowMapper();
+
+        final RowMapper proxy;
+
+        final List<Object> plainRows;
+
+        Fixture(String service, boolean mac, int rows) {
+            EnDecryptFieldAspect aspect = new EnDecryptFieldAspect();
+            aspect.batchSize = 500;
+            ReflectUtil.setFieldValue(aspect, "enDecryptService",
+                    "none".equals(service) ? new DefaultNoCipherServiceImpl() : new HutoolBaffleServiceImpl());
+
+            AspectJProxyFactory factory = new AspectJProxyFactory(direct);
+            factory.setProxyTargetClass(true);
+            factory.addAspect(aspect);
+            proxy = factory.getProxy();
+
+            plainRows = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                plainRows.add(mac ? macRow(i) : plainRow(i));
+            }
+
+            //经过切面加密得到密文行，作为select的返回
+            proxy.insertList(plainRows);
+            direct.selected = direct.inserted;
+        }
+
+        private static PlainRow plainRow(int i) {
+            PlainRow row = new PlainRow();
+            row.setId(i);
+            row.setName("name-" + i);
+            row.setIdCard(idCard(i));
+            row.setPhoto(("photo-bytes-" + i).getBytes(StandardCharsets.UTF_8));
+            return row;
+        }
+
+        private static MacRow macRow(int i) {
+            MacRow row = new MacRow();
+            row.setId(i);
+            row.setName("name-" + i);
+            row.setIdCard(idCard(i));
+            row.setPhoto(("photo-bytes-" + i).getBytes(StandardCharsets.UTF_8));
+            return row;
+        }
+
+        private static String idCard(int i) {
+            return "11010119900307" + String.format("%04d", i % 10000);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SingleState {
+
+        @Param({"none", "hutool"})
+        public String service;
+
+        @Param({"false", "true"})
+        public boolean mac;
+
+        Fixture fixture;
+
+        @Setup
+        public void setup() {
+            fixture = new Fixture(service, mac, 1);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ListState {
+
+        @Param({"none", "hutool"})
+        public String service;
+
+        @Param({"false", "true"})
+        public boolean mac;
+
+        @Param({"1", "100", "10000"})
+        public int rows;
+
+        Fixture fixture;
+
+        @Setup
+        public void setup() {
+            fixture = new Fixture(service, mac, rows);
+        }
+    }
+
+    @Benchmark
+    public int directInsertOne(SingleState state) {
+        return state.fixture.direct.insert(state.fixture.plainRows.get(0));
+    }
+
+    @Benchmark
+    public int insertOne(SingleState state) {
+        return state.fixture.proxy.insert(state.fixture.plainRows.get(0));
+    }
+
+    @Benchmark
+    public Object directSelectOne(SingleState state) {
+        return state.fixture.direct.selectOne();
+    }
+
+    @Benchmark
+    public Object selectOne(SingleState state) {
+        return state.fixture.proxy.selectOne();
+    }
+
+    @Benchmark
+    public int directInsertList(ListState state) {
+        return state.fixture.direct.insertList(state.fixture.plainRows);
+    }
+
+    @Benchmark
+    public int insertList(ListState state) {
+        return state.fixture.proxy.insertList(state.fixture.plainRows);
+    }
+
+    @Benchmark
+    public List<Object> directSelectList(ListState state) {
+        return state.fixture.direct.selectList();
+    }
+
+    @Benchmark
+    public List<Object> selectList(ListState state) {
+        return state.fixture.proxy.selectList();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.run(FieldAspectBenchmark.class.getSimpleName());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.commoncipher.benchmark;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.crypto.SmUtil;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassName: Sm4ContextBenchmark <br/>
+ * Description: 对比每次新建SM4/SM3对象与按线程复用上下文的吞吐，分别以1、8、32线程运行 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Sm4ContextBenchmark {
+
+    private static final byte[] KEY = "1234567887654321".getBytes(StandardCharsets.UTF_8);
+
+    private final HutoolBaffleServiceImpl service = new HutoolBaffleServiceImpl();
+
+    private String plainBase64;
+
+    private String cipherBase64;
+
+    @Setup
+    public void setup() {
+        plainBase64 = Base64.encode("110101199003077777".getBytes(StandardCharsets.UTF_8));
+        cipherBase64 = service.encryptBase64(plainBase64).getData();
+    }
+
+    @Benchmark
+    public String encryptFreshContext() {
+        return SmUtil.sm4(KEY).encryptBase64(plainBase64);
+    }
+
+    @Benchmark
+    public String encryptReusedContext() {
+        return service.encryptBase64(plainBase64).getData();
+    }
+
+    @Benchmark
+    public String decryptFreshContext() {
+        return SmUtil.sm4(KEY).decryptStr(cipherBase64.substring(5));
+    }
+
+    @Benchmark
+    public String decryptReusedContext() {
+        return service.decryptBase64(cipherBase64).getData();
+    }
+
+    @Benchmark
+    public String macFreshContext() {
+        return SmUtil.sm3WithSalt(KEY).digestHex(cipherBase64.substring(5));
+    }
+
+    @Benchmark
+    public String macReusedContext() {
+        return service.generateMacBase64(cipherBase64).getData();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        BenchmarkRunner.run(Sm4ContextBenchmark.class.getSimpleName());
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.commoncipher.accessor;
+
+/**
+ * ClassName: EntityCipherAccessor <br/>
+ * Description: 编译期为实体生成的加解密访问器，实体类名 + {@link #SUFFIX}，与实体位于同一包 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 由{@link com.example.commoncipher.processor.EnDecryptFieldProcessor}生成，切面存在时优先使用，不存在时退回反射
+ */
+public interface EntityCipherAccessor<T> {
+
+    /**
+     * 生成类名的后缀，完整类名为实体的二进制类名 + 后缀
+     */
+    String SUFFIX = "$CipherAccessor";
+
+    /**
+     * 通过无参构造方法创建新实例
+     */
+    T newInstance();
+
+    /**
+     * 复制所有可读写的属性，等同于BeanUtil.copyProperties
+     */
+    void copy(T source, T target);
+
+    /**
+     * 加密字段及其关联的mac、盲索引字段的访问器
+     *
+     * @param name 字段名
+     * @return 未生成该字段时返回空
+     */
+    ValueAccessor<T> field(String name);
+}
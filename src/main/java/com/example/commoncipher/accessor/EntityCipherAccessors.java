@@ -0,0 +1,38 @@
+package com.example.commoncipher.accessor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ClassName: EntityCipherAccessors <br/>
+ * Description: 查找实体对应的生成访问器 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public final class EntityCipherAccessors {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityCipherAccessors.class);
+
+    private EntityCipherAccessors() {
+    }
+
+    /**
+     * 加载实体类型的生成访问器，只匹配实体本身的类型，子类(含代理类)不使用父类的访问器
+     *
+     * @param clazz 实体类型
+     * @return 未生成时返回空
+     */
+    @SuppressWarnings("unchecked")
+    public static EntityCipherAccessor<Object> find(Class<?> clazz) {
+        try {
+            Class<?> accessorClass = Class.forName(clazz.getName() + EntityCipherAccessor.SUFFIX, true,
+                    clazz.getClassLoader());
+            if (!EntityCipherAccessor.class.isAssignableFrom(accessorClass)) return null;
+            return (EntityCipherAccessor<Object>) accessorClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("~~~~~load cipher accessor of {} error, use reflection : {}", clazz.getName(), e.toString());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.commoncipher.accessor;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * ClassName: ValueAccessor <br/>
+ * Description: 实体单个字段的读写，生成的访问器直接调用getter/setter，未生成时由反射实现 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public interface ValueAccessor<T> {
+
+    Object get(T target);
+
+    void set(T target, Object value);
+
+    /**
+     * 由getter、setter组成的访问器，供生成的代码使用
+     */
+    @SuppressWarnings("unchecked")
+    static <T, V> ValueAccessor<T> of(Function<T, V> getter, BiConsumer<T, V> setter) {
+        return new ValueAccessor<>() {
+            @Override
+            public Object get(T target) {
+                return getter.apply(target);
+            }
+
+            @Override
+            public void set(T target, Object value) {
+                setter.accept(target, (V) value);
+            }
+        };
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.commoncipher.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * mapper方法的查询参数，调用前替换为明文的盲索引，与{@link EnDecryptField#blindIndexField()}写入的值一致；
+ * 支持String、byte[]及其集合类型，需配置encrypt.blind-index.key
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface BlindIndex {
+}
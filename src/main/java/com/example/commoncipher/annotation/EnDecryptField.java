@@ -13,4 +13,27 @@ public @interface EnDecryptField {
      * 关联的存放mac的字段
      */
     String macField() default "";
+
+    /**
+     * 是否缓存解密结果，适用于被反复读取的热点数据，需容器中存在DecryptedValueCache(encrypt.cache.enabled)
+     */
+    boolean cache() default false;
+
+    /**
+     * 是否确定性加密：相同明文总是得到相同密文，加密列可建索引，按 WHERE 列 = 密文 直接查询；
+     * 加密服务不支持时拒绝加密。用在mapper方法参数上时，参数在调用前按此方式加密，不需要设置
+     */
+    boolean deterministic() default false;
+
+    /**
+     * 关联的存放盲索引的字段，加密时写入明文的盲索引(HMAC-SM3)，查询参数使用{@link BlindIndex}转换后按该列等值查询；
+     * 需配置encrypt.blind-index.key
+     */
+    String blindIndexField() default "";
+
+    /**
+     * 加密路由：由同名的{@link com.example.commoncipher.operator.CipherOperator}的加密服务处理，
+     * 可按字段的敏感程度选择加密机或本地加密；为空时使用enDecryptService。用在mapper方法参数上时同样生效
+     */
+    String route() default "";
 }
@@ -8,4 +8,16 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface EnDecryptMapperMethod {
+
+    /**
+     * 是否原地加解密：直接修改入参/返回的实体，不再复制新实例；
+     * 加密时调用方持有的实体也会变成密文，也可通过encrypt.entity.in-place全局开启
+     */
+    boolean inPlace() default false;
+
+    /**
+     * 是否延迟解密：返回的实体替换为子类代理，加密字段保持密文，首次调用getter时才解密并缓存结果，
+     * 未读取的字段及分页丢弃的行不产生解密调用；实体类不能为final，需有无参构造方法；对inPlace不生效
+     */
+    boolean lazy() default false;
 }
@@ -0,0 +1,39 @@
+package com.example.commoncipher.aop;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import com.example.commoncipher.operator.CipherOperatorRouter;
+import com.example.commoncipher.service.EnDecryptService;
+
+/**
+ * ClassName: CipherRoutes <br/>
+ * Description: 切面可用的加密服务：默认服务及按名称路由的服务 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 字段计划以该对象为标识缓存解析结果，同一切面只解析一次
+ */
+final class CipherRoutes {
+
+    private final EnDecryptService defaultService;
+
+    //未注册路由器时为空，只能使用默认服务
+    private final CipherOperatorRouter router;
+
+    CipherRoutes(EnDecryptService defaultService, CipherOperatorRouter router) {
+        this.defaultService = defaultService;
+        this.router = router;
+    }
+
+    /**
+     * 路由对应的加密服务
+     *
+     * @param route 路由名称，为空时为默认服务
+     * @throws IllegalStateException 路由不存在
+     */
+    EnDecryptService resolve(String route) {
+        if (CharSequenceUtil.isEmpty(route)) return defaultService;
+        if (null == router) {
+            throw new IllegalStateException(CharSequenceUtil.format("加密路由 {} 不存在，容器中没有CipherOperatorRouter", route));
+        }
+        return router.route(route).getService();
+    }
+}
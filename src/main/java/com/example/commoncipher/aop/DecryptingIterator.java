@@ -0,0 +1,124 @@
+package com.example.commoncipher.aop;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ClassName: DecryptingIterator <br/>
+ * Description: 按调用方读取的进度分段解密的迭代器，用于Iterator、Stream及游标类型的查询结果 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 每次从原迭代器预读最多chunkSize个元素，整段一次解密后依次返回；内存中只保留当前一段，
+ * 导出百万行时占用与段大小相关，与总行数无关；原迭代器为游标时，游标位置会领先调用方至多一段
+ */
+final class DecryptingIterator<T> implements Iterator<T> {
+
+    private final Iterator<T> source;
+
+    private final UnaryOperator<List<Object>> decryptChunk;
+
+    private final int chunkSize;
+
+    private List<Object> chunk = List.of();
+
+    private int position;
+
+    /**
+     * @param source       原迭代器，元素为密文实体
+     * @param decryptChunk 解密一段实体，返回解密后的实体列表，顺序与数量不变
+     * @param chunkSize    每段最大元素数
+     */
+    DecryptingIterator(Iterator<T> source, UnaryOperator<List<Object>> decryptChunk, int chunkSize) {
+        this.source = source;
+        this.decryptChunk = decryptChunk;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * 逐段解密的Stream，关闭时同时关闭原Stream
+     */
+    static <T> Stream<T> stream(Stream<T> source, UnaryOperator<List<Object>> decryptChunk, int chunkSize) {
+        Iterator<T> iterator = new DecryptingIterator<>(source.iterator(), decryptChunk, chunkSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(source::close);
+    }
+
+    /**
+     * 逐段解密的Iterable：按接口类型生成JDK代理，iterator/forEach/spliterator返回解密后的元素，
+     * 其余方法(游标的close、isOpen等)直接调用原对象
+     *
+     * @param source        原结果
+     * @param interfaceType mapper方法声明的返回类型，必须为接口
+     */
+    static Object iterable(Iterable<?> source, Class<?> interfaceType, UnaryOperator<List<Object>> decryptChunk,
+                           int chunkSize) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getParameterCount() == 0 && "iterator".equals(method.getName())) {
+                return new DecryptingIterator<>(source.iterator(), decryptChunk, chunkSize);
+            }
+            if (method.getParameterCount() == 0 && "spliterator".equals(method.getName())) {
+                return Spliterators.spliteratorUnknownSize(
+                        new DecryptingIterator<>(source.iterator(), decryptChunk, chunkSize), Spliterator.ORDERED);
+            }
+            if (method.getParameterCount() == 1 && "forEach".equals(method.getName())) {
+                new DecryptingIterator<>(source.iterator(), decryptChunk, chunkSize)
+                        .forEachRemaining(castConsumer(args[0]));
+                return null;
+            }
+            return invoke(method, source, args);
+        };
+        return Proxy.newProxyInstance(interfaceType.getClassLoader(), new Class<?>[]{interfaceType}, handler);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < chunk.size() || source.hasNext();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (position == chunk.size()) fill();
+
+        T next = (T) chunk.get(position);
+        //已返回的元素不再持有
+        chunk.set(position++, null);
+        return next;
+    }
+
+    private void fill() {
+        if (!source.hasNext()) throw new NoSuchElementException();
+
+        List<Object> raw = new ArrayList<>(chunkSize);
+        while (raw.size() < chunkSize && source.hasNext()) {
+            raw.add(source.next());
+        }
+        chunk = decryptChunk.apply(raw);
+        position = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<Object> castConsumer(Object action) {
+        return (Consumer<Object>) action;
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
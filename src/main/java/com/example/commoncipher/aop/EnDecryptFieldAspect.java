@@ -1,13 +1,14 @@
 package com.example.commoncipher.aop;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import cn.hutool.core.util.ObjectUtil;
-import cn.hutool.core.util.ReflectUtil;
-import com.example.commoncipher.annotation.EnDecryptField;
+import com.example.commoncipher.annotation.EnDecryptMapperMethod;
+import com.example.commoncipher.aop.EntityCipherPlan.FieldPlan;
+import com.example.commoncipher.cache.DecryptedValueCache;
 import com.example.commoncipher.exception.ServiceException;
-import com.example.commoncipher.param.DecryptMacParam;
-import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.index.BlindIndexer;
+import com.example.commoncipher.metrics.CipherMetrics;
+import com.example.commoncipher.operator.CipherOperatorRouter;
 import com.example.commoncipher.result.ExampleCommonResult;
 import com.example.commoncipher.service.EnDecryptService;
 import org.aspectj.lang.ProceedingJoinPoint;
@@ -15,17 +16,26 @@ import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 
 import javax.annotation.Resource;
-import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 /**
  * ClassName: EnDecryptFieldAspect <br/>
@@ -37,305 +47,517 @@ public class EnDecryptFieldAspect {
 
     private static final Logger log = LoggerFactory.getLogger(EnDecryptFieldAspect.class);
 
-    private static final Function<Field, String> getMacField = field ->
-            field.getAnnotation(EnDecryptField.class).macField();
-
     //是否打印加密相关调用日志
     @Value("${encrypt.log.info.print:false}")
     public boolean isPrint;
 
+    //是否全局启用原地加解密（直接修改实体，不复制新实例）
+    @Value("${encrypt.entity.in-place:false}")
+    public boolean inPlaceGlobal;
+
+    //一次批量调用加密服务的最大字段数
+    @Value("${encrypt.batch.size:500}")
+    public int batchSize;
+
     @Resource
     private EnDecryptService enDecryptService;
 
-    private static List<Field> getEncryptString(Object object) {
-        Field[] fields = ReflectUtil.getFields(object.getClass());
-        if (fields.length == 0) {
-            return Collections.emptyList();
-        }
-        return Arrays.stream(fields).filter(field -> field.isAnnotationPresent(EnDecryptField.class))
-                .filter(field -> field.getType().isAssignableFrom(String.class))
-                .toList();
-    }
+    //未启用异步时为空，字段按批次依次调用加密服务
+    @Autowired(required = false)
+    @Qualifier("cipherAsyncExecutor")
+    private Executor cipherAsyncExecutor;
 
-    private static List<Field> getEncryptByte(Object object) {
-        Field[] fields = ReflectUtil.getFields(object.getClass());
-        if (fields.length == 0) {
-            return Collections.emptyList();
-        }
-        return Arrays.stream(fields).filter(field -> field.isAnnotationPresent(EnDecryptField.class))
-                .filter(field -> field.getType().isArray())
-                .toList();
-    }
+    //未启用指标时为空，切面不记录耗时
+    @Autowired(required = false)
+    private CipherMetrics cipherMetrics;
+
+    //未启用解密缓存时为空，标记了缓存的字段照常解密
+    @Autowired(required = false)
+    private DecryptedValueCache decryptedValueCache;
+
+    //未配置盲索引密钥时为空，存在盲索引字段的实体无法加密
+    @Autowired(required = false)
+    private BlindIndexer blindIndexer;
+
+    //未注册时只能使用enDecryptService，指定了route的字段无法加解密
+    @Autowired(required = false)
+    private CipherOperatorRouter cipherOperatorRouter;
+
+    //默认服务及路由，首次使用时创建，字段计划以此缓存路由解析结果
+    private volatile CipherRoutes cipherRoutes;
+
+    //mapper方法对应的指标名：类名.方法名
+    private final Map<Method, String> metricNames = new ConcurrentHashMap<>(64);
 
     //建议切入点：实现类，方法上加EnDecryptMapperMethod(或者*mapper.class接口)
     @Pointcut(value = "@annotation(com.example.commoncipher.annotation.EnDecryptMapperMethod)")
     public void cipherDecryptPoint() {
     }
 
-    @SuppressWarnings("unchecked")
-    @Around("cipherDecryptPoint()")
-    public Object after(ProceedingJoinPoint joinPoint) throws Throwable {
+    @Around(value = "cipherDecryptPoint() && @annotation(mapperMethod)", argNames = "joinPoint,mapperMethod")
+    public Object after(ProceedingJoinPoint joinPoint, EnDecryptMapperMethod mapperMethod) throws Throwable {
         Object result = joinPoint.proceed(joinPoint.getArgs());
 
         Signature signature = joinPoint.getSignature();
         String classMethod = signature.getName();
+        boolean inPlace = isInPlace(mapperMethod);
 
         if (isPrint) log.info("~~~~~拦截类:{}, 方法:{}", signature.getDeclaringTypeName(), classMethod);
 
-        if (result instanceof List) {
-            List<Object> cipherList = (ArrayList<Object>) result;
-
-            result = cipherList.stream().map(this::doReturnDecrypt).toList();
-        } else {
-            result = doReturnDecrypt(result);
-        }
+        result = decryptResult(result, (MethodSignature) signature, mapperMethod.lazy(), inPlace);
 
         if (isPrint) log.info("~~~~~类:{}, 方法:{}, 对返回类型:{} 解密成功", signature.getDeclaringTypeName(),
-                classMethod, result.getClass());
+                classMethod, null == result ? null : result.getClass());
         return result;
     }
 
-    private Object doReturnDecrypt(Object object) {
-        object = enDecryptByte(object, false);
-        return enDecryptString(object, false);
-    }
-
     //建议切入点：实现类，方法上加EnDecryptMapperMethod(或者*mapper.class接口)
     @Pointcut(value = "@annotation(com.example.commoncipher.annotation.EnDecryptMapperMethod)")
     public void plainEncryptPoint() {
     }
 
-    @SuppressWarnings("unchecked")
-    @Around("plainEncryptPoint()")
-    public Object before(ProceedingJoinPoint point) throws Throwable {
+    @Around(value = "plainEncryptPoint() && @annotation(mapperMethod)", argNames = "point,mapperMethod")
+    public Object before(ProceedingJoinPoint point, EnDecryptMapperMethod mapperMethod) throws Throwable {
         Object[] args = point.getArgs();
-        if (null == args || args.length != 1) {
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        ParameterCipherPlan parameterPlan = ParameterCipherPlan.of(method);
+        if (null != args && !parameterPlan.isEmpty()) {
+            //查询参数加密失败时不能以明文查询，异常直接抛给调用方
+            if (parameterPlan.getIndexes().length > 0) encryptParameters(args, parameterPlan);
+            if (parameterPlan.getBlindIndexes().length > 0) blindIndexParameters(args, parameterPlan);
+        }
+
+        if (null == args || args.length != 1 || parameterPlan.isAnnotated(0)) {
             //只处理一个参数的方法
             return point.proceed(args);
         }
 
         Signature signature = point.getSignature();
         String classMethod = signature.getName();
+        boolean inPlace = isInPlace(mapperMethod);
 
         if (isPrint) log.info("~~~~~拦截类:{}, 方法:{}", signature.getDeclaringTypeName(), classMethod);
 
-        if (args[0] instanceof List) {
-            List<Object> plainList = (ArrayList<Object>) args[0];
-
-            args[0] = plainList.stream().map(this::doBeforeEncrypt).toList();
-        } else {
-            args[0] = doBeforeEncrypt(args[0]);
-        }
+        //配置错误时不能以明文写入，异常直接抛给调用方
+        checkEntities(args[0]);
+        args[0] = doEnDecrypt(args[0], true, inPlace, metricName(signature));
 
         if (isPrint) log.info("~~~~~类:{}, 方法:{}, 对参数类型:{} 加密成功", signature.getDeclaringTypeName(),
-                classMethod, args[0].getClass());
+                classMethod, null == args[0] ? null : args[0].getClass());
         return point.proceed(args);
     }
 
     /**
-     * 前置增强处理
+     * 按确定性加密替换标记了EnDecryptField的参数，同一加密服务的参数值合并后按批调用；
+     * 集合参数替换为新的列表，调用方的集合不变；<br/>
+     * 密钥轮换期间加密服务有多个查询版本，集合参数的每个值替换为各版本的密文，IN 查询可匹配尚未重新加密的数据；
+     * 单值参数只能对应一个密文，此时直接失败，不以当前版本查询而漏掉旧版本的数据
      *
-     * @param object object
+     * @param args          方法参数
+     * @param parameterPlan 参数计划
+     * @throws ServiceException 加密服务不支持确定性加密，轮换期间使用了单值参数，或调用失败
      */
-    private Object doBeforeEncrypt(Object object) {
-        object = enDecryptByte(object, true);
-        return enDecryptString(object, true);
+    private void encryptParameters(Object[] args, ParameterCipherPlan parameterPlan) throws ServiceException {
+        int[] indexes = parameterPlan.getIndexes();
+        EnDecryptService[] services = parameterPlan.services(routes());
+        for (int i = 0; i < indexes.length; i++) {
+            //同一服务的参数在第一次出现时一起处理
+            if (indexOf(services, services[i]) < i) continue;
+            if (!services[i].isDeterministic()) {
+                throw new ServiceException("加密服务不支持确定性加密，查询参数无法加密");
+            }
+
+            EnDecryptService service = services[i];
+            int[] versions = service.getLookupKeyVersions();
+            List<String> strings = new ArrayList<>();
+            List<byte[]> bytes = new ArrayList<>();
+            for (int j = i; j < indexes.length; j++) {
+                if (services[j] != service) continue;
+                if (versions.length > 1 && isScalar(args[indexes[j]])) {
+                    throw new ServiceException(CharSequenceUtil.format(
+                            "密钥轮换期间数据存在版本{}的密文，单值查询参数无法匹配，请改为集合参数(IN)查询",
+                            Arrays.toString(versions)));
+                }
+                collectParameter(args[indexes[j]], strings, bytes);
+            }
+
+            List<List<String>> stringCiphers = new ArrayList<>(versions.length);
+            List<List<byte[]>> byteCiphers = new ArrayList<>(versions.length);
+            for (int version : versions) {
+                stringCiphers.add(encryptAll(strings, chunk -> service.encryptBase64Batch(chunk, version)));
+                byteCiphers.add(encryptAll(bytes, chunk -> service.encryptByteBatch(chunk, version)));
+            }
+            LookupCiphers ciphers = new LookupCiphers(stringCiphers, byteCiphers);
+            for (int j = i; j < indexes.length; j++) {
+                if (services[j] == service) args[indexes[j]] = replaceParameter(args[indexes[j]], ciphers);
+            }
+        }
+    }
+
+    private static int indexOf(EnDecryptService[] services, EnDecryptService service) {
+        for (int i = 0; i < services.length; i++) {
+            if (services[i] == service) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 默认服务及路由；切面可能未经容器创建(如基准测试直接设置加密服务)，因此在首次使用时创建
+     */
+    private CipherRoutes routes() {
+        CipherRoutes routes = cipherRoutes;
+        if (null == routes) {
+            routes = new CipherRoutes(enDecryptService, cipherOperatorRouter);
+            cipherRoutes = routes;
+        }
+        return routes;
     }
 
     /**
-     * byte[]多字段加密.
+     * 标记了BlindIndex的参数替换为明文的盲索引，集合参数替换为新的列表
      *
-     * @param <T>     the type parameter
-     * @param t       the t
-     * @param encrypt the encrypt
-     * @return the t
+     * @param args          方法参数
+     * @param parameterPlan 参数计划
+     * @throws ServiceException 未配置盲索引密钥
      */
-    @SuppressWarnings("unchecked")
-    private <T> T enDecryptByte(T t, boolean encrypt) {
-        List<Field> fieldList = getEncryptByte(t);
-        if (checkMultiField(fieldList, encrypt, t)) return t;
+    private void blindIndexParameters(Object[] args, ParameterCipherPlan parameterPlan) throws ServiceException {
+        if (null == blindIndexer) throw new ServiceException("未配置encrypt.blind-index.key，查询参数无法计算盲索引");
 
-        try {
-            Object returnObj = t.getClass().getDeclaredConstructor().newInstance();
-            BeanUtil.copyProperties(t, returnObj);
+        for (int index : parameterPlan.getBlindIndexes()) {
+            args[index] = blindIndex(args[index]);
+        }
+    }
+
+    private Object blindIndex(Object arg) {
+        if (arg instanceof String string && CharSequenceUtil.isNotBlank(string)) return blindIndexer.index(string);
+        if (arg instanceof byte[] value && value.length > 0) return blindIndexer.index(value);
+        if (arg instanceof Collection<?> collection) {
+            List<Object> replaced = new ArrayList<>(collection.size());
+            collection.forEach(element -> replaced.add(blindIndex(element)));
+            return replaced;
+        }
+        return arg;
+    }
 
-            for (Field field : fieldList) {
-                if (encrypt) {
-                    coreEncryptByte(returnObj, field);
+    private static void collectParameter(Object arg, List<String> strings, List<byte[]> bytes) {
+        if (arg instanceof String string && CharSequenceUtil.isNotBlank(string)) {
+            strings.add(string);
+        } else if (arg instanceof byte[] value && value.length > 0) {
+            bytes.add(value);
+        } else if (arg instanceof Collection<?> collection) {
+            collection.forEach(element -> collectParameter(element, strings, bytes));
+        }
+    }
+
+    private static boolean isScalar(Object arg) {
+        return arg instanceof String string && CharSequenceUtil.isNotBlank(string)
+                || arg instanceof byte[] value && value.length > 0;
+    }
+
+    /**
+     * 按collectParameter的顺序替换参数：单值参数替换为当前版本的密文，集合中的值替换为各版本的密文
+     */
+    private static Object replaceParameter(Object arg, LookupCiphers ciphers) {
+        if (arg instanceof String string && CharSequenceUtil.isNotBlank(string)) return ciphers.nextStrings().get(0);
+        if (arg instanceof byte[] value && value.length > 0) return ciphers.nextBytes().get(0);
+        if (arg instanceof Collection<?> collection) {
+            List<Object> replaced = new ArrayList<>(collection.size() * ciphers.versions());
+            for (Object element : collection) {
+                if (element instanceof String string && CharSequenceUtil.isNotBlank(string)) {
+                    replaced.addAll(ciphers.nextStrings());
+                } else if (element instanceof byte[] value && value.length > 0) {
+                    replaced.addAll(ciphers.nextBytes());
                 } else {
-                    coreDecryptByte(returnObj, field);
+                    replaced.add(replaceParameter(element, ciphers));
                 }
             }
-            return (T) returnObj;
-        } catch (Exception e) {
-            log.error("~~~~~enDecryptByte error : " + e.getMessage(), e);
-            return t;
+            return replaced;
         }
+        return arg;
     }
 
-    private void coreEncryptByte(Object returnObj, Field field) throws ServiceException {
-        byte[] value = (byte[]) ReflectUtil.getFieldValue(returnObj, field);
-        if (ObjectUtil.isEmpty(value)) return;
+    /**
+     * 查询参数按各查询版本加密的结果，下标与collectParameter收集的顺序一致
+     */
+    private static final class LookupCiphers {
 
-        String macFieldStr = getMacField.apply(field);
+        private final List<List<String>> strings;
 
-        if (CharSequenceUtil.isBlank(macFieldStr)) {
-            ExampleCommonResult<byte[]> encryptResult = enDecryptService.encryptByte(value);
+        private final List<List<byte[]>> bytes;
 
-            if (encryptResult.isSuccess()) {
-                ReflectUtil.setFieldValue(returnObj, field, encryptResult.getData());
-            } else {
-                throw new ServiceException(encryptResult.getCode(), encryptResult.getMessage());
-            }
+        private int stringPosition;
 
-        } else {
-            String mac = (String) ReflectUtil.getFieldValue(returnObj, macFieldStr);
-            if (CharSequenceUtil.isBlank(mac)) {
-                ExampleCommonResult<EncryptMacResult> encryptResult = enDecryptService.encryptMacByte(value);
+        private int bytePosition;
 
-                if (encryptResult.isSuccess()) {
-                    ReflectUtil.setFieldValue(returnObj, field, encryptResult.getData().getCipherByte());
-                    ReflectUtil.setFieldValue(returnObj, macFieldStr, encryptResult.getData().getMac());
-                } else {
-                    throw new ServiceException(encryptResult.getCode(), encryptResult.getMessage());
-                }
+        private LookupCiphers(List<List<String>> strings, List<List<byte[]>> bytes) {
+            this.strings = strings;
+            this.bytes = bytes;
+        }
 
-            }
+        private int versions() {
+            return strings.size();
+        }
+
+        private List<String> nextStrings() {
+            int position = stringPosition++;
+            List<String> ciphers = new ArrayList<>(strings.size());
+            strings.forEach(version -> ciphers.add(version.get(position)));
+            return ciphers;
         }
+
+        private List<byte[]> nextBytes() {
+            int position = bytePosition++;
+            List<byte[]> ciphers = new ArrayList<>(bytes.size());
+            bytes.forEach(version -> ciphers.add(version.get(position)));
+            return ciphers;
+        }
+    }
+
+    private <T> List<T> encryptAll(List<T> plains, Function<List<T>, ExampleCommonResult<List<T>>> call)
+            throws ServiceException {
+        List<T> ciphers = new ArrayList<>(plains.size());
+        for (int from = 0; from < plains.size(); from += batchSize) {
+            List<T> chunk = plains.subList(from, Math.min(from + batchSize, plains.size()));
+            ciphers.addAll(EnDecryptService.batchData(call.apply(chunk), chunk.size()));
+        }
+        return ciphers;
     }
 
-    private void coreDecryptByte(Object returnObj, Field field) throws ServiceException {
-        byte[] value = (byte[]) ReflectUtil.getFieldValue(returnObj, field);
-        if (ObjectUtil.isEmpty(value)) return;
+    private boolean isInPlace(EnDecryptMapperMethod mapperMethod) {
+        return inPlaceGlobal || mapperMethod.inPlace();
+    }
+
+    /**
+     * 未启用指标时返回空，不拼接方法名
+     */
+    private String metricName(Signature signature) {
+        if (null == cipherMetrics) return null;
+
+        Method method = ((MethodSignature) signature).getMethod();
+        return metricNames.computeIfAbsent(method,
+                key -> key.getDeclaringClass().getSimpleName() + "." + key.getName());
+    }
 
-        String macFieldStr = getMacField.apply(field);
-        if (CharSequenceUtil.isBlank(macFieldStr)) {
-            ExampleCommonResult<byte[]> decryptResult = enDecryptService.decryptByte(value);
+    /**
+     * 对单个实体或实体列表加解密：先收集所有实体的待处理字段，再按批调用加密服务并回填；
+     * 原地模式下直接修改传入的实体，列表本身也不再重建；任一批次失败时不回填任何字段，
+     * 原地模式下实体保持原值(加密时已按明文写入的盲索引除外)
+     *
+     * @param object  实体或实体列表
+     * @param encrypt 加密/解密
+     * @param inPlace 是否原地修改
+     * @param metricName 指标名，为空时不记录耗时
+     * @return 处理后的实体或实体列表，失败时返回原对象
+     */
+    @SuppressWarnings("unchecked")
+    private Object doEnDecrypt(Object object, boolean encrypt, boolean inPlace, String metricName) {
+        if (null == object) return null;
 
-            if (decryptResult.isSuccess()) {
-                ReflectUtil.setFieldValue(returnObj, field, decryptResult.getData());
+        FieldCipherBatch batch = new FieldCipherBatch(encrypt, decryptedValueCache, routes());
+        long start = null == metricName ? 0 : System.nanoTime();
+        try {
+            Object returnObj;
+            if (object instanceof List) {
+                List<Object> list = (List<Object>) object;
+                List<Object> targetList = inPlace ? list : new ArrayList<>(list.size());
+
+                for (Object element : list) {
+                    Object target = prepareEntity(element, encrypt, inPlace, batch);
+                    if (!inPlace) targetList.add(target);
+                }
+                returnObj = targetList;
             } else {
-                throw new ServiceException(decryptResult.getCode(), decryptResult.getMessage());
+                returnObj = prepareEntity(object, encrypt, inPlace, batch);
             }
-        } else {
-            String mac = (String) ReflectUtil.getFieldValue(returnObj, macFieldStr);
-            if (CharSequenceUtil.isNotBlank(mac)) {
 
-                DecryptMacParam param = new DecryptMacParam(value, mac);
-                ExampleCommonResult<byte[]> decryptResult = enDecryptService.decryptMacByte(param);
+            long prepared = null == metricName ? 0 : System.nanoTime();
+            if (!batch.isEmpty()) {
+                if (null == cipherAsyncExecutor) batch.execute(batchSize);
+                else batch.executeAsync(batchSize, cipherAsyncExecutor);
+            }
 
-                if (decryptResult.isSuccess()) {
-                    ReflectUtil.setFieldValue(returnObj, field, decryptResult.getData());
-                    ReflectUtil.setFieldValue(returnObj, macFieldStr, CharSequenceUtil.EMPTY);
-                } else {
-                    throw new ServiceException(decryptResult.getCode(), decryptResult.getMessage());
-                }
+            if (null != metricName) {
+                cipherMetrics.recordMapper(metricName, encrypt, prepared - start, System.nanoTime() - prepared);
+            }
+            return returnObj;
+        } catch (Exception e) {
+            log.error("~~~~~doEnDecrypt error : " + e.getMessage(), e);
+            return object;
+        }
+    }
+
+    /**
+     * 按返回类型解密：Iterator、Stream及非集合的Iterable(游标等)在调用方读取时逐段解密，其余立即或延迟解密
+     */
+    @SuppressWarnings("unchecked")
+    private Object decryptResult(Object result, MethodSignature signature, boolean lazy, boolean inPlace) {
+        String metricName = metricName(signature);
+        UnaryOperator<List<Object>> decryptChunk = chunk -> (List<Object>) (lazy ? lazyDecrypt(chunk)
+                : doEnDecrypt(chunk, false, inPlace, metricName));
+
+        if (result instanceof Iterator<?> iterator) return new DecryptingIterator<>(iterator, decryptChunk, batchSize);
+        if (result instanceof Stream<?> stream) return DecryptingIterator.stream(stream, decryptChunk, batchSize);
+        if (result instanceof Iterable<?> iterable && !(result instanceof Collection)) {
+            Class<?> returnType = signature.getReturnType();
+            if (returnType.isInterface()) {
+                return DecryptingIterator.iterable(iterable, returnType, decryptChunk, batchSize);
             }
+            log.warn("~~~~~返回类型:{} 不是接口，无法逐段解密", returnType.getName());
+            return result;
         }
+
+        return lazy ? lazyDecrypt(result) : doEnDecrypt(result, false, inPlace, metricName);
     }
 
     /**
-     * String多字段加密.
+     * 延迟解密：实体或列表中的实体替换为延迟解密代理，列表重建，原实体不变；
+     * 同一次返回的代理为一组，首次读取某字段时组内所有代理的该字段按批解密
      *
-     * @param <T>     the type parameter
-     * @param t       the t
-     * @param encrypt the encrypt
-     * @return the t
+     * @param object 实体或实体列表
+     * @return 代理实体或代理实体列表
      */
     @SuppressWarnings("unchecked")
-    private <T> T enDecryptString(T t, boolean encrypt) {
-        List<Field> fieldList = getEncryptString(t);
-        if (checkMultiField(fieldList, encrypt, t)) return t;
+    private Object lazyDecrypt(Object object) {
+        LazyDecryptProxy.Group group = new LazyDecryptProxy.Group(this::decryptField);
+        if (!(object instanceof List)) return lazyEntity(object, group);
+
+        List<Object> list = (List<Object>) object;
+        List<Object> targetList = new ArrayList<>(list.size());
+        for (Object element : list) {
+            targetList.add(lazyEntity(element, group));
+        }
+        return targetList;
+    }
 
-        try {
-            Object returnObj = t.getClass().getDeclaredConstructor().newInstance();
-            BeanUtil.copyProperties(t, returnObj);
+    private Object lazyEntity(Object entity, LazyDecryptProxy.Group group) {
+        if (null == entity || LazyDecryptProxy.isProxy(entity)) return entity;
 
-            for (Field field : fieldList) {
-                if (encrypt) {
-                    coreEncryptString(returnObj, field);
-                } else {
-                    coreDecryptString(returnObj, field);
-                }
-            }
-            return (T) returnObj;
-        } catch (Exception e) {
-            log.error("~~~~~enDecryptString error : " + e.getMessage(), e);
-            return t;
+        EntityCipherPlan plan = EntityCipherPlan.of(entity.getClass());
+        if (plan.getFields().isEmpty()) return entity;
+
+        try {
+            return LazyDecryptProxy.wrap(entity, plan, group);
+        } catch (RuntimeException e) {
+            //无法生成子类(final类等)时退回立即解密
+            log.warn("~~~~~lazy decrypt proxy error, decrypt eagerly : {}", e.getMessage());
+            return doEnDecrypt(entity, false, false, null);
         }
     }
 
-    private void coreEncryptString(Object returnObj, Field field) throws ServiceException {
-        String value = (String) ReflectUtil.getFieldValue(returnObj, field);
-        if (CharSequenceUtil.isBlank(value)) return;
+    /**
+     * 延迟解密代理首次读取字段时调用，组内所有代理的该字段按批解密，同样经过解密缓存；失败时字段保持密文
+     */
+    private void decryptField(List<Object> targets, FieldPlan field) {
+        FieldCipherBatch batch = new FieldCipherBatch(false, decryptedValueCache, routes());
+        for (Object target : targets) {
+            batch.add(target, field);
+        }
+        if (batch.isEmpty()) return;
 
-        String macFieldStr = getMacField.apply(field);
+        try {
+            if (null == cipherAsyncExecutor) batch.execute(batchSize);
+            else batch.executeAsync(batchSize, cipherAsyncExecutor);
+        } catch (ServiceException e) {
+            log.error("~~~~~lazy decrypt field {} error : {}", field.getField().getName(), e.getMessage(), e);
+        }
+    }
 
-        if (CharSequenceUtil.isBlank(macFieldStr)) {
-            ExampleCommonResult<String> encryptResult = enDecryptService.encryptBase64(value);
+    /**
+     * 登记实体中String及byte[]类型的待加解密字段，一次遍历处理所有字段.
+     *
+     * @param <T>     the type parameter
+     * @param t       the t
+     * @param encrypt the encrypt
+     * @param inPlace 是否原地修改，否则先复制出新实例再登记
+     * @param batch   字段收集批次
+     * @return 实际被处理的实体
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T prepareEntity(T t, boolean encrypt, boolean inPlace, FieldCipherBatch batch)
+            throws ReflectiveOperationException {
+        if (null == t) return null;
 
-            if (encryptResult.isSuccess()) {
-                ReflectUtil.setFieldValue(returnObj, field, encryptResult.getData());
-            } else {
-                throw new ServiceException(encryptResult.getCode(), encryptResult.getMessage());
-            }
-        } else {
-            String mac = (String) ReflectUtil.getFieldValue(returnObj, macFieldStr);
+        EntityCipherPlan plan = EntityCipherPlan.of(t.getClass());
+        CipherRoutes routes = routes();
 
-            if (CharSequenceUtil.isBlank(mac)) {
-                ExampleCommonResult<EncryptMacResult> encryptResult = enDecryptService.encryptMacBase64(value);
+        List<FieldPlan> fieldList = plan.getFields();
+        if (checkMultiField(fieldList, encrypt, t, routes)) return t;
 
-                if (encryptResult.isSuccess()) {
-                    ReflectUtil.setFieldValue(returnObj, field, encryptResult.getData().getCipherBase64());
-                    ReflectUtil.setFieldValue(returnObj, macFieldStr, encryptResult.getData().getMac());
-                } else {
-                    throw new ServiceException(encryptResult.getCode(), encryptResult.getMessage());
-                }
-            }
+        Object returnObj = inPlace ? t : plan.copyOf(t);
+
+        for (FieldPlan field : fieldList) {
+            //盲索引在登记加密前按明文计算
+            if (encrypt && field.hasBlindIndex()) fillBlindIndex(returnObj, field, routes);
+            batch.add(returnObj, field);
         }
+        return (T) returnObj;
     }
 
-    private void coreDecryptString(Object returnObj, Field field) throws ServiceException {
-        String value = (String) ReflectUtil.getFieldValue(returnObj, field);
-        if (CharSequenceUtil.isBlank(value)) return;
+    /**
+     * 加密前检查实体或列表中各实体类型的配置，在doEnDecrypt之外执行，异常不会被吞掉后以明文写入
+     *
+     * @param object 实体或实体列表
+     * @throws ServiceException 配置错误
+     */
+    private void checkEntities(Object object) throws ServiceException {
+        if (!(object instanceof List<?> list)) {
+            if (null != object) checkEntity(EntityCipherPlan.of(object.getClass()), routes());
+            return;
+        }
 
-        String macFieldStr = getMacField.apply(field);
+        Class<?> checked = null;
+        for (Object element : list) {
+            //列表中通常只有一种实体类型
+            if (null == element || element.getClass() == checked) continue;
 
-        if (CharSequenceUtil.isBlank(macFieldStr)) {
-            ExampleCommonResult<String> decryptResult = enDecryptService.decryptBase64(value);
+            checked = element.getClass();
+            checkEntity(EntityCipherPlan.of(checked), routes());
+        }
+    }
 
-            if (decryptResult.isSuccess()) {
-                ReflectUtil.setFieldValue(returnObj, field, decryptResult.getData());
-            } else {
-                throw new ServiceException(decryptResult.getCode(), decryptResult.getMessage());
+    /**
+     * 字段的加密路由须存在，确定性加密字段路由到的加密服务须支持确定性加密，存在盲索引字段时须配置盲索引密钥
+     *
+     * @throws IllegalStateException 加密路由不存在
+     */
+    private void checkEntity(EntityCipherPlan plan, CipherRoutes routes) throws ServiceException {
+        for (FieldPlan field : plan.getFields()) {
+            //解析结果按切面缓存，之后加解密时不再解析
+            EnDecryptService service = field.service(routes);
+            if (field.hasBlindIndex() && null == blindIndexer) {
+                throw new ServiceException(CharSequenceUtil.format("{}.{} 存在盲索引字段，未配置encrypt.blind-index.key",
+                        field.getField().getDeclaringClass().getName(), field.getField().getName()));
             }
-        } else {
-            String mac = (String) ReflectUtil.getFieldValue(returnObj, macFieldStr);
-
-            if (CharSequenceUtil.isNotBlank(mac)) {
-                DecryptMacParam param = new DecryptMacParam(value, mac);
-                ExampleCommonResult<String> decryptResult = enDecryptService.decryptMacBase64(param);
-
-                if (decryptResult.isSuccess()) {
-                    ReflectUtil.setFieldValue(returnObj, field, decryptResult.getData());
-                    ReflectUtil.setFieldValue(returnObj, macFieldStr, CharSequenceUtil.EMPTY);
-                } else {
-                    throw new ServiceException(decryptResult.getCode(), decryptResult.getMessage());
-                }
+            if (field.isDeterministic() && !service.isDeterministic()) {
+                throw new ServiceException(CharSequenceUtil.format("{}.{} 为确定性加密字段，加密服务不支持确定性加密",
+                        field.getField().getDeclaringClass().getName(), field.getField().getName()));
             }
         }
     }
 
-    private <T> boolean checkMultiField(List<Field> fieldList, boolean encrypt, T t) {
+    /**
+     * 写入字段明文的盲索引；值为空或已是密文时不处理，盲索引密钥已由checkEntities检查
+     */
+    private void fillBlindIndex(Object target, FieldPlan field, CipherRoutes routes) {
+        Object value = field.getValue(target);
+        if (ObjectUtil.isEmpty(value) || isEncrypted(field.service(routes), value)) return;
+
+        field.setBlindIndex(target, value instanceof byte[] bytes ? blindIndexer.index(bytes)
+                : blindIndexer.index((String) value));
+    }
+
+    private <T> boolean checkMultiField(List<FieldPlan> fieldList, boolean encrypt, T t, CipherRoutes routes) {
         if (fieldList.isEmpty()) return true;
 
         return fieldList.stream().allMatch(field -> {
-            Object value = ReflectUtil.getFieldValue(t, field);
-            String macFieldStr = getMacField.apply(field);
+            Object value = field.getValue(t);
 
-            if (CharSequenceUtil.isBlank(macFieldStr)) return ObjectUtil.isEmpty(value);
+            //无mac字段：值为空，或加密时已是密文、解密时不是密文，均无需处理
+            if (!field.hasMac()) {
+                return ObjectUtil.isEmpty(value) || encrypt == isEncrypted(field.service(routes), value);
+            }
 
-            String mac = (String) ReflectUtil.getFieldValue(t, macFieldStr);
+            String mac = field.getMac(t);
 
             if (encrypt) {
                 //做加密，所有字段的mac均不为空，即视为已加密，直接返回
@@ -346,4 +568,13 @@ public class EnDecryptFieldAspect {
             }
         });
     }
+
+    /**
+     * 通过字段路由到的加密服务识别密文，只检查值开头的前缀
+     */
+    private static boolean isEncrypted(EnDecryptService service, Object value) {
+        ExampleCommonResult<Boolean> result = value instanceof byte[] bytes ? service.isEncrypt(bytes)
+                : service.isEncrypt((String) value);
+        return result.isSuccess() && Boolean.TRUE.equals(result.getData());
+    }
 }
@@ -0,0 +1,273 @@
+package com.example.commoncipher.aop;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.ReflectUtil;
+import com.example.commoncipher.accessor.EntityCipherAccessor;
+import com.example.commoncipher.accessor.EntityCipherAccessors;
+import com.example.commoncipher.accessor.ValueAccessor;
+import com.example.commoncipher.annotation.EnDecryptField;
+import com.example.commoncipher.service.EnDecryptService;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClassName: EntityCipherPlan <br/>
+ * Description: 实体类加解密字段计划，每个实体类型只解析一次并缓存 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 存在编译期生成的{@link EntityCipherAccessor}时，字段读写及实体复制直接调用getter/setter，否则使用反射
+ */
+final class EntityCipherPlan {
+
+    private static final Map<Class<?>, EntityCipherPlan> PLAN_CACHE = new ConcurrentHashMap<>(64);
+
+    private final List<FieldPlan> fields;
+
+    private final boolean deterministic;
+
+    //未生成访问器时为空
+    private final EntityCipherAccessor<Object> accessor;
+
+    private EntityCipherPlan(List<FieldPlan> fields, EntityCipherAccessor<Object> accessor) {
+        this.fields = fields;
+        this.deterministic = fields.stream().anyMatch(FieldPlan::isDeterministic);
+        this.accessor = accessor;
+    }
+
+    /**
+     * 获取实体类型对应的字段计划，首次访问时解析
+     *
+     * @param clazz 实体类型
+     * @return the plan
+     */
+    static EntityCipherPlan of(Class<?> clazz) {
+        return PLAN_CACHE.computeIfAbsent(clazz, EntityCipherPlan::build);
+    }
+
+    private static EntityCipherPlan build(Class<?> clazz) {
+        List<FieldPlan> fields = new ArrayList<>();
+        EntityCipherAccessor<Object> accessor = EntityCipherAccessors.find(clazz);
+
+        for (Field field : ReflectUtil.getFields(clazz)) {
+            EnDecryptField annotation = field.getAnnotation(EnDecryptField.class);
+            if (null == annotation || Modifier.isStatic(field.getModifiers())) continue;
+
+            FieldKind kind;
+            if (field.getType().isAssignableFrom(String.class)) {
+                kind = FieldKind.STRING;
+            } else if (field.getType() == byte[].class) {
+                kind = FieldKind.BYTES;
+            } else {
+                continue;
+            }
+
+            field.setAccessible(true);
+            Field macField = resolveStringField(clazz, field, annotation.macField(), "mac");
+            Field blindIndexField = resolveStringField(clazz, field, annotation.blindIndexField(), "盲索引");
+            fields.add(new FieldPlan(field, access(accessor, field), access(accessor, macField),
+                    access(accessor, blindIndexField), kind, annotation.cache(), annotation.deterministic(),
+                    annotation.route()));
+        }
+
+        return new EntityCipherPlan(Collections.unmodifiableList(fields), accessor);
+    }
+
+    /**
+     * 字段的读写：优先使用生成的访问器，未生成该字段时使用反射
+     */
+    private static ValueAccessor<Object> access(EntityCipherAccessor<Object> accessor, Field field) {
+        if (null == field) return null;
+
+        ValueAccessor<Object> generated = null == accessor ? null : accessor.field(field.getName());
+        return null != generated ? generated : new ReflectiveAccessor(field);
+    }
+
+    private static Field resolveStringField(Class<?> clazz, Field field, String fieldName, String usage) {
+        if (CharSequenceUtil.isBlank(fieldName)) return null;
+
+        Field target = ReflectUtil.getField(clazz, fieldName);
+        if (null == target || !target.getType().isAssignableFrom(String.class)) {
+            throw new IllegalStateException(CharSequenceUtil.format("{}.{} 关联的{}字段 {} 不存在或不是String类型",
+                    clazz.getName(), field.getName(), usage, fieldName));
+        }
+        target.setAccessible(true);
+        return target;
+    }
+
+    /**
+     * String及byte[]类型的加密字段，按声明顺序排列
+     */
+    List<FieldPlan> getFields() {
+        return fields;
+    }
+
+    /**
+     * 创建实体的副本：新实例 + 复制所有属性
+     *
+     * @param source 实体，类型与计划一致
+     * @return 副本
+     */
+    Object copyOf(Object source) throws ReflectiveOperationException {
+        if (null != accessor) {
+            Object target = accessor.newInstance();
+            accessor.copy(source, target);
+            return target;
+        }
+
+        Object target = source.getClass().getDeclaredConstructor().newInstance();
+        BeanUtil.copyProperties(source, target);
+        return target;
+    }
+
+    /**
+     * 是否使用生成的访问器
+     */
+    boolean isGenerated() {
+        return null != accessor;
+    }
+
+    /**
+     * 是否存在要求确定性加密的字段
+     */
+    boolean isDeterministic() {
+        return deterministic;
+    }
+
+    enum FieldKind {
+        STRING, BYTES
+    }
+
+    /**
+     * 单个加密字段：字段及关联的mac、盲索引字段的访问器、字段类型、是否缓存解密结果、是否确定性加密及加密路由
+     */
+    static final class FieldPlan {
+
+        private final Field field;
+
+        private final ValueAccessor<Object> value;
+
+        private final ValueAccessor<Object> mac;
+
+        private final ValueAccessor<Object> blindIndex;
+
+        private final FieldKind kind;
+
+        private final boolean cached;
+
+        private final boolean deterministic;
+
+        private final String route;
+
+        //路由解析结果，按解析时的CipherRoutes区分，切面不变时直接使用
+        private volatile RouteBinding binding;
+
+        private FieldPlan(Field field, ValueAccessor<Object> value, ValueAccessor<Object> mac,
+                          ValueAccessor<Object> blindIndex, FieldKind kind, boolean cached, boolean deterministic,
+                          String route) {
+            this.field = field;
+            this.value = value;
+            this.mac = mac;
+            this.blindIndex = blindIndex;
+            this.kind = kind;
+            this.cached = cached;
+            this.deterministic = deterministic;
+            this.route = route;
+        }
+
+        Field getField() {
+            return field;
+        }
+
+        FieldKind getKind() {
+            return kind;
+        }
+
+        boolean isCached() {
+            return cached;
+        }
+
+        boolean isDeterministic() {
+            return deterministic;
+        }
+
+        /**
+         * 字段使用的加密服务，首次调用时按路由解析
+         */
+        EnDecryptService service(CipherRoutes routes) {
+            RouteBinding current = binding;
+            if (null != current && current.routes() == routes) return current.service();
+
+            EnDecryptService service = routes.resolve(route);
+            binding = new RouteBinding(routes, service);
+            return service;
+        }
+
+        boolean hasMac() {
+            return null != mac;
+        }
+
+        Object getValue(Object target) {
+            return value.get(target);
+        }
+
+        void setValue(Object target, Object value) {
+            this.value.set(target, value);
+        }
+
+        String getMac(Object target) {
+            return null == mac ? null : (String) mac.get(target);
+        }
+
+        void setMac(Object target, String mac) {
+            this.mac.set(target, mac);
+        }
+
+        boolean hasBlindIndex() {
+            return null != blindIndex;
+        }
+
+        void setBlindIndex(Object target, String blindIndex) {
+            this.blindIndex.set(target, blindIndex);
+        }
+    }
+
+    private record RouteBinding(CipherRoutes routes, EnDecryptService service) {
+    }
+
+    /**
+     * 反射读写字段，未生成访问器时使用
+     */
+    private static final class ReflectiveAccessor implements ValueAccessor<Object> {
+
+        private final Field field;
+
+        private ReflectiveAccessor(Field field) {
+            this.field = field;
+        }
+
+        @Override
+        public Object get(Object target) {
+            try {
+                return field.get(target);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void set(Object target, Object value) {
+            try {
+                field.set(target, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
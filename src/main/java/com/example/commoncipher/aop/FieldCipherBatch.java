@@ -0,0 +1,307 @@
+package com.example.commoncipher.aop;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.ObjectUtil;
+import com.example.commoncipher.aop.EntityCipherPlan.FieldKind;
+import com.example.commoncipher.aop.EntityCipherPlan.FieldPlan;
+import com.example.commoncipher.cache.DecryptedValueCache;
+import com.example.commoncipher.exception.ServiceException;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * ClassName: FieldCipherBatch <br/>
+ * Description: 收集一次mapper调用中所有实体的待加解密字段，按加密服务及操作类型分批调用后回填 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 解密时，标记了缓存的字段先按密文(及mac)查询缓存，命中的不调用加密服务，与各批次结果一起回填，
+ * 未命中的解密成功后写入缓存；<br/>
+ * 字段按路由解析出的加密服务分组，不同路由的字段分别调用各自的加密服务；<br/>
+ * 各批次的结果先暂存，所有批次成功后才回填，任一批次失败时实体(含原地模式下调用方的实体)不被修改
+ */
+final class FieldCipherBatch {
+
+    private final boolean encrypt;
+
+    //未启用缓存时为空
+    private final DecryptedValueCache cache;
+
+    private final CipherRoutes routes;
+
+    //按加密服务分组，路由通常只有一两个，按顺序查找
+    private final List<Group> groups = new ArrayList<>(2);
+
+    //命中缓存的字段的回填操作，与各批次结果一起在全部成功后执行
+    private final List<Runnable> hits = new ArrayList<>();
+
+    FieldCipherBatch(boolean encrypt, DecryptedValueCache cache, CipherRoutes routes) {
+        this.encrypt = encrypt;
+        this.cache = cache;
+        this.routes = routes;
+    }
+
+    /**
+     * 登记实体的一个字段，判断规则与单条处理一致：值为空、加密时mac已存在、解密时mac为空的字段不处理
+     *
+     * @param target 实体
+     * @param field  字段计划
+     */
+    void add(Object target, FieldPlan field) {
+        Object value = field.getValue(target);
+        boolean bytes = field.getKind() == FieldKind.BYTES;
+        if (bytes ? ObjectUtil.isEmpty(value) : CharSequenceUtil.isBlank((String) value)) return;
+
+        String mac = field.getMac(target);
+        if (field.hasMac() && encrypt != CharSequenceUtil.isBlank(mac)) return;
+
+        DecryptedValueCache.Key cacheKey = null;
+        if (!encrypt && null != cache && field.isCached()) {
+            cacheKey = bytes ? cache.key((byte[]) value, mac) : cache.key((String) value, mac);
+            Object plain = bytes ? cache.getBytes(cacheKey) : cache.getString(cacheKey);
+            if (null != plain) {
+                hits.add(() -> {
+                    field.setValue(target, plain);
+                    if (field.hasMac()) field.setMac(target, CharSequenceUtil.EMPTY);
+                });
+                return;
+            }
+        }
+
+        Slot slot = new Slot(target, field, cacheKey);
+        Group group = group(field.service(routes));
+        if (field.hasMac()) (bytes ? group.byteMacSlots : group.stringMacSlots).add(slot);
+        else (bytes ? group.byteSlots : group.stringSlots).add(slot);
+    }
+
+    private Group group(EnDecryptService service) {
+        for (Group group : groups) {
+            if (group.service == service) return group;
+        }
+        Group group = new Group(service);
+        groups.add(group);
+        return group;
+    }
+
+    boolean isEmpty() {
+        return groups.isEmpty() && hits.isEmpty();
+    }
+
+    /**
+     * 按加密服务及操作类型分批调用，每批不超过batchSize个字段，全部成功后结果按顺序回填到实体
+     *
+     * @param batchSize 单批最大字段数
+     * @throws ServiceException 任一批次失败，此时不回填任何字段
+     */
+    void execute(int batchSize) throws ServiceException {
+        List<Runnable> writes = new ArrayList<>(hits);
+        for (Group group : groups) {
+            execute(group, batchSize, writes);
+        }
+        writes.forEach(Runnable::run);
+    }
+
+    private void execute(Group group, int batchSize, List<Runnable> writes) throws ServiceException {
+        EnDecryptService service = group.service;
+        if (encrypt) {
+            execute(writes, group.byteSlots, batchSize, Slot::bytes, service::encryptByteBatch, Slot::setValue);
+            execute(writes, group.byteMacSlots, batchSize, Slot::bytes, service::encryptMacByteBatch,
+                    (slot, result) -> slot.setValueAndMac(result.getCipherByte(), result.getMac()));
+            execute(writes, group.stringSlots, batchSize, Slot::string, service::encryptBase64Batch, Slot::setValue);
+            execute(writes, group.stringMacSlots, batchSize, Slot::string, service::encryptMacBase64Batch,
+                    (slot, result) -> slot.setValueAndMac(result.getCipherBase64(), result.getMac()));
+        } else {
+            execute(writes, group.byteSlots, batchSize, Slot::bytes, service::decryptByteBatch, this::setPlain);
+            execute(writes, group.byteMacSlots, batchSize, Slot::byteMacParam, service::decryptMacByteBatch,
+                    this::setPlain);
+            execute(writes, group.stringSlots, batchSize, Slot::string, service::decryptBase64Batch,
+                    this::setPlain);
+            execute(writes, group.stringMacSlots, batchSize, Slot::stringMacParam, service::decryptMacBase64Batch,
+                    this::setPlain);
+        }
+    }
+
+    /**
+     * 异步执行：所有加密服务、操作类型的所有批次同时提交，耗时接近最慢的一次调用；
+     * 等待所有批次结束(含失败后仍在执行的批次)，全部成功后在调用线程回填，返回后不会有其他线程修改实体
+     *
+     * @param batchSize 单批最大字段数
+     * @param executor  执行调用的线程池
+     * @throws ServiceException 任一批次失败，此时不回填任何字段
+     */
+    void executeAsync(int batchSize, Executor executor) throws ServiceException {
+        List<CompletableFuture<Runnable>> futures = new ArrayList<>();
+        for (Group group : groups) {
+            submit(futures, group, batchSize, executor);
+        }
+
+        List<Runnable> writes = new ArrayList<>(hits);
+        Throwable failure = null;
+        for (CompletableFuture<Runnable> future : futures) {
+            try {
+                writes.add(future.join());
+            } catch (CompletionException | CancellationException e) {
+                if (null == failure) failure = null == e.getCause() ? e : e.getCause();
+            }
+        }
+
+        if (failure instanceof ServiceException serviceException) throw serviceException;
+        if (null != failure) throw new ServiceException(failure);
+        writes.forEach(Runnable::run);
+    }
+
+    private void submit(List<CompletableFuture<Runnable>> futures, Group group, int batchSize,
+                        Executor executor) {
+        EnDecryptService service = group.service;
+        if (encrypt) {
+            submit(futures, group.byteSlots, batchSize, Slot::bytes,
+                    params -> service.encryptByteBatchAsync(params, executor), Slot::setValue);
+            submit(futures, group.byteMacSlots, batchSize, Slot::bytes,
+                    params -> service.encryptMacByteBatchAsync(params, executor),
+                    (slot, result) -> slot.setValueAndMac(result.getCipherByte(), result.getMac()));
+            submit(futures, group.stringSlots, batchSize, Slot::string,
+                    params -> service.encryptBase64BatchAsync(params, executor), Slot::setValue);
+            submit(futures, group.stringMacSlots, batchSize, Slot::string,
+                    params -> service.encryptMacBase64BatchAsync(params, executor),
+                    (slot, result) -> slot.setValueAndMac(result.getCipherBase64(), result.getMac()));
+        } else {
+            submit(futures, group.byteSlots, batchSize, Slot::bytes,
+                    params -> service.decryptByteBatchAsync(params, executor), this::setPlain);
+            submit(futures, group.byteMacSlots, batchSize, Slot::byteMacParam,
+                    params -> service.decryptMacByteBatchAsync(params, executor), this::setPlain);
+            submit(futures, group.stringSlots, batchSize, Slot::string,
+                    params -> service.decryptBase64BatchAsync(params, executor), this::setPlain);
+            submit(futures, group.stringMacSlots, batchSize, Slot::stringMacParam,
+                    params -> service.decryptMacBase64BatchAsync(params, executor), this::setPlain);
+        }
+    }
+
+    /**
+     * 回填解密结果，有mac的字段同时清空mac；字段标记了缓存时写入缓存
+     */
+    private void setPlain(Slot slot, Object plain) {
+        slot.setValue(plain);
+        if (slot.field().hasMac()) slot.field().setMac(slot.target(), CharSequenceUtil.EMPTY);
+
+        DecryptedValueCache.Key cacheKey = slot.cacheKey();
+        if (null == cacheKey) return;
+        if (plain instanceof byte[] bytes) cache.putBytes(cacheKey, bytes);
+        else if (plain instanceof String string) cache.putString(cacheKey, string);
+    }
+
+    private static <P, R> void execute(List<Runnable> writes, List<Slot> slots, int batchSize,
+                                       Function<Slot, P> toParam,
+                                       Function<List<P>, ExampleCommonResult<List<R>>> call,
+                                       BiConsumer<Slot, R> scatter) throws ServiceException {
+        for (int from = 0; from < slots.size(); from += batchSize) {
+            List<Slot> chunk = slots.subList(from, Math.min(from + batchSize, slots.size()));
+            writes.add(fill(chunk, call.apply(params(chunk, toParam)), scatter));
+        }
+    }
+
+    private static <P, R> void submit(List<CompletableFuture<Runnable>> futures, List<Slot> slots, int batchSize,
+                                      Function<Slot, P> toParam,
+                                      Function<List<P>, CompletableFuture<ExampleCommonResult<List<R>>>> call,
+                                      BiConsumer<Slot, R> scatter) {
+        for (int from = 0; from < slots.size(); from += batchSize) {
+            List<Slot> chunk = slots.subList(from, Math.min(from + batchSize, slots.size()));
+            CompletableFuture<ExampleCommonResult<List<R>>> future;
+            try {
+                future = call.apply(params(chunk, toParam));
+            } catch (RuntimeException e) {
+                //提交失败时已提交的批次照常等待
+                future = CompletableFuture.failedFuture(e);
+            }
+            futures.add(future.thenApply(result -> {
+                try {
+                    return fill(chunk, result, scatter);
+                } catch (ServiceException e) {
+                    throw new CompletionException(e);
+                }
+            }));
+        }
+    }
+
+    private static <P> List<P> params(List<Slot> chunk, Function<Slot, P> toParam) {
+        List<P> params = new ArrayList<>(chunk.size());
+        for (Slot slot : chunk) {
+            params.add(toParam.apply(slot));
+        }
+        return params;
+    }
+
+    /**
+     * 校验批次结果，返回回填该批次的操作，由调用方在所有批次成功后执行
+     */
+    private static <R> Runnable fill(List<Slot> chunk, ExampleCommonResult<List<R>> result,
+                                     BiConsumer<Slot, R> scatter) throws ServiceException {
+        List<R> data = EnDecryptService.batchData(result, chunk.size());
+
+        return () -> {
+            for (int i = 0; i < chunk.size(); i++) {
+                scatter.accept(chunk.get(i), data.get(i));
+            }
+        };
+    }
+
+    /**
+     * 同一加密服务的待处理字段，按操作类型分开
+     */
+    private static final class Group {
+
+        private final EnDecryptService service;
+
+        private final List<Slot> byteSlots = new ArrayList<>();
+
+        private final List<Slot> byteMacSlots = new ArrayList<>();
+
+        private final List<Slot> stringSlots = new ArrayList<>();
+
+        private final List<Slot> stringMacSlots = new ArrayList<>();
+
+        private Group(EnDecryptService service) {
+            this.service = service;
+        }
+    }
+
+    /**
+     * 待处理的实体字段，cacheKey为解密结果的缓存key，不缓存时为空
+     */
+    private record Slot(Object target, FieldPlan field, DecryptedValueCache.Key cacheKey) {
+
+        byte[] bytes() {
+            return (byte[]) field.getValue(target);
+        }
+
+        String string() {
+            return (String) field.getValue(target);
+        }
+
+        DecryptMacParam byteMacParam() {
+            return new DecryptMacParam(bytes(), field.getMac(target));
+        }
+
+        DecryptMacParam stringMacParam() {
+            return new DecryptMacParam(string(), field.getMac(target));
+        }
+
+        void setValue(Object value) {
+            field.setValue(target, value);
+        }
+
+        void setValueAndMac(Object value, String mac) {
+            field.setValue(target, value);
+            field.setMac(target, mac);
+        }
+    }
+}
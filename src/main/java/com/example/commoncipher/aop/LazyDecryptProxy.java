@@ -0,0 +1,210 @@
+package com.example.commoncipher.aop;
+
+import cn.hutool.core.bean.BeanDesc;
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.PropDesc;
+import cn.hutool.core.util.ReflectUtil;
+import com.example.commoncipher.aop.EntityCipherPlan.FieldPlan;
+import org.springframework.cglib.proxy.Callback;
+import org.springframework.cglib.proxy.CallbackFilter;
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.Factory;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.cglib.proxy.MethodProxy;
+import org.springframework.cglib.proxy.NoOp;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * ClassName: LazyDecryptProxy <br/>
+ * Description: 延迟解密的实体子类代理，加密字段保持密文，首次调用其getter时才解密并缓存结果 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 每个实体类型只生成一次子类；只拦截加密字段的getter/setter，其余方法直接调用父类；<br/>
+ * 同一次查询(或同一段)的代理属于同一{@link Group}：任一代理首次读取某字段时，组内同类型代理的该字段一起按批解密，
+ * 列表逐行读取同一列时只产生 行数/批大小 次调用；<br/>
+ * 通过setter赋值的字段视为明文，不再解密；绕过getter直接读取字段(反射、字段内的toString等)得到的仍是密文
+ */
+final class LazyDecryptProxy {
+
+    private static final Map<Class<?>, ProxyType> PROXY_TYPES = new ConcurrentHashMap<>(64);
+
+    private LazyDecryptProxy() {
+    }
+
+    /**
+     * 创建实体的延迟解密代理，复制实体所有字段的当前值
+     *
+     * @param entity 查询得到的实体，字段为密文
+     * @param plan   实体的字段计划
+     * @param group  代理所属的组，首次读取字段时组内代理一起解密
+     * @return 代理实例，实体类型的子类
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T wrap(T entity, EntityCipherPlan plan, Group group) {
+        ProxyType type = PROXY_TYPES.computeIfAbsent(entity.getClass(), clazz -> new ProxyType(clazz, plan));
+        Interceptor interceptor = new Interceptor(type, group);
+        Object proxy = type.prototype.newInstance(new Callback[]{interceptor, NoOp.INSTANCE});
+        for (Field field : type.copyFields) {
+            try {
+                field.set(proxy, field.get(entity));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        group.add(interceptor, proxy);
+        return (T) proxy;
+    }
+
+    /**
+     * 是否为延迟解密代理
+     */
+    static boolean isProxy(Object object) {
+        return object instanceof Factory factory && factory.getCallback(0) instanceof Interceptor;
+    }
+
+    /**
+     * 实体类型对应的代理子类：getter/setter方法名到字段计划下标的映射
+     */
+    private static final class ProxyType implements CallbackFilter {
+
+        private final List<FieldPlan> fields;
+
+        private final Map<String, Integer> getters = new HashMap<>();
+
+        private final Map<String, Integer> setters = new HashMap<>();
+
+        private final Field[] copyFields;
+
+        private final Factory prototype;
+
+        private ProxyType(Class<?> clazz, EntityCipherPlan plan) {
+            this.fields = plan.getFields();
+            BeanDesc beanDesc = BeanUtil.getBeanDesc(clazz);
+            for (int i = 0; i < fields.size(); i++) {
+                PropDesc prop = beanDesc.getProp(fields.get(i).getField().getName());
+                if (null == prop) continue;
+                if (null != prop.getGetter()) getters.put(prop.getGetter().getName(), i);
+                if (null != prop.getSetter()) setters.put(prop.getSetter().getName(), i);
+            }
+
+            this.copyFields = Arrays.stream(ReflectUtil.getFields(clazz))
+                    .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                    .toArray(Field[]::new);
+            for (Field field : copyFields) {
+                field.setAccessible(true);
+            }
+
+            Enhancer enhancer = new Enhancer();
+            enhancer.setSuperclass(clazz);
+            enhancer.setCallbackFilter(this);
+            enhancer.setCallbacks(new Callback[]{new Interceptor(this, null), NoOp.INSTANCE});
+            //原型实例只用于创建同类型的新实例
+            this.prototype = (Factory) enhancer.create();
+        }
+
+        @Override
+        public int accept(Method method) {
+            String name = method.getName();
+            boolean accessor = method.getParameterCount() == 0 ? getters.containsKey(name)
+                    : method.getParameterCount() == 1 && setters.containsKey(name);
+            return accessor ? 0 : 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            //Enhancer按过滤器缓存生成的类，每个实体类型只生成一次，不需要与其他过滤器相等
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    /**
+     * 一组同时返回的代理，按字段一起解密；组内状态由组的锁保护
+     */
+    static final class Group {
+
+        private final BiConsumer<List<Object>, FieldPlan> decrypt;
+
+        private final List<Interceptor> members = new ArrayList<>();
+
+        private final List<Object> proxies = new ArrayList<>();
+
+        /**
+         * @param decrypt 解密多个代理实例的同一字段并回填，字段已标记为已解密
+         */
+        Group(BiConsumer<List<Object>, FieldPlan> decrypt) {
+            this.decrypt = decrypt;
+        }
+
+        private synchronized void add(Interceptor member, Object proxy) {
+            members.add(member);
+            proxies.add(proxy);
+        }
+
+        /**
+         * getter首次调用时解密组内同类型代理的该字段；setter赋值后该代理的字段不再解密；
+         * 先标记再解密，回填时经过setter/getter不会重复进入
+         */
+        private synchronized void resolve(Interceptor member, int index, boolean read) {
+            if (member.resolved[index]) return;
+
+            if (!read) {
+                member.resolved[index] = true;
+                return;
+            }
+
+            List<Object> targets = new ArrayList<>();
+            for (int i = 0; i < members.size(); i++) {
+                Interceptor other = members.get(i);
+                if (other.type != member.type || other.resolved[index]) continue;
+
+                other.resolved[index] = true;
+                targets.add(proxies.get(i));
+            }
+            decrypt.accept(targets, member.type.fields.get(index));
+        }
+    }
+
+    /**
+     * 单个代理实例的拦截器，记录各字段是否已解密
+     */
+    private static final class Interceptor implements MethodInterceptor {
+
+        private final ProxyType type;
+
+        //原型实例的拦截器为空，不解密
+        private final Group group;
+
+        private final boolean[] resolved;
+
+        private Interceptor(ProxyType type, Group group) {
+            this.type = type;
+            this.group = group;
+            this.resolved = new boolean[type.fields.size()];
+        }
+
+        @Override
+        public Object intercept(Object proxy, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+            if (null != group) {
+                Integer index = args.length == 0 ? type.getters.get(method.getName())
+                        : type.setters.get(method.getName());
+                if (null != index) group.resolve(this, index, args.length == 0);
+            }
+            return methodProxy.invokeSuper(proxy, args);
+        }
+    }
+}
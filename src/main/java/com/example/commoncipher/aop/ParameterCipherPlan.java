@@ -0,0 +1,122 @@
+package com.example.commoncipher.aop;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import com.example.commoncipher.annotation.BlindIndex;
+import com.example.commoncipher.annotation.EnDecryptField;
+import com.example.commoncipher.service.EnDecryptService;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * ClassName: ParameterCipherPlan <br/>
+ * Description: mapper方法的加密参数计划，每个方法只解析一次并缓存 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 标记了{@link EnDecryptField}的参数在调用前按确定性加密转为密文，标记了{@link BlindIndex}的参数转为盲索引，
+ * 用于 WHERE 列 = ? 及 IN 查询；支持String、byte[]及其集合类型；加密参数按注解的路由选择加密服务
+ */
+final class ParameterCipherPlan {
+
+    private static final Map<Method, ParameterCipherPlan> PLAN_CACHE = new ConcurrentHashMap<>(64);
+
+    private final int[] indexes;
+
+    private final int[] blindIndexes;
+
+    //加密参数的路由，与indexes一一对应
+    private final String[] routeNames;
+
+    //路由解析结果，按解析时的CipherRoutes区分
+    private volatile RouteBinding binding;
+
+    private ParameterCipherPlan(int[] indexes, int[] blindIndexes, String[] routeNames) {
+        this.indexes = indexes;
+        this.blindIndexes = blindIndexes;
+        this.routeNames = routeNames;
+    }
+
+    /**
+     * 获取方法对应的参数计划，首次访问时解析
+     *
+     * @param method mapper方法
+     * @return the plan
+     */
+    static ParameterCipherPlan of(Method method) {
+        return PLAN_CACHE.computeIfAbsent(method, ParameterCipherPlan::build);
+    }
+
+    private static ParameterCipherPlan build(Method method) {
+        int[] indexes = annotated(method, EnDecryptField.class);
+        Parameter[] parameters = method.getParameters();
+        String[] routeNames = IntStream.of(indexes)
+                .mapToObj(index -> parameters[index].getAnnotation(EnDecryptField.class).route())
+                .toArray(String[]::new);
+        return new ParameterCipherPlan(indexes, annotated(method, BlindIndex.class), routeNames);
+    }
+
+    private static int[] annotated(Method method, Class<? extends Annotation> annotation) {
+        Parameter[] parameters = method.getParameters();
+        int[] indexes = IntStream.range(0, parameters.length)
+                .filter(i -> parameters[i].isAnnotationPresent(annotation))
+                .toArray();
+
+        for (int index : indexes) {
+            Class<?> type = parameters[index].getType();
+            if (type != String.class && type != byte[].class && !Collection.class.isAssignableFrom(type)) {
+                throw new IllegalStateException(CharSequenceUtil.format("{}.{} 的{}参数 {} 不是String、byte[]或集合类型",
+                        method.getDeclaringClass().getName(), method.getName(), annotation.getSimpleName(),
+                        parameters[index].getName()));
+            }
+        }
+        return indexes;
+    }
+
+    boolean isEmpty() {
+        return indexes.length == 0 && blindIndexes.length == 0;
+    }
+
+    /**
+     * 加密参数的下标，按参数顺序排列
+     */
+    int[] getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * 加密参数使用的加密服务，与{@link #getIndexes()}一一对应，首次调用时按路由解析
+     */
+    EnDecryptService[] services(CipherRoutes routes) {
+        RouteBinding current = binding;
+        if (null != current && current.routes() == routes) return current.services();
+
+        EnDecryptService[] services = new EnDecryptService[routeNames.length];
+        for (int i = 0; i < services.length; i++) {
+            services[i] = routes.resolve(routeNames[i]);
+        }
+        binding = new RouteBinding(routes, services);
+        return services;
+    }
+
+    /**
+     * 盲索引参数的下标，按参数顺序排列
+     */
+    int[] getBlindIndexes() {
+        return blindIndexes;
+    }
+
+    /**
+     * 指定下标的参数是否为加密或盲索引参数
+     */
+    boolean isAnnotated(int index) {
+        return IntStream.of(indexes).anyMatch(i -> i == index) || IntStream.of(blindIndexes).anyMatch(i -> i == index);
+    }
+
+    private record RouteBinding(CipherRoutes routes, EnDecryptService[] services) {
+    }
+}
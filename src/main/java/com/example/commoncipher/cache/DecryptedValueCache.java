@@ -0,0 +1,294 @@
+package com.example.commoncipher.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: DecryptedValueCache <br/>
+ * Description: 解密结果缓存，按密文(及mac)摘要缓存明文，按总字节数限制容量 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * key为类型 + 密文 + mac的SHA-256摘要，不保存密文本身；明文以byte[]/char[]副本保存，读取时返回新的副本，
+ * 过期、淘汰及清空时原副本清零。<br/>
+ * 按key的hash分段，每段为按访问顺序排列的LinkedHashMap，超出容量时淘汰最久未访问的条目；写入后超过ttl的条目在读取时失效
+ */
+public class DecryptedValueCache {
+
+    private static final int SEGMENTS = 16;
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    //条目的估算额外开销：key摘要、节点、引用等
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final byte TYPE_BYTES = 1;
+
+    private static final byte TYPE_STRING = 2;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final long segmentMaxBytes;
+
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxBytes 明文及条目开销的总字节数上限
+     * @param ttlMillis 写入后的有效期，毫秒
+     */
+    public DecryptedValueCache(long maxBytes, long ttlMillis) {
+        this.segmentMaxBytes = Math.max(maxBytes / SEGMENTS, 1);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * byte[]密文的缓存key
+     *
+     * @param cipherByte 密文
+     * @param mac        摘要，无mac时为空
+     */
+    public Key key(byte[] cipherByte, String mac) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(TYPE_BYTES);
+        digest.update(cipherByte);
+        return finish(digest, mac);
+    }
+
+    /**
+     * String密文的缓存key
+     *
+     * @param cipherBase64 密文
+     * @param mac          摘要，无mac时为空
+     */
+    public Key key(String cipherBase64, String mac) {
+        MessageDigest digest = DIGEST.get();
+        digest.update(TYPE_STRING);
+        digest.update(cipherBase64.getBytes(StandardCharsets.UTF_8));
+        return finish(digest, mac);
+    }
+
+    private static Key finish(MessageDigest digest, String mac) {
+        //分隔密文与mac，避免拼接后相同
+        digest.update((byte) 0);
+        if (null != mac) digest.update(mac.getBytes(StandardCharsets.ISO_8859_1));
+        return new Key(digest.digest());
+    }
+
+    /**
+     * 读取byte[]明文
+     *
+     * @return 明文副本，未命中时返回空
+     */
+    public byte[] getBytes(Key key) {
+        Object value = segment(key).get(key);
+        return value instanceof byte[] plain ? plain : null;
+    }
+
+    /**
+     * 读取String明文
+     *
+     * @return 明文，未命中时返回空
+     */
+    public String getString(Key key) {
+        Object value = segment(key).get(key);
+        return value instanceof String plain ? plain : null;
+    }
+
+    public void putBytes(Key key, byte[] plain) {
+        if (null != plain) segment(key).put(key, plain.clone(), plain.length);
+    }
+
+    public void putString(Key key, String plain) {
+        if (null != plain) segment(key).put(key, plain.toCharArray(), (long) plain.length() * Character.BYTES);
+    }
+
+    /**
+     * 清空缓存，所有明文副本清零
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 因容量淘汰的条目数
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 因过期失效的条目数
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * 当前条目占用的估算字节数
+     */
+    public long getWeightBytes() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.getWeight();
+        }
+        return weight;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segment(Key key) {
+        return segments[key.hash & (SEGMENTS - 1)];
+    }
+
+    private static void wipe(Object value) {
+        if (value instanceof byte[] bytes) Arrays.fill(bytes, (byte) 0);
+        else if (value instanceof char[] chars) Arrays.fill(chars, '\0');
+    }
+
+    /**
+     * 缓存key：摘要及其hash
+     */
+    public static final class Key {
+
+        private final byte[] digest;
+
+        private final int hash;
+
+        private Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Key other && hash == other.hash && Arrays.equals(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private record Entry(Object value, long weight, long writtenAt) {
+    }
+
+    /**
+     * 一个分段，读写均加锁；读取时在锁内复制明文，条目被淘汰清零后不影响已返回的副本
+     */
+    private final class Segment {
+
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+        private long weight;
+
+        /**
+         * @return byte[]明文的副本或String明文，未命中时返回空
+         */
+        synchronized Object get(Key key) {
+            Entry entry = entries.get(key);
+            if (null == entry) {
+                misses.increment();
+                return null;
+            }
+
+            if (System.nanoTime() - entry.writtenAt() > ttlNanos) {
+                remove(key, entry);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+
+            hits.increment();
+            Object value = entry.value();
+            if (value instanceof byte[] bytes) return bytes.clone();
+            return value instanceof char[] chars ? new String(chars) : null;
+        }
+
+        synchronized void put(Key key, Object value, long valueBytes) {
+            long entryWeight = valueBytes + ENTRY_OVERHEAD;
+            if (entryWeight > segmentMaxBytes) {
+                //单个明文超过分段容量，不缓存
+                wipe(value);
+                return;
+            }
+
+            Entry previous = entries.put(key, new Entry(value, entryWeight, System.nanoTime()));
+            weight += entryWeight;
+            if (null != previous) {
+                weight -= previous.weight();
+                wipe(previous.value());
+            }
+
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (weight > segmentMaxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                weight -= evicted.weight();
+                wipe(evicted.value());
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            entries.values().forEach(entry -> wipe(entry.value()));
+            entries.clear();
+            weight = 0;
+        }
+
+        synchronized long getWeight() {
+            return weight;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private void remove(Key key, Entry entry) {
+            entries.remove(key);
+            weight -= entry.weight();
+            wipe(entry.value());
+        }
+    }
+}
@@ -1,12 +1,35 @@
 package com.example.commoncipher.config;
 
+import cn.hutool.core.thread.NamedThreadFactory;
 import com.example.commoncipher.aop.EnDecryptFieldAspect;
+import com.example.commoncipher.cache.DecryptedValueCache;
+import com.example.commoncipher.index.BlindIndexer;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.metrics.CipherMetrics;
+import com.example.commoncipher.metrics.MetricsEnDecryptService;
+import com.example.commoncipher.metrics.SimpleCipherMetrics;
+import com.example.commoncipher.operator.CipherOperatorRouter;
+import com.example.commoncipher.service.EnDecryptService;
 import com.example.commoncipher.service.impl.DefaultNoCipherServiceImpl;
+import com.example.commoncipher.service.impl.EnvelopeCipherServiceImpl;
+import com.example.commoncipher.service.impl.HedgedCipherServiceImpl;
 import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import com.example.commoncipher.service.impl.RemoteCipherServiceImpl;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ClassName: EnDecryptServiceConfig <br/>
@@ -25,7 +48,16 @@ public class EnDecryptServiceConfig {
         return new EnDecryptFieldAspect();
     }
 
-    //以下的实现类，在配置的时候，只能指定其中一个为true
+    /**
+     * 加密路由，收集容器中的CipherOperator，供@EnDecryptField(route)按字段选择加密服务
+     */
+    @Bean
+    @ConditionalOnMissingBean(CipherOperatorRouter.class)
+    public CipherOperatorRouter cipherOperatorRouter() {
+        return new CipherOperatorRouter();
+    }
+
+    //以下的实现类，在配置的时候，只能指定其中一个为true，作为默认的加密服务
 
     /**
      * hard.cipher.service 缺省，启用不加密实现
@@ -37,11 +69,168 @@ public class EnDecryptServiceConfig {
     }
 
     /**
-     * hard.cipher.service = hutool_sm，启用hutool-挡板加密机
+     * hard.cipher.service = hutool_sm，启用hutool-挡板加密机；
+     * 密钥环见hard.cipher.keyring.*，未配置时只使用内置密钥
      */
     @Bean(name = "enDecryptService")
     @ConditionalOnProperty(prefix = "hard.cipher", name = "service", havingValue = "hutool_sm")
-    public HutoolBaffleServiceImpl getHutoolBaffle() {
-        return new HutoolBaffleServiceImpl();
+    public HutoolBaffleServiceImpl getHutoolBaffle(
+            @Value("${hard.cipher.keyring.keys:}") String keys,
+            @Value("${hard.cipher.keyring.current-version:0}") int currentVersion,
+            @Value("${hard.cipher.keyring.lookup-versions:}") String lookupVersions) {
+        return new HutoolBaffleServiceImpl(CipherKeyring.of(keys, currentVersion, lookupVersions));
+    }
+
+    /**
+     * hard.cipher.service = remote，启用远程加密机客户端，连接参数见hard.cipher.remote.*
+     */
+    @Bean(name = "enDecryptService")
+    @ConditionalOnProperty(prefix = "hard.cipher", name = "service", havingValue = "remote")
+    public RemoteCipherServiceImpl getRemoteCipher() {
+        return new RemoteCipherServiceImpl();
+    }
+
+    /**
+     * hard.cipher.service = hedged，多个远程加密机节点组合使用，慢请求对冲、异常节点剔除；
+     * 节点见hard.cipher.hedge.nodes，每个节点的连接参数同hard.cipher.remote.*
+     */
+    @Bean(name = "enDecryptService")
+    @ConditionalOnProperty(prefix = "hard.cipher", name = "service", havingValue = "hedged")
+    public HedgedCipherServiceImpl getHedgedCipher(
+            @Value("${hard.cipher.hedge.nodes}") List<String> nodes,
+            @Value("${hard.cipher.remote.pool-size:4}") int poolSize,
+            @Value("${hard.cipher.remote.connect-timeout:3000}") int connectTimeout,
+            @Value("${hard.cipher.remote.request-timeout:5000}") long requestTimeout,
+            @Value("${hard.cipher.remote.max-timeouts:3}") int maxTimeouts,
+            @Value("${hard.cipher.keyring.current-version:0}") int keyVersion,
+            @Value("${hard.cipher.keyring.lookup-versions:}") String lookupVersions) {
+        List<RemoteCipherServiceImpl> backends = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            int separator = node.lastIndexOf(':');
+            RemoteCipherServiceImpl backend = new RemoteCipherServiceImpl();
+            backend.host = node.substring(0, separator).trim();
+            backend.port = Integer.parseInt(node.substring(separator + 1).trim());
+            backend.poolSize = poolSize;
+            backend.connectTimeout = connectTimeout;
+            backend.requestTimeout = requestTimeout;
+            backend.maxTimeouts = maxTimeouts;
+            backend.keyVersion = keyVersion;
+            backend.lookupVersions = lookupVersions;
+            backends.add(backend);
+        }
+        return new HedgedCipherServiceImpl(backends);
+    }
+
+    /**
+     * hard.cipher.envelope.enabled = true，以上选定的加密服务只加解密数据密钥，字段数据在本地以数据密钥加密；
+     * 先于指标包装执行，指标记录的是信封加密的调用
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "hard.cipher.envelope", name = "enabled", havingValue = "true")
+    public static BeanPostProcessor cipherEnvelopePostProcessor(
+            @Value("${hard.cipher.envelope.max-records:100000}") long maxRecords,
+            @Value("${hard.cipher.envelope.max-bytes:1073741824}") long maxBytes,
+            @Value("${hard.cipher.envelope.max-age:600000}") long maxAgeMillis,
+            @Value("${hard.cipher.envelope.cache-size:1024}") int cacheSize) {
+        return new EnvelopePostProcessor(maxRecords, maxBytes, maxAgeMillis, cacheSize);
+    }
+
+    /**
+     * encrypt.metrics.enabled = true，启用内存指标；已自行注册CipherMetrics时不生效
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "encrypt.metrics", name = "enabled", havingValue = "true")
+    @ConditionalOnMissingBean(CipherMetrics.class)
+    public SimpleCipherMetrics simpleCipherMetrics() {
+        return new SimpleCipherMetrics();
+    }
+
+    /**
+     * 容器中存在CipherMetrics时，为加密服务包装指标记录；不存在时原样返回，调用不经过包装
+     */
+    @Bean
+    public static BeanPostProcessor cipherMetricsPostProcessor(ObjectProvider<CipherMetrics> metricsProvider) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof EnDecryptService) || bean instanceof MetricsEnDecryptService) return bean;
+
+                CipherMetrics metrics = metricsProvider.getIfAvailable();
+                return null == metrics ? bean : new MetricsEnDecryptService((EnDecryptService) bean, metrics);
+            }
+        };
+    }
+
+    /**
+     * encrypt.async.enabled = true，启用异步加解密线程池，切面并发处理实体的所有字段；
+     * 队列满时由调用线程执行，不丢弃任务
+     */
+    @Bean(name = "cipherAsyncExecutor", destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "encrypt.async", name = "enabled", havingValue = "true")
+    public ThreadPoolExecutor cipherAsyncExecutor(@Value("${encrypt.async.threads:16}") int threads,
+                                                  @Value("${encrypt.async.queue-capacity:1024}") int queueCapacity) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new NamedThreadFactory("cipher-async-", true),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 解密结果缓存，仅对@EnDecryptField(cache = true)的字段生效；encrypt.cache.enabled = false时全局关闭
+     */
+    @Bean(destroyMethod = "clear")
+    @ConditionalOnProperty(prefix = "encrypt.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public DecryptedValueCache decryptedValueCache(@Value("${encrypt.cache.max-bytes:67108864}") long maxBytes,
+                                                   @Value("${encrypt.cache.ttl:300000}") long ttlMillis) {
+        return new DecryptedValueCache(maxBytes, ttlMillis);
+    }
+
+    /**
+     * 把名为enDecryptService的加密服务包装为信封加密，高优先级保证在指标包装之前
+     */
+    private static final class EnvelopePostProcessor implements BeanPostProcessor, Ordered {
+
+        private final long maxRecords;
+
+        private final long maxBytes;
+
+        private final long maxAgeMillis;
+
+        private final int cacheSize;
+
+        private EnvelopePostProcessor(long maxRecords, long maxBytes, long maxAgeMillis, int cacheSize) {
+            this.maxRecords = maxRecords;
+            this.maxBytes = maxBytes;
+            this.maxAgeMillis = maxAgeMillis;
+            this.cacheSize = cacheSize;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!"enDecryptService".equals(beanName) || !(bean instanceof EnDecryptService)) return bean;
+
+            EnvelopeCipherServiceImpl envelope = new EnvelopeCipherServiceImpl((EnDecryptService) bean);
+            envelope.maxRecords = maxRecords;
+            envelope.maxBytes = maxBytes;
+            envelope.maxAgeMillis = maxAgeMillis;
+            envelope.cacheSize = cacheSize;
+            return envelope;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+
+    /**
+     * 配置了encrypt.blind-index.key时启用盲索引，用于@EnDecryptField(blindIndexField)及@BlindIndex查询参数
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "encrypt.blind-index", name = "key")
+    public BlindIndexer blindIndexer(@Value("${encrypt.blind-index.key}") String key,
+                                     @Value("${encrypt.blind-index.bits:256}") int bits) {
+        return BlindIndexer.of(key, bits);
     }
 }
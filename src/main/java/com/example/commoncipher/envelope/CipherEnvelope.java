@@ -0,0 +1,380 @@
+package com.example.commoncipher.envelope;
+
+import com.example.commoncipher.service.EnDecryptService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * ClassName: CipherEnvelope <br/>
+ * Description: 密文信封格式及密文头识别 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 旧格式：[SM4] + base64密文的字节，仍可读取；<br/>
+ * 二进制格式：[SM4] + 0x00 + 格式字节 + 原始密文，0x00不会出现在base64文本中，可与旧格式区分；<br/>
+ * 格式字节同时决定mac算法：{@link #FORMAT_SM4_RAW}与旧格式为加盐SM3，{@link #FORMAT_SM4_HMAC}为HMAC-SM3；<br/>
+ * 密钥版本：{@link #FORMAT_SM4_HMAC_KEYED}在格式字节后多一个版本字节，文本格式在前缀后写入"#版本#"，
+ * '#'不会出现在base64文本中；未带版本的格式均为版本0；<br/>
+ * 数据密钥：{@link #FORMAT_SM4_DATA_KEY}在格式字节后为2字节长度 + 加密机加密的数据密钥 + 密文，
+ * 文本格式为前缀 + '$' + 同一内容的base64，密钥版本即数据密钥密文的版本；<br/>
+ * 所有识别方法只读取输入开头固定长度的内容，不复制、不转换整个密文
+ */
+public final class CipherEnvelope {
+
+    /**
+     * 密文前缀"[SM4]"的字节形式
+     */
+    public static final byte[] PREFIX = EnDecryptService.ENCRYPT_PREFIX.getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 二进制信封标记，紧跟在前缀之后
+     */
+    public static final byte BINARY_MARKER = 0x00;
+
+    /**
+     * 格式：SM4原始密文，mac为加盐SM3，仅读取
+     */
+    public static final byte FORMAT_SM4_RAW = 0x01;
+
+    /**
+     * 格式：SM4原始密文，mac为HMAC-SM3，新写入的二进制信封均使用此格式
+     */
+    public static final byte FORMAT_SM4_HMAC = 0x02;
+
+    /**
+     * 格式：同{@link #FORMAT_SM4_HMAC}，信封头多一个密钥版本字节，非0版本的密钥写入的二进制信封使用此格式
+     */
+    public static final byte FORMAT_SM4_HMAC_KEYED = 0x03;
+
+    /**
+     * 格式：本地数据密钥加密，信封头后带加密机加密的数据密钥，
+     * 数据密钥只用于派生加密与mac子密钥，不直接参与加密，
+     * 只由{@link com.example.commoncipher.service.impl.EnvelopeCipherServiceImpl}读写
+     */
+    public static final byte FORMAT_SM4_DATA_KEY = 0x04;
+
+    /**
+     * 二进制信封头长度：前缀 + 标记 + 格式
+     */
+    public static final int BINARY_HEADER_LENGTH = PREFIX.length + 2;
+
+    /**
+     * 带密钥版本的二进制信封头长度
+     */
+    public static final int KEYED_HEADER_LENGTH = BINARY_HEADER_LENGTH + 1;
+
+    /**
+     * 文本格式中包围密钥版本的字符
+     */
+    public static final char VERSION_MARKER = '#';
+
+    /**
+     * 文本格式中数据密钥信封的标记，紧跟在前缀之后
+     */
+    public static final char DATA_KEY_MARKER = '$';
+
+    /**
+     * 密钥版本上限，二进制信封中占一个字节
+     */
+    public static final int MAX_KEY_VERSION = 255;
+
+    /**
+     * 各格式信封头的最大长度："[SM4]#255#"，流式读取时按此长度读取开头
+     */
+    public static final int MAX_HEADER_LENGTH = PREFIX.length + 5;
+
+    //数据密钥信封中读取密钥版本所需的长度：2字节长度 + 数据密钥密文的信封头
+    private static final int DATA_KEY_HEAD_LENGTH = 2 + MAX_HEADER_LENGTH;
+
+    //base64字符解码表，兼容标准及URL安全字符集，非法字符为-1
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    //前缀5个字节共40位，需要解码base64的前7个字符
+    private static final int BASE64_PREFIX_CHARS = (PREFIX.length * 8 + 5) / 6;
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+        BASE64_VALUES['+'] = BASE64_VALUES['-'] = 62;
+        BASE64_VALUES['/'] = BASE64_VALUES['_'] = 63;
+    }
+
+    private CipherEnvelope() {
+    }
+
+    /**
+     * 是否以"[SM4]"前缀开头（旧格式或二进制格式）
+     */
+    public static boolean hasPrefix(byte[] data) {
+        return null != data && hasPrefix(data, data.length);
+    }
+
+    /**
+     * 数组前length个字节是否以"[SM4]"前缀开头，用于流式读取的信封头
+     */
+    public static boolean hasPrefix(byte[] data, int length) {
+        if (length < PREFIX.length) return false;
+
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (data[i] != PREFIX[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 缓冲区剩余内容是否以"[SM4]"前缀开头，不改变position
+     */
+    public static boolean hasPrefix(ByteBuffer data) {
+        if (null == data || data.remaining() < PREFIX.length) return false;
+
+        int position = data.position();
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (data.get(position + i) != PREFIX[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 文本是否以"[SM4]"前缀开头
+     */
+    public static boolean hasPrefix(CharSequence data) {
+        if (null == data || data.length() < PREFIX.length) return false;
+
+        for (int i = 0; i < PREFIX.length; i++) {
+            if (data.charAt(i) != PREFIX[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * base64文本解码后是否以"[SM4]"前缀开头，只解码前缀对应的前几个字符
+     */
+    public static boolean hasBase64Prefix(CharSequence data) {
+        if (null == data || data.length() < BASE64_PREFIX_CHARS) return false;
+
+        long bits = 0;
+        for (int i = 0; i < BASE64_PREFIX_CHARS; i++) {
+            char c = data.charAt(i);
+            int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+            if (value < 0) return false;
+            bits = bits << 6 | value;
+        }
+
+        //去掉多解码出的低位，剩余40位即前缀5个字节
+        bits >>>= BASE64_PREFIX_CHARS * 6 - PREFIX.length * 8;
+        for (int i = PREFIX.length - 1; i >= 0; i--, bits >>>= 8) {
+            if ((byte) bits != PREFIX[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 是否为二进制信封
+     */
+    public static boolean isBinary(byte[] data) {
+        return null != data && isBinary(data, data.length);
+    }
+
+    /**
+     * 数组前length个字节是否为二进制信封头
+     */
+    public static boolean isBinary(byte[] data, int length) {
+        return length >= BINARY_HEADER_LENGTH && hasPrefix(data, length) && data[PREFIX.length] == BINARY_MARKER;
+    }
+
+    /**
+     * 缓冲区剩余内容是否为二进制信封头，不改变position
+     */
+    public static boolean isBinary(ByteBuffer data) {
+        return hasPrefix(data) && data.remaining() >= BINARY_HEADER_LENGTH
+                && data.get(data.position() + PREFIX.length) == BINARY_MARKER;
+    }
+
+    /**
+     * 二进制信封的格式字节，调用前需确认{@link #isBinary(byte[], int)}
+     */
+    public static byte format(byte[] data) {
+        return data[BINARY_HEADER_LENGTH - 1];
+    }
+
+    /**
+     * 是否为可识别的二进制信封格式
+     */
+    public static boolean isSupported(byte format) {
+        return format == FORMAT_SM4_RAW || format == FORMAT_SM4_HMAC || format == FORMAT_SM4_HMAC_KEYED;
+    }
+
+    /**
+     * 信封头之后密文的起始位置：二进制格式跳过完整信封头，文本格式跳过前缀及版本标记
+     */
+    public static int payloadOffset(byte[] data) {
+        return payloadOffset(data, data.length);
+    }
+
+    /**
+     * 数组前length个字节中，信封头之后密文的起始位置
+     */
+    public static int payloadOffset(byte[] data, int length) {
+        if (isBinary(data, length)) {
+            return format(data) == FORMAT_SM4_HMAC_KEYED ? KEYED_HEADER_LENGTH : BINARY_HEADER_LENGTH;
+        }
+
+        int end = versionEnd(data, length);
+        return end < 0 ? PREFIX.length : end + 1;
+    }
+
+    /**
+     * 文本密文中前缀及版本标记之后base64密文的起始位置
+     */
+    public static int payloadOffset(CharSequence data) {
+        int end = versionEnd(data);
+        return end < 0 ? PREFIX.length : end + 1;
+    }
+
+    /**
+     * 数组前length个字节所属的密钥版本，调用前需确认{@link #hasPrefix(byte[], int)}
+     *
+     * @return 未带版本的格式为0；信封头不完整或版本标记不合法时为-1
+     */
+    public static int keyVersion(byte[] data, int length) {
+        if (isBinary(data, length)) {
+            if (format(data) == FORMAT_SM4_DATA_KEY) return wrappedKeyVersion(data, BINARY_HEADER_LENGTH, length);
+            if (format(data) != FORMAT_SM4_HMAC_KEYED) return 0;
+            return length < KEYED_HEADER_LENGTH ? -1 : data[BINARY_HEADER_LENGTH] & 0xFF;
+        }
+        if (length <= PREFIX.length || data[PREFIX.length] != VERSION_MARKER) return 0;
+
+        int end = versionEnd(data, length);
+        return end < 0 ? -1 : parseVersion(new String(data, PREFIX.length + 1, end - PREFIX.length - 1,
+                StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * 文本密文所属的密钥版本，调用前需确认{@link #hasPrefix(CharSequence)}
+     *
+     * @return 未带版本标记为0；版本标记不合法或数据密钥不完整时为-1
+     */
+    public static int keyVersion(CharSequence data) {
+        if (isDataKey(data)) {
+            //只解码数据密钥长度及其信封头对应的字符
+            int chars = Math.min(data.length() - PREFIX.length - 1, (DATA_KEY_HEAD_LENGTH + 2) / 3 * 4) & ~3;
+            try {
+                byte[] head = Base64.getDecoder().decode(
+                        data.subSequence(PREFIX.length + 1, PREFIX.length + 1 + chars).toString());
+                return wrappedKeyVersion(head, 0, head.length);
+            } catch (IllegalArgumentException e) {
+                return -1;
+            }
+        }
+        if (data.length() <= PREFIX.length || data.charAt(PREFIX.length) != VERSION_MARKER) return 0;
+
+        int end = versionEnd(data);
+        return end < 0 ? -1 : parseVersion(data.subSequence(PREFIX.length + 1, end));
+    }
+
+    /**
+     * 文本格式的信封头："[SM4]"，版本不为0时为"[SM4]#版本#"
+     */
+    public static String textHeader(int keyVersion) {
+        return 0 == keyVersion ? EnDecryptService.ENCRYPT_PREFIX
+                : EnDecryptService.ENCRYPT_PREFIX + VERSION_MARKER + keyVersion + VERSION_MARKER;
+    }
+
+    /**
+     * 带密钥版本的二进制信封，写好信封头
+     *
+     * @param cipherLength 密文长度
+     * @param keyVersion   密钥版本，1-255
+     * @return 信封，密文从{@link #KEYED_HEADER_LENGTH}处开始写入
+     */
+    public static byte[] allocateKeyed(int cipherLength, int keyVersion) {
+        byte[] envelope = new byte[KEYED_HEADER_LENGTH + cipherLength];
+        System.arraycopy(allocateBinary(0, FORMAT_SM4_HMAC_KEYED), 0, envelope, 0, BINARY_HEADER_LENGTH);
+        envelope[BINARY_HEADER_LENGTH] = (byte) keyVersion;
+        return envelope;
+    }
+
+    /**
+     * 是否为数据密钥信封：二进制格式为{@link #FORMAT_SM4_DATA_KEY}
+     */
+    public static boolean isDataKey(byte[] data) {
+        return isBinary(data) && format(data) == FORMAT_SM4_DATA_KEY;
+    }
+
+    /**
+     * 是否为数据密钥信封：文本格式前缀后为{@link #DATA_KEY_MARKER}
+     */
+    public static boolean isDataKey(CharSequence data) {
+        return hasPrefix(data) && data.length() > PREFIX.length && data.charAt(PREFIX.length) == DATA_KEY_MARKER;
+    }
+
+    /**
+     * 数据密钥信封中，数据密钥密文的密钥版本
+     *
+     * @param offset 2字节长度的起始位置
+     */
+    private static int wrappedKeyVersion(byte[] data, int offset, int length) {
+        if (length < offset + 2) return -1;
+
+        int start = offset + 2;
+        int end = Math.min(length, start + Math.min((data[offset] & 0xFF) << 8 | data[offset + 1] & 0xFF,
+                MAX_HEADER_LENGTH));
+        if (end <= start) return -1;
+
+        byte[] head = Arrays.copyOfRange(data, start, end);
+        return hasPrefix(head) && !isDataKey(head) ? keyVersion(head, head.length) : -1;
+    }
+
+    /**
+     * 前缀后版本标记的结束位置，即第二个'#'的下标；不带版本标记或不合法时为-1
+     */
+    private static int versionEnd(byte[] data, int length) {
+        if (length <= PREFIX.length || data[PREFIX.length] != VERSION_MARKER) return -1;
+
+        for (int i = PREFIX.length + 1; i < Math.min(length, MAX_HEADER_LENGTH); i++) {
+            if (data[i] == VERSION_MARKER) return i;
+        }
+        return -1;
+    }
+
+    private static int versionEnd(CharSequence data) {
+        if (data.length() <= PREFIX.length || data.charAt(PREFIX.length) != VERSION_MARKER) return -1;
+
+        for (int i = PREFIX.length + 1; i < Math.min(data.length(), MAX_HEADER_LENGTH); i++) {
+            if (data.charAt(i) == VERSION_MARKER) return i;
+        }
+        return -1;
+    }
+
+    private static int parseVersion(CharSequence digits) {
+        if (digits.length() == 0) return -1;
+
+        int version = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = Character.digit(digits.charAt(i), 10);
+            if (digit < 0) return -1;
+            version = version * 10 + digit;
+        }
+        return version <= MAX_KEY_VERSION ? version : -1;
+    }
+
+    /**
+     * 分配可容纳指定长度密文的二进制信封，并写好信封头
+     *
+     * @param cipherLength 密文长度
+     * @param format       格式字节
+     * @return 信封，密文从{@link #BINARY_HEADER_LENGTH}处开始写入
+     */
+    public static byte[] allocateBinary(int cipherLength, byte format) {
+        byte[] envelope = new byte[BINARY_HEADER_LENGTH + cipherLength];
+        System.arraycopy(PREFIX, 0, envelope, 0, PREFIX.length);
+        envelope[PREFIX.length] = BINARY_MARKER;
+        envelope[PREFIX.length + 1] = format;
+        return envelope;
+    }
+}
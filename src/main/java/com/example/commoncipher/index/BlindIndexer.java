@@ -0,0 +1,116 @@
+package com.example.commoncipher.index;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.CryptoException;
+import cn.hutool.crypto.SecureUtil;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.text.Normalizer;
+
+/**
+ * ClassName: BlindIndexer <br/>
+ * Description: 盲索引计算，对规范化后的明文做带密钥的HMAC-SM3，可截断为指定位数 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 盲索引列与密文列一同写入，查询时对明文计算同样的盲索引，按索引列等值查询，不需要解密候选数据；<br/>
+ * String按NFKC规范化并去掉首尾空白后计算，byte[]按原始字节计算；结果为hex，截断后的多余位清零；<br/>
+ * 截断位数越少，泄露的信息越少，相同索引的误命中越多，查询结果需再按解密后的明文过滤
+ */
+public class BlindIndexer {
+
+    private static final String HMAC_ALGORITHM = "HmacSM3";
+
+    //HMAC-SM3输出位数
+    public static final int MAX_BITS = 256;
+
+    private static final byte TYPE_STRING = 1;
+
+    private static final byte TYPE_BYTES = 2;
+
+    private final SecretKeySpec key;
+
+    private final int bits;
+
+    //Mac初始化需要查找provider，按线程复用
+    private final ThreadLocal<Mac> hmac;
+
+    /**
+     * @param key  盲索引密钥，应与加密密钥不同
+     * @param bits 保留的位数，1-256
+     */
+    public BlindIndexer(byte[] key, int bits) {
+        if (null == key || key.length == 0) throw new IllegalArgumentException("blind index key is required");
+        if (bits < 1 || bits > MAX_BITS) throw new IllegalArgumentException("blind index bits must be 1-256");
+
+        this.key = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.bits = bits;
+        this.hmac = ThreadLocal.withInitial(this::newHmac);
+    }
+
+    /**
+     * 按配置创建：密钥为base64文本
+     */
+    public static BlindIndexer of(String base64Key, int bits) {
+        return new BlindIndexer(Base64.decode(base64Key), bits);
+    }
+
+    /**
+     * String明文的盲索引
+     *
+     * @param plain 明文
+     * @return hex形式的盲索引，明文为空时返回空
+     */
+    public String index(String plain) {
+        if (null == plain) return null;
+        return index(TYPE_STRING, normalize(plain).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * byte[]明文的盲索引
+     *
+     * @param plain 明文
+     * @return hex形式的盲索引，明文为空时返回空
+     */
+    public String index(byte[] plain) {
+        if (null == plain) return null;
+        return index(TYPE_BYTES, plain);
+    }
+
+    /**
+     * 计算前的规范化：NFKC(全角转半角等)后去掉首尾空白
+     */
+    public static String normalize(String plain) {
+        return Normalizer.normalize(plain, Normalizer.Form.NFKC).strip();
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    private String index(byte type, byte[] data) {
+        Mac mac = hmac.get();
+        //类型前缀区分String与byte[]，相同内容的两种字段索引不同
+        mac.update(type);
+        byte[] digest = mac.doFinal(data);
+
+        byte[] truncated = new byte[(bits + 7) / 8];
+        System.arraycopy(digest, 0, truncated, 0, truncated.length);
+        int tailBits = bits % 8;
+        if (tailBits != 0) truncated[truncated.length - 1] &= (byte) (0xFF << (8 - tailBits));
+        return HexUtil.encodeHexStr(truncated);
+    }
+
+    private Mac newHmac() {
+        try {
+            Mac mac = SecureUtil.createMac(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (InvalidKeyException e) {
+            throw new CryptoException(e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.commoncipher.keyring;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.text.CharSequenceUtil;
+import com.example.commoncipher.envelope.CipherEnvelope;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ClassName: CipherKeyring <br/>
+ * Description: 按版本号管理的SM4密钥环，新数据使用当前版本加密，解密时按密文中的版本选择密钥 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 版本0固定为加密服务内置的密钥，对应所有不带版本的旧密文，不能在密钥环中配置；<br/>
+ * 轮换步骤：先把新版本加入密钥环并设为当前版本，新写入的数据即使用新密钥，旧版本仍可解密；
+ * 再由{@link com.example.commoncipher.migration.ReEncryptJob}把旧版本的数据重新加密，完成后才能从密钥环中移除旧版本；<br/>
+ * 确定性加密的等值查询：轮换期间数据中同时存在多个版本的密文，查询参数按查询版本逐一加密后一起匹配(IN)，
+ * 默认查询版本为当前版本、密钥环中的其余版本及版本0；重新加密完成后应只保留当前版本，避免多余的查询条件
+ */
+public final class CipherKeyring {
+
+    /**
+     * SM4密钥长度
+     */
+    public static final int KEY_LENGTH = 16;
+
+    private static final CipherKeyring EMPTY = new CipherKeyring(Map.of(), 0);
+
+    //按版本号下标，未配置的版本为空
+    private final byte[][] keys = new byte[CipherEnvelope.MAX_KEY_VERSION + 1][];
+
+    private final int currentVersion;
+
+    //等值查询需要匹配的版本，当前版本在前
+    private final int[] lookupVersions;
+
+    /**
+     * @param keys           版本号到密钥，版本1-255，密钥16字节
+     * @param currentVersion 新数据使用的版本，0表示仍使用内置密钥
+     */
+    public CipherKeyring(Map<Integer, byte[]> keys, int currentVersion) {
+        this(keys, currentVersion, null);
+    }
+
+    /**
+     * @param keys           版本号到密钥，版本1-255，密钥16字节
+     * @param currentVersion 新数据使用的版本，0表示仍使用内置密钥
+     * @param lookupVersions 数据中仍可能存在的版本，等值查询按这些版本分别加密；为空时为全部版本，当前版本总是包含
+     */
+    public CipherKeyring(Map<Integer, byte[]> keys, int currentVersion, int[] lookupVersions) {
+        for (Map.Entry<Integer, byte[]> entry : keys.entrySet()) {
+            int version = entry.getKey();
+            if (version < 1 || version > CipherEnvelope.MAX_KEY_VERSION) {
+                throw new IllegalArgumentException("key version must be 1-255: " + version);
+            }
+            if (null == entry.getValue() || entry.getValue().length != KEY_LENGTH) {
+                throw new IllegalArgumentException("key of version " + version + " must be 16 bytes");
+            }
+            this.keys[version] = entry.getValue().clone();
+        }
+        if (currentVersion != 0 && (currentVersion < 0 || currentVersion > CipherEnvelope.MAX_KEY_VERSION
+                || null == this.keys[currentVersion])) {
+            throw new IllegalArgumentException("current key version " + currentVersion + " is not in the keyring");
+        }
+        this.currentVersion = currentVersion;
+        this.lookupVersions = lookupVersions(null == lookupVersions ? allVersions() : lookupVersions);
+    }
+
+    /**
+     * 当前版本在前，其余版本降序，去重
+     */
+    private int[] lookupVersions(int[] versions) {
+        boolean[] present = new boolean[keys.length];
+        present[currentVersion] = true;
+        for (int version : versions) {
+            if (!contains(version)) {
+                throw new IllegalArgumentException("lookup key version " + version + " is not in the keyring");
+            }
+
+            present[version] = true;
+        }
+
+        int[] ordered = new int[keys.length];
+        int count = 0;
+        ordered[count++] = currentVersion;
+        for (int version = keys.length - 1; version >= 0; version--) {
+            if (present[version] && version != currentVersion) ordered[count++] = version;
+        }
+        return Arrays.copyOf(ordered, count);
+    }
+
+    private int[] allVersions() {
+        int[] versions = getVersions();
+        int[] all = Arrays.copyOf(versions, versions.length + 1);
+        all[versions.length] = 0;
+        return all;
+    }
+
+    /**
+     * 只有内置密钥的密钥环
+     */
+    public static CipherKeyring empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 按配置创建
+     *
+     * @param spec           "版本:base64密钥"，多个以逗号分隔，如"1:MTIz...,2:NDU2..."；为空时只有内置密钥
+     * @param currentVersion 新数据使用的版本
+     */
+    public static CipherKeyring of(String spec, int currentVersion) {
+        return of(spec, currentVersion, null);
+    }
+
+    /**
+     * 按配置创建
+     *
+     * @param spec           "版本:base64密钥"，多个以逗号分隔，如"1:MTIz...,2:NDU2..."；为空时只有内置密钥
+     * @param currentVersion 新数据使用的版本
+     * @param lookupSpec     等值查询需要匹配的版本，多个以逗号分隔，如"2,1"；为空时为全部版本
+     */
+    public static CipherKeyring of(String spec, int currentVersion, String lookupSpec) {
+        Map<Integer, byte[]> keys = new TreeMap<>();
+        for (String item : CharSequenceUtil.splitTrim(CharSequenceUtil.nullToEmpty(spec), ',')) {
+            int separator = item.indexOf(':');
+            if (separator <= 0) throw new IllegalArgumentException("keyring item must be version:base64Key");
+
+            int version = Integer.parseInt(item.substring(0, separator).trim());
+            if (null != keys.put(version, Base64.decode(item.substring(separator + 1).trim()))) {
+                throw new IllegalArgumentException("duplicate key version " + version);
+            }
+        }
+        int[] lookupVersions = CharSequenceUtil.isBlank(lookupSpec) ? null
+                : CharSequenceUtil.splitTrim(lookupSpec, ',').stream().mapToInt(Integer::parseInt).toArray();
+        return new CipherKeyring(keys, currentVersion, lookupVersions);
+    }
+
+    /**
+     * 新数据使用的版本
+     */
+    public int getCurrentVersion() {
+        return currentVersion;
+    }
+
+    /**
+     * 是否包含指定版本，版本0总是包含
+     */
+    public boolean contains(int version) {
+        return 0 == version || version > 0 && version < keys.length && null != keys[version];
+    }
+
+    /**
+     * 指定版本的密钥副本，版本0及未配置的版本返回空
+     */
+    public byte[] getKey(int version) {
+        return version > 0 && version < keys.length && null != keys[version] ? keys[version].clone() : null;
+    }
+
+    /**
+     * 等值查询需要匹配的版本，第一个为当前版本；只有当前版本时说明数据都已使用当前版本加密
+     */
+    public int[] getLookupVersions() {
+        return lookupVersions.clone();
+    }
+
+    /**
+     * 已配置的版本，不含版本0，升序
+     */
+    public int[] getVersions() {
+        int[] versions = new int[keys.length];
+        int count = 0;
+        for (int version = 1; version < keys.length; version++) {
+            if (null != keys[version]) versions[count++] = version;
+        }
+        return Arrays.copyOf(versions, count);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.commoncipher.metrics;
+
+/**
+ * ClassName: CipherMetrics <br/>
+ * Description: 加解密指标记录接口，容器中存在该类型的Bean时，加密服务及切面才会记录指标 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 默认实现为{@link SimpleCipherMetrics}；接入其他监控系统时实现本接口并注册为Bean即可，
+ * 各方法在业务线程中同步调用，实现应保持轻量且线程安全
+ */
+public interface CipherMetrics {
+
+    /**
+     * 记录一次加密服务调用的耗时
+     *
+     * @param operation 操作类型
+     * @param nanos     耗时，纳秒
+     */
+    void recordLatency(CipherOperation operation, long nanos);
+
+    /**
+     * 记录一次加密服务调用处理的数据量
+     *
+     * @param operation 操作类型
+     * @param bytes     入参数据的字节数，String按字符数计
+     */
+    void recordBytes(CipherOperation operation, long bytes);
+
+    /**
+     * 记录一次失败的调用
+     *
+     * @param operation 操作类型
+     * @param code      ExampleCommonResult返回的code
+     */
+    void recordFailure(CipherOperation operation, String code);
+
+    /**
+     * 记录一次mac校验不通过
+     *
+     * @param operation 操作类型
+     */
+    void recordMacFailure(CipherOperation operation);
+
+    /**
+     * 记录一次mapper方法的加解密耗时
+     *
+     * @param mapperMethod 类名.方法名
+     * @param encrypt      加密/解密
+     * @param copyNanos    解析字段、复制实体的耗时，纳秒
+     * @param cipherNanos  调用加密服务并回填的耗时，纳秒
+     */
+    void recordMapper(String mapperMethod, boolean encrypt, long copyNanos, long cipherNanos);
+}
@@ -0,0 +1,37 @@
+package com.example.commoncipher.metrics;
+
+/**
+ * ClassName: CipherOperation <br/>
+ * Description: 加密服务的操作类型，与EnDecryptService的方法一一对应，isEncrypt的各重载合并为一项 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public enum CipherOperation {
+
+    ENCRYPT_BYTE,
+    ENCRYPT_BASE64,
+    DECRYPT_BYTE,
+    DECRYPT_BASE64,
+    GENERATE_MAC_BYTE,
+    GENERATE_MAC_BASE64,
+    VERIFY_MAC_BYTE,
+    VERIFY_MAC_BASE64,
+    ENCRYPT_MAC_BYTE,
+    ENCRYPT_MAC_BASE64,
+    DECRYPT_MAC_BYTE,
+    DECRYPT_MAC_BASE64,
+    IS_ENCRYPT,
+    ENCRYPT_STREAM,
+    DECRYPT_STREAM,
+    ENCRYPT_CHANNEL,
+    DECRYPT_CHANNEL,
+    ENCRYPT_FILE,
+    DECRYPT_FILE,
+    ENCRYPT_BYTE_BATCH,
+    ENCRYPT_BASE64_BATCH,
+    DECRYPT_BYTE_BATCH,
+    DECRYPT_BASE64_BATCH,
+    ENCRYPT_MAC_BYTE_BATCH,
+    ENCRYPT_MAC_BASE64_BATCH,
+    DECRYPT_MAC_BYTE_BATCH,
+    DECRYPT_MAC_BASE64_BATCH
+}
@@ -0,0 +1,502 @@
+package com.example.commoncipher.metrics;
+
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * ClassName: MetricsEnDecryptService <br/>
+ * Description: 记录指标的加密服务包装，每次调用记录耗时、数据量、失败code及mac校验失败 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 仅在容器中存在{@link CipherMetrics}时由EnDecryptServiceConfig包装原有的加密服务，未启用指标时不经过本类；
+ * 关闭时关闭被包装的服务，如远程加密机的连接池
+ */
+public class MetricsEnDecryptService implements EnDecryptService, AutoCloseable {
+
+    private final EnDecryptService delegate;
+
+    private final CipherMetrics metrics;
+
+    public MetricsEnDecryptService(EnDecryptService delegate, CipherMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * 被包装的加密服务
+     */
+    public EnDecryptService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable) closeable.close();
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> encryptByte(byte[] plainByte) {
+        return record(CipherOperation.ENCRYPT_BYTE, length(plainByte), () -> delegate.encryptByte(plainByte));
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptBase64(String plainBase64) {
+        return record(CipherOperation.ENCRYPT_BASE64, length(plainBase64), () -> delegate.encryptBase64(plainBase64));
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptByte(byte[] cipherByte) {
+        return record(CipherOperation.DECRYPT_BYTE, length(cipherByte), () -> delegate.decryptByte(cipherByte));
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptBase64(String cipherBase64) {
+        return record(CipherOperation.DECRYPT_BASE64, length(cipherBase64), () -> delegate.decryptBase64(cipherBase64));
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacByte(byte[] data) {
+        return record(CipherOperation.GENERATE_MAC_BYTE, length(data), () -> delegate.generateMacByte(data));
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacBase64(String base64Data) {
+        return record(CipherOperation.GENERATE_MAC_BASE64, length(base64Data),
+                () -> delegate.generateMacBase64(base64Data));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacByte(DecryptMacParam byteParam) {
+        return record(CipherOperation.VERIFY_MAC_BYTE, length(byteParam.getCipherByte()),
+                () -> delegate.verifyMacByte(byteParam));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacBase64(DecryptMacParam base64Param) {
+        return record(CipherOperation.VERIFY_MAC_BASE64, length(base64Param.getCipherBase64()),
+                () -> delegate.verifyMacBase64(base64Param));
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacByte(byte[] plainByte) {
+        return record(CipherOperation.ENCRYPT_MAC_BYTE, length(plainByte), () -> delegate.encryptMacByte(plainByte));
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacBase64(String plainBase64) {
+        return record(CipherOperation.ENCRYPT_MAC_BASE64, length(plainBase64),
+                () -> delegate.encryptMacBase64(plainBase64));
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptMacByte(DecryptMacParam byteParam) {
+        return record(CipherOperation.DECRYPT_MAC_BYTE, length(byteParam.getCipherByte()),
+                () -> delegate.decryptMacByte(byteParam));
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptMacBase64(DecryptMacParam base64Param) {
+        return record(CipherOperation.DECRYPT_MAC_BASE64, length(base64Param.getCipherBase64()),
+                () -> delegate.decryptMacBase64(base64Param));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(byte[] cipherByte) {
+        return record(CipherOperation.IS_ENCRYPT, 0, () -> delegate.isEncrypt(cipherByte));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(ByteBuffer cipherBuffer) {
+        return record(CipherOperation.IS_ENCRYPT, 0, () -> delegate.isEncrypt(cipherBuffer));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(String cipherBase64) {
+        return record(CipherOperation.IS_ENCRYPT, 0, () -> delegate.isEncrypt(cipherBase64));
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return delegate.isDeterministic();
+    }
+
+    @Override
+    public int getKeyVersion() {
+        return delegate.getKeyVersion();
+    }
+
+    @Override
+    public int[] getLookupKeyVersions() {
+        return delegate.getLookupKeyVersions();
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptStream(InputStream plainIn, OutputStream cipherOut) {
+        CountingInputStream in = new CountingInputStream(plainIn);
+        return recordStream(CipherOperation.ENCRYPT_STREAM, in, () -> delegate.encryptStream(in, cipherOut));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> decryptStream(InputStream cipherIn, OutputStream plainOut, String mac) {
+        CountingInputStream in = new CountingInputStream(cipherIn);
+        return recordStream(CipherOperation.DECRYPT_STREAM, in, () -> delegate.decryptStream(in, plainOut, mac));
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptChannel(ReadableByteChannel plainIn, WritableByteChannel cipherOut) {
+        return record(CipherOperation.ENCRYPT_CHANNEL, 0, () -> delegate.encryptChannel(plainIn, cipherOut));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> decryptChannel(ReadableByteChannel cipherIn, WritableByteChannel plainOut,
+                                                       String mac) {
+        return record(CipherOperation.DECRYPT_CHANNEL, 0, () -> delegate.decryptChannel(cipherIn, plainOut, mac));
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptFile(Path plainFile, Path cipherFile) {
+        return record(CipherOperation.ENCRYPT_FILE, size(plainFile), () -> delegate.encryptFile(plainFile, cipherFile));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> decryptFile(Path cipherFile, Path plainFile, String mac) {
+        return record(CipherOperation.DECRYPT_FILE, size(cipherFile),
+                () -> delegate.decryptFile(cipherFile, plainFile, mac));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes) {
+        return record(CipherOperation.ENCRYPT_BYTE_BATCH, sum(plainBytes, MetricsEnDecryptService::length),
+                () -> delegate.encryptByteBatch(plainBytes));
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s) {
+        return record(CipherOperation.ENCRYPT_BASE64_BATCH, sum(plainBase64s, MetricsEnDecryptService::length),
+                () -> delegate.encryptBase64Batch(plainBase64s));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes, int keyVersion) {
+        return record(CipherOperation.ENCRYPT_BYTE_BATCH, sum(plainBytes, MetricsEnDecryptService::length),
+                () -> delegate.encryptByteBatch(plainBytes, keyVersion));
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s, int keyVersion) {
+        return record(CipherOperation.ENCRYPT_BASE64_BATCH, sum(plainBase64s, MetricsEnDecryptService::length),
+                () -> delegate.encryptBase64Batch(plainBase64s, keyVersion));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> decryptByteBatch(List<byte[]> cipherBytes) {
+        return record(CipherOperation.DECRYPT_BYTE_BATCH, sum(cipherBytes, MetricsEnDecryptService::length),
+                () -> delegate.decryptByteBatch(cipherBytes));
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> decryptBase64Batch(List<String> cipherBase64s) {
+        return record(CipherOperation.DECRYPT_BASE64_BATCH, sum(cipherBase64s, MetricsEnDecryptService::length),
+                () -> delegate.decryptBase64Batch(cipherBase64s));
+    }
+
+    @Override
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacByteBatch(List<byte[]> plainBytes) {
+        return record(CipherOperation.ENCRYPT_MAC_BYTE_BATCH, sum(plainBytes, MetricsEnDecryptService::length),
+                () -> delegate.encryptMacByteBatch(plainBytes));
+    }
+
+    @Override
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacBase64Batch(List<String> plainBase64s) {
+        return record(CipherOperation.ENCRYPT_MAC_BASE64_BATCH, sum(plainBase64s, MetricsEnDecryptService::length),
+                () -> delegate.encryptMacBase64Batch(plainBase64s));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> decryptMacByteBatch(List<DecryptMacParam> byteParams) {
+        return record(CipherOperation.DECRYPT_MAC_BYTE_BATCH,
+                sum(byteParams, param -> length(param.getCipherByte())),
+                () -> delegate.decryptMacByteBatch(byteParams));
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> decryptMacBase64Batch(List<DecryptMacParam> base64Params) {
+        return record(CipherOperation.DECRYPT_MAC_BASE64_BATCH,
+                sum(base64Params, param -> length(param.getCipherBase64())),
+                () -> delegate.decryptMacBase64Batch(base64Params));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> encryptByteAsync(byte[] plainByte, Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_BYTE, length(plainByte),
+                () -> delegate.encryptByteAsync(plainByte, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> encryptBase64Async(String plainBase64, Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_BASE64, length(plainBase64),
+                () -> delegate.encryptBase64Async(plainBase64, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> decryptByteAsync(byte[] cipherByte, Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_BYTE, length(cipherByte),
+                () -> delegate.decryptByteAsync(cipherByte, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> decryptBase64Async(String cipherBase64, Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_BASE64, length(cipherBase64),
+                () -> delegate.decryptBase64Async(cipherBase64, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> generateMacByteAsync(byte[] data, Executor executor) {
+        return recordAsync(CipherOperation.GENERATE_MAC_BYTE, length(data),
+                () -> delegate.generateMacByteAsync(data, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> generateMacBase64Async(String base64Data, Executor executor) {
+        return recordAsync(CipherOperation.GENERATE_MAC_BASE64, length(base64Data),
+                () -> delegate.generateMacBase64Async(base64Data, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<Boolean>> verifyMacByteAsync(DecryptMacParam byteParam,
+                                                                              Executor executor) {
+        return recordAsync(CipherOperation.VERIFY_MAC_BYTE, length(byteParam.getCipherByte()),
+                () -> delegate.verifyMacByteAsync(byteParam, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<Boolean>> verifyMacBase64Async(DecryptMacParam base64Param,
+                                                                                Executor executor) {
+        return recordAsync(CipherOperation.VERIFY_MAC_BASE64, length(base64Param.getCipherBase64()),
+                () -> delegate.verifyMacBase64Async(base64Param, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacByteAsync(byte[] plainByte,
+                                                                                        Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_MAC_BYTE, length(plainByte),
+                () -> delegate.encryptMacByteAsync(plainByte, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacBase64Async(String plainBase64,
+                                                                                          Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_MAC_BASE64, length(plainBase64),
+                () -> delegate.encryptMacBase64Async(plainBase64, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> decryptMacByteAsync(DecryptMacParam byteParam,
+                                                                              Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_MAC_BYTE, length(byteParam.getCipherByte()),
+                () -> delegate.decryptMacByteAsync(byteParam, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> decryptMacBase64Async(DecryptMacParam base64Param,
+                                                                                Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_MAC_BASE64, length(base64Param.getCipherBase64()),
+                () -> delegate.decryptMacBase64Async(base64Param, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> encryptByteBatchAsync(List<byte[]> plainBytes,
+                                                                                      Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_BYTE_BATCH, sum(plainBytes, MetricsEnDecryptService::length),
+                () -> delegate.encryptByteBatchAsync(plainBytes, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> encryptBase64BatchAsync(List<String> plainBase64s,
+                                                                                        Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_BASE64_BATCH, sum(plainBase64s, MetricsEnDecryptService::length),
+                () -> delegate.encryptBase64BatchAsync(plainBase64s, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptByteBatchAsync(List<byte[]> cipherBytes,
+                                                                                      Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_BYTE_BATCH, sum(cipherBytes, MetricsEnDecryptService::length),
+                () -> delegate.decryptByteBatchAsync(cipherBytes, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> decryptBase64BatchAsync(List<String> cipherBase64s,
+                                                                                        Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_BASE64_BATCH, sum(cipherBase64s, MetricsEnDecryptService::length),
+                () -> delegate.decryptBase64BatchAsync(cipherBase64s, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacByteBatchAsync(
+            List<byte[]> plainBytes, Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_MAC_BYTE_BATCH, sum(plainBytes, MetricsEnDecryptService::length),
+                () -> delegate.encryptMacByteBatchAsync(plainBytes, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacBase64BatchAsync(
+            List<String> plainBase64s, Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_MAC_BASE64_BATCH, sum(plainBase64s, MetricsEnDecryptService::length),
+                () -> delegate.encryptMacBase64BatchAsync(plainBase64s, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptMacByteBatchAsync(
+            List<DecryptMacParam> byteParams, Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_MAC_BYTE_BATCH, sum(byteParams, param -> length(param.getCipherByte())),
+                () -> delegate.decryptMacByteBatchAsync(byteParams, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> decryptMacBase64BatchAsync(
+            List<DecryptMacParam> base64Params, Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_MAC_BASE64_BATCH, sum(base64Params, param -> length(param.getCipherBase64())),
+                () -> delegate.decryptMacBase64BatchAsync(base64Params, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> encryptFileAsync(
+            Path plainFile, Path cipherFile, Executor executor) {
+        return recordAsync(CipherOperation.ENCRYPT_FILE, size(plainFile),
+                () -> delegate.encryptFileAsync(plainFile, cipherFile, executor));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<Boolean>> decryptFileAsync(
+            Path cipherFile, Path plainFile, String mac, Executor executor) {
+        return recordAsync(CipherOperation.DECRYPT_FILE, size(cipherFile),
+                () -> delegate.decryptFileAsync(cipherFile, plainFile, mac, executor));
+    }
+
+    private <T> ExampleCommonResult<T> record(CipherOperation operation, long bytes,
+                                              Supplier<ExampleCommonResult<T>> call) {
+        long start = System.nanoTime();
+        ExampleCommonResult<T> result = null;
+        try {
+            result = call.get();
+            return result;
+        } finally {
+            metrics.recordLatency(operation, System.nanoTime() - start);
+            if (bytes > 0) metrics.recordBytes(operation, bytes);
+            recordResult(operation, result);
+        }
+    }
+
+    /**
+     * 异步调用在future完成时记录，耗时包含排队及等待响应的时间
+     */
+    private <T> CompletableFuture<ExampleCommonResult<T>> recordAsync(
+            CipherOperation operation, long bytes, Supplier<CompletableFuture<ExampleCommonResult<T>>> call) {
+        long start = System.nanoTime();
+        return call.get().whenComplete((result, e) -> {
+            metrics.recordLatency(operation, System.nanoTime() - start);
+            if (bytes > 0) metrics.recordBytes(operation, bytes);
+            recordResult(operation, result);
+        });
+    }
+
+    /**
+     * 流式调用结束后才能得到读取的字节数
+     */
+    private <T> ExampleCommonResult<T> recordStream(CipherOperation operation, CountingInputStream in,
+                                                    Supplier<ExampleCommonResult<T>> call) {
+        try {
+            return record(operation, 0, call);
+        } finally {
+            metrics.recordBytes(operation, in.count);
+        }
+    }
+
+    private void recordResult(CipherOperation operation, ExampleCommonResult<?> result) {
+        //抛出异常时code为空
+        if (null == result) {
+            metrics.recordFailure(operation, null);
+        } else if (!result.isSuccess()) {
+            metrics.recordFailure(operation, result.getCode());
+            if (MAC_ERROR_MSG.equals(result.getMessage())) metrics.recordMacFailure(operation);
+        }
+    }
+
+    private static long length(byte[] data) {
+        return null == data ? 0 : data.length;
+    }
+
+    private static long length(String data) {
+        return null == data ? 0 : data.length();
+    }
+
+    private static <P> long sum(List<P> params, ToLongFunction<P> length) {
+        if (null == params) return 0;
+
+        long total = 0;
+        for (P param : params) {
+            total += length.applyAsLong(param);
+        }
+        return total;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            //文件不存在等异常交给被包装的服务处理
+            return 0;
+        }
+    }
+
+    /**
+     * 统计流式处理读取的字节数
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
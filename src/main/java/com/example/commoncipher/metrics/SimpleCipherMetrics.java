@@ -0,0 +1,186 @@
+package com.example.commoncipher.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: SimpleCipherMetrics <br/>
+ * Description: 内存中的加解密指标，按操作类型及mapper方法累计耗时分布、数据量与失败次数 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public class SimpleCipherMetrics implements CipherMetrics {
+
+    private final Map<CipherOperation, OperationStats> operations = new EnumMap<>(CipherOperation.class);
+
+    private final Map<String, MapperStats> mappers = new ConcurrentHashMap<>(64);
+
+    public SimpleCipherMetrics() {
+        for (CipherOperation operation : CipherOperation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+    }
+
+    @Override
+    public void recordLatency(CipherOperation operation, long nanos) {
+        operations.get(operation).latency.record(nanos);
+    }
+
+    @Override
+    public void recordBytes(CipherOperation operation, long bytes) {
+        operations.get(operation).bytes.add(bytes);
+    }
+
+    @Override
+    public void recordFailure(CipherOperation operation, String code) {
+        operations.get(operation).failures.computeIfAbsent(String.valueOf(code), key -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void recordMacFailure(CipherOperation operation) {
+        operations.get(operation).macFailures.increment();
+    }
+
+    @Override
+    public void recordMapper(String mapperMethod, boolean encrypt, long copyNanos, long cipherNanos) {
+        MapperStats stats = mappers.computeIfAbsent(mapperMethod, key -> new MapperStats());
+        (encrypt ? stats.encryptCopy : stats.decryptCopy).record(copyNanos);
+        (encrypt ? stats.encryptCipher : stats.decryptCipher).record(cipherNanos);
+    }
+
+    /**
+     * 操作类型对应的指标
+     */
+    public OperationStats getOperation(CipherOperation operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * 已记录的mapper方法指标，key为类名.方法名
+     */
+    public Map<String, MapperStats> getMappers() {
+        return Collections.unmodifiableMap(mappers);
+    }
+
+    /**
+     * 单个操作类型的指标
+     */
+    public static final class OperationStats {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final LongAdder bytes = new LongAdder();
+
+        private final LongAdder macFailures = new LongAdder();
+
+        private final Map<String, LongAdder> failures = new ConcurrentHashMap<>(8);
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getMacFailures() {
+            return macFailures.sum();
+        }
+
+        /**
+         * 按返回code统计的失败次数
+         */
+        public Map<String, Long> getFailures() {
+            Map<String, Long> snapshot = new HashMap<>(failures.size());
+            failures.forEach((code, count) -> snapshot.put(code, count.sum()));
+            return snapshot;
+        }
+    }
+
+    /**
+     * 单个mapper方法的指标，分别记录解析/复制实体与调用加密服务的耗时
+     */
+    public static final class MapperStats {
+
+        private final LatencyHistogram encryptCopy = new LatencyHistogram();
+
+        private final LatencyHistogram encryptCipher = new LatencyHistogram();
+
+        private final LatencyHistogram decryptCopy = new LatencyHistogram();
+
+        private final LatencyHistogram decryptCipher = new LatencyHistogram();
+
+        public LatencyHistogram getEncryptCopy() {
+            return encryptCopy;
+        }
+
+        public LatencyHistogram getEncryptCipher() {
+            return encryptCipher;
+        }
+
+        public LatencyHistogram getDecryptCopy() {
+            return decryptCopy;
+        }
+
+        public LatencyHistogram getDecryptCipher() {
+            return decryptCipher;
+        }
+    }
+
+    /**
+     * 耗时分布，按2的幂划分桶：第i个桶的上界为2^(10+i)纳秒，约1微秒到34秒，超出的计入最后一个桶
+     */
+    public static final class LatencyHistogram {
+
+        private static final int MIN_SHIFT = 10;
+
+        private static final int BUCKETS = 26;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            int bucket = 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)) - MIN_SHIFT;
+            buckets.incrementAndGet(Math.min(Math.max(bucket, 0), BUCKETS - 1));
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        /**
+         * 分位数所在桶的上界
+         *
+         * @param quantile 0~1
+         * @return 纳秒，无记录时返回0
+         */
+        public long getQuantileNanos(double quantile) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) return 0;
+
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return 1L << (MIN_SHIFT + i);
+            }
+            return 1L << (MIN_SHIFT + BUCKETS - 1);
+        }
+    }
+}
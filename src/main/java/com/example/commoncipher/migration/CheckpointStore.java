@@ -0,0 +1,25 @@
+package com.example.commoncipher.migration;
+
+/**
+ * ClassName: CheckpointStore <br/>
+ * Description: 批量任务的断点存储，任务中断后从最后保存的断点继续 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public interface CheckpointStore {
+
+    /**
+     * 读取断点
+     *
+     * @param name 任务名
+     * @return 最后保存的断点，没有时返回null
+     */
+    String load(String name);
+
+    /**
+     * 保存断点，断点之前(含)的数据均已处理完成
+     *
+     * @param name       任务名
+     * @param checkpoint 断点
+     */
+    void save(String name, String checkpoint);
+}
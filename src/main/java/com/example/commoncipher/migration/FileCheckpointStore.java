@@ -0,0 +1,67 @@
+package com.example.commoncipher.migration;
+
+import cn.hutool.core.io.IORuntimeException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+
+/**
+ * ClassName: FileCheckpointStore <br/>
+ * Description: 断点保存在目录下的文件中，每个任务一个文件 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 先写临时文件再原子替换，进程在写入过程中退出时保留上一次的断点
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]+");
+
+    private static final String SUFFIX = ".checkpoint";
+
+    private final Path directory;
+
+    /**
+     * @param directory 断点文件所在目录，不存在时创建
+     */
+    public FileCheckpointStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    @Override
+    public String load(String name) {
+        Path file = file(name);
+        try {
+            return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    @Override
+    public void save(String name, String checkpoint) {
+        Path file = file(name);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(temp, checkpoint, StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    private Path file(String name) {
+        if (null == name || !NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("checkpoint name must match [A-Za-z0-9._-]+: " + name);
+        }
+        return directory.resolve(name + SUFFIX);
+    }
+}
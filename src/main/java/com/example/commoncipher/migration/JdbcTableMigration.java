@@ -0,0 +1,435 @@
+package com.example.commoncipher.migration;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.example.commoncipher.exception.ServiceException;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * ClassName: JdbcTableMigration <br/>
+ * Description: 存量明文数据加密，按主键区间并行读取、批量加密、JDBC批量写回，记录断点可续跑 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 主键须为整数：从断点(首次为最小主键)到最大主键按rangeSize切分为区间，"WHERE key >= ? AND key < ?"走主键索引，
+ * 各区间相互独立，由parallelism个线程并行处理，每个区间一个事务；<br/>
+ * 字段值为空或isEncrypt判断已是密文时跳过，重复执行不会重复加密；<br/>
+ * 区间完成顺序不固定，断点为之前所有区间均已完成的位置，续跑时断点之后已完成的区间会重新读取并全部跳过；<br/>
+ * 用于停机窗口：开始时确定最大主键，之后插入的行不处理，写回时不判断行是否被并发修改
+ */
+public class JdbcTableMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcTableMigration.class);
+
+    private final String name;
+
+    private final DataSource dataSource;
+
+    private final EnDecryptService service;
+
+    private final String table;
+
+    private final String keyColumn;
+
+    private final List<MigrationColumn> columns;
+
+    private final CheckpointStore checkpoints;
+
+    //每个区间的主键跨度，主键连续时即每个事务的行数
+    private long rangeSize = 1000;
+
+    //每次调用批量方法的条数
+    private int batchSize = 500;
+
+    //并行处理的区间数，即同时占用的连接数
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    //每秒最多读取的行数，不大于0时不限速
+    private double rowsPerSecond;
+
+    //进度日志间隔，毫秒
+    private long progressInterval = 10_000;
+
+    private final AtomicLong scannedRows = new AtomicLong();
+
+    private final AtomicLong updatedRows = new AtomicLong();
+
+    private final AtomicLong encryptedValues = new AtomicLong();
+
+    private final AtomicLong skippedValues = new AtomicLong();
+
+    private final AtomicLong completedRanges = new AtomicLong();
+
+    private volatile long totalRanges;
+
+    private volatile long startNanos;
+
+    private volatile String checkpoint;
+
+    private volatile boolean stopped;
+
+    //本次执行的起始主键；已完成的区间中，下标连续部分的结束位置，及其后已完成的下标
+    private long start;
+
+    private long watermark;
+
+    private final TreeSet<Long> completedAhead = new TreeSet<>();
+
+    private long lastSaveNanos;
+
+    /**
+     * @param name        任务名，用于保存断点
+     * @param dataSource  数据源
+     * @param service     加密服务
+     * @param table       表名
+     * @param keyColumn   整数主键字段
+     * @param columns     加密字段
+     * @param checkpoints 断点存储
+     */
+    public JdbcTableMigration(String name, DataSource dataSource, EnDecryptService service, String table,
+                              String keyColumn, List<MigrationColumn> columns, CheckpointStore checkpoints) {
+        if (columns.isEmpty()) throw new IllegalArgumentException("at least one column is required");
+
+        this.name = name;
+        this.dataSource = dataSource;
+        this.service = service;
+        this.table = MigrationColumn.identifier(table);
+        this.keyColumn = MigrationColumn.identifier(keyColumn);
+        this.columns = List.copyOf(columns);
+        this.checkpoints = checkpoints;
+    }
+
+    public void setRangeSize(long rangeSize) {
+        this.rangeSize = Math.max(rangeSize, 1);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    public void setRowsPerSecond(double rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    public void setProgressInterval(long progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * 请求停止，已开始的区间处理完成后结束
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * 从断点开始处理到开始时的最大主键，或被停止
+     *
+     * @return 最终进度
+     * @throws ServiceException     加密服务返回失败或数据库异常，失败区间的事务回滚，断点不越过该区间
+     * @throws InterruptedException 等待时被中断
+     */
+    public MigrationProgress run() throws ServiceException, InterruptedException {
+        long[] bounds = bounds();
+        String saved = checkpoints.load(name);
+        start = null == saved ? bounds[0] : Long.parseLong(saved.trim());
+        long end = bounds[1] + 1;
+        totalRanges = bounds[1] < bounds[0] || start >= end ? 0 : (end - start + rangeSize - 1) / rangeSize;
+        checkpoint = saved;
+        watermark = 0;
+        completedAhead.clear();
+        startNanos = System.nanoTime();
+        log.info("~~~~~migrate {} start, table:{}, keys:[{}, {}), ranges:{}", name, table, start, end, totalRanges);
+
+        Throttle throttle = new Throttle(rowsPerSecond);
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+                new NamedThreadFactory("cipher-migrate-" + name + "-", true));
+        long lastLog = System.nanoTime();
+        try {
+            for (long index = 0; index < totalRanges && !stopped && null == failure.get(); index++) {
+                inFlight.acquire();
+                long from = start + index * rangeSize;
+                long to = Math.min(from + rangeSize, end);
+                long rangeIndex = index;
+                workers.execute(() -> {
+                    try {
+                        migrateRange(from, to, throttle);
+                        complete(rangeIndex);
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+
+                if (System.nanoTime() - lastLog >= TimeUnit.MILLISECONDS.toNanos(progressInterval)) {
+                    log.info("~~~~~migrate {} progress {}", name, getProgress());
+                    lastLog = System.nanoTime();
+                }
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(progressInterval, TimeUnit.MILLISECONDS)) {
+                log.info("~~~~~migrate {} progress {}", name, getProgress());
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        saveCheckpoint(true);
+        Throwable cause = failure.get();
+        if (null != cause) {
+            log.error("~~~~~migrate {} failed, {}", name, getProgress(), cause);
+            if (cause instanceof ServiceException serviceException) throw serviceException;
+            throw new ServiceException(cause);
+        }
+
+        MigrationProgress progress = getProgress();
+        log.info("~~~~~migrate {} {} {}", name, stopped ? "stopped" : "finished", progress);
+        return progress;
+    }
+
+    /**
+     * 当前进度，可在执行过程中由其他线程读取
+     */
+    public MigrationProgress getProgress() {
+        long elapsed = 0 == startNanos ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        return new MigrationProgress(totalRanges, completedRanges.get(), scannedRows.get(), updatedRows.get(),
+                encryptedValues.get(), skippedValues.get(), elapsed, checkpoint);
+    }
+
+    private long[] bounds() throws ServiceException {
+        String sql = "SELECT MIN(" + keyColumn + "), MAX(" + keyColumn + ") FROM " + table;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            long min = resultSet.getLong(1);
+            //空表时MIN为null
+            return resultSet.wasNull() ? new long[]{0, -1} : new long[]{min, resultSet.getLong(2)};
+        } catch (SQLException e) {
+            throw new ServiceException(e);
+        }
+    }
+
+    /**
+     * 处理一个主键区间：读取、按字段批量加密、批量写回，在同一事务中提交
+     */
+    private void migrateRange(long from, long to, Throttle throttle)
+            throws SQLException, ServiceException, InterruptedException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                List<Row> rows = select(connection, from, to);
+                scannedRows.addAndGet(rows.size());
+                throttle.acquire(rows.size());
+
+                for (int column = 0; column < columns.size(); column++) {
+                    encryptColumn(rows, column);
+                }
+                update(connection, rows);
+                connection.commit();
+            } catch (SQLException | ServiceException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private List<Row> select(Connection connection, long from, long to) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(keyColumn);
+        for (MigrationColumn column : columns) {
+            sql.append(", ").append(column.getName());
+        }
+        sql.append(" FROM ").append(table).append(" WHERE ").append(keyColumn).append(" >= ? AND ")
+                .append(keyColumn).append(" < ?");
+
+        List<Row> rows = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            statement.setLong(1, from);
+            statement.setLong(2, to);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Row row = new Row(resultSet.getLong(1), columns.size());
+                    for (int i = 0; i < columns.size(); i++) {
+                        row.values[i] = columns.get(i).isBinary() ? resultSet.getBytes(i + 2)
+                                : resultSet.getString(i + 2);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 加密一个字段中所有未加密的值，按batchSize分批调用批量方法
+     */
+    private void encryptColumn(List<Row> rows, int column) throws ServiceException {
+        MigrationColumn definition = columns.get(column);
+        List<Row> plains = new ArrayList<>();
+        for (Row row : rows) {
+            if (isPlain(row.values[column], definition.isBinary())) plains.add(row);
+            else skippedValues.incrementAndGet();
+        }
+
+        for (int from = 0; from < plains.size(); from += batchSize) {
+            List<Row> batch = plains.subList(from, Math.min(from + batchSize, plains.size()));
+            if (definition.isBinary()) {
+                List<byte[]> params = batch.stream().map(row -> (byte[]) row.values[column])
+                        .collect(Collectors.toList());
+                if (definition.hasMac()) scatterMac(batch, column, data(service.encryptMacByteBatch(params), batch));
+                else scatter(batch, column, data(service.encryptByteBatch(params), batch));
+            } else {
+                List<String> params = batch.stream().map(row -> (String) row.values[column])
+                        .collect(Collectors.toList());
+                if (definition.hasMac()) scatterMac(batch, column, data(service.encryptMacBase64Batch(params), batch));
+                else scatter(batch, column, data(service.encryptBase64Batch(params), batch));
+            }
+            encryptedValues.addAndGet(batch.size());
+        }
+    }
+
+    private boolean isPlain(Object value, boolean binary) {
+        if (binary) {
+            byte[] data = (byte[]) value;
+            if (null == data || data.length == 0) return false;
+            return !Boolean.TRUE.equals(service.isEncrypt(data).getData());
+        }
+
+        String data = (String) value;
+        if (CharSequenceUtil.isEmpty(data)) return false;
+        return !Boolean.TRUE.equals(service.isEncrypt(data).getData());
+    }
+
+    private void scatter(List<Row> batch, int column, List<?> ciphers) {
+        for (int i = 0; i < batch.size(); i++) {
+            Row row = batch.get(i);
+            row.values[column] = ciphers.get(i);
+            row.changed = true;
+        }
+    }
+
+    private void scatterMac(List<Row> batch, int column, List<EncryptMacResult> results) {
+        for (int i = 0; i < batch.size(); i++) {
+            Row row = batch.get(i);
+            EncryptMacResult result = results.get(i);
+            row.values[column] = columns.get(column).isBinary() ? result.getCipherByte() : result.getCipherBase64();
+            row.macs[column] = result.getMac();
+            row.changed = true;
+        }
+    }
+
+    /**
+     * 有字段被加密的行一次写回所有加密字段及mac字段，使用JDBC批量更新
+     */
+    private void update(Connection connection, List<Row> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+        for (int i = 0; i < columns.size(); i++) {
+            MigrationColumn column = columns.get(i);
+            sql.append(i == 0 ? "" : ", ").append(column.getName()).append(" = ?");
+            if (column.hasMac()) sql.append(", ").append(column.getMacColumn()).append(" = COALESCE(?, ")
+                    .append(column.getMacColumn()).append(')');
+        }
+        sql.append(" WHERE ").append(keyColumn).append(" = ?");
+
+        int pending = 0;
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (Row row : rows) {
+                if (!row.changed) continue;
+
+                int parameter = 1;
+                for (int i = 0; i < columns.size(); i++) {
+                    if (columns.get(i).isBinary()) statement.setBytes(parameter++, (byte[]) row.values[i]);
+                    else statement.setString(parameter++, (String) row.values[i]);
+                    //未加密的字段保留原mac
+                    if (columns.get(i).hasMac()) statement.setString(parameter++, row.macs[i]);
+                }
+                statement.setLong(parameter, row.key);
+                statement.addBatch();
+                if (++pending == batchSize) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+                updatedRows.incrementAndGet();
+            }
+            if (pending > 0) statement.executeBatch();
+        }
+    }
+
+    /**
+     * 区间完成：推进连续完成的位置，并按间隔保存断点
+     */
+    private synchronized void complete(long index) {
+        completedRanges.incrementAndGet();
+        completedAhead.add(index);
+        while (!completedAhead.isEmpty() && completedAhead.first() == watermark) {
+            completedAhead.pollFirst();
+            watermark++;
+        }
+        saveCheckpoint(false);
+    }
+
+    /**
+     * 保存断点，执行过程中最多每秒一次，结束时总是保存
+     */
+    private synchronized void saveCheckpoint(boolean force) {
+        if (0 == watermark) return;
+        if (!force && System.nanoTime() - lastSaveNanos < TimeUnit.SECONDS.toNanos(1)) return;
+
+        String next = String.valueOf(start + watermark * rangeSize);
+        if (next.equals(checkpoint)) return;
+
+        checkpoints.save(name, next);
+        checkpoint = next;
+        lastSaveNanos = System.nanoTime();
+    }
+
+    private static <R> List<R> data(ExampleCommonResult<List<R>> result, List<Row> batch) throws ServiceException {
+        return EnDecryptService.batchData(result, batch.size());
+    }
+
+    /**
+     * 读取的一行：主键、各加密字段的值及加密后的mac
+     */
+    private static final class Row {
+
+        private final long key;
+
+        private final Object[] values;
+
+        private final String[] macs;
+
+        private boolean changed;
+
+        private Row(long key, int columns) {
+            this.key = key;
+            this.values = new Object[columns];
+            this.macs = new String[columns];
+        }
+    }
+}
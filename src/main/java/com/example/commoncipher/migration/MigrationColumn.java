@@ -0,0 +1,77 @@
+package com.example.commoncipher.migration;
+
+import java.util.regex.Pattern;
+
+/**
+ * ClassName: MigrationColumn <br/>
+ * Description: 存量数据加密时的一个加密字段，及其mac字段 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public final class MigrationColumn {
+
+    //表名、字段名拼接进SQL，只允许标识符字符
+    static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    private final String name;
+
+    private final String macColumn;
+
+    private final boolean binary;
+
+    private MigrationColumn(String name, String macColumn, boolean binary) {
+        this.name = identifier(name);
+        this.macColumn = null == macColumn ? null : identifier(macColumn);
+        this.binary = binary;
+    }
+
+    /**
+     * 字符类型字段，按base64 string加密
+     */
+    public static MigrationColumn string(String name) {
+        return new MigrationColumn(name, null, false);
+    }
+
+    /**
+     * 字符类型字段，同时写入mac字段
+     */
+    public static MigrationColumn string(String name, String macColumn) {
+        return new MigrationColumn(name, macColumn, false);
+    }
+
+    /**
+     * 二进制类型字段，按byte[]加密
+     */
+    public static MigrationColumn bytes(String name) {
+        return new MigrationColumn(name, null, true);
+    }
+
+    /**
+     * 二进制类型字段，同时写入mac字段
+     */
+    public static MigrationColumn bytes(String name, String macColumn) {
+        return new MigrationColumn(name, macColumn, true);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMacColumn() {
+        return macColumn;
+    }
+
+    public boolean hasMac() {
+        return null != macColumn;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    static String identifier(String name) {
+        if (null == name || !IDENTIFIER.matcher(name).matches()) {
+            throw new IllegalArgumentException("illegal table or column name: " + name);
+        }
+        return name;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.commoncipher.migration;
+
+/**
+ * ClassName: MigrationProgress <br/>
+ * Description: 存量数据加密的进度及吞吐快照 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public class MigrationProgress {
+
+    private final long totalRanges;
+
+    private final long completedRanges;
+
+    private final long scannedRows;
+
+    private final long updatedRows;
+
+    private final long encryptedValues;
+
+    private final long skippedValues;
+
+    private final long elapsedMillis;
+
+    private final String checkpoint;
+
+    MigrationProgress(long totalRanges, long completedRanges, long scannedRows, long updatedRows,
+                      long encryptedValues, long skippedValues, long elapsedMillis, String checkpoint) {
+        this.totalRanges = totalRanges;
+        this.completedRanges = completedRanges;
+        this.scannedRows = scannedRows;
+        this.updatedRows = updatedRows;
+        this.encryptedValues = encryptedValues;
+        this.skippedValues = skippedValues;
+        this.elapsedMillis = elapsedMillis;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * 本次执行需处理的主键区间数，从断点开始计算
+     */
+    public long getTotalRanges() {
+        return totalRanges;
+    }
+
+    public long getCompletedRanges() {
+        return completedRanges;
+    }
+
+    /**
+     * 已读取的行数
+     */
+    public long getScannedRows() {
+        return scannedRows;
+    }
+
+    /**
+     * 已写回的行数
+     */
+    public long getUpdatedRows() {
+        return updatedRows;
+    }
+
+    /**
+     * 已加密的字段值个数
+     */
+    public long getEncryptedValues() {
+        return encryptedValues;
+    }
+
+    /**
+     * 已是密文或为空而跳过的字段值个数
+     */
+    public long getSkippedValues() {
+        return skippedValues;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 最后保存的断点，即下一个未完成区间的起始主键
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * 每秒读取的行数
+     */
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? 0 : scannedRows * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * 完成百分比，按区间数计算
+     */
+    public double getPercent() {
+        return totalRanges == 0 ? 100 : completedRanges * 100.0 / totalRanges;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f%% (%d/%d ranges), scanned:%d, updated:%d, encrypted:%d, skipped:%d, "
+                        + "%.0f rows/s, checkpoint:%s", getPercent(), completedRanges, totalRanges, scannedRows,
+                updatedRows, encryptedValues, skippedValues, getRowsPerSecond(), checkpoint);
+    }
+}
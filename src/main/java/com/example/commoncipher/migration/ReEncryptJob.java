@@ -0,0 +1,288 @@
+package com.example.commoncipher.migration;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.exception.ServiceException;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * ClassName: ReEncryptJob <br/>
+ * Description: 密钥轮换后台任务，把旧密钥版本的密文解密后用当前版本重新加密 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 按主键分页读取，每页拆成batchSize一批，由parallelism个线程并行调用批量解密、批量加密，整页写回后保存断点；
+ * 中断后从断点继续，断点之后的页重新读取，已是目标版本的记录直接跳过，重复执行不会重复加密；<br/>
+ * 对业务的影响由并行数与每秒条数控制：线程数即同时占用的加密服务调用数，限速按重新加密的条数计算；<br/>
+ * 任务名对应断点，一个字段、一个目标版本使用一个任务名
+ */
+public class ReEncryptJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ReEncryptJob.class);
+
+    private final String name;
+
+    private final EnDecryptService service;
+
+    private final ReEncryptSource source;
+
+    private final CheckpointStore checkpoints;
+
+    //每次调用批量方法的条数
+    private int batchSize = 200;
+
+    //并行的批数，每页读取batchSize * parallelism条
+    private int parallelism = 2;
+
+    //每秒最多重新加密的条数，不大于0时不限速
+    private double recordsPerSecond = 1000;
+
+    //目标版本，默认为加密服务当前写入的版本
+    private int targetVersion;
+
+    private final AtomicLong scanned = new AtomicLong();
+
+    private final AtomicLong reEncrypted = new AtomicLong();
+
+    private volatile String checkpoint;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param name        任务名，用于保存断点
+     * @param service     加密服务，使用其当前密钥版本加密
+     * @param source      数据来源
+     * @param checkpoints 断点存储
+     */
+    public ReEncryptJob(String name, EnDecryptService service, ReEncryptSource source, CheckpointStore checkpoints) {
+        this.name = name;
+        this.service = service;
+        this.source = source;
+        this.checkpoints = checkpoints;
+        this.targetVersion = service.getKeyVersion();
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+    }
+
+    public void setRecordsPerSecond(double recordsPerSecond) {
+        this.recordsPerSecond = recordsPerSecond;
+    }
+
+    /**
+     * 加密服务无法得知当前版本时(如远程加密机未配置hard.cipher.keyring.current-version)手动指定
+     */
+    public void setTargetVersion(int targetVersion) {
+        this.targetVersion = targetVersion;
+    }
+
+    /**
+     * 在后台线程执行
+     *
+     * @return 执行完成或失败时结束
+     */
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                run();
+                future.complete(null);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }, "cipher-re-encrypt-" + name);
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * 请求停止，当前页处理完成并保存断点后结束
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * 在当前线程执行，从断点开始直到读完或被停止
+     *
+     * @throws ServiceException     加密服务返回失败，失败的页不写回、不保存断点
+     * @throws InterruptedException 等待限速或批处理时被中断
+     */
+    public void run() throws ServiceException, InterruptedException {
+        checkpoint = checkpoints.load(name);
+        Throttle throttle = new Throttle(recordsPerSecond);
+        int pageSize = batchSize * parallelism;
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism,
+                new NamedThreadFactory("cipher-re-encrypt-" + name + "-", true));
+
+        log.info("~~~~~re-encrypt {} start, checkpoint:{}, target version:{}", name, checkpoint, targetVersion);
+        try {
+            while (!stopped) {
+                List<ReEncryptRecord> page = source.fetch(checkpoint, pageSize);
+                if (page.isEmpty()) break;
+
+                List<ReEncryptRecord> stale = new ArrayList<>();
+                for (ReEncryptRecord record : page) {
+                    if (isStale(record)) stale.add(record);
+                }
+                throttle.acquire(stale.size());
+                reEncrypt(workers, stale);
+
+                if (!stale.isEmpty()) source.update(stale);
+                checkpoint = page.get(page.size() - 1).getKey();
+                checkpoints.save(name, checkpoint);
+                scanned.addAndGet(page.size());
+                reEncrypted.addAndGet(stale.size());
+
+                if (page.size() < pageSize) break;
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        log.info("~~~~~re-encrypt {} {}, scanned:{}, re-encrypted:{}, checkpoint:{}", name,
+                stopped ? "stopped" : "finished", scanned.get(), reEncrypted.get(), checkpoint);
+    }
+
+    /**
+     * 已读取的记录数
+     */
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    /**
+     * 已重新加密并写回的记录数
+     */
+    public long getReEncrypted() {
+        return reEncrypted.get();
+    }
+
+    /**
+     * 最后保存的断点
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * 是否为其他版本的密文；明文不处理
+     */
+    private boolean isStale(ReEncryptRecord record) {
+        if (null != record.getCipherByte()) {
+            byte[] data = record.getCipherByte();
+            return CipherEnvelope.hasPrefix(data) && CipherEnvelope.keyVersion(data, data.length) != targetVersion;
+        }
+        String data = record.getCipherBase64();
+        return CipherEnvelope.hasPrefix(data) && CipherEnvelope.keyVersion(data) != targetVersion;
+    }
+
+    /**
+     * 按batchSize拆分后并行处理，等待全部完成
+     */
+    private void reEncrypt(ExecutorService workers, List<ReEncryptRecord> records)
+            throws ServiceException, InterruptedException {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = 0; from < records.size(); from += batchSize) {
+            List<ReEncryptRecord> batch = records.subList(from, Math.min(from + batchSize, records.size()));
+            futures.add(workers.submit(() -> {
+                reEncryptBatch(batch);
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                futures.forEach(other -> other.cancel(true));
+                if (e.getCause() instanceof ServiceException serviceException) throw serviceException;
+                throw new ServiceException(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 一批记录按密文类型、是否有mac分组，每组一次批量解密、一次批量加密
+     */
+    private void reEncryptBatch(List<ReEncryptRecord> batch) throws ServiceException {
+        List<ReEncryptRecord> bytes = new ArrayList<>();
+        List<ReEncryptRecord> macBytes = new ArrayList<>();
+        List<ReEncryptRecord> texts = new ArrayList<>();
+        List<ReEncryptRecord> macTexts = new ArrayList<>();
+        for (ReEncryptRecord record : batch) {
+            if (null != record.getCipherByte()) (record.hasMac() ? macBytes : bytes).add(record);
+            else (record.hasMac() ? macTexts : texts).add(record);
+        }
+
+        if (!bytes.isEmpty()) {
+            List<byte[]> plains = data(service.decryptByteBatch(map(bytes, ReEncryptRecord::getCipherByte)), bytes);
+            scatter(bytes, data(service.encryptByteBatch(plains), bytes), ReEncryptRecord::setNewCipherByte);
+            plains.forEach(plain -> Arrays.fill(plain, (byte) 0));
+        }
+        if (!macBytes.isEmpty()) {
+            //解密时校验原mac，被篡改的密文不会以新密钥重新生成mac
+            List<byte[]> plains = data(service.decryptMacByteBatch(
+                    map(macBytes, record -> new DecryptMacParam(record.getCipherByte(), record.getMac()))), macBytes);
+            scatter(macBytes, data(service.encryptMacByteBatch(plains), macBytes), (record, result) -> {
+                record.setNewCipherByte(result.getCipherByte());
+                record.setNewMac(result.getMac());
+            });
+            plains.forEach(plain -> Arrays.fill(plain, (byte) 0));
+        }
+        if (!texts.isEmpty()) {
+            List<String> plains = data(service.decryptBase64Batch(map(texts, ReEncryptRecord::getCipherBase64)), texts);
+            scatter(texts, data(service.encryptBase64Batch(plains), texts), ReEncryptRecord::setNewCipherBase64);
+        }
+        if (!macTexts.isEmpty()) {
+            List<String> plains = data(service.decryptMacBase64Batch(
+                    map(macTexts, record -> new DecryptMacParam(record.getCipherBase64(), record.getMac()))), macTexts);
+            List<EncryptMacResult> results = data(service.encryptMacBase64Batch(plains), macTexts);
+            scatter(macTexts, results, (record, result) -> {
+                record.setNewCipherBase64(result.getCipherBase64());
+                record.setNewMac(result.getMac());
+            });
+        }
+    }
+
+    private static <P> List<P> map(List<ReEncryptRecord> records, Function<ReEncryptRecord, P> toParam) {
+        List<P> params = new ArrayList<>(records.size());
+        for (ReEncryptRecord record : records) {
+            params.add(toParam.apply(record));
+        }
+        return params;
+    }
+
+    private static <R> List<R> data(ExampleCommonResult<List<R>> result, List<ReEncryptRecord> records)
+            throws ServiceException {
+        return EnDecryptService.batchData(result, records.size());
+    }
+
+    private static <R> void scatter(List<ReEncryptRecord> records, List<R> data,
+                                    BiConsumer<ReEncryptRecord, R> setter) {
+        for (int i = 0; i < records.size(); i++) {
+            setter.accept(records.get(i), data.get(i));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.commoncipher.migration;
+
+/**
+ * ClassName: ReEncryptRecord <br/>
+ * Description: 待重新加密的一条密文，及重新加密后的结果 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 原密文与mac保持不变，写回时可作为更新条件
+ */
+public class ReEncryptRecord {
+
+    /**
+     * 主键，记录按主键升序读取，最后一条的主键即断点
+     */
+    private final String key;
+
+    /**
+     * byte[]密文
+     */
+    private final byte[] cipherByte;
+
+    /**
+     * base64密文
+     */
+    private final String cipherBase64;
+
+    /**
+     * 原mac，没有mac字段时为空
+     */
+    private final String mac;
+
+    private byte[] newCipherByte;
+
+    private String newCipherBase64;
+
+    private String newMac;
+
+    public ReEncryptRecord(String key, byte[] cipherByte, String mac) {
+        this.key = key;
+        this.cipherByte = cipherByte;
+        this.cipherBase64 = null;
+        this.mac = mac;
+    }
+
+    public ReEncryptRecord(String key, String cipherBase64, String mac) {
+        this.key = key;
+        this.cipherByte = null;
+        this.cipherBase64 = cipherBase64;
+        this.mac = mac;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public byte[] getCipherByte() {
+        return cipherByte;
+    }
+
+    public String getCipherBase64() {
+        return cipherBase64;
+    }
+
+    public String getMac() {
+        return mac;
+    }
+
+    /**
+     * 是否有mac字段，有则解密前校验原mac，并计算新mac
+     */
+    public boolean hasMac() {
+        return null != mac;
+    }
+
+    public byte[] getNewCipherByte() {
+        return newCipherByte;
+    }
+
+    public String getNewCipherBase64() {
+        return newCipherBase64;
+    }
+
+    public String getNewMac() {
+        return newMac;
+    }
+
+    /**
+     * 是否已重新加密
+     */
+    public boolean isReEncrypted() {
+        return null != newCipherByte || null != newCipherBase64;
+    }
+
+    void setNewCipherByte(byte[] newCipherByte) {
+        this.newCipherByte = newCipherByte;
+    }
+
+    void setNewCipherBase64(String newCipherBase64) {
+        this.newCipherBase64 = newCipherBase64;
+    }
+
+    void setNewMac(String newMac) {
+        this.newMac = newMac;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.commoncipher.migration;
+
+import java.util.List;
+
+/**
+ * ClassName: ReEncryptSource <br/>
+ * Description: 重新加密任务的数据来源，通常对应一张表的一个加密字段 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+public interface ReEncryptSource {
+
+    /**
+     * 按主键升序读取主键大于afterKey的记录，如"WHERE id > ? ORDER BY id LIMIT ?"，走主键索引，不使用offset
+     *
+     * @param afterKey 上一页最后一条的主键，为空时从头读取
+     * @param limit    最多读取条数
+     * @return 记录，少于limit条表示已读完
+     */
+    List<ReEncryptRecord> fetch(String afterKey, int limit);
+
+    /**
+     * 写回重新加密的记录；表仍在读写，应以原密文为条件更新，如"UPDATE ... SET col = ?, mac = ? WHERE id = ? AND col = ?"，
+     * 读取后被业务修改过的记录不覆盖，业务写入的新值已使用当前密钥
+     *
+     * @param records 已重新加密的记录
+     */
+    void update(List<ReEncryptRecord> records);
+}
@@ -0,0 +1,36 @@
+package com.example.commoncipher.migration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ClassName: Throttle <br/>
+ * Description: 按每秒处理条数限速，空闲时间不累积，不会在恢复后突发 <br/>
+ * Date: 2026-10-17 <br/>
+ */
+final class Throttle {
+
+    private final double permitsPerSecond;
+
+    private long nextNanos;
+
+    /**
+     * @param permitsPerSecond 每秒条数，不大于0时不限速
+     */
+    Throttle(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    /**
+     * 申请处理permits条，超出速率时等待上一次申请的配额用完
+     */
+    synchronized void acquire(int permits) throws InterruptedException {
+        if (permitsPerSecond <= 0 || permits <= 0) return;
+
+        long now = System.nanoTime();
+        if (nextNanos < now) nextNanos = now;
+
+        long wait = nextNanos - now;
+        nextNanos += (long) (permits * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+    }
+}
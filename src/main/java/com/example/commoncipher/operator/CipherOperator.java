@@ -0,0 +1,42 @@
+package com.example.commoncipher.operator;
+
+import com.example.commoncipher.service.EnDecryptService;
+
+/**
+ * ClassName: CipherOperator <br/>
+ * Description: 命名的加密服务，作为加密路由注册到{@link CipherOperatorRouter} <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 注册为Bean后，{@code @EnDecryptField(route = "名称")}的字段及mapper参数由该加密服务处理，
+ * 如低敏感的大字段使用本地信封加密、身份证号等使用加密机直接加密：
+ * <pre>
+ * &#64;Bean
+ * public CipherOperator blobCipher(EnDecryptService enDecryptService) {
+ *     return new CipherOperator("blob", new EnvelopeCipherServiceImpl(enDecryptService));
+ * }
+ * </pre>
+ */
+public final class CipherOperator implements Operator<String> {
+
+    private final String name;
+
+    private final EnDecryptService service;
+
+    /**
+     * @param name    路由名称，与@EnDecryptField(route)一致
+     * @param service 该路由使用的加密服务
+     */
+    public CipherOperator(String name, EnDecryptService service) {
+        this.name = name;
+        this.service = service;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public EnDecryptService getService() {
+        return service;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.commoncipher.operator;
+
+import cn.hutool.core.text.CharSequenceUtil;
+
+/**
+ * ClassName: CipherOperatorRouter <br/>
+ * Description: 按路由名称查找{@link CipherOperator}，由OperatorAutoConfiguration收集容器中的所有CipherOperator <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 切面按字段解析一次路由并缓存在实体的字段计划中，每次加解密不再查找
+ */
+public class CipherOperatorRouter extends OperatorRouter<String, CipherOperator> {
+
+    @Override
+    protected void handleBadRoute(String routeKey) {
+        throw new IllegalStateException(CharSequenceUtil.format("加密路由 {} 不存在，需注册同名的CipherOperator", routeKey));
+    }
+
+    @Override
+    public Class<CipherOperator> getOperatorClass() {
+        return CipherOperator.class;
+    }
+
+    @Override
+    public void checkOperator(CipherOperator operator) {
+        if (CharSequenceUtil.isBlank(operator.getName()) || null == operator.getService()) {
+            throw new IllegalStateException("CipherOperator的名称及加密服务不能为空");
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.commoncipher.processor;
+
+import com.example.commoncipher.accessor.EntityCipherAccessor;
+import com.example.commoncipher.annotation.EnDecryptField;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ClassName: EnDecryptFieldProcessor <br/>
+ * Description: 编译期为含有{@link EnDecryptField}字段的实体生成{@link EntityCipherAccessor}，直接调用getter/setter <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 通过META-INF/services自动注册，依赖本jar的工程编译时即生成；字段无可访问的getter/setter且为private、
+ * 实体为抽象类、非静态内部类或没有可访问的无参构造方法时不生成，运行时退回反射
+ */
+@SupportedAnnotationTypes("com.example.commoncipher.annotation.EnDecryptField")
+public class EnDecryptFieldProcessor extends AbstractProcessor {
+
+    private static final String ACCESSOR = "com.example.commoncipher.accessor.ValueAccessor";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> entities = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(EnDecryptField.class)) {
+            if (element.getKind() == ElementKind.FIELD) entities.add((TypeElement) element.getEnclosingElement());
+        }
+
+        for (TypeElement entity : entities) {
+            try {
+                generate(entity);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "generate cipher accessor error: " + e.getMessage(), entity);
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement entity) throws IOException {
+        if (!instantiable(entity)) {
+            note(entity, "abstract, non-static inner or without accessible no-arg constructor");
+            return;
+        }
+
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(entity);
+        List<VariableElement> allFields = ElementFilter.fieldsIn(processingEnv.getElementUtils().getAllMembers(entity));
+
+        //加密字段及其mac、盲索引字段，按字段名去重
+        Map<String, String> accessors = new LinkedHashMap<>();
+        for (VariableElement field : allFields) {
+            EnDecryptField annotation = field.getAnnotation(EnDecryptField.class);
+            if (null == annotation || field.getModifiers().contains(Modifier.STATIC) || !cipherType(field)) continue;
+
+            for (String name : new String[]{field.getSimpleName().toString(), annotation.macField(),
+                    annotation.blindIndexField()}) {
+                if (name.isEmpty() || accessors.containsKey(name)) continue;
+
+                VariableElement target = allFields.stream()
+                        .filter(candidate -> candidate.getSimpleName().contentEquals(name))
+                        .findFirst().orElse(null);
+                String accessor = null == target ? null : valueAccessor(entity, pkg, target);
+                if (null == accessor) {
+                    note(entity, "field " + name + " is not accessible");
+                    return;
+                }
+                accessors.put(name, accessor);
+            }
+        }
+
+        List<String> copies = new ArrayList<>();
+        for (VariableElement field : allFields) {
+            if (field.getModifiers().contains(Modifier.STATIC)) continue;
+            String read = read(entity, pkg, field, "source");
+            String write = null == read ? null : write(entity, pkg, field, "target", read);
+            if (null != write) copies.add(write);
+        }
+
+        write(entity, pkg, accessors, copies);
+    }
+
+    private void write(TypeElement entity, PackageElement pkg, Map<String, String> accessors, List<String> copies)
+            throws IOException {
+        String entityType = processingEnv.getTypeUtils().erasure(entity.asType()).toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(entity).toString();
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + EntityCipherAccessor.SUFFIX;
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) source.append("package ").append(packageName).append(";\n\n");
+        source.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n")
+                .append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n")
+                .append("public final class ").append(simpleName).append(" implements ")
+                .append(EntityCipherAccessor.class.getName()).append('<').append(entityType).append("> {\n\n");
+
+        int index = 0;
+        for (String accessor : accessors.values()) {
+            source.append("    private static final ").append(ACCESSOR).append('<').append(entityType)
+                    .append("> FIELD_").append(index++).append(" = ").append(accessor).append(";\n\n");
+        }
+
+        source.append("    @Override\n    public ").append(entityType).append(" newInstance() {\n        return new ")
+                .append(entityType).append("();\n    }\n\n");
+
+        source.append("    @Override\n    public void copy(").append(entityType).append(" source, ").append(entityType)
+                .append(" target) {\n");
+        for (String copy : copies) {
+            source.append("        ").append(copy).append(";\n");
+        }
+        source.append("    }\n\n");
+
+        source.append("    @Override\n    public ").append(ACCESSOR).append('<').append(entityType)
+                .append("> field(String name) {\n        switch (name) {\n");
+        index = 0;
+        for (String name : accessors.keySet()) {
+            source.append("            case \"").append(name).append("\":\n                return FIELD_")
+                    .append(index++).append(";\n");
+        }
+        source.append("            default:\n                return null;\n        }\n    }\n}\n");
+
+        try (Writer writer = processingEnv.getFiler()
+                .createSourceFile((packageName.isEmpty() ? "" : packageName + ".") + simpleName, entity)
+                .openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private String valueAccessor(TypeElement entity, PackageElement pkg, VariableElement field) {
+        String read = read(entity, pkg, field, "target");
+        String write = write(entity, pkg, field, "target", "value");
+        if (null == read || null == write) return null;
+        return ACCESSOR + ".of(target -> " + read + ", (target, value) -> " + write + ")";
+    }
+
+    /**
+     * 读取字段的表达式：优先getter，其次可访问的字段
+     */
+    private String read(TypeElement entity, PackageElement pkg, VariableElement field, String target) {
+        String name = field.getSimpleName().toString();
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(entity))) {
+            String methodName = method.getSimpleName().toString();
+            boolean getter = methodName.equals("get" + suffix)
+                    || field.asType().getKind() == TypeKind.BOOLEAN && methodName.equals("is" + suffix);
+            if (getter && method.getParameters().isEmpty() && accessible(method, pkg)
+                    && sameType(method.getReturnType(), field.asType())) {
+                return target + "." + methodName + "()";
+            }
+        }
+        return accessible(field, pkg) ? target + "." + name : null;
+    }
+
+    /**
+     * 写入字段的语句：优先setter，其次可访问的非final字段
+     */
+    private String write(TypeElement entity, PackageElement pkg, VariableElement field, String target, String value) {
+        String name = field.getSimpleName().toString();
+        String setter = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(entity))) {
+            if (method.getSimpleName().contentEquals(setter) && method.getParameters().size() == 1
+                    && accessible(method, pkg) && sameType(method.getParameters().get(0).asType(), field.asType())) {
+                return target + "." + setter + "(" + value + ")";
+            }
+        }
+        boolean writable = accessible(field, pkg) && !field.getModifiers().contains(Modifier.FINAL);
+        return writable ? target + "." + name + " = " + value : null;
+    }
+
+    private boolean instantiable(TypeElement entity) {
+        if (entity.getKind() != ElementKind.CLASS || entity.getModifiers().contains(Modifier.ABSTRACT)
+                || entity.getModifiers().contains(Modifier.PRIVATE)) return false;
+        if (entity.getNestingKind() == NestingKind.MEMBER && !entity.getModifiers().contains(Modifier.STATIC)) {
+            return false;
+        }
+        if (entity.getNestingKind() == NestingKind.LOCAL || entity.getNestingKind() == NestingKind.ANONYMOUS) {
+            return false;
+        }
+
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(entity);
+        return ElementFilter.constructorsIn(entity.getEnclosedElements()).stream()
+                .anyMatch(constructor -> constructor.getParameters().isEmpty() && accessible(constructor, pkg));
+    }
+
+    /**
+     * 生成类与实体在同一包：public成员，或同一包中声明的非private成员可访问
+     */
+    private boolean accessible(Element member, PackageElement pkg) {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) return true;
+        if (modifiers.contains(Modifier.PRIVATE)) return false;
+        return processingEnv.getElementUtils().getPackageOf(member).equals(pkg);
+    }
+
+    private boolean cipherType(VariableElement field) {
+        TypeMirror type = field.asType();
+        return type.getKind() == TypeKind.ARRAY ? type.toString().equals("byte[]")
+                : type.toString().equals(String.class.getName());
+    }
+
+    private boolean sameType(TypeMirror left, TypeMirror right) {
+        return processingEnv.getTypeUtils().isSameType(processingEnv.getTypeUtils().erasure(left),
+                processingEnv.getTypeUtils().erasure(right));
+    }
+
+    private void note(TypeElement entity, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "cipher accessor not generated for " + entity.getQualifiedName() + ", use reflection: " + reason,
+                entity);
+    }
+}
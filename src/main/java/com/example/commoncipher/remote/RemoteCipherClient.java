@@ -0,0 +1,196 @@
+package com.example.commoncipher.remote;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.example.commoncipher.remote.RemoteCipherProtocol.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClassName: RemoteCipherClient <br/>
+ * Description: 加密机连接池，固定数量的长连接轮询使用，每条连接上的请求流水线发送 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 连接在首次使用时建立，断开后下次选中时重建；建立连接在专用线程上进行，调用线程(含对冲定时线程)不等待：
+ * 选中的连接不可用时改用池中其他可用连接，均不可用时请求在连接建立后发出，总等待时间不超过请求超时；
+ * 请求超时后不再等待该请求，连接继续使用；同一连接连续超时达到上限且期间未收到任何响应时，
+ * 视为连接已失去响应，关闭该连接，其上未完成的请求以异常结束，下次选中时重建
+ */
+public class RemoteCipherClient implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteCipherClient.class);
+
+    private final String host;
+
+    private final int port;
+
+    private final int connectTimeout;
+
+    private final long requestTimeout;
+
+    private final int maxTimeouts;
+
+    private final RemoteCipherConnection[] connections;
+
+    //各位置正在建立的连接，同一位置同时只建立一条
+    private final CompletableFuture<RemoteCipherConnection>[] connecting;
+
+    //建立连接的线程，每个位置最多占用一个
+    private final ThreadPoolExecutor connector;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final AtomicLong requestId = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * @param host           加密机地址
+     * @param port           加密机端口
+     * @param poolSize       连接数
+     * @param connectTimeout 连接超时，毫秒
+     * @param requestTimeout 请求超时，毫秒
+     * @param maxTimeouts    单条连接连续超时达到该数量时关闭重建
+     */
+    public RemoteCipherClient(String host, int port, int poolSize, int connectTimeout, long requestTimeout,
+                              int maxTimeouts) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+        this.maxTimeouts = Math.max(maxTimeouts, 1);
+        this.connections = new RemoteCipherConnection[Math.max(poolSize, 1)];
+        this.connecting = newConnecting(connections.length);
+        this.connector = new ThreadPoolExecutor(0, connections.length, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new NamedThreadFactory("cipher-remote-connect-", true));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CompletableFuture<RemoteCipherConnection>[] newConnecting(int size) {
+        return new CompletableFuture[size];
+    }
+
+    /**
+     * 发送一个请求
+     *
+     * @param operation 操作码，见{@link RemoteCipherProtocol}
+     * @param fields    请求字段
+     * @return 响应帧；连接失败、断开或超时时以异常完成
+     */
+    public CompletableFuture<Frame> call(byte operation, byte[]... fields) {
+        if (closed) return CompletableFuture.failedFuture(new IOException("client closed"));
+
+        Frame request = new Frame(requestId.incrementAndGet(), operation, fields);
+        int start = Math.floorMod(next.getAndIncrement(), connections.length);
+        RemoteCipherConnection connection = liveConnection(start);
+        if (null != connection) return send(connection, request);
+
+        return connect(start).thenCompose(opened -> send(opened, request))
+                .orTimeout(requestTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    private CompletableFuture<Frame> send(RemoteCipherConnection connection, Frame request) {
+        return connection.send(request)
+                .orTimeout(requestTimeout, TimeUnit.MILLISECONDS)
+                .whenComplete((response, e) -> {
+                    if (e instanceof TimeoutException) timedOut(connection, request.id());
+                    else if (null != e) connection.cancel(request.id());
+                });
+    }
+
+    private void timedOut(RemoteCipherConnection connection, long id) {
+        int timeouts = connection.timedOut(id);
+        if (timeouts < maxTimeouts || connection.isClosed()) return;
+
+        log.warn("~~~~~remote cipher connection timed out {} times in a row, reconnecting", timeouts);
+        connection.close();
+    }
+
+    /**
+     * 当前建立的连接上未收到响应的请求数
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (RemoteCipherConnection connection : connections) {
+            if (null != connection) count += connection.getPendingCount();
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (connections) {
+            for (int i = 0; i < connections.length; i++) {
+                if (null != connections[i]) connections[i].close();
+                connections[i] = null;
+            }
+        }
+        connector.shutdownNow();
+    }
+
+    /**
+     * 从start开始轮询已建立的连接，经过的不可用位置在后台重建
+     *
+     * @return 均不可用时返回空
+     */
+    private RemoteCipherConnection liveConnection(int start) {
+        for (int i = 0; i < connections.length; i++) {
+            int index = (start + i) % connections.length;
+            RemoteCipherConnection connection = connections[index];
+            if (null != connection && !connection.isClosed()) return connection;
+
+            connect(index);
+        }
+        return null;
+    }
+
+    /**
+     * 在后台建立指定位置的连接，已在建立时返回同一个future；锁内只登记，不进行网络操作
+     */
+    private CompletableFuture<RemoteCipherConnection> connect(int index) {
+        synchronized (connections) {
+            CompletableFuture<RemoteCipherConnection> future = connecting[index];
+            if (null != future) return future;
+            if (closed) return CompletableFuture.failedFuture(new IOException("client closed"));
+
+            try {
+                future = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return RemoteCipherConnection.open(host, port, connectTimeout);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, connector);
+            } catch (RejectedExecutionException e) {
+                return CompletableFuture.failedFuture(new IOException("client closed", e));
+            }
+
+            connecting[index] = future;
+            future.whenComplete((connection, e) -> opened(index, connection));
+            return future;
+        }
+    }
+
+    private void opened(int index, RemoteCipherConnection connection) {
+        synchronized (connections) {
+            connecting[index] = null;
+            if (null == connection) return;
+
+            //建立期间客户端已关闭
+            if (closed) connection.close();
+            else connections[index] = connection;
+        }
+    }
+}
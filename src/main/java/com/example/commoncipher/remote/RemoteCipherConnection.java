@@ -0,0 +1,168 @@
+package com.example.commoncipher.remote;
+
+import com.example.commoncipher.remote.RemoteCipherProtocol.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ClassName: RemoteCipherConnection <br/>
+ * Description: 到加密机的一条长连接，多个线程可同时发送请求，不等待前一个响应 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 写出时按帧加锁；独立的读线程按请求id完成对应的future；连接断开时所有未完成的请求以异常结束；
+ * 记录连续超时的请求数，收到任一响应时清零，由连接池据此判断连接是否已失去响应
+ */
+public final class RemoteCipherConnection implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteCipherConnection.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+
+    private final DataOutputStream out;
+
+    private final DataInputStream in;
+
+    private final Map<Long, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>(256);
+
+    //连续超时的请求数
+    private final AtomicInteger timeouts = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    private RemoteCipherConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+    }
+
+    /**
+     * 建立连接并启动读线程
+     *
+     * @param host           加密机地址
+     * @param port           加密机端口
+     * @param connectTimeout 连接超时，毫秒
+     */
+    public static RemoteCipherConnection open(String host, int port, int connectTimeout) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+
+        RemoteCipherConnection connection = new RemoteCipherConnection(socket);
+        Thread reader = new Thread(connection::readLoop, "cipher-remote-reader-" + socket.getLocalPort());
+        reader.setDaemon(true);
+        reader.start();
+        return connection;
+    }
+
+    /**
+     * 发送一个请求，返回的future在收到相同id的响应时完成
+     *
+     * @param request 请求帧，id在本连接上唯一
+     */
+    public CompletableFuture<Frame> send(Frame request) {
+        CompletableFuture<Frame> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IOException("connection closed"));
+            return future;
+        }
+
+        pending.put(request.id(), future);
+        if (closed && null != pending.remove(request.id())) {
+            //登记期间连接被关闭
+            future.completeExceptionally(new IOException("connection closed"));
+            return future;
+        }
+
+        try {
+            synchronized (out) {
+                RemoteCipherProtocol.write(out, request);
+                out.flush();
+            }
+        } catch (IOException e) {
+            closeWith(e);
+        }
+        return future;
+    }
+
+    /**
+     * 放弃等待一个请求的响应，用于超时；响应到达时直接丢弃
+     */
+    public void cancel(long id) {
+        pending.remove(id);
+    }
+
+    /**
+     * 放弃等待一个超时的请求
+     *
+     * @return 自上次收到响应以来超时的请求数
+     */
+    public int timedOut(long id) {
+        return null != pending.remove(id) ? timeouts.incrementAndGet() : timeouts.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 未收到响应的请求数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() {
+        closeWith(new IOException("connection closed"));
+    }
+
+    private void readLoop() {
+        try {
+            while (!closed) {
+                Frame response = RemoteCipherProtocol.read(in);
+                CompletableFuture<Frame> future = pending.remove(response.id());
+                //已超时请求的迟到响应同样说明连接可用
+                timeouts.set(0);
+                if (null != future) future.complete(response);
+            }
+        } catch (IOException e) {
+            if (!closed) log.warn("~~~~~remote cipher connection lost: {}", e.getMessage());
+            closeWith(e);
+        }
+    }
+
+    private void closeWith(IOException cause) {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("~~~~~close remote cipher socket error", e);
+        }
+
+        pending.keySet().forEach(id -> {
+            CompletableFuture<Frame> future = pending.remove(id);
+            if (null != future) future.completeExceptionally(cause);
+        });
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.commoncipher.remote;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ClassName: RemoteCipherProtocol <br/>
+ * Description: 远程加密机的帧格式及操作码 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 帧：int 帧长度(不含本字段) + long 请求id + byte 操作码/状态 + 若干字段；<br/>
+ * 字段：int 长度 + 内容，长度为-1表示null；String均为UTF-8；<br/>
+ * 响应携带请求的id，同一连接上可连续发送多个请求，服务端按完成顺序返回，客户端按id匹配
+ */
+public final class RemoteCipherProtocol {
+
+    public static final byte ENCRYPT_BYTE = 1;
+    public static final byte ENCRYPT_BASE64 = 2;
+    public static final byte DECRYPT_BYTE = 3;
+    public static final byte DECRYPT_BASE64 = 4;
+    public static final byte GENERATE_MAC_BYTE = 5;
+    public static final byte GENERATE_MAC_BASE64 = 6;
+    public static final byte VERIFY_MAC_BYTE = 7;
+    public static final byte VERIFY_MAC_BASE64 = 8;
+    public static final byte ENCRYPT_MAC_BYTE = 9;
+    public static final byte ENCRYPT_MAC_BASE64 = 10;
+    public static final byte DECRYPT_MAC_BYTE = 11;
+    public static final byte DECRYPT_MAC_BASE64 = 12;
+
+    /**
+     * 响应状态：成功，字段为结果
+     */
+    public static final byte STATUS_SUCCESS = 0;
+
+    /**
+     * 响应状态：失败，字段为code、message
+     */
+    public static final byte STATUS_FAIL = 1;
+
+    /**
+     * 单帧最大长度，超出时视为连接数据错误
+     */
+    public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    //请求id + 操作码
+    private static final int FRAME_HEADER_LENGTH = Long.BYTES + 1;
+
+    private RemoteCipherProtocol() {
+    }
+
+    /**
+     * 一个请求或响应帧
+     *
+     * @param id     请求id
+     * @param type   请求为操作码，响应为状态
+     * @param fields 字段
+     */
+    public record Frame(long id, byte type, byte[]... fields) {
+
+        public byte[] field(int index) {
+            return fields[index];
+        }
+
+        public String string(int index) {
+            return RemoteCipherProtocol.string(fields[index]);
+        }
+    }
+
+    /**
+     * 写出一帧，不flush
+     */
+    public static void write(DataOutputStream out, Frame frame) throws IOException {
+        int length = FRAME_HEADER_LENGTH;
+        for (byte[] field : frame.fields()) {
+            length += Integer.BYTES + (null == field ? 0 : field.length);
+        }
+
+        out.writeInt(length);
+        out.writeLong(frame.id());
+        out.writeByte(frame.type());
+        for (byte[] field : frame.fields()) {
+            if (null == field) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(field.length);
+                out.write(field);
+            }
+        }
+    }
+
+    /**
+     * 读取一帧
+     *
+     * @throws java.io.EOFException 连接已关闭
+     * @throws IOException          帧长度或字段长度非法
+     */
+    public static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < FRAME_HEADER_LENGTH || length > MAX_FRAME_LENGTH) {
+            throw new IOException("invalid frame length: " + length);
+        }
+
+        long id = in.readLong();
+        byte type = in.readByte();
+
+        int remaining = length - FRAME_HEADER_LENGTH;
+        byte[][] fields = new byte[4][];
+        int count = 0;
+        while (remaining > 0) {
+            if (remaining < Integer.BYTES) throw new IOException("truncated frame");
+
+            int fieldLength = in.readInt();
+            remaining -= Integer.BYTES;
+            if (fieldLength > remaining) throw new IOException("invalid field length: " + fieldLength);
+
+            byte[] field = null;
+            if (fieldLength >= 0) {
+                field = new byte[fieldLength];
+                in.readFully(field);
+                remaining -= fieldLength;
+            }
+
+            if (count == fields.length) fields = Arrays.copyOf(fields, count * 2);
+            fields[count++] = field;
+        }
+        return new Frame(id, type, count == fields.length ? fields : Arrays.copyOf(fields, count));
+    }
+
+    public static byte[] bytes(String value) {
+        return null == value ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static String string(byte[] value) {
+        return null == value ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    public static byte[] bool(boolean value) {
+        return new byte[]{(byte) (value ? 1 : 0)};
+    }
+
+    public static boolean bool(byte[] value) {
+        return null != value && value.length == 1 && value[0] == 1;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.commoncipher.remote;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.remote.RemoteCipherProtocol.Frame;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.service.EnDecryptService;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.example.commoncipher.remote.RemoteCipherProtocol.bool;
+import static com.example.commoncipher.remote.RemoteCipherProtocol.bytes;
+
+/**
+ * ClassName: RemoteCipherServer <br/>
+ * Description: 本地TCP加密机挡板，协议见{@link RemoteCipherProtocol}，默认使用SM4挡板处理请求，用于单机压测远程客户端 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 每条连接一个读线程，请求交给工作线程池处理，响应按完成顺序写回
+ */
+public class RemoteCipherServer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteCipherServer.class);
+
+    private static final String ERROR_CODE = "99999999";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final EnDecryptService service;
+
+    private final int port;
+
+    private final ExecutorService workers;
+
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean closed;
+
+    /**
+     * @param service 实际处理请求的加密服务
+     * @param port    监听端口，0为随机端口
+     * @param workers 工作线程数
+     */
+    public RemoteCipherServer(EnDecryptService service, int port, int workers) {
+        this.service = service;
+        this.port = port;
+        this.workers = Executors.newFixedThreadPool(workers, new NamedThreadFactory("cipher-server-", true));
+    }
+
+    /**
+     * 启动挡板：java ... RemoteCipherServer [端口，默认9800] [工作线程数，默认CPU核数]；
+     * 密钥环通过-Dhard.cipher.keyring.keys、-Dhard.cipher.keyring.current-version指定
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 9800;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        CipherKeyring keyring = CipherKeyring.of(System.getProperty("hard.cipher.keyring.keys"),
+                Integer.getInteger("hard.cipher.keyring.current-version", 0));
+        RemoteCipherServer server = new RemoteCipherServer(new HutoolBaffleServiceImpl(keyring), port, workers).start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        log.info("~~~~~remote cipher baffle listening on port {}", server.getPort());
+        Thread.currentThread().join();
+    }
+
+    /**
+     * 监听端口并开始接受连接
+     */
+    public RemoteCipherServer start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        Thread acceptor = new Thread(this::acceptLoop, "cipher-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    /**
+     * 实际监听的端口
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 先停止接受连接并关闭所有连接，再关闭工作线程池；读线程已读出的请求在线程池关闭后不再处理
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (null != serverSocket) serverSocket.close();
+        } catch (IOException e) {
+            log.debug("~~~~~close server socket error", e);
+        }
+        sockets.forEach(RemoteCipherServer::closeQuietly);
+        workers.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                //关闭过程中接受的连接不再服务
+                if (closed) {
+                    sockets.remove(socket);
+                    closeQuietly(socket);
+                    break;
+                }
+
+                Thread reader = new Thread(() -> serve(socket), "cipher-server-conn-" + socket.getPort());
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) log.error("~~~~~remote cipher baffle accept error", e);
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE))) {
+            while (!closed) {
+                Frame request = RemoteCipherProtocol.read(in);
+                workers.execute(() -> respond(out, request));
+            }
+        } catch (EOFException | SocketException e) {
+            //客户端关闭连接
+        } catch (RejectedExecutionException e) {
+            //挡板已关闭，结束连接
+        } catch (IOException e) {
+            log.warn("~~~~~remote cipher baffle connection error: {}", e.getMessage());
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private void respond(DataOutputStream out, Frame request) {
+        Frame response;
+        try {
+            response = handle(request);
+        } catch (Exception e) {
+            response = new Frame(request.id(), RemoteCipherProtocol.STATUS_FAIL, bytes(ERROR_CODE),
+                    bytes(e.getMessage()));
+        }
+
+        try {
+            synchronized (out) {
+                RemoteCipherProtocol.write(out, response);
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.debug("~~~~~write response error: {}", e.getMessage());
+        }
+    }
+
+    private Frame handle(Frame request) {
+        long id = request.id();
+        return switch (request.type()) {
+            case RemoteCipherProtocol.ENCRYPT_BYTE -> reply(id, service.encryptByte(request.field(0)));
+            case RemoteCipherProtocol.ENCRYPT_BASE64 -> reply(id, service.encryptBase64(request.string(0)));
+            case RemoteCipherProtocol.DECRYPT_BYTE -> reply(id, service.decryptByte(request.field(0)));
+            case RemoteCipherProtocol.DECRYPT_BASE64 -> reply(id, service.decryptBase64(request.string(0)));
+            case RemoteCipherProtocol.GENERATE_MAC_BYTE -> reply(id, service.generateMacByte(request.field(0)));
+            case RemoteCipherProtocol.GENERATE_MAC_BASE64 -> reply(id, service.generateMacBase64(request.string(0)));
+            case RemoteCipherProtocol.VERIFY_MAC_BYTE -> reply(id,
+                    service.verifyMacByte(new DecryptMacParam(request.field(0), request.string(1))));
+            case RemoteCipherProtocol.VERIFY_MAC_BASE64 -> reply(id,
+                    service.verifyMacBase64(new DecryptMacParam(request.string(0), request.string(1))));
+            case RemoteCipherProtocol.ENCRYPT_MAC_BYTE -> reply(id, service.encryptMacByte(request.field(0)));
+            case RemoteCipherProtocol.ENCRYPT_MAC_BASE64 -> reply(id, service.encryptMacBase64(request.string(0)));
+            case RemoteCipherProtocol.DECRYPT_MAC_BYTE -> reply(id,
+                    service.decryptMacByte(new DecryptMacParam(request.field(0), request.string(1))));
+            case RemoteCipherProtocol.DECRYPT_MAC_BASE64 -> reply(id,
+                    service.decryptMacBase64(new DecryptMacParam(request.string(0), request.string(1))));
+            default -> new Frame(id, RemoteCipherProtocol.STATUS_FAIL, bytes(ERROR_CODE),
+                    bytes("UNSUPPORTED_OPERATION_" + request.type()));
+        };
+    }
+
+    /**
+     * 按结果类型编码响应字段
+     */
+    private static Frame reply(long id, ExampleCommonResult<?> result) {
+        if (!result.isSuccess()) {
+            return new Frame(id, RemoteCipherProtocol.STATUS_FAIL, bytes(result.getCode()),
+                    bytes(result.getMessage()));
+        }
+
+        Object data = result.getData();
+        if (data instanceof byte[] value) return new Frame(id, RemoteCipherProtocol.STATUS_SUCCESS, value);
+        if (data instanceof String value) return new Frame(id, RemoteCipherProtocol.STATUS_SUCCESS, bytes(value));
+        if (data instanceof Boolean value) return new Frame(id, RemoteCipherProtocol.STATUS_SUCCESS, bool(value));
+
+        EncryptMacResult macResult = (EncryptMacResult) data;
+        byte[] cipher = null != macResult.getCipherByte() ? macResult.getCipherByte()
+                : bytes(macResult.getCipherBase64());
+        return new Frame(id, RemoteCipherProtocol.STATUS_SUCCESS, cipher, bytes(macResult.getMac()));
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.debug("~~~~~close socket error", e);
+        }
+    }
+}
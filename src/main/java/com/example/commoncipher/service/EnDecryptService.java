@@ -1,13 +1,28 @@
 package com.example.commoncipher.service;
 
-import cn.hutool.core.codec.Base64;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.text.CharSequenceUtil;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.exception.ServiceException;
 import com.example.commoncipher.param.DecryptMacParam;
 import com.example.commoncipher.result.EncryptMacResult;
 import com.example.commoncipher.result.ExampleCommonResult;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * ClassName: EnDecryptService <br/>
@@ -18,6 +33,11 @@ public interface EnDecryptService {
 
     String ENCRYPT_PREFIX = "[SM4]";
 
+    /**
+     * mac校验不通过时返回结果的message
+     */
+    String MAC_ERROR_MSG = "MAC_CHECK_ERROR";
+
     /**
      * 用于加密BLOB存储的特征、byte流读取的图片及文件等
      *
@@ -121,12 +141,17 @@ public interface EnDecryptService {
      * @return the common result
      */
     default ExampleCommonResult<Boolean> isEncrypt(byte[] cipherByte) {
-        if (null == cipherByte || cipherByte.length < ENCRYPT_PREFIX.length())
-            return ExampleCommonResult.success(false);
+        return ExampleCommonResult.success(CipherEnvelope.hasPrefix(cipherByte));
+    }
 
-        byte[] preBytes = Arrays.copyOfRange(cipherByte, 0, ENCRYPT_PREFIX.length());
-        boolean flag = ENCRYPT_PREFIX.equals(new String(preBytes, StandardCharsets.UTF_8));
-        return ExampleCommonResult.success(flag);
+    /**
+     * 用于判断缓冲区剩余的数据是否已加密，不改变缓冲区position
+     *
+     * @param cipherBuffer 待判断的密文
+     * @return the common result
+     */
+    default ExampleCommonResult<Boolean> isEncrypt(ByteBuffer cipherBuffer) {
+        return ExampleCommonResult.success(CipherEnvelope.hasPrefix(cipherBuffer));
     }
 
     /**
@@ -138,6 +163,533 @@ public interface EnDecryptService {
     default ExampleCommonResult<Boolean> isEncrypt(String cipherBase64) {
         if (CharSequenceUtil.isBlank(cipherBase64)) return ExampleCommonResult.success(false);
 
-        return isEncrypt(Base64.decode(cipherBase64));
+        //只解码前缀对应的几个字符
+        return ExampleCommonResult.success(CipherEnvelope.hasBase64Prefix(cipherBase64));
+    }
+
+    /**
+     * 加密是否为确定性的：相同明文总是得到相同密文，密文可直接用于等值查询及索引；
+     * 标记了确定性加密的字段、mapper方法的查询参数要求加密服务支持
+     *
+     * @return 无法保证时返回false
+     */
+    default boolean isDeterministic() {
+        return false;
+    }
+
+    /**
+     * 新数据加密使用的密钥版本，写入密文信封头；密钥轮换时据此判断哪些数据仍需重新加密
+     *
+     * @return 不支持密钥版本的实现为0
+     */
+    default int getKeyVersion() {
+        return 0;
+    }
+
+    /**
+     * 等值查询参数需要匹配的密钥版本，第一个为当前版本；密钥轮换期间，重新加密尚未处理的数据仍为旧版本的密文，
+     * 查询参数需按每个版本分别加密，见{@link #encryptBase64Batch(List, int)}
+     *
+     * @return 默认只有当前版本
+     */
+    default int[] getLookupKeyVersions() {
+        return new int[]{getKeyVersion()};
+    }
+
+    /**
+     * 按指定密钥版本批量加密byte[]，用于等值查询参数，结果与入参顺序一致
+     *
+     * @param plainBytes 待加密的明文列表
+     * @param keyVersion {@link #getLookupKeyVersions()}中的版本
+     * @return 默认只支持当前版本
+     */
+    default ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes, int keyVersion) {
+        if (keyVersion == getKeyVersion()) return encryptByteBatch(plainBytes);
+        return ExampleCommonResult.fail("99999999", "UNSUPPORTED_KEY_VERSION");
+    }
+
+    /**
+     * 按指定密钥版本批量加密base64 string，用于等值查询参数，结果与入参顺序一致
+     *
+     * @param plainBase64s 待加密的明文列表
+     * @param keyVersion   {@link #getLookupKeyVersions()}中的版本
+     * @return 默认只支持当前版本
+     */
+    default ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s, int keyVersion) {
+        if (keyVersion == getKeyVersion()) return encryptBase64Batch(plainBase64s);
+        return ExampleCommonResult.fail("99999999", "UNSUPPORTED_KEY_VERSION");
+    }
+
+    /**
+     * 流式加密大图片、视频等，密文与摘要分别写出/返回；
+     * 默认实现整体读入后调用{@link #encryptMacByte(byte[])}，实现类应按固定大小分块处理以保持内存恒定
+     *
+     * @param plainIn   明文输入流，不负责关闭
+     * @param cipherOut 密文输出流，不负责关闭
+     * @return the common result，data为密文摘要
+     */
+    default ExampleCommonResult<String> encryptStream(InputStream plainIn, OutputStream cipherOut) {
+        ExampleCommonResult<EncryptMacResult> result = encryptMacByte(IoUtil.readBytes(plainIn, false));
+        if (!result.isSuccess()) return ExampleCommonResult.fail(result.getCode(), result.getMessage());
+
+        IoUtil.write(cipherOut, false, result.getData().getCipherByte());
+        return ExampleCommonResult.success(result.getData().getMac());
+    }
+
+    /**
+     * 流式解密大图片、视频等并校验摘要；
+     * 分块实现在读完全部密文后才能得出校验结果，校验失败时调用方应丢弃已写出的明文
+     *
+     * @param cipherIn 密文输入流，不负责关闭
+     * @param plainOut 明文输出流，不负责关闭
+     * @param mac      密文摘要，为空时不校验
+     * @return the common result
+     */
+    default ExampleCommonResult<Boolean> decryptStream(InputStream cipherIn, OutputStream plainOut, String mac) {
+        byte[] cipherByte = IoUtil.readBytes(cipherIn, false);
+        ExampleCommonResult<byte[]> result = CharSequenceUtil.isBlank(mac) ? decryptByte(cipherByte)
+                : decryptMacByte(new DecryptMacParam(cipherByte, mac));
+        if (!result.isSuccess()) return ExampleCommonResult.fail(result.getCode(), result.getMessage());
+
+        IoUtil.write(plainOut, false, result.getData());
+        return ExampleCommonResult.success(true);
+    }
+
+    /**
+     * 基于通道的流式加密，见{@link #encryptStream(InputStream, OutputStream)}
+     *
+     * @param plainIn   明文输入通道，不负责关闭
+     * @param cipherOut 密文输出通道，不负责关闭
+     * @return the common result，data为密文摘要
+     */
+    default ExampleCommonResult<String> encryptChannel(ReadableByteChannel plainIn, WritableByteChannel cipherOut) {
+        return encryptStream(Channels.newInputStream(plainIn), Channels.newOutputStream(cipherOut));
+    }
+
+    /**
+     * 基于通道的流式解密，见{@link #decryptStream(InputStream, OutputStream, String)}
+     *
+     * @param cipherIn 密文输入通道，不负责关闭
+     * @param plainOut 明文输出通道，不负责关闭
+     * @param mac      密文摘要，为空时不校验
+     * @return the common result
+     */
+    default ExampleCommonResult<Boolean> decryptChannel(ReadableByteChannel cipherIn, WritableByteChannel plainOut,
+                                                        String mac) {
+        return decryptStream(Channels.newInputStream(cipherIn), Channels.newOutputStream(plainOut), mac);
+    }
+
+    /**
+     * 加密本地文件，密文格式与摘要同{@link #encryptStream(InputStream, OutputStream)}；
+     * 默认实现基于文件流，实现类可使用文件通道分段并行处理
+     *
+     * @param plainFile  明文文件
+     * @param cipherFile 密文文件，已存在时覆盖
+     * @return the common result，data为密文摘要
+     */
+    default ExampleCommonResult<String> encryptFile(Path plainFile, Path cipherFile) {
+        try (InputStream plainIn = Files.newInputStream(plainFile);
+             OutputStream cipherOut = Files.newOutputStream(cipherFile)) {
+            return encryptStream(plainIn, cipherOut);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * 解密本地文件并校验摘要，见{@link #decryptStream(InputStream, OutputStream, String)}
+     *
+     * @param cipherFile 密文文件
+     * @param plainFile  明文文件，已存在时覆盖
+     * @param mac        密文摘要，为空时不校验
+     * @return the common result
+     */
+    default ExampleCommonResult<Boolean> decryptFile(Path cipherFile, Path plainFile, String mac) {
+        try (InputStream cipherIn = Files.newInputStream(cipherFile);
+             OutputStream plainOut = Files.newOutputStream(plainFile)) {
+            return decryptStream(cipherIn, plainOut, mac);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * 批量加密byte[]，结果与入参顺序一致；默认逐条调用{@link #encryptByte(byte[])}，任一失败即返回失败
+     *
+     * @param plainBytes 待加密的明文列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes) {
+        return batch(plainBytes, this::encryptByte);
+    }
+
+    /**
+     * 批量加密base64 string，结果与入参顺序一致
+     *
+     * @param plainBase64s 待加密的明文列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s) {
+        return batch(plainBase64s, this::encryptBase64);
+    }
+
+    /**
+     * 批量解密byte[]，结果与入参顺序一致
+     *
+     * @param cipherBytes 待解密的密文列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<byte[]>> decryptByteBatch(List<byte[]> cipherBytes) {
+        return batch(cipherBytes, this::decryptByte);
+    }
+
+    /**
+     * 批量解密base64 string，结果与入参顺序一致
+     *
+     * @param cipherBase64s 待解密的密文列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<String>> decryptBase64Batch(List<String> cipherBase64s) {
+        return batch(cipherBase64s, this::decryptBase64);
+    }
+
+    /**
+     * 批量加密byte[]并计算摘要，结果与入参顺序一致
+     *
+     * @param plainBytes 待加密的明文列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<EncryptMacResult>> encryptMacByteBatch(List<byte[]> plainBytes) {
+        return batch(plainBytes, this::encryptMacByte);
+    }
+
+    /**
+     * 批量加密base64 string并计算摘要，结果与入参顺序一致
+     *
+     * @param plainBase64s 待加密的明文列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<EncryptMacResult>> encryptMacBase64Batch(List<String> plainBase64s) {
+        return batch(plainBase64s, this::encryptMacBase64);
+    }
+
+    /**
+     * 批量验证摘要并解密byte[]，结果与入参顺序一致
+     *
+     * @param byteParams 待解密的密文 + 摘要列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<byte[]>> decryptMacByteBatch(List<DecryptMacParam> byteParams) {
+        return batch(byteParams, this::decryptMacByte);
+    }
+
+    /**
+     * 批量验证摘要并解密base64 string，结果与入参顺序一致
+     *
+     * @param base64Params 待解密的密文 + 摘要列表
+     * @return the common result
+     */
+    default ExampleCommonResult<List<String>> decryptMacBase64Batch(List<DecryptMacParam> base64Params) {
+        return batch(base64Params, this::decryptMacBase64);
+    }
+
+    //以下为异步方法：默认实现在传入的线程池中执行对应的同步方法，调用线程不阻塞；
+    //基于网络的加密机可覆盖为真正的非阻塞实现
+
+    /**
+     * 异步加密byte[]，见{@link #encryptByte(byte[])}
+     * 同步方法抛出的异常以异常完成的future返回
+     *
+     * @param plainByte 待加密的明文
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<byte[]>> encryptByteAsync(byte[] plainByte, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptByte(plainByte), executor);
+    }
+
+    /**
+     * 异步加密base64 string，见{@link #encryptBase64(String)}
+     *
+     * @param plainBase64 待加密的明文
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<String>> encryptBase64Async(String plainBase64, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptBase64(plainBase64), executor);
+    }
+
+    /**
+     * 异步解密byte[]，见{@link #decryptByte(byte[])}
+     *
+     * @param cipherByte 待解密的密文
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<byte[]>> decryptByteAsync(byte[] cipherByte, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptByte(cipherByte), executor);
+    }
+
+    /**
+     * 异步解密base64 string，见{@link #decryptBase64(String)}
+     *
+     * @param cipherBase64 待解密的密文
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<String>> decryptBase64Async(String cipherBase64, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptBase64(cipherBase64), executor);
+    }
+
+    /**
+     * 异步计算byte[]摘要，见{@link #generateMacByte(byte[])}
+     *
+     * @param data 待算摘要的数据
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<String>> generateMacByteAsync(byte[] data, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> generateMacByte(data), executor);
+    }
+
+    /**
+     * 异步计算base64 string摘要，见{@link #generateMacBase64(String)}
+     *
+     * @param base64Data 待算摘要的数据
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<String>> generateMacBase64Async(String base64Data,
+                                                                                  Executor executor) {
+        return CompletableFuture.supplyAsync(() -> generateMacBase64(base64Data), executor);
+    }
+
+    /**
+     * 异步验证byte[]摘要，见{@link #verifyMacByte(DecryptMacParam)}
+     *
+     * @param byteParam 待验证摘要的数据
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<Boolean>> verifyMacByteAsync(DecryptMacParam byteParam,
+                                                                               Executor executor) {
+        return CompletableFuture.supplyAsync(() -> verifyMacByte(byteParam), executor);
+    }
+
+    /**
+     * 异步验证base64 string摘要，见{@link #verifyMacBase64(DecryptMacParam)}
+     *
+     * @param base64Param 待验证摘要的数据
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<Boolean>> verifyMacBase64Async(DecryptMacParam base64Param,
+                                                                                 Executor executor) {
+        return CompletableFuture.supplyAsync(() -> verifyMacBase64(base64Param), executor);
+    }
+
+    /**
+     * 异步加密byte[]并计算摘要，见{@link #encryptMacByte(byte[])}
+     *
+     * @param plainByte 待加密的明文
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacByteAsync(byte[] plainByte,
+                                                                                         Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptMacByte(plainByte), executor);
+    }
+
+    /**
+     * 异步加密base64 string并计算摘要，见{@link #encryptMacBase64(String)}
+     *
+     * @param plainBase64 待加密的明文
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacBase64Async(String plainBase64,
+                                                                                           Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptMacBase64(plainBase64), executor);
+    }
+
+    /**
+     * 异步验证摘要并解密byte[]，见{@link #decryptMacByte(DecryptMacParam)}
+     *
+     * @param byteParam 待解密的密文 + 摘要
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<byte[]>> decryptMacByteAsync(DecryptMacParam byteParam,
+                                                                               Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptMacByte(byteParam), executor);
+    }
+
+    /**
+     * 异步验证摘要并解密base64 string，见{@link #decryptMacBase64(DecryptMacParam)}
+     *
+     * @param base64Param 待解密的密文 + 摘要
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<String>> decryptMacBase64Async(DecryptMacParam base64Param,
+                                                                                 Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptMacBase64(base64Param), executor);
+    }
+
+    /**
+     * 异步加密本地文件，见{@link #encryptFile(Path, Path)}
+     *
+     * @param plainFile  明文文件
+     * @param cipherFile 密文文件，已存在时覆盖
+     * @param executor   执行调用的线程池
+     * @return the common result future，data为密文摘要
+     */
+    default CompletableFuture<ExampleCommonResult<String>> encryptFileAsync(Path plainFile, Path cipherFile,
+                                                                            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptFile(plainFile, cipherFile), executor);
+    }
+
+    /**
+     * 异步解密本地文件并校验摘要，见{@link #decryptFile(Path, Path, String)}
+     *
+     * @param cipherFile 密文文件
+     * @param plainFile  明文文件，已存在时覆盖
+     * @param mac        密文摘要，为空时不校验
+     * @param executor   执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<Boolean>> decryptFileAsync(Path cipherFile, Path plainFile,
+                                                                             String mac, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptFile(cipherFile, plainFile, mac), executor);
+    }
+
+    /**
+     * 异步批量加密byte[]，结果与入参顺序一致；
+     * 默认在线程池中调用同步批量方法，整批只占用一个线程，覆盖了同步批量方法的实现(如加密机批量接口)同样生效
+     *
+     * @param plainBytes 待加密的明文列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<byte[]>>> encryptByteBatchAsync(List<byte[]> plainBytes,
+                                                                                       Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptByteBatch(plainBytes), executor);
+    }
+
+    /**
+     * 异步批量加密base64 string，见{@link #encryptByteBatchAsync(List, Executor)}
+     *
+     * @param plainBase64s 待加密的明文列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<String>>> encryptBase64BatchAsync(List<String> plainBase64s,
+                                                                                         Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptBase64Batch(plainBase64s), executor);
+    }
+
+    /**
+     * 异步批量解密byte[]，见{@link #encryptByteBatchAsync(List, Executor)}
+     *
+     * @param cipherBytes 待解密的密文列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptByteBatchAsync(List<byte[]> cipherBytes,
+                                                                                       Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptByteBatch(cipherBytes), executor);
+    }
+
+    /**
+     * 异步批量解密base64 string，见{@link #encryptByteBatchAsync(List, Executor)}
+     *
+     * @param cipherBase64s 待解密的密文列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<String>>> decryptBase64BatchAsync(List<String> cipherBase64s,
+                                                                                         Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptBase64Batch(cipherBase64s), executor);
+    }
+
+    /**
+     * 异步批量加密byte[]并计算摘要，见{@link #encryptByteBatchAsync(List, Executor)}
+     *
+     * @param plainBytes 待加密的明文列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacByteBatchAsync(
+            List<byte[]> plainBytes, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptMacByteBatch(plainBytes), executor);
+    }
+
+    /**
+     * 异步批量加密base64 string并计算摘要，见{@link #encryptByteBatchAsync(List, Executor)}
+     *
+     * @param plainBase64s 待加密的明文列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacBase64BatchAsync(
+            List<String> plainBase64s, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> encryptMacBase64Batch(plainBase64s), executor);
+    }
+
+    /**
+     * 异步批量验证摘要并解密byte[]，见{@link #encryptByteBatchAsync(List, Executor)}
+     *
+     * @param byteParams 待解密的密文 + 摘要列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptMacByteBatchAsync(
+            List<DecryptMacParam> byteParams, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptMacByteBatch(byteParams), executor);
+    }
+
+    /**
+     * 异步批量验证摘要并解密base64 string，见{@link #encryptByteBatchAsync(List, Executor)}
+     *
+     * @param base64Params 待解密的密文 + 摘要列表
+     * @param executor 执行调用的线程池
+     * @return the common result future
+     */
+    default CompletableFuture<ExampleCommonResult<List<String>>> decryptMacBase64BatchAsync(
+            List<DecryptMacParam> base64Params, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> decryptMacBase64Batch(base64Params), executor);
+    }
+
+    /**
+     * 取批量方法的结果，失败或数量与请求不一致时抛出异常
+     *
+     * @param result 批量方法的返回
+     * @param size   请求的数量
+     * @return 与请求顺序一致的结果
+     */
+    static <R> List<R> batchData(ExampleCommonResult<List<R>> result, int size) throws ServiceException {
+        if (!result.isSuccess()) throw new ServiceException(result.getCode(), result.getMessage());
+
+        List<R> data = result.getData();
+        if (null == data || data.size() != size) {
+            throw new ServiceException(CharSequenceUtil.format("批量结果数量不匹配, 请求:{}, 返回:{}",
+                    size, null == data ? 0 : data.size()));
+        }
+        return data;
+    }
+
+    /**
+     * 批量方法的默认实现：逐条调用单条方法
+     */
+    private static <P, R> ExampleCommonResult<List<R>> batch(List<P> params,
+                                                             Function<P, ExampleCommonResult<R>> single) {
+        List<R> results = new ArrayList<>(params.size());
+        for (P param : params) {
+            ExampleCommonResult<R> result = single.apply(param);
+            if (!result.isSuccess()) return ExampleCommonResult.fail(result.getCode(), result.getMessage());
+
+            results.add(result.getData());
+        }
+        return ExampleCommonResult.success(results);
     }
 }
@@ -1,11 +1,16 @@
 package com.example.commoncipher.service.impl;
 
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.text.CharSequenceUtil;
 import com.example.commoncipher.param.DecryptMacParam;
 import com.example.commoncipher.result.EncryptMacResult;
 import com.example.commoncipher.result.ExampleCommonResult;
 import com.example.commoncipher.service.EnDecryptService;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
 /**
  * ClassName: DefaultNoCipherServiceImpl <br/>
  * Description: 默认不加密的实现 <br/>
@@ -81,4 +86,26 @@ public class DefaultNoCipherServiceImpl implements EnDecryptService {
     public ExampleCommonResult<Boolean> isEncrypt(String cipherBase64) {
         return ExampleCommonResult.success(true);
     }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(ByteBuffer cipherBuffer) {
+        return ExampleCommonResult.success(true);
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return true;
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptStream(InputStream plainIn, OutputStream cipherOut) {
+        IoUtil.copy(plainIn, cipherOut);
+        return ExampleCommonResult.success(CharSequenceUtil.EMPTY);
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> decryptStream(InputStream cipherIn, OutputStream plainOut, String mac) {
+        IoUtil.copy(cipherIn, plainOut);
+        return ExampleCommonResult.success(true);
+    }
 }
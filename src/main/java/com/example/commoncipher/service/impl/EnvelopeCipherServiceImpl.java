@@ -0,0 +1,605 @@
+package com.example.commoncipher.service.impl;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.CryptoException;
+import cn.hutool.crypto.SecureUtil;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ClassName: EnvelopeCipherServiceImpl <br/>
+ * Description: 数据密钥信封加密，加密机只加解密数据密钥，字段数据在本地以数据密钥加密 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 数据密钥随机生成，交由加密机加密后写入每条密文的信封头，见{@link CipherEnvelope#FORMAT_SM4_DATA_KEY}；
+ * 同一数据密钥在条数、字节数、时长的上限内复用，写入时每个数据密钥只调用一次加密机；
+ * 读取时按信封头中的数据密钥密文缓存解密结果，同一数据密钥只调用一次加密机解密；<br/>
+ * 本地使用SM4-CBC，每条密文随机IV，mac为HMAC-SM3，覆盖数据密钥密文、IV及密文；
+ * 加密与mac使用由数据密钥分别派生的子密钥：HMAC-SM3(数据密钥, "enc")的前16字节、HMAC-SM3(数据密钥, "mac")；<br/>
+ * 不是信封格式的旧密文原样交给加密机处理；相同明文每次得到不同密文，不支持确定性加密；
+ * 流及文件使用接口默认实现，整体读入内存
+ */
+public class EnvelopeCipherServiceImpl implements EnDecryptService, AutoCloseable {
+
+    private static final String ERROR_CODE = "99999999";
+
+    private static final String ERROR_FORMAT_MSG = "UNSUPPORTED_ENVELOPE_FORMAT";
+
+    //加密机未返回密文，如不加密实现，数据密钥不能明文写入信封
+    private static final String ERROR_WRAP_MSG = "DATA_KEY_NOT_WRAPPED";
+
+    //本地加解密失败，如未带mac的密文被篡改后填充错误
+    private static final String ERROR_CRYPT_MSG = "ENVELOPE_CRYPT_ERROR";
+
+    private static final String CIPHER_ALGORITHM = "SM4/CBC/PKCS5Padding";
+
+    private static final String HMAC_ALGORITHM = "HmacSM3";
+
+    private static final int IV_LENGTH = 16;
+
+    //子密钥派生的标签
+    private static final byte[] ENC_LABEL = "enc".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] MAC_LABEL = "mac".getBytes(StandardCharsets.US_ASCII);
+
+    //数据密钥密文的长度字段为2字节
+    private static final int MAX_WRAPPED_LENGTH = 0xFFFF;
+
+    private static final byte[] BINARY_HEADER =
+            CipherEnvelope.allocateBinary(0, CipherEnvelope.FORMAT_SM4_DATA_KEY);
+
+    private static final String TEXT_HEADER = ENCRYPT_PREFIX + CipherEnvelope.DATA_KEY_MARKER;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    //Cipher、Mac按线程复用，每次按数据密钥重新初始化
+    private static final ThreadLocal<Cipher> CIPHER =
+            ThreadLocal.withInitial(() -> SecureUtil.createCipher(CIPHER_ALGORITHM));
+
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> SecureUtil.createMac(HMAC_ALGORITHM));
+
+    //每个数据密钥最多加密的条数
+    public long maxRecords = 100000;
+
+    //每个数据密钥最多加密的明文字节数
+    public long maxBytes = 1L << 30;
+
+    //每个数据密钥从生成起可用于加密的时长，毫秒
+    public long maxAgeMillis = 600000;
+
+    //缓存的已解密数据密钥个数
+    public int cacheSize = 1024;
+
+    private final EnDecryptService keyService;
+
+    //按数据密钥密文(含长度)缓存，按访问顺序淘汰
+    private final Map<ByteBuffer, DataKey> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, DataKey> eldest) {
+            return size() > cacheSize;
+        }
+    };
+
+    private final LongAdder wrapCalls = new LongAdder();
+
+    private final LongAdder unwrapCalls = new LongAdder();
+
+    //正在解密的数据密钥，同一数据密钥并发读取时只调用一次加密机，其余线程等待结果
+    private final Map<ByteBuffer, CompletableFuture<ExampleCommonResult<DataKey>>> unwrapping =
+            new ConcurrentHashMap<>();
+
+    //当前用于加密的数据密钥，首次加密时生成
+    private volatile DataKey current;
+
+    /**
+     * @param keyService 加密机，只用于加解密数据密钥及处理旧格式密文
+     */
+    public EnvelopeCipherServiceImpl(EnDecryptService keyService) {
+        this.keyService = keyService;
+    }
+
+    /**
+     * 关闭加密机服务，如远程加密机的连接池
+     */
+    @Override
+    public void close() throws Exception {
+        if (keyService instanceof AutoCloseable closeable) closeable.close();
+    }
+
+    /**
+     * 加密数据密钥调用加密机的次数，即生成的数据密钥个数
+     */
+    public long getWrapCalls() {
+        return wrapCalls.sum();
+    }
+
+    /**
+     * 解密数据密钥调用加密机的次数
+     */
+    public long getUnwrapCalls() {
+        return unwrapCalls.sum();
+    }
+
+    private static <T> ExampleCommonResult<T> fail(ExampleCommonResult<?> cause) {
+        return ExampleCommonResult.fail(cause.getCode(), cause.getMessage());
+    }
+
+    private static <T> ExampleCommonResult<T> formatError() {
+        return ExampleCommonResult.fail(ERROR_CODE, ERROR_FORMAT_MSG);
+    }
+
+    private static <T> ExampleCommonResult<T> cryptError() {
+        return ExampleCommonResult.fail(ERROR_CODE, ERROR_CRYPT_MSG);
+    }
+
+    private static ExampleCommonResult<byte[]> opened(byte[] plain) {
+        return null == plain ? cryptError() : ExampleCommonResult.success(plain);
+    }
+
+    private boolean checkEncrypted(byte[] data) {
+        ExampleCommonResult<Boolean> checkResult = isEncrypt(data);
+        return checkResult.isSuccess() && Boolean.TRUE.equals(checkResult.getData());
+    }
+
+    private boolean checkEncrypted(String data) {
+        ExampleCommonResult<Boolean> checkResult = isEncrypt(data);
+        return checkResult.isSuccess() && Boolean.TRUE.equals(checkResult.getData());
+    }
+
+    /**
+     * 文本信封标记之后base64解码得到的内容，与二进制信封头之后的内容相同；不是合法base64时为空
+     */
+    private static byte[] textBody(String data) {
+        try {
+            return Base64.getDecoder().decode(data.substring(TEXT_HEADER.length()));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 取当前数据密钥并登记用量；已用满或过期时生成新的数据密钥，并发请求只生成一次
+     *
+     * @param length 本次加密的明文长度
+     */
+    private ExampleCommonResult<DataKey> currentKey(long length) {
+        DataKey key = current;
+        if (null != key && key.reserve(length, this)) return ExampleCommonResult.success(key);
+
+        synchronized (this) {
+            key = current;
+            if (null != key && key.reserve(length, this)) return ExampleCommonResult.success(key);
+
+            byte[] raw = new byte[CipherKeyring.KEY_LENGTH];
+            RANDOM.nextBytes(raw);
+            ExampleCommonResult<byte[]> wrapped = keyService.encryptByte(raw);
+            wrapCalls.increment();
+            if (!wrapped.isSuccess()) return fail(wrapped);
+
+            byte[] data = wrapped.getData();
+            if (!CipherEnvelope.hasPrefix(data) || data.length > MAX_WRAPPED_LENGTH) {
+                return ExampleCommonResult.fail(ERROR_CODE, ERROR_WRAP_MSG);
+            }
+
+            key = new DataKey(raw, data, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxAgeMillis));
+            Arrays.fill(raw, (byte) 0);
+            //新密钥至少加密本条，单条超过字节上限时也不再重新生成
+            key.records.incrementAndGet();
+            key.bytes.addAndGet(length);
+            synchronized (cache) {
+                cache.put(key.header, key);
+            }
+            current = key;
+            return ExampleCommonResult.success(key);
+        }
+    }
+
+    /**
+     * 信封中数据密钥对应的密钥，先查当前密钥及缓存，未命中时由加密机解密；
+     * 同一数据密钥同时只有一个线程解密，其余线程等待同一结果
+     *
+     * @param body   信封头之后的内容
+     * @param offset 2字节长度的起始位置
+     */
+    private ExampleCommonResult<DataKey> key(byte[] body, int offset) {
+        if (body.length < offset + 2) return formatError();
+
+        int wrappedLength = (body[offset] & 0xFF) << 8 | body[offset + 1] & 0xFF;
+        if (body.length < offset + 2 + wrappedLength + IV_LENGTH) return formatError();
+
+        //按原数组的区间比较，命中时不复制
+        ByteBuffer header = ByteBuffer.wrap(body, offset, 2 + wrappedLength);
+        DataKey key = current;
+        if (null != key && key.header.equals(header)) return ExampleCommonResult.success(key);
+
+        synchronized (cache) {
+            key = cache.get(header);
+        }
+        if (null != key) return ExampleCommonResult.success(key);
+
+        byte[] wrapped = Arrays.copyOfRange(body, offset + 2, offset + 2 + wrappedLength);
+        //不是密文时加密机会原样返回，不能当作数据密钥使用
+        if (!CipherEnvelope.hasPrefix(wrapped)) return formatError();
+
+        //映射的键不能引用调用方的数组
+        ByteBuffer owned = ByteBuffer.wrap(Arrays.copyOfRange(body, offset, offset + 2 + wrappedLength));
+        CompletableFuture<ExampleCommonResult<DataKey>> flight = new CompletableFuture<>();
+        CompletableFuture<ExampleCommonResult<DataKey>> running = unwrapping.putIfAbsent(owned, flight);
+        if (null != running) return running.join();
+
+        try {
+            //上一次解密可能在未命中缓存之后才结束：结果先写入缓存，再移出解密中的映射
+            synchronized (cache) {
+                key = cache.get(header);
+            }
+            ExampleCommonResult<DataKey> result = null != key ? ExampleCommonResult.success(key) : unwrap(wrapped);
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            unwrapping.remove(owned, flight);
+        }
+    }
+
+    /**
+     * 由加密机解密数据密钥并写入缓存
+     */
+    private ExampleCommonResult<DataKey> unwrap(byte[] wrapped) {
+        ExampleCommonResult<byte[]> unwrapped = keyService.decryptByte(wrapped);
+        unwrapCalls.increment();
+        if (!unwrapped.isSuccess()) return fail(unwrapped);
+        if (null == unwrapped.getData() || unwrapped.getData().length != CipherKeyring.KEY_LENGTH) return formatError();
+
+        DataKey key = new DataKey(unwrapped.getData(), wrapped, System.nanoTime());
+        Arrays.fill(unwrapped.getData(), (byte) 0);
+        synchronized (cache) {
+            cache.put(key.header, key);
+        }
+        return ExampleCommonResult.success(key);
+    }
+
+    /**
+     * 加密为信封内容：数据密钥密文 + IV + 密文，前面预留headerLength字节给信封头，失败时返回null
+     */
+    private static byte[] seal(DataKey key, byte[] plain, int headerLength) {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = CIPHER.get();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key.cipherKey, new IvParameterSpec(iv));
+            int payload = headerLength + key.header.remaining() + IV_LENGTH;
+            byte[] envelope = new byte[payload + cipher.getOutputSize(plain.length)];
+            key.header.duplicate().get(envelope, headerLength, key.header.remaining());
+            System.arraycopy(iv, 0, envelope, payload - IV_LENGTH, IV_LENGTH);
+            int length = cipher.doFinal(plain, 0, plain.length, envelope, payload);
+
+            return payload + length == envelope.length ? envelope : Arrays.copyOf(envelope, payload + length);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解密信封内容，失败时返回null
+     *
+     * @param offset 2字节长度的起始位置，即信封头长度
+     */
+    private static byte[] open(DataKey key, byte[] body, int offset) {
+        int payload = offset + key.header.remaining() + IV_LENGTH;
+        Cipher cipher = CIPHER.get();
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key.cipherKey, new IvParameterSpec(body, payload - IV_LENGTH, IV_LENGTH));
+            return cipher.doFinal(body, payload, body.length - payload);
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 对信封头之后的全部内容计算HMAC-SM3，二进制与文本格式的mac相同
+     */
+    private static String mac(DataKey key, byte[] body, int offset) {
+        Mac hmac = HMAC.get();
+        try {
+            hmac.init(key.macKey);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(e);
+        }
+        hmac.update(body, offset, body.length - offset);
+        return HexUtil.encodeHexStr(hmac.doFinal());
+    }
+
+    private static boolean verify(DataKey key, byte[] body, int offset, String mac) {
+        return MessageDigest.isEqual(mac(key, body, offset).getBytes(StandardCharsets.ISO_8859_1),
+                mac.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> encryptByte(byte[] plainByte) {
+        //非空判断
+        if (null == plainByte || plainByte.length == 0) return ExampleCommonResult.success(new byte[0]);
+        //加密前检查是否已加密
+        if (checkEncrypted(plainByte)) return ExampleCommonResult.success(plainByte);
+
+        ExampleCommonResult<DataKey> key = currentKey(plainByte.length);
+        if (!key.isSuccess()) return fail(key);
+
+        byte[] envelope = seal(key.getData(), plainByte, BINARY_HEADER.length);
+        if (null == envelope) return cryptError();
+        System.arraycopy(BINARY_HEADER, 0, envelope, 0, BINARY_HEADER.length);
+        return ExampleCommonResult.success(envelope);
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptBase64(String plainBase64) {
+        //非空判断
+        if (CharSequenceUtil.isBlank(plainBase64)) return ExampleCommonResult.success("");
+        //加密前检查是否已加密
+        if (checkEncrypted(plainBase64)) return ExampleCommonResult.success(plainBase64);
+
+        byte[] plain = plainBase64.getBytes(StandardCharsets.UTF_8);
+        ExampleCommonResult<DataKey> key = currentKey(plain.length);
+        if (!key.isSuccess()) return fail(key);
+
+        byte[] envelope = seal(key.getData(), plain, 0);
+        return null == envelope ? cryptError()
+                : ExampleCommonResult.success(TEXT_HEADER + Base64.getEncoder().encodeToString(envelope));
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptByte(byte[] cipherByte) {
+        //非空判断
+        if (null == cipherByte || cipherByte.length == 0) return ExampleCommonResult.success(new byte[0]);
+        //旧格式密文由加密机解密
+        if (!CipherEnvelope.isDataKey(cipherByte)) return keyService.decryptByte(cipherByte);
+
+        ExampleCommonResult<DataKey> key = key(cipherByte, BINARY_HEADER.length);
+        if (!key.isSuccess()) return fail(key);
+
+        return opened(open(key.getData(), cipherByte, BINARY_HEADER.length));
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptBase64(String cipherBase64) {
+        //非空判断
+        if (CharSequenceUtil.isBlank(cipherBase64)) return ExampleCommonResult.success("");
+        //旧格式密文由加密机解密
+        if (!CipherEnvelope.isDataKey(cipherBase64)) return keyService.decryptBase64(cipherBase64);
+
+        byte[] body = textBody(cipherBase64);
+        if (null == body) return formatError();
+
+        ExampleCommonResult<DataKey> key = key(body, 0);
+        if (!key.isSuccess()) return fail(key);
+
+        byte[] plain = open(key.getData(), body, 0);
+        return null == plain ? cryptError() : ExampleCommonResult.success(new String(plain, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacByte(byte[] data) {
+        if (null == data || !CipherEnvelope.isDataKey(data)) return keyService.generateMacByte(data);
+
+        ExampleCommonResult<DataKey> key = key(data, BINARY_HEADER.length);
+        return key.isSuccess() ? ExampleCommonResult.success(mac(key.getData(), data, BINARY_HEADER.length))
+                : fail(key);
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacBase64(String base64Data) {
+        if (!CipherEnvelope.isDataKey(base64Data)) return keyService.generateMacBase64(base64Data);
+
+        byte[] body = textBody(base64Data);
+        if (null == body) return formatError();
+
+        ExampleCommonResult<DataKey> key = key(body, 0);
+        return key.isSuccess() ? ExampleCommonResult.success(mac(key.getData(), body, 0)) : fail(key);
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacByte(DecryptMacParam byteParam) {
+        byte[] data = byteParam.getCipherByte();
+        String mac = byteParam.getMac();
+        if (null == data || CharSequenceUtil.isBlank(mac) || !CipherEnvelope.isDataKey(data))
+            return keyService.verifyMacByte(byteParam);
+
+        ExampleCommonResult<DataKey> key = key(data, BINARY_HEADER.length);
+        if (!key.isSuccess()) return fail(key);
+
+        return verify(key.getData(), data, BINARY_HEADER.length, mac) ? ExampleCommonResult.success(true)
+                : ExampleCommonResult.fail(ERROR_CODE, MAC_ERROR_MSG);
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacBase64(DecryptMacParam base64Param) {
+        String data = base64Param.getCipherBase64();
+        String mac = base64Param.getMac();
+        if (CharSequenceUtil.isBlank(mac) || !CipherEnvelope.isDataKey(data))
+            return keyService.verifyMacBase64(base64Param);
+
+        byte[] body = textBody(data);
+        if (null == body) return formatError();
+
+        ExampleCommonResult<DataKey> key = key(body, 0);
+        if (!key.isSuccess()) return fail(key);
+
+        return verify(key.getData(), body, 0, mac) ? ExampleCommonResult.success(true)
+                : ExampleCommonResult.fail(ERROR_CODE, MAC_ERROR_MSG);
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacByte(byte[] plainByte) {
+        //空值、旧格式密文的处理与加密机一致
+        if (null == plainByte || plainByte.length == 0
+                || checkEncrypted(plainByte) && !CipherEnvelope.isDataKey(plainByte))
+            return keyService.encryptMacByte(plainByte);
+
+        ExampleCommonResult<byte[]> cipher = encryptByte(plainByte);
+        if (!cipher.isSuccess()) return fail(cipher);
+
+        ExampleCommonResult<String> mac = generateMacByte(cipher.getData());
+        return mac.isSuccess() ? ExampleCommonResult.success(new EncryptMacResult(cipher.getData(), mac.getData()))
+                : fail(mac);
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacBase64(String plainBase64) {
+        //空值、旧格式密文的处理与加密机一致
+        if (CharSequenceUtil.isBlank(plainBase64)
+                || checkEncrypted(plainBase64) && !CipherEnvelope.isDataKey(plainBase64))
+            return keyService.encryptMacBase64(plainBase64);
+
+        ExampleCommonResult<String> cipher = encryptBase64(plainBase64);
+        if (!cipher.isSuccess()) return fail(cipher);
+
+        ExampleCommonResult<String> mac = generateMacBase64(cipher.getData());
+        return mac.isSuccess() ? ExampleCommonResult.success(new EncryptMacResult(cipher.getData(), mac.getData()))
+                : fail(mac);
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptMacByte(DecryptMacParam byteParam) {
+        byte[] data = byteParam.getCipherByte();
+        String mac = byteParam.getMac();
+        if (null == data || CharSequenceUtil.isBlank(mac) || !CipherEnvelope.isDataKey(data))
+            return keyService.decryptMacByte(byteParam);
+
+        ExampleCommonResult<DataKey> key = key(data, BINARY_HEADER.length);
+        if (!key.isSuccess()) return fail(key);
+        //校验通过后才解密
+        if (!verify(key.getData(), data, BINARY_HEADER.length, mac))
+            return ExampleCommonResult.fail(ERROR_CODE, MAC_ERROR_MSG);
+
+        return opened(open(key.getData(), data, BINARY_HEADER.length));
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptMacBase64(DecryptMacParam base64Param) {
+        String data = base64Param.getCipherBase64();
+        String mac = base64Param.getMac();
+        if (CharSequenceUtil.isBlank(mac) || !CipherEnvelope.isDataKey(data))
+            return keyService.decryptMacBase64(base64Param);
+
+        byte[] body = textBody(data);
+        if (null == body) return formatError();
+
+        ExampleCommonResult<DataKey> key = key(body, 0);
+        if (!key.isSuccess()) return fail(key);
+        //校验通过后才解密
+        if (!verify(key.getData(), body, 0, mac)) return ExampleCommonResult.fail(ERROR_CODE, MAC_ERROR_MSG);
+
+        byte[] plain = open(key.getData(), body, 0);
+        return null == plain ? cryptError() : ExampleCommonResult.success(new String(plain, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(byte[] cipherByte) {
+        return keyService.isEncrypt(cipherByte);
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(ByteBuffer cipherBuffer) {
+        return keyService.isEncrypt(cipherBuffer);
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(String cipherBase64) {
+        return keyService.isEncrypt(cipherBase64);
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        //每条密文随机IV，且数据密钥会更换
+        return false;
+    }
+
+    @Override
+    public int getKeyVersion() {
+        //信封的密钥版本即数据密钥密文的版本
+        return keyService.getKeyVersion();
+    }
+
+    /**
+     * 数据密钥及其在信封中的密文
+     */
+    private static final class DataKey {
+
+        private final SecretKeySpec cipherKey;
+
+        private final SecretKeySpec macKey;
+
+        //2字节长度 + 数据密钥密文，原样写入信封，也作为缓存key
+        private final ByteBuffer header;
+
+        //加密截止时间，System.nanoTime
+        private final long expiresAt;
+
+        private final AtomicLong records = new AtomicLong();
+
+        private final AtomicLong bytes = new AtomicLong();
+
+        private DataKey(byte[] key, byte[] wrapped, long expiresAt) {
+            //同一密钥不同时用于加密和mac
+            byte[] encKey = derive(key, ENC_LABEL);
+            byte[] macKey = derive(key, MAC_LABEL);
+            this.cipherKey = new SecretKeySpec(encKey, 0, CipherKeyring.KEY_LENGTH, "SM4");
+            this.macKey = new SecretKeySpec(macKey, HMAC_ALGORITHM);
+            Arrays.fill(encKey, (byte) 0);
+            Arrays.fill(macKey, (byte) 0);
+            byte[] header = new byte[2 + wrapped.length];
+            header[0] = (byte) (wrapped.length >>> 8);
+            header[1] = (byte) wrapped.length;
+            System.arraycopy(wrapped, 0, header, 2, wrapped.length);
+            this.header = ByteBuffer.wrap(header).asReadOnlyBuffer();
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * 子密钥：HMAC-SM3(数据密钥, 标签)，32字节
+         */
+        private static byte[] derive(byte[] key, byte[] label) {
+            Mac hmac = HMAC.get();
+            try {
+                hmac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException(e);
+            }
+            return hmac.doFinal(label);
+        }
+
+        /**
+         * 登记一次加密，超出任一上限时返回false
+         */
+        private boolean reserve(long length, EnvelopeCipherServiceImpl limits) {
+            return System.nanoTime() - expiresAt < 0 && records.incrementAndGet() <= limits.maxRecords
+                    && bytes.addAndGet(length) <= limits.maxBytes;
+        }
+    }
+}
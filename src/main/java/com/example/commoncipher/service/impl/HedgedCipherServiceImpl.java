@@ -0,0 +1,603 @@
+package com.example.commoncipher.service.impl;
+
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * ClassName: HedgedCipherServiceImpl <br/>
+ * Description: 多个加密机节点的组合服务，慢请求对冲发送到其他节点，异常节点临时剔除 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 请求先发往轮询选出的节点，超过该节点近期耗时的分位数(默认p95)仍未返回时，向另一个节点发送相同请求，
+ * 取最先成功的结果并取消其余请求；节点返回失败时立即转发下一个节点；mac校验不通过是确定的结果，直接返回。<br/>
+ * 节点近期的错误率或分位耗时超过阈值时剔除一段时间，全部节点被剔除时仍按轮询使用。<br/>
+ * 流及文件使用接口默认实现，最终经过本类的对冲调用；传入的线程池不使用，后端调用在内部线程池执行，
+ * 对冲定时线程只发出请求，不在其上执行节点调用或建立连接
+ */
+public class HedgedCipherServiceImpl implements EnDecryptService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgedCipherServiceImpl.class);
+
+    private static final String ERROR_CODE = "99999999";
+
+    //节点统计的滑动窗口大小
+    private static final int WINDOW_SIZE = 100;
+
+    //样本数不足时不计算分位数，也不剔除节点
+    private static final int MIN_SAMPLES = 20;
+
+    //对冲延迟使用的分位数
+    @Value("${hard.cipher.hedge.percentile:0.95}")
+    public double hedgePercentile = 0.95;
+
+    //最小对冲延迟，毫秒，样本不足时使用
+    @Value("${hard.cipher.hedge.min-delay:10}")
+    public long minHedgeDelay = 10;
+
+    //单个请求最多发送到几个节点，含对冲及失败转发
+    @Value("${hard.cipher.hedge.max-attempts:2}")
+    public int maxAttempts = 2;
+
+    //节点近期错误率超过该值时剔除
+    @Value("${hard.cipher.hedge.eject.error-rate:0.5}")
+    public double ejectErrorRate = 0.5;
+
+    //节点近期分位耗时超过该值时剔除，毫秒
+    @Value("${hard.cipher.hedge.eject.latency:1000}")
+    public long ejectLatency = 1000;
+
+    //节点剔除时长，毫秒
+    @Value("${hard.cipher.hedge.eject.duration:10000}")
+    public long ejectDuration = 10_000;
+
+    private final Node[] nodes;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final ThreadPoolExecutor backendExecutor;
+
+    //调用线程发出首个请求时使用：线程池已满则在调用线程执行本地节点
+    private final Executor callerExecutor = command -> execute(command, true);
+
+    //对冲定时线程及其他请求的回调线程使用：线程池已满时该次请求失败，不在这些线程上执行节点调用
+    private final Executor detachedExecutor = command -> execute(command, false);
+
+    private final ScheduledExecutorService hedgeTimer;
+
+    /**
+     * @param backends 各节点的加密服务，结果须一致
+     */
+    public HedgedCipherServiceImpl(List<? extends EnDecryptService> backends) {
+        if (backends.isEmpty()) throw new IllegalArgumentException("at least one backend is required");
+
+        this.nodes = backends.stream().map(Node::new).toArray(Node[]::new);
+        //远程节点的异步调用不占用线程，本地节点按需创建线程
+        this.backendExecutor = new ThreadPoolExecutor(0, 256, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new NamedThreadFactory("cipher-hedge-", true));
+        this.hedgeTimer = Executors.newSingleThreadScheduledExecutor(
+                new NamedThreadFactory("cipher-hedge-timer-", true));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(byte[] cipherByte) {
+        //密文识别只看格式，各节点一致，不需要远程调用
+        return nodes[0].backend.isEncrypt(cipherByte);
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(ByteBuffer cipherBuffer) {
+        return nodes[0].backend.isEncrypt(cipherBuffer);
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(String cipherBase64) {
+        return nodes[0].backend.isEncrypt(cipherBase64);
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        //请求可能由任一节点处理，所有节点均为确定性加密时才成立
+        for (Node node : nodes) {
+            if (!node.backend.isDeterministic()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int getKeyVersion() {
+        //各节点应使用相同的密钥环
+        return nodes[0].backend.getKeyVersion();
+    }
+
+    @Override
+    public int[] getLookupKeyVersions() {
+        return nodes[0].backend.getLookupKeyVersions();
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> encryptByte(byte[] plainByte) {
+        return encryptByteAsync(plainByte, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> encryptByteAsync(byte[] plainByte, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptByteAsync(plainByte, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptBase64(String plainBase64) {
+        return encryptBase64Async(plainBase64, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> encryptBase64Async(String plainBase64, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptBase64Async(plainBase64, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptByte(byte[] cipherByte) {
+        return decryptByteAsync(cipherByte, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> decryptByteAsync(byte[] cipherByte, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptByteAsync(cipherByte, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptBase64(String cipherBase64) {
+        return decryptBase64Async(cipherBase64, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> decryptBase64Async(String cipherBase64, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptBase64Async(cipherBase64, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacByte(byte[] data) {
+        return generateMacByteAsync(data, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> generateMacByteAsync(byte[] data, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.generateMacByteAsync(data, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacBase64(String base64Data) {
+        return generateMacBase64Async(base64Data, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> generateMacBase64Async(String base64Data, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.generateMacBase64Async(base64Data, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacByte(DecryptMacParam byteParam) {
+        return verifyMacByteAsync(byteParam, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<Boolean>> verifyMacByteAsync(DecryptMacParam byteParam,
+                                                                              Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.verifyMacByteAsync(byteParam, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacBase64(DecryptMacParam base64Param) {
+        return verifyMacBase64Async(base64Param, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<Boolean>> verifyMacBase64Async(DecryptMacParam base64Param,
+                                                                                Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.verifyMacBase64Async(base64Param, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacByte(byte[] plainByte) {
+        return encryptMacByteAsync(plainByte, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacByteAsync(byte[] plainByte,
+                                                                                        Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptMacByteAsync(plainByte, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacBase64(String plainBase64) {
+        return encryptMacBase64Async(plainBase64, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacBase64Async(String plainBase64,
+                                                                                          Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptMacBase64Async(plainBase64, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptMacByte(DecryptMacParam byteParam) {
+        return decryptMacByteAsync(byteParam, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> decryptMacByteAsync(DecryptMacParam byteParam,
+                                                                              Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptMacByteAsync(byteParam, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptMacBase64(DecryptMacParam base64Param) {
+        return decryptMacBase64Async(base64Param, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> decryptMacBase64Async(DecryptMacParam base64Param,
+                                                                                Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptMacBase64Async(base64Param, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes) {
+        return encryptByteBatchAsync(plainBytes, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> encryptByteBatchAsync(List<byte[]> plainBytes,
+                                                                                      Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptByteBatchAsync(plainBytes, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s) {
+        return encryptBase64BatchAsync(plainBase64s, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> encryptBase64BatchAsync(List<String> plainBase64s,
+                                                                                        Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptBase64BatchAsync(plainBase64s, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes, int keyVersion) {
+        //节点只有同步的按版本加密方法，在executor上执行
+        return hedge((backend, backendExecutor) -> CompletableFuture.supplyAsync(
+                () -> backend.encryptByteBatch(plainBytes, keyVersion), backendExecutor)).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s, int keyVersion) {
+        return hedge((backend, backendExecutor) -> CompletableFuture.supplyAsync(
+                () -> backend.encryptBase64Batch(plainBase64s, keyVersion), backendExecutor)).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> decryptByteBatch(List<byte[]> cipherBytes) {
+        return decryptByteBatchAsync(cipherBytes, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptByteBatchAsync(List<byte[]> cipherBytes,
+                                                                                      Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptByteBatchAsync(cipherBytes, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> decryptBase64Batch(List<String> cipherBase64s) {
+        return decryptBase64BatchAsync(cipherBase64s, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> decryptBase64BatchAsync(List<String> cipherBase64s,
+                                                                                        Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptBase64BatchAsync(cipherBase64s, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacByteBatch(List<byte[]> plainBytes) {
+        return encryptMacByteBatchAsync(plainBytes, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacByteBatchAsync(
+            List<byte[]> plainBytes, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptMacByteBatchAsync(plainBytes, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacBase64Batch(List<String> plainBase64s) {
+        return encryptMacBase64BatchAsync(plainBase64s, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacBase64BatchAsync(
+            List<String> plainBase64s, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.encryptMacBase64BatchAsync(plainBase64s, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> decryptMacByteBatch(List<DecryptMacParam> byteParams) {
+        return decryptMacByteBatchAsync(byteParams, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptMacByteBatchAsync(
+            List<DecryptMacParam> byteParams, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptMacByteBatchAsync(byteParams, backendExecutor));
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> decryptMacBase64Batch(List<DecryptMacParam> base64Params) {
+        return decryptMacBase64BatchAsync(base64Params, null).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> decryptMacBase64BatchAsync(
+            List<DecryptMacParam> base64Params, Executor executor) {
+        return hedge((backend, backendExecutor) -> backend.decryptMacBase64BatchAsync(base64Params, backendExecutor));
+    }
+
+
+    /**
+     * 各节点当前是否被剔除，顺序与构造时传入的节点一致
+     */
+    public boolean[] getEjected() {
+        long now = System.nanoTime();
+        boolean[] ejected = new boolean[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            ejected[i] = nodes[i].isEjected(now);
+        }
+        return ejected;
+    }
+
+    @Override
+    public void close() {
+        hedgeTimer.shutdownNow();
+        backendExecutor.shutdownNow();
+        for (Node node : nodes) {
+            if (node.backend instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("~~~~~close cipher backend error: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void execute(Runnable command, boolean mayRunInline) {
+        try {
+            backendExecutor.execute(command);
+        } catch (RejectedExecutionException e) {
+            if (!mayRunInline || backendExecutor.isShutdown()) throw e;
+            command.run();
+        }
+    }
+
+    private <T> CompletableFuture<ExampleCommonResult<T>> hedge(
+            BiFunction<EnDecryptService, Executor, CompletableFuture<ExampleCommonResult<T>>> call) {
+        return new HedgedCall<>(call).start();
+    }
+
+    /**
+     * 轮询选择未尝试过的节点，优先未被剔除的节点
+     *
+     * @return 无可用节点时返回空
+     */
+    private Node pick(List<Node> tried) {
+        long now = System.nanoTime();
+        int start = next.getAndIncrement();
+        Node fallback = null;
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[Math.floorMod(start + i, nodes.length)];
+            if (tried.contains(node)) continue;
+            if (!node.isEjected(now)) return node;
+            if (null == fallback) fallback = node;
+        }
+        return fallback;
+    }
+
+    /**
+     * 失败结果是否为确定的结果，其他节点会返回相同的失败，不需要重试
+     */
+    private static boolean isDefinitive(ExampleCommonResult<?> result) {
+        return MAC_ERROR_MSG.equals(result.getMessage());
+    }
+
+    /**
+     * 一次对冲调用：记录已发送的节点及未完成的请求，首个成功或确定的结果即为最终结果
+     */
+    private final class HedgedCall<T> {
+
+        private final BiFunction<EnDecryptService, Executor, CompletableFuture<ExampleCommonResult<T>>> call;
+
+        private final CompletableFuture<ExampleCommonResult<T>> result = new CompletableFuture<>();
+
+        private final List<Node> tried = new ArrayList<>(maxAttempts);
+
+        private final List<Attempt<T>> attempts = new ArrayList<>(maxAttempts);
+
+        private int outstanding;
+
+        private ExampleCommonResult<T> lastFailure;
+
+        HedgedCall(BiFunction<EnDecryptService, Executor, CompletableFuture<ExampleCommonResult<T>>> call) {
+            this.call = call;
+        }
+
+        CompletableFuture<ExampleCommonResult<T>> start() {
+            Node primary;
+            synchronized (this) {
+                primary = launch(callerExecutor);
+            }
+
+            if (null != primary && maxAttempts > 1 && !result.isDone()) {
+                hedgeTimer.schedule(this::hedgeIfPending, primary.hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            }
+            return result;
+        }
+
+        private void hedgeIfPending() {
+            synchronized (this) {
+                if (!result.isDone() && tried.size() < maxAttempts) launch(detachedExecutor);
+            }
+        }
+
+        /**
+         * 发送到下一个节点，调用方持有锁；节点调用须立即返回，远程节点的连接在后台建立，
+         * 本地节点在executor上执行
+         */
+        private Node launch(Executor executor) {
+            Node node = pick(tried);
+            if (null == node) {
+                if (outstanding == 0) complete(null != lastFailure ? lastFailure
+                        : ExampleCommonResult.fail(ERROR_CODE, "NO_AVAILABLE_CIPHER_NODE"));
+                return null;
+            }
+
+            tried.add(node);
+            outstanding++;
+            long start = System.nanoTime();
+            CompletableFuture<ExampleCommonResult<T>> attempt;
+            try {
+                attempt = call.apply(node.backend, executor);
+            } catch (RuntimeException e) {
+                attempt = CompletableFuture.failedFuture(e);
+            }
+            attempts.add(new Attempt<>(node, start, attempt));
+            attempt.whenComplete((response, e) -> onAttempt(node, start, response, e));
+            return node;
+        }
+
+        private synchronized void onAttempt(Node node, long start, ExampleCommonResult<T> response, Throwable e) {
+            outstanding--;
+            if (result.isDone()) return;
+
+            boolean success = null == e && null != response && (response.isSuccess() || isDefinitive(response));
+            node.record(System.nanoTime() - start, !success);
+            if (success) {
+                complete(response);
+                return;
+            }
+
+            lastFailure = null != response ? response : ExampleCommonResult.fail(ERROR_CODE, String.valueOf(
+                    e instanceof CompletionException && null != e.getCause() ? e.getCause() : e));
+            //失败立即转发下一个节点，已达上限时等待其余请求
+            if (tried.size() < maxAttempts) {
+                launch(detachedExecutor);
+            } else if (outstanding == 0) {
+                complete(lastFailure);
+            }
+        }
+
+        /**
+         * 完成调用并取消其余请求；被取消的请求以已等待的时间计入节点耗时，超过该节点对冲延迟的计为慢请求，
+         * 否则长期停顿的节点总是输给对冲请求，不会被剔除
+         */
+        private void complete(ExampleCommonResult<T> response) {
+            result.complete(response);
+
+            long now = System.nanoTime();
+            for (Attempt<T> attempt : attempts) {
+                if (attempt.future().isDone()) continue;
+
+                long elapsed = now - attempt.start();
+                attempt.node().record(elapsed, elapsed >= attempt.node().hedgeDelayNanos());
+                attempt.future().cancel(true);
+            }
+        }
+    }
+
+    private record Attempt<T>(Node node, long start, CompletableFuture<ExampleCommonResult<T>> future) {
+    }
+
+    /**
+     * 节点及其近期的耗时、错误统计
+     */
+    private final class Node {
+
+        private final EnDecryptService backend;
+
+        private final long[] latencies = new long[WINDOW_SIZE];
+
+        private final boolean[] errors = new boolean[WINDOW_SIZE];
+
+        private int count;
+
+        private int index;
+
+        private volatile long ejectedUntil;
+
+        Node(EnDecryptService backend) {
+            this.backend = backend;
+        }
+
+        boolean isEjected(long now) {
+            return ejectedUntil - now > 0;
+        }
+
+        synchronized void record(long nanos, boolean error) {
+            latencies[index] = nanos;
+            errors[index] = error;
+            index = (index + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+            if (count < MIN_SAMPLES) return;
+
+            int errorCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (errors[i]) errorCount++;
+            }
+
+            double errorRate = (double) errorCount / count;
+            long latency = percentile(hedgePercentile);
+            if (errorRate > ejectErrorRate || latency > TimeUnit.MILLISECONDS.toNanos(ejectLatency)) {
+                log.warn("~~~~~eject cipher node {}, errorRate:{}, p{} latency:{}ms", backend, errorRate,
+                        Math.round(hedgePercentile * 100), TimeUnit.NANOSECONDS.toMillis(latency));
+                ejectedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectDuration);
+                //恢复后重新统计
+                count = 0;
+                index = 0;
+            }
+        }
+
+        /**
+         * 对冲延迟：近期耗时的分位数，不小于最小对冲延迟
+         */
+        synchronized long hedgeDelayNanos() {
+            long minDelay = TimeUnit.MILLISECONDS.toNanos(minHedgeDelay);
+            return count < MIN_SAMPLES ? minDelay : Math.max(minDelay, percentile(hedgePercentile));
+        }
+
+        private long percentile(double quantile) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, Math.min(count - 1, (int) Math.ceil(quantile * count) - 1))];
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package com.example.commoncipher.service.impl;
 
 import cn.hutool.core.codec.Base64;
+import cn.hutool.core.codec.Base64Decoder;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.text.CharSequenceUtil;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.CipherMode;
+import cn.hutool.crypto.CryptoException;
+import cn.hutool.crypto.Mode;
+import cn.hutool.crypto.Padding;
+import cn.hutool.crypto.SecureUtil;
 import cn.hutool.crypto.SmUtil;
+import cn.hutool.crypto.symmetric.SM4;
+import cn.hutool.crypto.symmetric.SymmetricCrypto;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.keyring.CipherKeyring;
 import com.example.commoncipher.param.DecryptMacParam;
 import com.example.commoncipher.result.EncryptMacResult;
 import com.example.commoncipher.result.ExampleCommonResult;
@@ -11,50 +25,147 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ClassName: HutoolBaffleServiceImpl <br/>
  * Description: Hutool SM4加密挡板 <br/>
  * Date: 2022-12-01 <br/>
+ * <p>
+ * 密钥按版本管理，见{@link CipherKeyring}：版本0为内置密钥，新数据使用当前版本加密并把版本写入信封头，
+ * 解密时按信封头中的版本选择密钥，版本不在密钥环中时返回失败
  */
 public class HutoolBaffleServiceImpl implements EnDecryptService {
 
     private static final String ERROR_CODE = "99999999";
-    private static final String ERROR_MAC_MSG = "MAC_CHECK_ERROR";
+    private static final String ERROR_MAC_MSG = MAC_ERROR_MSG;
 
+    //内置密钥，即密钥版本0
     private static final byte[] KEY = "1234567887654321".getBytes(StandardCharsets.UTF_8);
 
+    private static final String HMAC_ALGORITHM = "HmacSM3";
+
+    //SM3与HMAC-SM3的输出长度，mac列为其hex形式
+    private static final int MAC_LENGTH = 32;
+
+    private static final String ERROR_FORMAT_MSG = "UNSUPPORTED_ENVELOPE_FORMAT";
+
+    private static final String ERROR_KEY_MSG = "UNKNOWN_KEY_VERSION";
+
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private static final int SM4_BLOCK_SIZE = 16;
+
+    //加密与mac合并计算时的分块大小，每块密文写入后仍在缓存中即计算mac
+    private static final int FUSED_CHUNK_SIZE = 16 * 1024;
+
     //是否打印加密相关调用日志
     @Value("${encrypt.log.info.print:false}")
     public boolean isPrint;
 
+    //byte[]是否以二进制信封格式加密，false时仍写入[SM4]+base64的旧格式；两种格式均可解密
+    @Value("${encrypt.byte.binary:true}")
+    public boolean binaryEnvelope = true;
+
+    //流式加解密每次读取的分块大小
+    @Value("${encrypt.stream.chunk-size:65536}")
+    public int streamChunkSize = 65536;
+
+    //文件加解密时每个并行分段的大小，按SM4分组长度向下对齐
+    @Value("${encrypt.file.segment-size:33554432}")
+    public int fileSegmentSize = 32 * 1024 * 1024;
+
+    //文件加解密同时处理的分段数，即专用线程数；每个线程只持有一个流式分块大小的读写缓冲区
+    @Value("${encrypt.file.parallelism:4}")
+    public int fileParallelism = 4;
+
     private static final Logger log = LoggerFactory.getLogger(HutoolBaffleServiceImpl.class);
 
+    //按版本号下标的密钥，未配置的版本为空
+    private final KeyContext[] keys = new KeyContext[CipherEnvelope.MAX_KEY_VERSION + 1];
+
+    //新数据使用的密钥
+    private final KeyContext current;
+
+    //等值查询需要匹配的版本，当前版本在前
+    private final int[] lookupVersions;
+
+    //文件分段的执行线程，首次加解密文件时创建，空闲时线程退出
+    private volatile ThreadPoolExecutor fileExecutor;
+
+    /**
+     * 只使用内置密钥
+     */
+    public HutoolBaffleServiceImpl() {
+        this(CipherKeyring.empty());
+    }
+
+    /**
+     * @param keyring 密钥环，内置密钥固定为版本0
+     */
+    public HutoolBaffleServiceImpl(CipherKeyring keyring) {
+        keys[0] = new KeyContext(0, KEY);
+        for (int version : keyring.getVersions()) {
+            keys[version] = new KeyContext(version, keyring.getKey(version));
+        }
+        this.current = keys[keyring.getCurrentVersion()];
+        this.lookupVersions = keyring.getLookupVersions();
+    }
+
     private boolean checkByte(byte[] data) {
         return null == data || data.length == 0;
     }
 
     /**
-     * 添加加密前缀
+     * 添加加密前缀，当前密钥版本不为0时前缀后带版本标记
      */
     private String addPrefix(String data) {
         if (CharSequenceUtil.isBlank(data)) return data;
 
         //直接在string形式的密文前面加前缀
-        return ENCRYPT_PREFIX + data;
+        return current.textHeader + data;
     }
 
     /**
-     * 去除加密前缀
+     * 密文所属版本的密钥，调用前需确认已加密；版本不在密钥环中时为空
      */
-    private String removePrefix(String data) {
-        if (CharSequenceUtil.isBlank(data) || data.length() <= ENCRYPT_PREFIX.length()) return data;
+    private KeyContext key(byte[] data, int length) {
+        int version = CipherEnvelope.keyVersion(data, length);
+        return version < 0 ? null : keys[version];
+    }
 
-        //已加密，移除前面固定长度的前缀
-        if (checkEncrypted(data)) return data.substring(ENCRYPT_PREFIX.length());
+    private KeyContext key(String data) {
+        int version = CipherEnvelope.keyVersion(data);
+        return version < 0 ? null : keys[version];
+    }
 
-        return data;
+    private static <T> ExampleCommonResult<T> unknownKey() {
+        return ExampleCommonResult.fail(ERROR_CODE, ERROR_KEY_MSG);
     }
 
     private boolean checkEncrypted(String data) {
@@ -67,6 +178,118 @@ public class HutoolBaffleServiceImpl implements EnDecryptService {
         return checkResult.isSuccess() && Boolean.TRUE.equals(checkResult.getData());
     }
 
+    /**
+     * 沿用前置调用的返回码，用于合并后的加解密+mac方法保持原有的失败返回
+     */
+    private static <T> ExampleCommonResult<T> fail(ExampleCommonResult<?> cause) {
+        return ExampleCommonResult.fail(cause.getCode(), cause.getMessage());
+    }
+
+    private static Mac newHmac(byte[] key) {
+        try {
+            Mac hmac = SecureUtil.createMac(HMAC_ALGORITHM);
+            hmac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            return hmac;
+        } catch (InvalidKeyException e) {
+            throw new CryptoException(e);
+        }
+    }
+
+    /**
+     * 二进制信封的mac是否为HMAC-SM3
+     */
+    private static boolean hmacFormat(byte[] data, int length) {
+        if (!CipherEnvelope.isBinary(data, length)) return false;
+
+        byte format = CipherEnvelope.format(data);
+        return format == CipherEnvelope.FORMAT_SM4_HMAC || format == CipherEnvelope.FORMAT_SM4_HMAC_KEYED;
+    }
+
+    /**
+     * byte[]明文直接加密为二进制信封，密文直接写入信封，不经过base64；
+     * mac不为空时每块密文写入后立即计算mac，加密与mac只遍历一次数据
+     */
+    private byte[] encryptEnvelope(KeyContext key, byte[] plainByte, MacContext mac) {
+        Cipher cipher = key.sm4.get().setMode(CipherMode.encrypt).getCipher();
+        try {
+            byte[] envelope = key.allocate(cipher.getOutputSize(plainByte.length));
+            int position = key.headerLength;
+            for (int offset = 0; offset < plainByte.length; offset += FUSED_CHUNK_SIZE) {
+                int length = cipher.update(plainByte, offset, Math.min(FUSED_CHUNK_SIZE, plainByte.length - offset),
+                        envelope, position);
+                if (null != mac) mac.update(envelope, position, length);
+                position += length;
+            }
+            int length = cipher.doFinal(envelope, position);
+            if (null != mac) mac.update(envelope, position, length);
+            position += length;
+
+            return position == envelope.length ? envelope : Arrays.copyOf(envelope, position);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(e);
+        }
+    }
+
+    /**
+     * 二进制信封直接解密为byte[]明文；mac不为空时解密的同时计算mac，
+     * 输出最后一块明文前完成校验，校验不通过返回null
+     */
+    private byte[] decryptEnvelope(KeyContext key, byte[] envelope, String mac) {
+        MacContext context = null == mac ? null : key.sharedMac(hmacFormat(envelope, envelope.length));
+        Cipher cipher = key.sm4.get().setMode(CipherMode.decrypt).getCipher();
+        int header = CipherEnvelope.payloadOffset(envelope);
+        try {
+            byte[] plain = new byte[cipher.getOutputSize(envelope.length - header)];
+            int position = 0;
+            for (int offset = header; offset < envelope.length; offset += FUSED_CHUNK_SIZE) {
+                int length = Math.min(FUSED_CHUNK_SIZE, envelope.length - offset);
+                if (null != context) context.update(envelope, offset, length);
+                position += cipher.update(envelope, offset, length, plain, position);
+            }
+
+            if (null != context && !context.verify(mac)) {
+                //已解密的部分明文不外泄
+                Arrays.fill(plain, (byte) 0);
+                return null;
+            }
+            position += cipher.doFinal(plain, position);
+
+            return position == plain.length ? plain : Arrays.copyOf(plain, position);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(e);
+        }
+    }
+
+    /**
+     * 旧文本格式加密，返回信封头之后的base64密文字节；mac不为空时直接对该字节计算，不再转String后重新编码
+     */
+    private byte[] encryptText(byte[] plainText, MacContext mac) {
+        byte[] payload = java.util.Base64.getEncoder().encode(current.sm4.get().encrypt(plainText));
+        if (null != mac) mac.update(payload, 0, payload.length);
+        return payload;
+    }
+
+    /**
+     * 对byte[]密文信封头之后的部分计算mac；旧格式即[SM4]之后的base64文本，与generateMacBase64结果一致
+     */
+    private static MacContext mac(KeyContext key, byte[] cipherByte) {
+        int offset = CipherEnvelope.payloadOffset(cipherByte);
+        MacContext mac = key.sharedMac(hmacFormat(cipherByte, cipherByte.length));
+        mac.update(cipherByte, offset, cipherByte.length - offset);
+        return mac;
+    }
+
+    /**
+     * 对[SM4]+base64密文文本中前缀及版本标记之后的部分计算mac，按偏移计算，不截取子串
+     */
+    private static MacContext mac(KeyContext key, String cipherBase64) {
+        byte[] text = cipherBase64.getBytes(StandardCharsets.UTF_8);
+        int offset = CipherEnvelope.payloadOffset(cipherBase64);
+        MacContext mac = key.sharedMac(false);
+        mac.update(text, offset, text.length - offset);
+        return mac;
+    }
+
     @Override
     public ExampleCommonResult<byte[]> encryptByte(byte[] plainByte) {
         //非空判断
@@ -74,7 +297,9 @@ public class HutoolBaffleServiceImpl implements EnDecryptService {
         //加密前检查是否已加密
         if (checkEncrypted(plainByte)) return ExampleCommonResult.success(plainByte);
 
-        //保证encryptBase64方法的入参一定是base64格式
+        if (binaryEnvelope) return ExampleCommonResult.success(encryptEnvelope(current, plainByte, null));
+
+        //旧格式：保证encryptBase64方法的入参一定是base64格式
         ExampleCommonResult<String> result = encryptBase64(Base64.encode(plainByte));
         if (result.isSuccess()) {
             //返回的密文进制未知，不能直接转码，getBytes原文存储，避免转码丢失数据
@@ -93,7 +318,7 @@ public class HutoolBaffleServiceImpl implements EnDecryptService {
 
         if (isPrint) log.info("~~~~~encryptBase64 data:{}", plainBase64);
 
-        return ExampleCommonResult.success(addPrefix(SmUtil.sm4(KEY).encryptBase64(plainBase64)));
+        return ExampleCommonResult.success(addPrefix(current.sm4.get().encryptBase64(plainBase64)));
     }
 
     @Override
@@ -103,7 +328,15 @@ public class HutoolBaffleServiceImpl implements EnDecryptService {
         //解密前检查是否已加密
         if (!checkEncrypted(cipherByte)) return ExampleCommonResult.success(cipherByte);
 
-        //密文byte[]内容是以getByte方式获取的，转回string使用new String()，不丢数据
+        if (CipherEnvelope.isBinary(cipherByte)) {
+            if (!CipherEnvelope.isSupported(CipherEnvelope.format(cipherByte)))
+                return ExampleCommonResult.fail(ERROR_CODE, ERROR_FORMAT_MSG);
+
+            KeyContext key = key(cipherByte, cipherByte.length);
+            return null == key ? unknownKey() : ExampleCommonResult.success(decryptEnvelope(key, cipherByte, null));
+        }
+
+        //旧格式：密文byte[]内容是以getByte方式获取的，转回string使用new String()，不丢数据
         ExampleCommonResult<String> result = decryptBase64(new String(cipherByte));
         if (result.isSuccess()) {
             //decryptBase64方法的出参一定是base64格式，此处可base64.decode得到原始byte[]
@@ -120,20 +353,27 @@ public class HutoolBaffleServiceImpl implements EnDecryptService {
         //解密前检查是否已加密
         if (!checkEncrypted(cipherBase64)) return ExampleCommonResult.success(cipherBase64);
 
-        //已加密的密文，移除前缀
-        cipherBase64 = removePrefix(cipherBase64);
+        KeyContext key = key(cipherBase64);
+        if (null == key) return unknownKey();
+
+        //已确认是密文，直接移除前缀及版本标记
+        cipherBase64 = cipherBase64.substring(CipherEnvelope.payloadOffset(cipherBase64));
         if (isPrint) log.info("~~~~~decryptBase64 data:{}", cipherBase64);
 
-        return ExampleCommonResult.success(SmUtil.sm4(KEY).decryptStr(cipherBase64));
+        return ExampleCommonResult.success(key.sm4.get().decryptStr(cipherBase64));
     }
 
     @Override
     public ExampleCommonResult<String> generateMacByte(byte[] data) {
         //非空判断
-        if (checkByte(data)) return ExampleCommonResult.success("");
+        //传入的非密文，不予计算mac
+        if (checkByte(data) || !checkEncrypted(data)) return ExampleCommonResult.success("");
+
+        KeyContext key = key(data, data.length);
+        if (null == key) return unknownKey();
 
-        //因为是对密文计算mac，密文格式未知，使用new String()，不丢数据
-        return generateMacBase64(new String(data));
+        //直接对信封头之后的密文字节计算mac，二进制密文不能转成String
+        return ExampleCommonResult.success(mac(key, data).doFinalHex());
     }
 
     @Override
@@ -142,23 +382,29 @@ public class HutoolBaffleServiceImpl implements EnDecryptService {
         //传入的非密文，不予计算mac
         if (CharSequenceUtil.isBlank(base64Data) || !checkEncrypted(base64Data)) return ExampleCommonResult.success("");
 
-        //已加密的密文，移除前缀再计算mac
-        base64Data = removePrefix(base64Data);
         //因为是对密文计算mac，string格式的密文编码格式一定与入参格式匹配
         if (isPrint) log.info("~~~~~generateMacBase64 data:{}", base64Data);
 
-        return ExampleCommonResult.success(SmUtil.sm3WithSalt(KEY).digestHex(base64Data));
+        KeyContext key = key(base64Data);
+        return null == key ? unknownKey() : ExampleCommonResult.success(mac(key, base64Data).doFinalHex());
     }
 
     @Override
     public ExampleCommonResult<Boolean> verifyMacByte(DecryptMacParam byteParam) {
         //非空判断
-        if (checkByte(byteParam.getCipherByte()) || CharSequenceUtil.isBlank(byteParam.getMac()))
+        byte[] data = byteParam.getCipherByte();
+        String mac = byteParam.getMac();
+        //传入的非密文，校验mac不通过
+        if (checkByte(data) || CharSequenceUtil.isBlank(mac) || !checkEncrypted(data))
             return ExampleCommonResult.success(false);
 
-        //因为是对密文计算mac，密文格式未知，使用new String()，不丢数据
-        byteParam.setCipherBase64(new String(byteParam.getCipherByte()));
-        return verifyMacBase64(byteParam);
+        if (isPrint) log.info("~~~~~verifyMacByte length:{}, mac:{}", data.length, mac);
+
+        KeyContext key = key(data, data.length);
+        if (null == key) return unknownKey();
+
+        return mac(key, data).verify(mac) ? ExampleCommonResult.success(true)
+                : ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG);
     }
 
     @Override
@@ -171,94 +417,685 @@ public class HutoolBaffleServiceImpl implements EnDecryptService {
         if (CharSequenceUtil.isBlank(data) || CharSequenceUtil.isBlank(mac) ||
                 !checkEncrypted(data)) return ExampleCommonResult.success(false);
 
-        //已加密的密文，移除前缀
-        data = removePrefix(data);
-
         if (isPrint) log.info("~~~~~verifyMacBase64 data:{}, mac:{}", data, mac);
 
-        String newMac = SmUtil.sm3WithSalt(KEY).digestHex(data);
-        return mac.equals(newMac) ? ExampleCommonResult.success(true)
+        KeyContext key = key(data);
+        if (null == key) return unknownKey();
+
+        return mac(key, data).verify(mac) ? ExampleCommonResult.success(true)
                 : ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG);
     }
 
     @Override
     public ExampleCommonResult<EncryptMacResult> encryptMacByte(byte[] plainByte) {
-        ExampleCommonResult<String> encryptResult = encryptBase64(Base64.encode(plainByte));
-
-        if (encryptResult.isSuccess() && CharSequenceUtil.isNotBlank(encryptResult.getData())) {
-            //增加前缀，可判断成密文再去计算mac
-            String data = encryptResult.getData();
-
-            ExampleCommonResult<String> macResult = generateMacBase64(data);
-            if (macResult.isSuccess() && CharSequenceUtil.isNotEmpty(macResult.getData())) {
-                //密文格式未知，不能直接转码，getBytes原文存储，避免转码丢失数据
-                return ExampleCommonResult.success(
-                        new EncryptMacResult(data.getBytes(StandardCharsets.UTF_8), macResult.getData()));
-            }
+        //非空判断
+        if (checkByte(plainByte)) return fail(encryptByte(plainByte));
+        //已加密的直接计算mac
+        if (checkEncrypted(plainByte)) {
+            KeyContext key = key(plainByte, plainByte.length);
+            return null == key ? unknownKey()
+                    : ExampleCommonResult.success(new EncryptMacResult(plainByte, mac(key, plainByte).doFinalHex()));
+        }
 
-            return ExampleCommonResult.fail(macResult.getCode(), macResult.getMessage());
+        if (binaryEnvelope) {
+            //新写入的二进制信封使用HMAC-SM3，与加密在同一次遍历中完成
+            MacContext mac = current.sharedMac(true);
+            byte[] envelope = encryptEnvelope(current, plainByte, mac);
+            return ExampleCommonResult.success(new EncryptMacResult(envelope, mac.doFinalHex()));
         }
-        return ExampleCommonResult.fail(encryptResult.getCode(), encryptResult.getMessage());
+
+        //旧格式：先base64再加密，mac直接对加密得到的base64字节计算
+        MacContext mac = current.sharedMac(false);
+        byte[] payload = encryptText(java.util.Base64.getEncoder().encode(plainByte), mac);
+        byte[] header = current.textHeaderBytes;
+        byte[] cipherByte = Arrays.copyOf(header, header.length + payload.length);
+        System.arraycopy(payload, 0, cipherByte, header.length, payload.length);
+        return ExampleCommonResult.success(new EncryptMacResult(cipherByte, mac.doFinalHex()));
     }
 
     @Override
     public ExampleCommonResult<EncryptMacResult> encryptMacBase64(String plainBase64) {
         //非空判断
-        ExampleCommonResult<String> encryptResult = encryptBase64(plainBase64);
+        if (CharSequenceUtil.isBlank(plainBase64)) return fail(encryptBase64(plainBase64));
+        //已加密的直接计算mac
+        if (checkEncrypted(plainBase64)) {
+            KeyContext key = key(plainBase64);
+            if (null == key) return unknownKey();
 
-        if (encryptResult.isSuccess() && CharSequenceUtil.isNotBlank(encryptResult.getData())) {
-            String data = encryptResult.getData();
+            return ExampleCommonResult.success(new EncryptMacResult(plainBase64, mac(key, plainBase64).doFinalHex()));
+        }
 
-            ExampleCommonResult<String> macResult = generateMacBase64(data);
-            if (macResult.isSuccess() && CharSequenceUtil.isNotEmpty(macResult.getData())) {
-                //密文格式未知，直接当string存储
-                return ExampleCommonResult.success(new EncryptMacResult(data, macResult.getData()));
-            }
+        if (isPrint) log.info("~~~~~encryptMacBase64 data:{}", plainBase64);
 
-            return ExampleCommonResult.fail(macResult.getCode(), macResult.getMessage());
-        }
-        return ExampleCommonResult.fail(encryptResult.getCode(), encryptResult.getMessage());
+        //String密文格式没有格式标记，仍使用加盐SM3，保证旧数据与新数据的mac一致
+        MacContext mac = current.sharedMac(false);
+        byte[] payload = encryptText(plainBase64.getBytes(StandardCharsets.UTF_8), mac);
+        //base64只包含ASCII字符，按ISO_8859_1构造String无需再编码
+        return ExampleCommonResult.success(new EncryptMacResult(
+                current.textHeader + new String(payload, StandardCharsets.ISO_8859_1), mac.doFinalHex()));
     }
 
     @Override
     public ExampleCommonResult<byte[]> decryptMacByte(DecryptMacParam byteParam) {
+        byte[] data = byteParam.getCipherByte();
+        String mac = byteParam.getMac();
         //非空判断
-        ExampleCommonResult<Boolean> macResult = verifyMacByte(byteParam);
+        //传入的非密文，校验mac不通过
+        if (checkByte(data) || CharSequenceUtil.isBlank(mac) || !checkEncrypted(data))
+            return fail(verifyMacByte(byteParam));
+
+        if (isPrint) log.info("~~~~~decryptMacByte length:{}, mac:{}", data.length, mac);
+
+        if (CipherEnvelope.isBinary(data) && !CipherEnvelope.isSupported(CipherEnvelope.format(data)))
+            return ExampleCommonResult.fail(ERROR_CODE, ERROR_FORMAT_MSG);
 
-        if (macResult.isSuccess() && Boolean.TRUE.equals(macResult.getData())) {
-            return decryptByte(byteParam.getCipherByte());
+        KeyContext key = key(data, data.length);
+        if (null == key) return unknownKey();
+
+        if (CipherEnvelope.isBinary(data)) {
+            byte[] plain = decryptEnvelope(key, data, mac);
+            return null == plain ? ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG) : ExampleCommonResult.success(plain);
         }
 
-        return ExampleCommonResult.fail(macResult.getCode(), macResult.getMessage());
+        //旧格式：对信封头之后的base64字节计算mac，校验通过后直接从同一数组解码，不再转String
+        int offset = CipherEnvelope.payloadOffset(data);
+        MacContext context = key.sharedMac(false);
+        context.update(data, offset, data.length - offset);
+        if (!context.verify(mac)) return ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG);
+
+        byte[] plainBase64 = key.sm4.get().decrypt(Base64Decoder.decode(data, offset, data.length - offset));
+        return ExampleCommonResult.success(Base64.decode(plainBase64));
     }
 
     @Override
     public ExampleCommonResult<String> decryptMacBase64(DecryptMacParam base64Param) {
+        String data = base64Param.getCipherBase64();
+        String mac = base64Param.getMac();
         //非空判断
-        ExampleCommonResult<Boolean> macResult = verifyMacBase64(base64Param);
+        //传入的非密文，校验mac不通过
+        if (CharSequenceUtil.isBlank(data) || CharSequenceUtil.isBlank(mac) || !checkEncrypted(data))
+            return fail(verifyMacBase64(base64Param));
 
-        if (macResult.isSuccess() && Boolean.TRUE.equals(macResult.getData())) {
-            return decryptBase64(base64Param.getCipherBase64());
-        }
+        if (isPrint) log.info("~~~~~decryptMacBase64 data:{}, mac:{}", data, mac);
 
-        return ExampleCommonResult.fail(macResult.getCode(), macResult.getMessage());
+        KeyContext key = key(data);
+        if (null == key) return unknownKey();
+
+        //只转换一次字节，mac与base64解码都在同一数组上按偏移进行
+        byte[] text = data.getBytes(StandardCharsets.UTF_8);
+        int offset = CipherEnvelope.payloadOffset(data);
+        MacContext context = key.sharedMac(false);
+        context.update(text, offset, text.length - offset);
+        if (!context.verify(mac)) return ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG);
+
+        byte[] plain = key.sm4.get().decrypt(Base64Decoder.decode(text, offset, text.length - offset));
+        return ExampleCommonResult.success(new String(plain, StandardCharsets.UTF_8));
     }
 
+
     @Override
     public ExampleCommonResult<Boolean> isEncrypt(byte[] cipherByte) {
-        //非空判断
-        if (checkByte(cipherByte) || cipherByte.length < ENCRYPT_PREFIX.getBytes().length)
-            return ExampleCommonResult.success(false);
-
-        //判断密文，不能使用任何转换
-        return this.isEncrypt(new String(cipherByte));
+        //判断密文，只比较开头的前缀字节，不能使用任何转换
+        return ExampleCommonResult.success(CipherEnvelope.hasPrefix(cipherByte));
     }
 
     @Override
     public ExampleCommonResult<Boolean> isEncrypt(String cipherBase64) {
-        //非空判断
-        if (CharSequenceUtil.isBlank(cipherBase64)) return ExampleCommonResult.success(false);
+        //挡板的String密文为[SM4]+base64文本，直接比较前缀字符
+        return ExampleCommonResult.success(CipherEnvelope.hasPrefix(cipherBase64));
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        //固定密钥的SM4-ECB，无随机IV；密钥轮换期间等值查询参数按getLookupKeyVersions的各版本分别加密
+        return true;
+    }
+
+    @Override
+    public int getKeyVersion() {
+        return current.version;
+    }
+
+    @Override
+    public int[] getLookupKeyVersions() {
+        return lookupVersions.clone();
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes, int keyVersion) {
+        if (keyVersion == current.version) return encryptByteBatch(plainBytes);
+
+        KeyContext key = keyVersion < 0 || keyVersion >= keys.length ? null : keys[keyVersion];
+        if (null == key) return unknownKey();
+
+        //与encryptByte相同的格式，只是使用指定版本的密钥
+        List<byte[]> ciphers = new ArrayList<>(plainBytes.size());
+        for (byte[] plainByte : plainBytes) {
+            if (checkByte(plainByte)) {
+                ciphers.add(new byte[0]);
+            } else if (checkEncrypted(plainByte)) {
+                ciphers.add(plainByte);
+            } else if (binaryEnvelope) {
+                ciphers.add(encryptEnvelope(key, plainByte, null));
+            } else {
+                String cipher = key.textHeader + key.sm4.get().encryptBase64(Base64.encode(plainByte));
+                ciphers.add(cipher.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return ExampleCommonResult.success(ciphers);
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s, int keyVersion) {
+        if (keyVersion == current.version) return encryptBase64Batch(plainBase64s);
+
+        KeyContext key = keyVersion < 0 || keyVersion >= keys.length ? null : keys[keyVersion];
+        if (null == key) return unknownKey();
+
+        List<String> ciphers = new ArrayList<>(plainBase64s.size());
+        for (String plainBase64 : plainBase64s) {
+            if (CharSequenceUtil.isBlank(plainBase64)) {
+                ciphers.add("");
+            } else if (checkEncrypted(plainBase64)) {
+                ciphers.add(plainBase64);
+            } else {
+                ciphers.add(key.textHeader + key.sm4.get().encryptBase64(plainBase64));
+            }
+        }
+        return ExampleCommonResult.success(ciphers);
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptStream(InputStream plainIn, OutputStream cipherOut) {
+        byte[] head = new byte[CipherEnvelope.MAX_HEADER_LENGTH];
+        byte[] buffer = new byte[Math.max(streamChunkSize, MIN_CHUNK_SIZE)];
+
+        try {
+            int headLength = readHead(plainIn, head);
+            if (headLength == 0) return ExampleCommonResult.success("");
+
+            if (CipherEnvelope.hasPrefix(head, headLength)) {
+                //已加密的直接写出并按其格式、密钥版本计算mac
+                KeyContext key = key(head, headLength);
+                if (null == key) return unknownKey();
+
+                MacContext mac = key.createMac(hmacFormat(head, headLength));
+                int offset = CipherEnvelope.payloadOffset(head, headLength);
+                cipherOut.write(head, 0, offset);
+                writeAndMac(cipherOut, mac, head, offset, headLength - offset);
+                for (int read; (read = plainIn.read(buffer)) != -1; ) {
+                    writeAndMac(cipherOut, mac, buffer, 0, read);
+                }
+                return ExampleCommonResult.success(mac.doFinalHex());
+            }
+
+            //流式处理单独创建上下文，避免输出流回调中再调用本服务时与线程复用的上下文冲突
+            MacContext mac = current.createMac(true);
+            Cipher cipher = SmUtil.sm4(current.key).setMode(CipherMode.encrypt).getCipher();
+            byte[] cipherBuffer = new byte[cipher.getOutputSize(buffer.length)];
+
+            cipherOut.write(current.allocate(0));
+            int length = cipher.update(head, 0, headLength, cipherBuffer);
+            writeAndMac(cipherOut, mac, cipherBuffer, 0, length);
+            for (int read; (read = plainIn.read(buffer)) != -1; ) {
+                length = cipher.update(buffer, 0, read, cipherBuffer);
+                writeAndMac(cipherOut, mac, cipherBuffer, 0, length);
+            }
+            length = cipher.doFinal(cipherBuffer, 0);
+            writeAndMac(cipherOut, mac, cipherBuffer, 0, length);
+
+            if (isPrint) log.info("~~~~~encryptStream finished");
+            return ExampleCommonResult.success(mac.doFinalHex());
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(e);
+        }
+    }
 
-        return ExampleCommonResult.success(cipherBase64.startsWith(ENCRYPT_PREFIX));
+    @Override
+    public ExampleCommonResult<Boolean> decryptStream(InputStream cipherIn, OutputStream plainOut, String mac) {
+        byte[] head = new byte[CipherEnvelope.MAX_HEADER_LENGTH];
+        byte[] buffer = new byte[Math.max(streamChunkSize, MIN_CHUNK_SIZE)];
+        boolean verify = CharSequenceUtil.isNotBlank(mac);
+
+        try {
+            int headLength = readHead(cipherIn, head);
+
+            if (!CipherEnvelope.hasPrefix(head, headLength)) {
+                //传入的非密文，需要校验mac时不通过，否则原样输出
+                if (verify) return ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG);
+
+                plainOut.write(head, 0, headLength);
+                IoUtil.copy(cipherIn, plainOut, buffer.length);
+                return ExampleCommonResult.success(true);
+            }
+
+            boolean binary = CipherEnvelope.isBinary(head, headLength);
+            if (binary && !CipherEnvelope.isSupported(CipherEnvelope.format(head)))
+                return ExampleCommonResult.fail(ERROR_CODE, ERROR_FORMAT_MSG);
+
+            KeyContext key = key(head, headLength);
+            if (null == key) return unknownKey();
+
+            Cipher cipher = SmUtil.sm4(key.key).setMode(CipherMode.decrypt).getCipher();
+            MacContext context = key.createMac(hmacFormat(head, headLength));
+            //按最大长度读取的开头中，信封头之后的部分已是密文
+            int offset = CipherEnvelope.payloadOffset(head, headLength);
+            if (binary) {
+                byte[] plainBuffer = new byte[cipher.getOutputSize(buffer.length)];
+                context.update(head, offset, headLength - offset);
+                plainOut.write(plainBuffer, 0, cipher.update(head, offset, headLength - offset, plainBuffer));
+                for (int read; (read = cipherIn.read(buffer)) != -1; ) {
+                    context.update(buffer, 0, read);
+                    plainOut.write(plainBuffer, 0, cipher.update(buffer, 0, read, plainBuffer));
+                }
+                plainOut.write(plainBuffer, 0, cipher.doFinal(plainBuffer, 0));
+            } else {
+                //旧格式：[SM4]之后为base64文本，解密得到的也是base64文本，mac为加盐SM3
+                InputStream payload = new DigestInputStream(new SequenceInputStream(
+                        new ByteArrayInputStream(head, offset, headLength - offset), cipherIn), context.digest);
+                InputStream plainBase64 = new CipherInputStream(java.util.Base64.getDecoder().wrap(payload), cipher);
+                IoUtil.copy(java.util.Base64.getDecoder().wrap(plainBase64), plainOut, buffer.length);
+            }
+
+            if (isPrint) log.info("~~~~~decryptStream finished, mac:{}", mac);
+
+            if (verify && !context.verify(mac))
+                return ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG);
+            return ExampleCommonResult.success(true);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } catch (GeneralSecurityException e) {
+            throw new CryptoException(e);
+        }
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptFile(Path plainFile, Path cipherFile) {
+        try (FileChannel plainChannel = FileChannel.open(plainFile, StandardOpenOption.READ)) {
+            long plainLength = plainChannel.size();
+            //空文件、已加密文件按流式处理
+            if (plainLength == 0 || CipherEnvelope.hasPrefix(readHead(plainChannel)))
+                return EnDecryptService.super.encryptFile(plainFile, cipherFile);
+
+            long cipherLength = (plainLength / SM4_BLOCK_SIZE + 1) * SM4_BLOCK_SIZE;
+            long segmentSize = segmentSize();
+            int segments = (int) ((plainLength + segmentSize - 1) / segmentSize);
+
+            try (FileChannel cipherChannel = FileChannel.open(cipherFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                KeyContext key = current;
+                cipherChannel.write(ByteBuffer.wrap(key.allocate(0)));
+
+                //ECB各分组相互独立，按分段并行加密，只有最后一段需要填充
+                runSegments(segments, i -> {
+                    long offset = i * segmentSize;
+                    long length = Math.min(segmentSize, plainLength - offset);
+                    boolean last = i == segments - 1;
+
+                    return cryptSegment(segmentCipher(key, CipherMode.encrypt, last), plainChannel, offset, length,
+                            cipherChannel, key.headerLength + offset);
+                });
+
+                if (isPrint) log.info("~~~~~encryptFile {} -> {}, length:{}", plainFile, cipherFile, plainLength);
+                return ExampleCommonResult.success(
+                        mac(cipherChannel, key, key.headerLength, cipherLength, true).doFinalHex());
+            }
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> decryptFile(Path cipherFile, Path plainFile, String mac) {
+        try (FileChannel cipherChannel = FileChannel.open(cipherFile, StandardOpenOption.READ)) {
+            byte[] head = readHead(cipherChannel);
+            //非密文、旧格式按流式处理
+            if (!CipherEnvelope.isBinary(head) || !CipherEnvelope.isSupported(CipherEnvelope.format(head)))
+                return EnDecryptService.super.decryptFile(cipherFile, plainFile, mac);
+
+            KeyContext key = key(head, head.length);
+            if (null == key) return unknownKey();
+
+            int header = CipherEnvelope.payloadOffset(head);
+            long cipherLength = cipherChannel.size() - header;
+            if (cipherLength == 0 || cipherLength % SM4_BLOCK_SIZE != 0)
+                return ExampleCommonResult.fail(ERROR_CODE, ERROR_FORMAT_MSG);
+
+            //文件可随机读取，先校验mac，校验不通过不写出任何明文
+            if (CharSequenceUtil.isNotBlank(mac)
+                    && !mac(cipherChannel, key, header, cipherLength, hmacFormat(head, head.length)).verify(mac))
+                return ExampleCommonResult.fail(ERROR_CODE, ERROR_MAC_MSG);
+
+            long segmentSize = segmentSize();
+            int segments = (int) ((cipherLength + segmentSize - 1) / segmentSize);
+
+            //按位置写出，最后一段去除填充后文件即为明文长度，不需要截断
+            try (FileChannel plainChannel = FileChannel.open(plainFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                runSegments(segments, i -> {
+                    long offset = i * segmentSize;
+                    long length = Math.min(segmentSize, cipherLength - offset);
+                    boolean last = i == segments - 1;
+
+                    return cryptSegment(segmentCipher(key, CipherMode.decrypt, last), cipherChannel,
+                            header + offset, length, plainChannel, offset);
+                });
+            }
+
+            if (isPrint) log.info("~~~~~decryptFile {} -> {}, mac:{}", cipherFile, plainFile, mac);
+            return ExampleCommonResult.success(true);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        }
+    }
+
+    /**
+     * 在文件线程上处理所有分段并等待全部结束，任一分段失败时在其余分段结束后抛出，保证返回后不再有线程读写文件；
+     * 线程数为fileParallelism，不占用公共ForkJoinPool
+     */
+    private void runSegments(int segments, SegmentTask task) throws IOException {
+        ThreadPoolExecutor executor = fileExecutor();
+        List<Future<Long>> futures = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            int segment = i;
+            futures.add(executor.submit(() -> task.run(segment)));
+        }
+
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<Long> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    //已提交的分段仍在读写文件，等其结束后再恢复中断
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (null == failure) failure = e.getCause();
+                    break;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (failure instanceof IOException ioException) throw ioException;
+        if (failure instanceof RuntimeException runtimeException) throw runtimeException;
+        if (null != failure) throw new CryptoException(failure);
+    }
+
+    private ThreadPoolExecutor fileExecutor() {
+        ThreadPoolExecutor executor = fileExecutor;
+        if (null != executor) return executor;
+
+        synchronized (this) {
+            if (null == fileExecutor) {
+                int threads = Math.max(fileParallelism, 1);
+                executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(), new NamedThreadFactory("cipher-file-", true));
+                executor.allowCoreThreadTimeOut(true);
+                fileExecutor = executor;
+            }
+            return fileExecutor;
+        }
+    }
+
+    private long segmentSize() {
+        int size = Math.max(fileSegmentSize, MIN_CHUNK_SIZE);
+        return size - size % SM4_BLOCK_SIZE;
+    }
+
+    /**
+     * 分段使用的SM4上下文：最后一段带PKCS5填充，其余分段长度按分组对齐，不需要填充
+     */
+    private static Cipher segmentCipher(KeyContext key, CipherMode mode, boolean last) {
+        SymmetricCrypto sm4 = last ? SmUtil.sm4(key.key) : new SM4(Mode.ECB, Padding.NoPadding, key.key);
+        return sm4.setMode(mode).getCipher();
+    }
+
+    /**
+     * 按流式分块大小读取输入文件的区间，加解密后按位置写入输出文件；不映射文件，
+     * 每个分段只占用一组分块缓冲区，结束后不留下需要GC释放的映射
+     *
+     * @return 实际写出的字节数
+     */
+    private long cryptSegment(Cipher cipher, FileChannel in, long inOffset, long inLength,
+                              FileChannel out, long outOffset) throws IOException, GeneralSecurityException {
+        ByteBuffer inBuffer = ByteBuffer.allocate(chunkSize());
+        //解密时Cipher会暂留一个分组，输出缓冲区多留一个分组
+        ByteBuffer outBuffer = ByteBuffer.allocate(cipher.getOutputSize(inBuffer.capacity()) + SM4_BLOCK_SIZE);
+        long written = 0;
+        for (long position = 0; position < inLength; position += inBuffer.limit()) {
+            inBuffer.clear().limit((int) Math.min(inBuffer.capacity(), inLength - position));
+            readFully(in, inBuffer, inOffset + position);
+
+            outBuffer.clear();
+            cipher.update(inBuffer.flip(), outBuffer);
+            written += writeFully(out, outBuffer.flip(), outOffset + written);
+        }
+
+        outBuffer.clear();
+        cipher.doFinal(ByteBuffer.allocate(0), outBuffer);
+        return written + writeFully(out, outBuffer.flip(), outOffset + written);
+    }
+
+    /**
+     * 流式、文件处理的分块大小，按SM4分组长度对齐
+     */
+    private int chunkSize() {
+        int size = Math.max(streamChunkSize, MIN_CHUNK_SIZE);
+        return size - size % SM4_BLOCK_SIZE;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) throw new IOException("unexpected end of file at " + (position + buffer.position()));
+        }
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        return length;
+    }
+
+    /**
+     * 对文件指定区间计算mac，与对同一密文调用generateMacByte结果一致
+     */
+    private MacContext mac(FileChannel channel, KeyContext key, long offset, long length, boolean hmac)
+            throws IOException {
+        MacContext mac = key.createMac(hmac);
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize());
+        for (long position = offset; position < offset + length; position += buffer.limit()) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), offset + length - position));
+            readFully(channel, buffer, position);
+            mac.update(buffer.flip());
+        }
+        return mac;
+    }
+
+    private static byte[] readHead(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(CipherEnvelope.MAX_HEADER_LENGTH, channel.size()));
+        while (head.hasRemaining()) {
+            if (channel.read(head, head.position()) == -1) break;
+        }
+        return Arrays.copyOf(head.array(), head.position());
+    }
+
+    /**
+     * 读取流开头的信封头，流长度不足时返回实际读取的长度
+     */
+    private static int readHead(InputStream in, byte[] head) throws IOException {
+        int length = 0;
+        while (length < head.length) {
+            int read = in.read(head, length, head.length - length);
+            if (read == -1) break;
+            length += read;
+        }
+        return length;
+    }
+
+    private static void writeAndMac(OutputStream out, MacContext mac, byte[] data, int offset, int length)
+            throws IOException {
+        if (length <= 0) return;
+
+        mac.update(data, offset, length);
+        out.write(data, offset, length);
+    }
+
+    /**
+     * 单个文件分段的处理，返回写出的字节数
+     */
+    @FunctionalInterface
+    private interface SegmentTask {
+
+        long run(int segment) throws IOException, GeneralSecurityException;
+    }
+
+    /**
+     * 密文mac的增量计算：HMAC-SM3或加盐SM3，均可按块update，与加解密在同一次遍历中进行；
+     * 校验时将hex形式的mac解码到复用的缓冲区，与计算结果按原始字节做常量时间比较
+     */
+    private static final class MacContext {
+
+        private final Mac hmac;
+
+        private final byte[] salt;
+
+        private final MessageDigest digest;
+
+        private final byte[] expected = new byte[MAC_LENGTH];
+
+        private final byte[] actual = new byte[MAC_LENGTH];
+
+        /**
+         * @param hmac 是否为HMAC-SM3，否则为加盐SM3
+         * @param key  HMAC密钥或SM3的盐值，即对应版本的SM4密钥
+         */
+        private MacContext(boolean hmac, byte[] key) {
+            this.hmac = hmac ? newHmac(key) : null;
+            this.salt = key;
+            this.digest = hmac ? null : SmUtil.sm3().getDigest();
+        }
+
+        /**
+         * 重置；加盐SM3重置后写入盐值，后续update密文即可得到与sm3WithSalt(密钥)一致的mac
+         */
+        private MacContext reset() {
+            if (null != hmac) {
+                hmac.reset();
+            } else {
+                digest.reset();
+                digest.update(salt);
+            }
+            return this;
+        }
+
+        void update(byte[] data, int offset, int length) {
+            if (null != hmac) hmac.update(data, offset, length);
+            else digest.update(data, offset, length);
+        }
+
+        void update(ByteBuffer data) {
+            if (null != hmac) hmac.update(data);
+            else digest.update(data);
+        }
+
+        String doFinalHex() {
+            return HexUtil.encodeHexStr(null != hmac ? hmac.doFinal() : digest.digest());
+        }
+
+        /**
+         * 结束计算并与hex形式的mac比较，不生成hex字符串
+         *
+         * @param macHex 存储的mac
+         * @return 是否一致；mac不是合法hex时返回false
+         */
+        boolean verify(String macHex) {
+            try {
+                if (null != hmac) hmac.doFinal(actual, 0);
+                else digest.digest(actual, 0, MAC_LENGTH);
+            } catch (GeneralSecurityException e) {
+                throw new CryptoException(e);
+            }
+            return decodeHex(macHex, expected) && MessageDigest.isEqual(expected, actual);
+        }
+
+        private static boolean decodeHex(String hex, byte[] out) {
+            if (null == hex || hex.length() != out.length * 2) return false;
+
+            for (int i = 0; i < out.length; i++) {
+                int high = Character.digit(hex.charAt(2 * i), 16);
+                int low = Character.digit(hex.charAt(2 * i + 1), 16);
+                if (high < 0 || low < 0) return false;
+                out[i] = (byte) (high << 4 | low);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 单个版本的密钥，及按线程复用的SM4、mac上下文
+     */
+    private static final class KeyContext {
+
+        private final int version;
+
+        private final byte[] key;
+
+        //SM4对象创建时需查找provider并初始化密钥，按线程复用，避免每个字段都重新创建
+        private final ThreadLocal<SymmetricCrypto> sm4;
+
+        //内存中一次完成的mac计算按线程复用，连同比较用的缓冲区
+        private final ThreadLocal<MacContext> sharedSm3;
+
+        private final ThreadLocal<MacContext> sharedHmac;
+
+        //文本格式的信封头，版本0为[SM4]
+        private final String textHeader;
+
+        private final byte[] textHeaderBytes;
+
+        //本版本写入的二进制信封头长度
+        private final int headerLength;
+
+        private KeyContext(int version, byte[] key) {
+            this.version = version;
+            this.key = key;
+            this.sm4 = ThreadLocal.withInitial(() -> SmUtil.sm4(key));
+            this.sharedSm3 = ThreadLocal.withInitial(() -> new MacContext(false, key));
+            this.sharedHmac = ThreadLocal.withInitial(() -> new MacContext(true, key));
+            this.textHeader = CipherEnvelope.textHeader(version);
+            this.textHeaderBytes = textHeader.getBytes(StandardCharsets.UTF_8);
+            this.headerLength = 0 == version ? CipherEnvelope.BINARY_HEADER_LENGTH
+                    : CipherEnvelope.KEYED_HEADER_LENGTH;
+        }
+
+        /**
+         * 分配本版本的二进制信封：版本0沿用不带版本的HMAC格式，其余写入版本字节
+         */
+        byte[] allocate(int cipherLength) {
+            return 0 == version ? CipherEnvelope.allocateBinary(cipherLength, CipherEnvelope.FORMAT_SM4_HMAC)
+                    : CipherEnvelope.allocateKeyed(cipherLength, version);
+        }
+
+        /**
+         * 线程复用的mac上下文，用于内存中一次完成的计算
+         */
+        MacContext sharedMac(boolean hmac) {
+            return (hmac ? sharedHmac : sharedSm3).get().reset();
+        }
+
+        /**
+         * 单独创建的mac上下文，用于流式及文件处理
+         */
+        MacContext createMac(boolean hmac) {
+            return new MacContext(hmac, key).reset();
+        }
     }
 }
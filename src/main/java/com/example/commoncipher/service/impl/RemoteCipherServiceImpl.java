@@ -0,0 +1,391 @@
+package com.example.commoncipher.service.impl;
+
+import cn.hutool.core.text.CharSequenceUtil;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.remote.RemoteCipherClient;
+import com.example.commoncipher.remote.RemoteCipherProtocol;
+import com.example.commoncipher.remote.RemoteCipherProtocol.Frame;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static com.example.commoncipher.remote.RemoteCipherProtocol.bytes;
+
+/**
+ * ClassName: RemoteCipherServiceImpl <br/>
+ * Description: 远程加密机客户端，通过连接池中的长连接流水线发送请求 <br/>
+ * Date: 2026-10-17 <br/>
+ * <p>
+ * 异步方法不占用线程等待响应，传入的线程池不使用；同步及批量方法基于异步方法，
+ * 批量请求在同一组长连接上逐条流水线发出，全部发出后再统一等待；
+ * 密文识别在本地完成，格式与SM4挡板一致；流及文件使用接口默认实现，整体不超过{@link RemoteCipherProtocol#MAX_FRAME_LENGTH}
+ */
+public class RemoteCipherServiceImpl implements EnDecryptService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteCipherServiceImpl.class);
+
+    private static final String ERROR_CODE = "99999999";
+
+    //批量方法的单条异步调用不需要线程池
+    private static final Executor DIRECT = Runnable::run;
+
+    //加密机地址
+    @Value("${hard.cipher.remote.host:127.0.0.1}")
+    public String host = "127.0.0.1";
+
+    //加密机端口
+    @Value("${hard.cipher.remote.port:9800}")
+    public int port = 9800;
+
+    //长连接数
+    @Value("${hard.cipher.remote.pool-size:4}")
+    public int poolSize = 4;
+
+    //建立连接超时，毫秒
+    @Value("${hard.cipher.remote.connect-timeout:3000}")
+    public int connectTimeout = 3000;
+
+    //单个请求超时，毫秒
+    @Value("${hard.cipher.remote.request-timeout:5000}")
+    public long requestTimeout = 5000;
+
+    //单条连接连续超时达到该数量时关闭重建
+    @Value("${hard.cipher.remote.max-timeouts:3}")
+    public int maxTimeouts = 3;
+
+    //加密机当前写入的密钥版本，由加密机端的密钥环决定，此处与其保持一致，用于判断哪些数据需要重新加密
+    @Value("${hard.cipher.keyring.current-version:0}")
+    public int keyVersion;
+
+    //数据中仍可能存在的版本，逗号分隔；加密机只按当前版本加密，列出其他版本时等值查询返回UNSUPPORTED_KEY_VERSION
+    @Value("${hard.cipher.keyring.lookup-versions:}")
+    public String lookupVersions = "";
+
+    private volatile RemoteCipherClient client;
+
+    @Override
+    public ExampleCommonResult<byte[]> encryptByte(byte[] plainByte) {
+        return encryptByteAsync(plainByte, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<String> encryptBase64(String plainBase64) {
+        return encryptBase64Async(plainBase64, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptByte(byte[] cipherByte) {
+        return decryptByteAsync(cipherByte, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptBase64(String cipherBase64) {
+        return decryptBase64Async(cipherBase64, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacByte(byte[] data) {
+        return generateMacByteAsync(data, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<String> generateMacBase64(String base64Data) {
+        return generateMacBase64Async(base64Data, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacByte(DecryptMacParam byteParam) {
+        return verifyMacByteAsync(byteParam, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> verifyMacBase64(DecryptMacParam base64Param) {
+        return verifyMacBase64Async(base64Param, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacByte(byte[] plainByte) {
+        return encryptMacByteAsync(plainByte, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<EncryptMacResult> encryptMacBase64(String plainBase64) {
+        return encryptMacBase64Async(plainBase64, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<byte[]> decryptMacByte(DecryptMacParam byteParam) {
+        return decryptMacByteAsync(byteParam, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<String> decryptMacBase64(DecryptMacParam base64Param) {
+        return decryptMacBase64Async(base64Param, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<Boolean> isEncrypt(String cipherBase64) {
+        //加密机的String密文为[SM4]+base64文本，直接比较前缀字符
+        return ExampleCommonResult.success(CipherEnvelope.hasPrefix(cipherBase64));
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        //加密机与SM4挡板的密文格式一致，同一密钥下相同明文得到相同密文
+        return true;
+    }
+
+    @Override
+    public int getKeyVersion() {
+        return keyVersion;
+    }
+
+    @Override
+    public int[] getLookupKeyVersions() {
+        //当前版本在前，其余版本降序，去重
+        int[] others = CharSequenceUtil.splitTrim(CharSequenceUtil.nullToEmpty(lookupVersions), ',').stream()
+                .mapToInt(Integer::parseInt).filter(version -> version != keyVersion)
+                .boxed().sorted(Comparator.reverseOrder()).mapToInt(Integer::intValue).distinct().toArray();
+        int[] versions = new int[others.length + 1];
+        versions[0] = keyVersion;
+        System.arraycopy(others, 0, versions, 1, others.length);
+        return versions;
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> encryptByteAsync(byte[] plainByte, Executor executor) {
+        return call(RemoteCipherProtocol.ENCRYPT_BYTE, response -> response.field(0), plainByte);
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> encryptBase64Async(String plainBase64, Executor executor) {
+        return call(RemoteCipherProtocol.ENCRYPT_BASE64, response -> response.string(0), bytes(plainBase64));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> decryptByteAsync(byte[] cipherByte, Executor executor) {
+        return call(RemoteCipherProtocol.DECRYPT_BYTE, response -> response.field(0), cipherByte);
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> decryptBase64Async(String cipherBase64, Executor executor) {
+        return call(RemoteCipherProtocol.DECRYPT_BASE64, response -> response.string(0), bytes(cipherBase64));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> generateMacByteAsync(byte[] data, Executor executor) {
+        return call(RemoteCipherProtocol.GENERATE_MAC_BYTE, response -> response.string(0), data);
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> generateMacBase64Async(String base64Data,
+                                                                                 Executor executor) {
+        return call(RemoteCipherProtocol.GENERATE_MAC_BASE64, response -> response.string(0), bytes(base64Data));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<Boolean>> verifyMacByteAsync(DecryptMacParam byteParam,
+                                                                               Executor executor) {
+        return call(RemoteCipherProtocol.VERIFY_MAC_BYTE, response -> RemoteCipherProtocol.bool(response.field(0)),
+                byteParam.getCipherByte(), bytes(byteParam.getMac()));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<Boolean>> verifyMacBase64Async(DecryptMacParam base64Param,
+                                                                                 Executor executor) {
+        return call(RemoteCipherProtocol.VERIFY_MAC_BASE64, response -> RemoteCipherProtocol.bool(response.field(0)),
+                bytes(base64Param.getCipherBase64()), bytes(base64Param.getMac()));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacByteAsync(byte[] plainByte,
+                                                                                         Executor executor) {
+        return call(RemoteCipherProtocol.ENCRYPT_MAC_BYTE,
+                response -> new EncryptMacResult(response.field(0), response.string(1)), plainByte);
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<EncryptMacResult>> encryptMacBase64Async(String plainBase64,
+                                                                                           Executor executor) {
+        return call(RemoteCipherProtocol.ENCRYPT_MAC_BASE64,
+                response -> new EncryptMacResult(response.string(0), response.string(1)), bytes(plainBase64));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<byte[]>> decryptMacByteAsync(DecryptMacParam byteParam,
+                                                                               Executor executor) {
+        return call(RemoteCipherProtocol.DECRYPT_MAC_BYTE, response -> response.field(0),
+                byteParam.getCipherByte(), bytes(byteParam.getMac()));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<String>> decryptMacBase64Async(DecryptMacParam base64Param,
+                                                                                 Executor executor) {
+        return call(RemoteCipherProtocol.DECRYPT_MAC_BASE64, response -> response.string(0),
+                bytes(base64Param.getCipherBase64()), bytes(base64Param.getMac()));
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> encryptByteBatch(List<byte[]> plainBytes) {
+        return encryptByteBatchAsync(plainBytes, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s) {
+        return encryptBase64BatchAsync(plainBase64s, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> decryptByteBatch(List<byte[]> cipherBytes) {
+        return decryptByteBatchAsync(cipherBytes, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> decryptBase64Batch(List<String> cipherBase64s) {
+        return decryptBase64BatchAsync(cipherBase64s, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacByteBatch(List<byte[]> plainBytes) {
+        return encryptMacByteBatchAsync(plainBytes, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<EncryptMacResult>> encryptMacBase64Batch(List<String> plainBase64s) {
+        return encryptMacBase64BatchAsync(plainBase64s, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<byte[]>> decryptMacByteBatch(List<DecryptMacParam> byteParams) {
+        return decryptMacByteBatchAsync(byteParams, DIRECT).join();
+    }
+
+    @Override
+    public ExampleCommonResult<List<String>> decryptMacBase64Batch(List<DecryptMacParam> base64Params) {
+        return decryptMacBase64BatchAsync(base64Params, DIRECT).join();
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> encryptByteBatchAsync(
+            List<byte[]> plainBytes, Executor executor) {
+        return pipeline(plainBytes, param -> encryptByteAsync(param, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> encryptBase64BatchAsync(
+            List<String> plainBase64s, Executor executor) {
+        return pipeline(plainBase64s, param -> encryptBase64Async(param, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptByteBatchAsync(
+            List<byte[]> cipherBytes, Executor executor) {
+        return pipeline(cipherBytes, param -> decryptByteAsync(param, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> decryptBase64BatchAsync(
+            List<String> cipherBase64s, Executor executor) {
+        return pipeline(cipherBase64s, param -> decryptBase64Async(param, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacByteBatchAsync(
+            List<byte[]> plainBytes, Executor executor) {
+        return pipeline(plainBytes, param -> encryptMacByteAsync(param, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<EncryptMacResult>>> encryptMacBase64BatchAsync(
+            List<String> plainBase64s, Executor executor) {
+        return pipeline(plainBase64s, param -> encryptMacBase64Async(param, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<byte[]>>> decryptMacByteBatchAsync(
+            List<DecryptMacParam> byteParams, Executor executor) {
+        return pipeline(byteParams, param -> decryptMacByteAsync(param, DIRECT));
+    }
+
+    @Override
+    public CompletableFuture<ExampleCommonResult<List<String>>> decryptMacBase64BatchAsync(
+            List<DecryptMacParam> base64Params, Executor executor) {
+        return pipeline(base64Params, param -> decryptMacBase64Async(param, DIRECT));
+    }
+
+    @Override
+    public void close() {
+        if (null != client) client.close();
+    }
+
+    /**
+     * 发送请求并解码响应；连接失败、断开、超时均返回失败结果，future不会以异常结束
+     */
+    private <T> CompletableFuture<ExampleCommonResult<T>> call(byte operation, Function<Frame, T> decoder,
+                                                               byte[]... fields) {
+        return client().call(operation, fields).handle((response, e) -> {
+            if (null != e) {
+                Throwable cause = e instanceof CompletionException && null != e.getCause() ? e.getCause() : e;
+                log.error("~~~~~remote cipher call error, operation:{}", operation, cause);
+                return ExampleCommonResult.fail(ERROR_CODE, "REMOTE_CALL_ERROR: " + cause);
+            }
+
+            try {
+                if (response.type() != RemoteCipherProtocol.STATUS_SUCCESS) {
+                    return ExampleCommonResult.fail(response.string(0), response.string(1));
+                }
+                return ExampleCommonResult.success(decoder.apply(response));
+            } catch (RuntimeException decodeError) {
+                log.error("~~~~~remote cipher response error, operation:{}", operation, decodeError);
+                return ExampleCommonResult.fail(ERROR_CODE, "REMOTE_RESPONSE_ERROR: " + decodeError);
+            }
+        });
+    }
+
+    /**
+     * 批量请求逐条发出，全部响应后按入参顺序合并，任一失败即返回失败
+     */
+    private static <P, R> CompletableFuture<ExampleCommonResult<List<R>>> pipeline(
+            List<P> params, Function<P, CompletableFuture<ExampleCommonResult<R>>> single) {
+        List<CompletableFuture<ExampleCommonResult<R>>> futures = new ArrayList<>(params.size());
+        for (P param : params) {
+            futures.add(single.apply(param));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<R> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<ExampleCommonResult<R>> future : futures) {
+                ExampleCommonResult<R> result = future.join();
+                if (!result.isSuccess()) return ExampleCommonResult.fail(result.getCode(), result.getMessage());
+
+                results.add(result.getData());
+            }
+            return ExampleCommonResult.success(results);
+        });
+    }
+
+    private RemoteCipherClient client() {
+        RemoteCipherClient current = client;
+        if (null != current) return current;
+
+        //属性在构造后注入，首次调用时再建立连接池
+        synchronized (this) {
+            if (null == client) {
+                client = new RemoteCipherClient(host, port, poolSize, connectTimeout, requestTimeout, maxTimeouts);
+            }
+            return client;
+        }
+    }
+}
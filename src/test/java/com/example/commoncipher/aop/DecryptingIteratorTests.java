@@ -0,0 +1,163 @@
+package com.example.commoncipher.aop;
+
+import com.example.commoncipher.annotation.EnDecryptMapperMethod;
+import com.example.commoncipher.aop.EnDecryptFieldAspectTests.CountingService;
+import com.example.commoncipher.aop.EnDecryptFieldAspectTests.Person;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecryptingIteratorTests {
+
+    /**
+     * 模拟游标：可迭代、可关闭的接口类型
+     */
+    public interface Cursor<T> extends Iterable<T>, Closeable {
+
+        boolean isOpen();
+    }
+
+    /**
+     * 模拟返回Iterator、Stream及游标的mapper，记录原结果被读取的元素数及是否关闭
+     */
+    public static class StreamingMapper {
+
+        final List<Person> table = new ArrayList<>();
+
+        int read;
+
+        boolean closed;
+
+        private Iterator<Person> source() {
+            Iterator<Person> iterator = table.iterator();
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Person next() {
+                    read++;
+                    return iterator.next();
+                }
+            };
+        }
+
+        @EnDecryptMapperMethod
+        public Iterator<Person> iterate() {
+            return source();
+        }
+
+        @EnDecryptMapperMethod
+        public Stream<Person> stream() {
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(source(), Spliterator.ORDERED), false)
+                    .onClose(() -> closed = true);
+        }
+
+        @EnDecryptMapperMethod
+        public Cursor<Person> cursor() {
+            return new Cursor<>() {
+                @Override
+                public Iterator<Person> iterator() {
+                    return source();
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return !closed;
+                }
+
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+    }
+
+    private static StreamingMapper mapper(CountingService service, int count) {
+        StreamingMapper mapper = new StreamingMapper();
+        for (int i = 0; i < count; i++) {
+            mapper.table.add(new Person(service.encryptBase64("name-" + i).getData()));
+        }
+        return mapper;
+    }
+
+    @Test
+    void iteratorIsDecryptedChunkByChunk() {
+        CountingService service = new CountingService();
+        StreamingMapper target = mapper(service, 7);
+        Iterator<Person> iterator = EnDecryptFieldAspectTests.proxy(target, service, 3).iterate();
+        assertEquals(0, target.read);
+
+        //只预读一段
+        assertEquals("name-0", iterator.next().getName());
+        assertEquals(3, target.read);
+        assertEquals(List.of(3), service.batches);
+
+        for (int i = 1; i < 7; i++) {
+            assertEquals("name-" + i, iterator.next().getName());
+        }
+        assertEquals(List.of(3, 3, 1), service.batches);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    void returnedElementsAreReleased() {
+        CountingService service = new CountingService();
+        StreamingMapper target = mapper(service, 3);
+        Iterator<Person> iterator = new DecryptingIterator<>(target.iterate(), chunk -> chunk, 3);
+
+        iterator.next();
+        iterator.next();
+        List<?> chunk = (List<?>) ReflectionTestUtils.getField(iterator, "chunk");
+        assertNull(chunk.get(0));
+        assertNull(chunk.get(1));
+        assertEquals(target.table.get(2), chunk.get(2));
+    }
+
+    @Test
+    void streamCloseReachesSource() {
+        CountingService service = new CountingService();
+        StreamingMapper target = mapper(service, 7);
+
+        List<String> names;
+        try (Stream<Person> stream = EnDecryptFieldAspectTests.proxy(target, service, 3).stream()) {
+            names = stream.limit(4).map(Person::getName).toList();
+        }
+        //只读到第二段
+        assertEquals(List.of("name-0", "name-1", "name-2", "name-3"), names);
+        assertEquals(6, target.read);
+        assertEquals(List.of(3, 3), service.batches);
+        assertTrue(target.closed);
+    }
+
+    @Test
+    void cursorIsDecryptedAndClosed() throws Exception {
+        CountingService service = new CountingService();
+        StreamingMapper target = mapper(service, 4);
+
+        List<String> names = new ArrayList<>();
+        try (Cursor<Person> cursor = EnDecryptFieldAspectTests.proxy(target, service, 3).cursor()) {
+            assertTrue(cursor.isOpen());
+            cursor.forEach(person -> names.add(person.getName()));
+        }
+        assertEquals(List.of("name-0", "name-1", "name-2", "name-3"), names);
+        assertEquals(List.of(3, 1), service.batches);
+        assertTrue(target.closed);
+    }
+}
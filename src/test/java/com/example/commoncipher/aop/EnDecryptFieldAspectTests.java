@@ -0,0 +1,663 @@
+package com.example.commoncipher.aop;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.thread.NamedThreadFactory;
+import com.example.commoncipher.annotation.EnDecryptField;
+import com.example.commoncipher.annotation.EnDecryptMapperMethod;
+import com.example.commoncipher.cache.DecryptedValueCache;
+import com.example.commoncipher.exception.ServiceException;
+import com.example.commoncipher.index.BlindIndexer;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import com.example.commoncipher.service.EnDecryptService;
+import com.example.commoncipher.service.impl.EnvelopeCipherServiceImpl;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnDecryptFieldAspectTests {
+
+    public static class Person {
+
+        @EnDecryptField
+        private String name;
+
+        public Person() {
+        }
+
+        public Person(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Account {
+
+        @EnDecryptField(macField = "idCardMac")
+        private String idCard;
+
+        private String idCardMac;
+
+        @EnDecryptField
+        private String name;
+
+        public String getIdCard() {
+            return idCard;
+        }
+
+        public void setIdCard(String idCard) {
+            this.idCard = idCard;
+        }
+
+        public String getIdCardMac() {
+            return idCardMac;
+        }
+
+        public void setIdCardMac(String idCardMac) {
+            this.idCardMac = idCardMac;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static final class FinalPerson {
+
+        @EnDecryptField
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class DeterministicPerson {
+
+        @EnDecryptField(deterministic = true)
+        private String idCard;
+
+        public String getIdCard() {
+            return idCard;
+        }
+
+        public void setIdCard(String idCard) {
+            this.idCard = idCard;
+        }
+    }
+
+    public static class IndexedPerson {
+
+        @EnDecryptField(blindIndexField = "idCardIndex")
+        private String idCard;
+
+        private String idCardIndex;
+
+        public String getIdCard() {
+            return idCard;
+        }
+
+        public void setIdCard(String idCard) {
+            this.idCard = idCard;
+        }
+
+        public String getIdCardIndex() {
+            return idCardIndex;
+        }
+
+        public void setIdCardIndex(String idCardIndex) {
+            this.idCardIndex = idCardIndex;
+        }
+    }
+
+    public static class RoutedPerson {
+
+        @EnDecryptField(route = "hsm-typo")
+        private String idCard;
+
+        public String getIdCard() {
+            return idCard;
+        }
+
+        public void setIdCard(String idCard) {
+            this.idCard = idCard;
+        }
+    }
+
+    public static class CachedPerson {
+
+        @EnDecryptField(cache = true)
+        private String name;
+
+        @EnDecryptField
+        private String nickname;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getNickname() {
+            return nickname;
+        }
+
+        public void setNickname(String nickname) {
+            this.nickname = nickname;
+        }
+    }
+
+    /**
+     * 模拟原地解密的mapper：查询时返回表中的实体本身
+     */
+    public static class CachedPersonMapper {
+
+        final List<CachedPerson> table = new ArrayList<>();
+
+        @EnDecryptMapperMethod(inPlace = true)
+        public List<CachedPerson> selectAll() {
+            return table;
+        }
+    }
+
+    /**
+     * 模拟写入单个实体的mapper，记录实际执行的写入
+     */
+    public static class InsertMapper {
+
+        final List<Object> inserted = new ArrayList<>();
+
+        @EnDecryptMapperMethod
+        public int insert(Object entity) throws ServiceException {
+            inserted.add(entity);
+            return 1;
+        }
+    }
+
+    /**
+     * 模拟延迟解密的mapper：查询时返回密文实体的副本
+     */
+    public static class AccountMapper {
+
+        final List<Account> table = new ArrayList<>();
+
+        final List<FinalPerson> finalTable = new ArrayList<>();
+
+        @EnDecryptMapperMethod(lazy = true)
+        public List<Account> selectAll() {
+            List<Account> accounts = new ArrayList<>(table.size());
+            for (Account stored : table) {
+                Account account = new Account();
+                account.setIdCard(stored.getIdCard());
+                account.setIdCardMac(stored.getIdCardMac());
+                account.setName(stored.getName());
+                accounts.add(account);
+            }
+            return accounts;
+        }
+
+        @EnDecryptMapperMethod(lazy = true)
+        public List<FinalPerson> selectFinal() {
+            return finalTable;
+        }
+    }
+
+    /**
+     * 模拟mapper：保存写入的实体，查询时原样返回
+     */
+    public static class PersonMapper {
+
+        final List<Person> table = new ArrayList<>();
+
+        @EnDecryptMapperMethod(inPlace = true)
+        public int insertAll(List<Person> persons) {
+            persons.forEach(person -> table.add(new Person(person.getName())));
+            return persons.size();
+        }
+
+        @EnDecryptMapperMethod
+        public List<Person> selectAll() {
+            return table;
+        }
+    }
+
+    /**
+     * 模拟按加密列查询的mapper：返回收到的参数
+     */
+    public static class QueryMapper {
+
+        int calls;
+
+        @EnDecryptMapperMethod
+        public List<Object> find(@EnDecryptField String idCard, @EnDecryptField byte[] photo,
+                                 @EnDecryptField List<String> idCards, String plain) throws ServiceException {
+            calls++;
+            return Arrays.asList(idCard, photo, idCards, plain);
+        }
+    }
+
+    /**
+     * 记录每次批量调用的字段数及线程，第failAt次批量调用立即返回失败，其余调用等待delayMillis后执行
+     */
+    static class CountingService extends HutoolBaffleServiceImpl {
+
+        final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+
+        final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        final AtomicInteger finished = new AtomicInteger();
+
+        volatile int failAt = -1;
+
+        volatile long delayMillis;
+
+        @Override
+        public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s) {
+            return record(plainBase64s.size(), () -> super.encryptBase64Batch(plainBase64s));
+        }
+
+        @Override
+        public ExampleCommonResult<List<String>> decryptBase64Batch(List<String> cipherBase64s) {
+            return record(cipherBase64s.size(), () -> super.decryptBase64Batch(cipherBase64s));
+        }
+
+        @Override
+        public ExampleCommonResult<List<String>> decryptMacBase64Batch(List<DecryptMacParam> params) {
+            return record(params.size(), () -> super.decryptMacBase64Batch(params));
+        }
+
+        private <T> ExampleCommonResult<T> record(int size, Supplier<ExampleCommonResult<T>> call) {
+            batches.add(size);
+            threads.add(Thread.currentThread().getName());
+            try {
+                if (calls.incrementAndGet() == failAt) return ExampleCommonResult.fail("99999999", "HSM_BUSY");
+                if (delayMillis > 0) Thread.sleep(delayMillis);
+                return call.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ExampleCommonResult.fail("99999999", "INTERRUPTED");
+            } finally {
+                finished.incrementAndGet();
+            }
+        }
+    }
+
+    static <T> T proxy(T mapper, EnDecryptService service, int batchSize) {
+        return proxy(mapper, service, batchSize, null);
+    }
+
+    static <T> T proxy(T mapper, EnDecryptService service, int batchSize, Executor executor) {
+        return proxy(mapper, aspect(service, batchSize, executor));
+    }
+
+    static EnDecryptFieldAspect aspect(EnDecryptService service, int batchSize, Executor executor) {
+        EnDecryptFieldAspect aspect = new EnDecryptFieldAspect();
+        aspect.batchSize = batchSize;
+        ReflectionTestUtils.setField(aspect, "enDecryptService", service);
+        ReflectionTestUtils.setField(aspect, "cipherAsyncExecutor", executor);
+        return aspect;
+    }
+
+    static <T> T proxy(T mapper, EnDecryptFieldAspect aspect) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(mapper);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(aspect);
+        return factory.getProxy();
+    }
+
+    private static List<Person> persons(int count) {
+        List<Person> persons = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            persons.add(new Person("name-" + i));
+        }
+        return persons;
+    }
+
+    @Test
+    void listIsProcessedInChunks() {
+        CountingService service = new CountingService();
+        PersonMapper target = new PersonMapper();
+        PersonMapper mapper = proxy(target, service, 3);
+
+        List<Person> persons = persons(7);
+        assertEquals(7, mapper.insertAll(persons));
+        assertEquals(List.of(3, 3, 1), service.batches);
+        for (int i = 0; i < 7; i++) {
+            assertNotEquals("name-" + i, persons.get(i).getName());
+            assertTrue(service.isEncrypt(target.table.get(i).getName()).getData());
+        }
+
+        service.batches.clear();
+        List<Person> selected = mapper.selectAll();
+        assertEquals(List.of(3, 3, 1), service.batches);
+        for (int i = 0; i < 7; i++) {
+            assertEquals("name-" + i, selected.get(i).getName());
+        }
+    }
+
+    @Test
+    void failedChunkLeavesInPlaceListUntouched() {
+        CountingService service = new CountingService();
+        service.failAt = 2;
+        PersonMapper mapper = proxy(new PersonMapper(), service, 3);
+
+        //第一批已成功，第二批失败：不能出现部分加密的列表
+        List<Person> persons = persons(7);
+        mapper.insertAll(persons);
+        assertEquals(List.of(3, 3), service.batches);
+        for (int i = 0; i < 7; i++) {
+            assertEquals("name-" + i, persons.get(i).getName());
+        }
+    }
+
+    @Test
+    void cacheHitIsNotWrittenWhenBatchFails() {
+        CountingService service = new CountingService();
+        DecryptedValueCache cache = new DecryptedValueCache(1024 * 1024, 60_000);
+        CachedPersonMapper target = new CachedPersonMapper();
+        CachedPerson person = new CachedPerson();
+        person.setName(service.encryptBase64("name-0").getData());
+        person.setNickname(service.encryptBase64("nick-0").getData());
+        target.table.add(person);
+        cache.putString(cache.key(person.getName(), null), "name-0");
+
+        EnDecryptFieldAspect aspect = aspect(service, 500, null);
+        ReflectionTestUtils.setField(aspect, "decryptedValueCache", cache);
+        CachedPersonMapper mapper = proxy(target, aspect);
+
+        //name命中缓存，nickname的批次失败：原地模式下实体不能一半是明文
+        service.failAt = 1;
+        String name = person.getName();
+        String nickname = person.getNickname();
+        mapper.selectAll();
+        assertEquals(List.of(1), service.batches);
+        assertEquals(name, person.getName());
+        assertEquals(nickname, person.getNickname());
+
+        service.failAt = -1;
+        mapper.selectAll();
+        assertEquals("name-0", person.getName());
+        assertEquals("nick-0", person.getNickname());
+        assertEquals(List.of(1, 1), service.batches);
+    }
+
+    @Test
+    void asyncChunksRunOnExecutor() {
+        CountingService service = new CountingService();
+        ExecutorService executor = Executors.newFixedThreadPool(4, new NamedThreadFactory("test-async-", true));
+        try {
+            PersonMapper mapper = proxy(new PersonMapper(), service, 3, executor);
+
+            List<Person> persons = persons(7);
+            mapper.insertAll(persons);
+            //每批一次批量调用，不拆成单条
+            assertEquals(List.of(1, 3, 3), service.batches.stream().sorted().toList());
+            assertTrue(service.threads.stream().allMatch(name -> name.startsWith("test-async-")));
+
+            List<Person> selected = mapper.selectAll();
+            for (int i = 0; i < 7; i++) {
+                assertTrue(service.isEncrypt(persons.get(i).getName()).getData());
+                assertEquals("name-" + i, selected.get(i).getName());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void asyncFailureWaitsForEveryChunk() throws InterruptedException {
+        CountingService service = new CountingService();
+        service.failAt = 1;
+        service.delayMillis = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(4, new NamedThreadFactory("test-async-", true));
+        try {
+            PersonMapper mapper = proxy(new PersonMapper(), service, 3, executor);
+
+            List<Person> persons = persons(7);
+            mapper.insertAll(persons);
+            //失败的批次立即返回，其余批次结束后才返回
+            assertEquals(3, service.finished.get());
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 7; i++) {
+                assertEquals("name-" + i, persons.get(i).getName());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static AccountMapper accounts(EnDecryptService service, int count) {
+        AccountMapper mapper = new AccountMapper();
+        for (int i = 0; i < count; i++) {
+            EncryptMacResult idCard = service.encryptMacBase64("id-" + i).getData();
+            Account account = new Account();
+            account.setIdCard(idCard.getCipherBase64());
+            account.setIdCardMac(idCard.getMac());
+            account.setName(service.encryptBase64("name-" + i).getData());
+            mapper.table.add(account);
+        }
+        return mapper;
+    }
+
+    @Test
+    void lazyFieldIsDecryptedForWholeResultOnFirstRead() {
+        CountingService service = new CountingService();
+        AccountMapper mapper = proxy(accounts(service, 7), service, 3);
+
+        List<Account> selected = mapper.selectAll();
+        assertTrue(service.batches.isEmpty());
+
+        //读取第一行的name时整个结果的name按批解密，idCard不解密
+        assertEquals("name-0", selected.get(0).getName());
+        assertEquals(List.of(3, 3, 1), service.batches);
+        assertNotEquals("id-6", ReflectionTestUtils.getField(selected.get(6), "idCard"));
+
+        //已解密的字段不再调用加密服务
+        for (int i = 0; i < 7; i++) {
+            assertEquals("name-" + i, selected.get(i).getName());
+            assertEquals("name-" + i, selected.get(i).getName());
+        }
+        assertEquals(List.of(3, 3, 1), service.batches);
+    }
+
+    @Test
+    void lazyMacFieldIsClearedAfterDecrypt() {
+        CountingService service = new CountingService();
+        AccountMapper mapper = proxy(accounts(service, 2), service, 500);
+
+        List<Account> selected = mapper.selectAll();
+        assertFalse(selected.get(1).getIdCardMac().isEmpty());
+        assertEquals("id-1", selected.get(1).getIdCard());
+        assertEquals(List.of(2), service.batches);
+        assertEquals("", selected.get(0).getIdCardMac());
+        assertEquals("", selected.get(1).getIdCardMac());
+    }
+
+    @Test
+    void lazySetterValueIsPlaintext() {
+        CountingService service = new CountingService();
+        AccountMapper mapper = proxy(accounts(service, 3), service, 500);
+
+        List<Account> selected = mapper.selectAll();
+        selected.get(1).setName("renamed");
+        assertEquals("renamed", selected.get(1).getName());
+        assertTrue(service.batches.isEmpty());
+
+        //赋值过的代理不参与同组解密
+        assertEquals("name-0", selected.get(0).getName());
+        assertEquals(List.of(2), service.batches);
+        assertEquals("name-2", selected.get(2).getName());
+        assertEquals("renamed", selected.get(1).getName());
+    }
+
+    @Test
+    void lazyFinalClassIsDecryptedEagerly() {
+        CountingService service = new CountingService();
+        AccountMapper target = new AccountMapper();
+        FinalPerson person = new FinalPerson();
+        person.setName(service.encryptBase64("name-0").getData());
+        target.finalTable.add(person);
+        AccountMapper mapper = proxy(target, service, 500);
+
+        List<FinalPerson> selected = mapper.selectFinal();
+        assertEquals(List.of(1), service.batches);
+        assertEquals(FinalPerson.class, selected.get(0).getClass());
+        assertEquals("name-0", selected.get(0).getName());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void queryParametersAreEncryptedDeterministically() throws ServiceException {
+        CountingService service = new CountingService();
+        QueryMapper mapper = proxy(new QueryMapper(), service, 500);
+
+        byte[] photo = "photo".getBytes(StandardCharsets.UTF_8);
+        List<String> idCards = List.of("id-1", "id-2");
+        List<Object> args = mapper.find("id-0", photo, idCards, "plain");
+
+        assertEquals(service.encryptBase64("id-0").getData(), args.get(0));
+        assertArrayEquals(service.encryptByte(photo).getData(), (byte[]) args.get(1));
+        assertEquals(List.of(service.encryptBase64("id-1").getData(), service.encryptBase64("id-2").getData()),
+                args.get(2));
+        assertEquals("plain", args.get(3));
+        //String参数合并为一次批量调用，调用方的入参不变
+        assertEquals(List.of(3), service.batches);
+        assertArrayEquals("photo".getBytes(StandardCharsets.UTF_8), photo);
+        assertEquals(List.of("id-1", "id-2"), idCards);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lookupDuringRotationMatchesEveryKeyVersion() throws ServiceException {
+        String keys = "1:" + Base64.encode("abcdefghijklmnop");
+        HutoolBaffleServiceImpl rotated = new HutoolBaffleServiceImpl(CipherKeyring.of(keys, 1));
+        assertArrayEquals(new int[]{1, 0}, rotated.getLookupKeyVersions());
+        //id-1尚未被重新加密任务处理，仍为版本0的密文；id-2为轮换后写入
+        String stored1 = new HutoolBaffleServiceImpl().encryptBase64("id-1").getData();
+        String stored2 = rotated.encryptBase64("id-2").getData();
+
+        QueryMapper target = new QueryMapper();
+        QueryMapper mapper = proxy(target, rotated, 500);
+        List<String> idCards = (List<String>) mapper.find(null, null, List.of("id-1", "id-2"), "plain").get(2);
+        assertEquals(4, idCards.size());
+        assertTrue(idCards.contains(stored1));
+        assertTrue(idCards.contains(stored2));
+
+        //单值参数只能匹配一个版本，不能漏查
+        assertThrows(ServiceException.class, () -> mapper.find("id-1", null, List.of(), "plain"));
+        assertEquals(1, target.calls);
+
+        //重新加密完成后只查询当前版本
+        HutoolBaffleServiceImpl finished = new HutoolBaffleServiceImpl(CipherKeyring.of(keys, 1, "1"));
+        assertEquals(stored2, proxy(new QueryMapper(), finished, 500).find("id-2", null, List.of(), "plain").get(0));
+    }
+
+    @Test
+    void deterministicEntityIsNotInsertedWhenServiceIsNotDeterministic() {
+        EnvelopeCipherServiceImpl envelope = new EnvelopeCipherServiceImpl(new HutoolBaffleServiceImpl());
+        InsertMapper target = new InsertMapper();
+        InsertMapper mapper = proxy(target, envelope, 500);
+
+        DeterministicPerson person = new DeterministicPerson();
+        person.setIdCard("id-0");
+        //不能以明文写入
+        assertThrows(ServiceException.class, () -> mapper.insert(person));
+        assertThrows(ServiceException.class, () -> mapper.insert(List.of(person)));
+        assertTrue(target.inserted.isEmpty());
+        assertEquals("id-0", person.getIdCard());
+    }
+
+    @Test
+    void blindIndexIsFilledFromPlaintext() throws ServiceException {
+        HutoolBaffleServiceImpl service = new HutoolBaffleServiceImpl();
+        BlindIndexer indexer = new BlindIndexer("blind-index-key-0".getBytes(StandardCharsets.UTF_8), 256);
+        EnDecryptFieldAspect aspect = aspect(service, 500, null);
+        ReflectionTestUtils.setField(aspect, "blindIndexer", indexer);
+        InsertMapper target = new InsertMapper();
+
+        IndexedPerson person = new IndexedPerson();
+        person.setIdCard("id-0");
+        proxy(target, aspect).insert(person);
+
+        IndexedPerson inserted = (IndexedPerson) target.inserted.get(0);
+        assertEquals(indexer.index("id-0"), inserted.getIdCardIndex());
+        assertEquals("id-0", service.decryptBase64(inserted.getIdCard()).getData());
+    }
+
+    @Test
+    void blindIndexedEntityIsNotInsertedWithoutKey() {
+        InsertMapper target = new InsertMapper();
+        InsertMapper mapper = proxy(target, new HutoolBaffleServiceImpl(), 500);
+
+        IndexedPerson person = new IndexedPerson();
+        person.setIdCard("id-0");
+        //不能以明文写入，也不能缺少盲索引
+        assertThrows(ServiceException.class, () -> mapper.insert(person));
+        assertTrue(target.inserted.isEmpty());
+    }
+
+    @Test
+    void entityWithUnknownRouteIsNotInserted() {
+        InsertMapper target = new InsertMapper();
+        InsertMapper mapper = proxy(target, new HutoolBaffleServiceImpl(), 500);
+
+        RoutedPerson person = new RoutedPerson();
+        person.setIdCard("id-0");
+        assertThrows(IllegalStateException.class, () -> mapper.insert(person));
+        assertTrue(target.inserted.isEmpty());
+    }
+
+    @Test
+    void queryFailsWhenServiceIsNotDeterministic() {
+        EnvelopeCipherServiceImpl envelope = new EnvelopeCipherServiceImpl(new HutoolBaffleServiceImpl());
+        QueryMapper target = new QueryMapper();
+        QueryMapper mapper = proxy(target, envelope, 500);
+
+        //不能以明文执行查询
+        assertThrows(ServiceException.class, () -> mapper.find("id-0", null, List.of(), "plain"));
+        assertEquals(0, target.calls);
+    }
+}
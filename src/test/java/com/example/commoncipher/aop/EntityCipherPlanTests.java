@@ -0,0 +1,161 @@
+package com.example.commoncipher.aop;
+
+import com.example.commoncipher.aop.EntityCipherPlan.FieldPlan;
+import com.example.commoncipher.annotation.EnDecryptField;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.operator.CipherOperator;
+import com.example.commoncipher.operator.CipherOperatorRouter;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.service.impl.EnvelopeCipherServiceImpl;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntityCipherPlanTests {
+
+    public static class Customer {
+
+        @EnDecryptField(macField = "idCardMac", blindIndexField = "idCardIndex")
+        private String idCard;
+
+        private String idCardMac;
+
+        private String idCardIndex;
+
+        //无getter/setter，生成的访问器直接读写字段
+        @EnDecryptField
+        byte[] photo;
+
+        private int age;
+
+        public String getIdCard() {
+            return idCard;
+        }
+
+        public void setIdCard(String idCard) {
+            this.idCard = idCard;
+        }
+
+        public String getIdCardMac() {
+            return idCardMac;
+        }
+
+        public void setIdCardMac(String idCardMac) {
+            this.idCardMac = idCardMac;
+        }
+
+        public String getIdCardIndex() {
+            return idCardIndex;
+        }
+
+        public void setIdCardIndex(String idCardIndex) {
+            this.idCardIndex = idCardIndex;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+    }
+
+    public static class PrivateFieldEntity {
+
+        @EnDecryptField
+        private String name;
+    }
+
+    public static class RoutedEntity {
+
+        @EnDecryptField(route = "blob")
+        private byte[] photo;
+
+        @EnDecryptField(macField = "idCardMac")
+        private String idCard;
+
+        private String idCardMac;
+    }
+
+    @Test
+    void generatedAccessorReadsAndWritesFields() throws ReflectiveOperationException {
+        EntityCipherPlan plan = EntityCipherPlan.of(Customer.class);
+        assertTrue(plan.isGenerated());
+
+        Customer customer = new Customer();
+        customer.setIdCard("110101199003077777");
+        customer.setAge(30);
+        customer.photo = "photo".getBytes(StandardCharsets.UTF_8);
+
+        List<FieldPlan> fields = plan.getFields();
+        FieldPlan idCard = fields.get(0);
+        assertEquals("110101199003077777", idCard.getValue(customer));
+        idCard.setValue(customer, "[SM4]cipher");
+        idCard.setMac(customer, "mac");
+        idCard.setBlindIndex(customer, "index");
+        assertEquals("[SM4]cipher", customer.getIdCard());
+        assertEquals("mac", idCard.getMac(customer));
+        assertEquals("index", customer.getIdCardIndex());
+        assertArrayEquals(customer.photo, (byte[]) fields.get(1).getValue(customer));
+
+        Customer copy = (Customer) plan.copyOf(customer);
+        assertNotSame(customer, copy);
+        assertEquals("[SM4]cipher", copy.getIdCard());
+        assertEquals(30, copy.getAge());
+        assertArrayEquals(customer.photo, copy.photo);
+    }
+
+    @Test
+    void fallsBackToReflection() {
+        EntityCipherPlan plan = EntityCipherPlan.of(PrivateFieldEntity.class);
+        assertFalse(plan.isGenerated());
+
+        PrivateFieldEntity entity = new PrivateFieldEntity();
+        plan.getFields().get(0).setValue(entity, "name-0");
+        assertEquals("name-0", plan.getFields().get(0).getValue(entity));
+    }
+
+    @Test
+    void fieldsAreDispatchedByRoute() throws Exception {
+        HutoolBaffleServiceImpl defaultService = new HutoolBaffleServiceImpl();
+        EnvelopeCipherServiceImpl blobService = new EnvelopeCipherServiceImpl(defaultService);
+        CipherOperatorRouter router = new CipherOperatorRouter();
+        router.setOperatorMap(Map.of("blob", new CipherOperator("blob", blobService)));
+        CipherRoutes routes = new CipherRoutes(defaultService, router);
+
+        List<FieldPlan> fields = EntityCipherPlan.of(RoutedEntity.class).getFields();
+        assertSame(blobService, fields.get(0).service(routes));
+        assertSame(defaultService, fields.get(1).service(routes));
+        //解析结果缓存在字段计划中，不再查找路由
+        router.setOperatorMap(Map.of());
+        assertSame(blobService, fields.get(0).service(routes));
+
+        RoutedEntity entity = new RoutedEntity();
+        entity.photo = "photo".getBytes(StandardCharsets.UTF_8);
+        entity.idCard = "110101199003077777";
+        FieldCipherBatch batch = new FieldCipherBatch(true, null, routes);
+        fields.forEach(field -> batch.add(entity, field));
+        batch.execute(10);
+
+        assertTrue(CipherEnvelope.isDataKey(entity.photo));
+        assertFalse(CipherEnvelope.isDataKey(entity.idCard));
+        assertEquals("110101199003077777",
+                defaultService.decryptMacBase64(new DecryptMacParam(entity.idCard, entity.idCardMac)).getData());
+        assertEquals(1, blobService.getWrapCalls());
+
+        CipherRoutes unrouted = new CipherRoutes(defaultService, null);
+        assertThrows(IllegalStateException.class, () -> fields.get(0).service(unrouted));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.commoncipher.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecryptedValueCacheTests {
+
+    @Test
+    void hitsReturnCopiesAndMacIsPartOfKey() {
+        DecryptedValueCache cache = new DecryptedValueCache(1024 * 1024, 60_000);
+        byte[] cipher = "cipher-0".getBytes(StandardCharsets.UTF_8);
+        byte[] plain = "plain-0".getBytes(StandardCharsets.UTF_8);
+
+        assertNull(cache.getBytes(cache.key(cipher, "mac-0")));
+        cache.putBytes(cache.key(cipher, "mac-0"), plain);
+        cache.putString(cache.key("[SM4]cipher-0", null), "plain-0");
+
+        byte[] hit = cache.getBytes(cache.key(cipher, "mac-0"));
+        assertArrayEquals(plain, hit);
+        hit[0] = 0;
+        assertArrayEquals(plain, cache.getBytes(cache.key(cipher, "mac-0")));
+        assertEquals("plain-0", cache.getString(cache.key("[SM4]cipher-0", null)));
+
+        assertNull(cache.getBytes(cache.key(cipher, "mac-1")));
+        assertNull(cache.getString(cache.key("[SM4]cipher-0", "mac-0")));
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    void boundedByBytesAndExpires() throws InterruptedException {
+        DecryptedValueCache cache = new DecryptedValueCache(16 * 4096, 60_000);
+        for (int i = 0; i < 1000; i++) {
+            cache.putBytes(cache.key(new byte[]{(byte) i, (byte) (i >> 8)}, null), new byte[1024]);
+        }
+        assertTrue(cache.getWeightBytes() <= 16 * 4096);
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+
+        DecryptedValueCache shortLived = new DecryptedValueCache(1024 * 1024, 20);
+        shortLived.putString(shortLived.key("[SM4]cipher-0", null), "plain-0");
+        Thread.sleep(50);
+        assertNull(shortLived.getString(shortLived.key("[SM4]cipher-0", null)));
+        assertEquals(1, shortLived.getExpirations());
+        assertEquals(0, shortLived.size());
+    }
+
+    @Test
+    void concurrentEvictionNeverReturnsWipedValues() throws Exception {
+        //容量只够少量条目，写入不断淘汰并清零其他线程正在读取的条目
+        DecryptedValueCache cache = new DecryptedValueCache(16 * 1024, 60_000);
+        int keys = 64;
+        AtomicReference<String> corrupted = new AtomicReference<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50_000 && null == corrupted.get(); i++) {
+                        int k = (i * 7 + seed) % keys;
+                        byte[] cipher = {(byte) k};
+                        byte fill = (byte) (k + 1);
+                        if (i % 2 == 0) {
+                            byte[] plain = new byte[512];
+                            Arrays.fill(plain, fill);
+                            cache.putBytes(cache.key(cipher, null), plain);
+                            cache.putString(cache.key("[SM4]" + k, null), "x".repeat(256) + k);
+                        }
+
+                        byte[] hit = cache.getBytes(cache.key(cipher, null));
+                        if (null != hit) {
+                            for (byte b : hit) {
+                                if (b != fill) corrupted.set("bytes of key " + k);
+                            }
+                        }
+                        String text = cache.getString(cache.key("[SM4]" + k, null));
+                        if (null != text && !text.equals("x".repeat(256) + k)) corrupted.set("string of key " + k);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertNull(corrupted.get());
+        assertTrue(cache.getEvictions() > 0);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.commoncipher.envelope;
+
+import cn.hutool.core.codec.Base64;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CipherEnvelopeTests {
+
+    @Test
+    void base64PrefixMatchesFullDecode() {
+        for (String text : new String[]{"[SM4]", "[SM4]x", "[SM4]xy", "[SM4]cipher", "[SM3]cipher", "[SM", "plain"}) {
+            byte[] data = text.getBytes(StandardCharsets.UTF_8);
+            boolean expected = CipherEnvelope.hasPrefix(Base64.decode(Base64.encode(data)));
+
+            assertEquals(expected, CipherEnvelope.hasBase64Prefix(Base64.encode(data)), text);
+            assertEquals(expected, CipherEnvelope.hasBase64Prefix(Base64.encodeUrlSafe(data)), text);
+        }
+        assertFalse(CipherEnvelope.hasBase64Prefix("W1NNNF"));
+        assertFalse(CipherEnvelope.hasBase64Prefix("W1NN?F0="));
+    }
+
+    @Test
+    void bufferAndTextPrefix() {
+        ByteBuffer buffer = ByteBuffer.wrap(CipherEnvelope.allocateBinary(16, CipherEnvelope.FORMAT_SM4_HMAC));
+        assertTrue(CipherEnvelope.isBinary(buffer));
+        assertEquals(0, buffer.position());
+
+        buffer.position(1);
+        assertFalse(CipherEnvelope.hasPrefix(buffer));
+
+        assertTrue(CipherEnvelope.hasPrefix(new StringBuilder("[SM4]abc")));
+        assertFalse(CipherEnvelope.hasPrefix("[SM"));
+    }
+
+    @Test
+    void keyVersionFromHeader() {
+        assertEquals(0, CipherEnvelope.keyVersion("[SM4]5hDg23TKHyFKnyPnBFMjeQ=="));
+        assertEquals(12, CipherEnvelope.keyVersion("[SM4]#12#5hDg23TKHyFKnyPnBFMjeQ=="));
+        assertEquals(9, CipherEnvelope.payloadOffset("[SM4]#12#5hDg"));
+        assertEquals(-1, CipherEnvelope.keyVersion("[SM4]#256#5hDg"));
+        assertEquals(-1, CipherEnvelope.keyVersion("[SM4]#1x#5hDg"));
+
+        byte[] keyed = CipherEnvelope.allocateKeyed(16, 200);
+        assertEquals(200, CipherEnvelope.keyVersion(keyed, keyed.length));
+        assertEquals(CipherEnvelope.KEYED_HEADER_LENGTH, CipherEnvelope.payloadOffset(keyed));
+        assertEquals(-1, CipherEnvelope.keyVersion(keyed, CipherEnvelope.BINARY_HEADER_LENGTH));
+
+        byte[] text = CipherEnvelope.textHeader(3).getBytes(StandardCharsets.UTF_8);
+        assertEquals(3, CipherEnvelope.keyVersion(text, text.length));
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.commoncipher.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlindIndexerTests {
+
+    private static final byte[] KEY = "blind-index-key-0".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void normalizedAndKeyed() {
+        BlindIndexer indexer = new BlindIndexer(KEY, BlindIndexer.MAX_BITS);
+
+        String index = indexer.index("110101199003077777");
+        assertEquals(64, index.length());
+        assertEquals(index, indexer.index(" １１０１０１１９９００３０７７７７７　"));
+        assertNotEquals(index, indexer.index("110101199003077777".getBytes(StandardCharsets.UTF_8)));
+
+        BlindIndexer otherKey = new BlindIndexer("blind-index-key-1".getBytes(StandardCharsets.UTF_8), 256);
+        assertNotEquals(index, otherKey.index("110101199003077777"));
+    }
+
+    @Test
+    void truncatedToBits() {
+        String full = new BlindIndexer(KEY, 256).index("id-0");
+        String truncated = new BlindIndexer(KEY, 20).index("id-0");
+
+        assertEquals(6, truncated.length());
+        assertTrue(full.startsWith(truncated.substring(0, 5)));
+        assertEquals(0, Integer.parseInt(truncated.substring(5), 16));
+    }
+}
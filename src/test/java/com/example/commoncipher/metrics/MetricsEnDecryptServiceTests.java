@@ -0,0 +1,64 @@
+package com.example.commoncipher.metrics;
+
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.service.EnDecryptService;
+import com.example.commoncipher.service.impl.EnvelopeCipherServiceImpl;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsEnDecryptServiceTests {
+
+    private static final byte[] PLAIN = "photo-bytes-0".getBytes(StandardCharsets.UTF_8);
+
+    private final SimpleCipherMetrics metrics = new SimpleCipherMetrics();
+
+    private final EnDecryptService service = new MetricsEnDecryptService(new HutoolBaffleServiceImpl(), metrics);
+
+    @Test
+    void recordsLatencyBytesAndMacFailures() {
+        EncryptMacResult encrypted = service.encryptMacByte(PLAIN).getData();
+        SimpleCipherMetrics.OperationStats encrypt = metrics.getOperation(CipherOperation.ENCRYPT_MAC_BYTE);
+        assertEquals(1, encrypt.getLatency().getCount());
+        assertEquals(PLAIN.length, encrypt.getBytes());
+        assertEquals(0, encrypt.getMacFailures());
+
+        DecryptMacParam param = new DecryptMacParam(encrypted.getCipherByte(), new StringBuilder(encrypted.getMac())
+                .reverse().toString());
+        assertFalse(service.decryptMacByte(param).isSuccess());
+
+        SimpleCipherMetrics.OperationStats decrypt = metrics.getOperation(CipherOperation.DECRYPT_MAC_BYTE);
+        assertEquals(1, decrypt.getLatency().getCount());
+        assertEquals(1, decrypt.getMacFailures());
+        assertEquals(1L, decrypt.getFailures().get("99999999"));
+    }
+
+    /**
+     * 需要关闭的加密机服务，如远程加密机
+     */
+    static class ClosingBaffle extends HutoolBaffleServiceImpl implements AutoCloseable {
+
+        boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void closeReachesWrappedService() throws Exception {
+        ClosingBaffle baffle = new ClosingBaffle();
+        try (MetricsEnDecryptService wrapped = new MetricsEnDecryptService(new EnvelopeCipherServiceImpl(baffle),
+                metrics)) {
+            assertFalse(baffle.closed);
+        }
+        assertTrue(baffle.closed);
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.commoncipher.migration;
+
+import cn.hutool.db.ds.simple.SimpleDataSource;
+import com.example.commoncipher.exception.ServiceException;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 使用H2内存数据库
+ */
+class JdbcTableMigrationTests {
+
+    private final HutoolBaffleServiceImpl service = new HutoolBaffleServiceImpl();
+
+    private SimpleDataSource dataSource;
+
+    @BeforeEach
+    void createTable() throws Exception {
+        dataSource = new SimpleDataSource("jdbc:h2:mem:migration;DB_CLOSE_DELAY=-1", "sa", "");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS t_user");
+            statement.execute("CREATE TABLE t_user (id BIGINT PRIMARY KEY, phone VARCHAR(256), "
+                    + "phone_mac VARCHAR(128), photo VARBINARY(256))");
+        }
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO t_user VALUES (?, ?, ?, ?)")) {
+            //主键不连续，部分区间为空
+            for (long id = 1; id <= 500; id += id % 7 == 0 ? 40 : 1) {
+                insert.setLong(1, id);
+                insert.setString(2, id % 11 == 0 ? null : "1380000" + id);
+                insert.setString(3, null);
+                insert.setBytes(4, ("photo-" + id).getBytes(StandardCharsets.UTF_8));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    @Test
+    void encryptsPlainRowsAndSkipsCipher(@TempDir Path dir) throws Exception {
+        String cipher = service.encryptBase64("13800000002").getData();
+        execute("UPDATE t_user SET phone = '" + cipher + "', phone_mac = 'keep' WHERE id = 2");
+
+        JdbcTableMigration migration = migration(dir);
+        MigrationProgress progress = migration.run();
+
+        assertEquals(progress.getTotalRanges(), progress.getCompletedRanges());
+        assertEquals(1, progress.getSkippedValues() - nullPhones());
+        assertEquals("501", new FileCheckpointStore(dir).load("t_user"));
+        assertAllEncrypted();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT phone, phone_mac FROM t_user WHERE id = 2")) {
+            resultSet.next();
+            assertEquals(cipher, resultSet.getString(1));
+            assertEquals("keep", resultSet.getString(2));
+        }
+
+        //全部完成后再次执行没有区间
+        assertEquals(0, migration(dir).run().getTotalRanges());
+    }
+
+    @Test
+    void failedRangeRollsBackAndResumes(@TempDir Path dir) throws Exception {
+        //第二个区间写回时超出字段长度，该区间回滚，断点停在之前
+        execute("ALTER TABLE t_user ALTER COLUMN phone_mac VARCHAR(8)");
+        execute("UPDATE t_user SET phone = NULL WHERE id < 51 OR id >= 101");
+
+        JdbcTableMigration failed = migration(dir);
+        failed.setParallelism(1);
+        assertThrows(ServiceException.class, failed::run);
+        assertEquals("51", new FileCheckpointStore(dir).load("t_user"));
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT photo FROM t_user WHERE id = 89")) {
+            resultSet.next();
+            assertArrayEquals("photo-89".getBytes(StandardCharsets.UTF_8), resultSet.getBytes(1));
+        }
+
+        execute("ALTER TABLE t_user ALTER COLUMN phone_mac VARCHAR(128)");
+        migration(dir).run();
+        assertAllEncrypted();
+    }
+
+    private JdbcTableMigration migration(Path dir) {
+        JdbcTableMigration migration = new JdbcTableMigration("t_user", dataSource, service, "t_user", "id",
+                List.of(MigrationColumn.string("phone", "phone_mac"), MigrationColumn.bytes("photo")),
+                new FileCheckpointStore(dir));
+        migration.setRangeSize(50);
+        migration.setBatchSize(16);
+        migration.setParallelism(3);
+        return migration;
+    }
+
+    private void assertAllEncrypted() throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, phone, phone_mac, photo FROM t_user")) {
+            while (resultSet.next()) {
+                long id = resultSet.getLong(1);
+                String phone = resultSet.getString(2);
+                if (null == phone) {
+                    assertNull(resultSet.getString(3));
+                } else if (id != 2) {
+                    assertEquals("1380000" + id, service.decryptMacBase64(
+                            new DecryptMacParam(phone, resultSet.getString(3))).getData());
+                }
+                assertEquals("photo-" + id,
+                        new String(service.decryptByte(resultSet.getBytes(4)).getData(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private long nullPhones() throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM t_user WHERE phone IS NULL")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void execute(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
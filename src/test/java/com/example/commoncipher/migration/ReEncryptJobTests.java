@@ -0,0 +1,122 @@
+package com.example.commoncipher.migration;
+
+import cn.hutool.core.codec.Base64;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.exception.ServiceException;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.service.impl.HutoolBaffleServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReEncryptJobTests {
+
+    private final HutoolBaffleServiceImpl oldService = new HutoolBaffleServiceImpl();
+
+    private final HutoolBaffleServiceImpl newService = new HutoolBaffleServiceImpl(
+            CipherKeyring.of("1:" + Base64.encode("abcdefghijklmnop"), 1));
+
+    @Test
+    void rotatesOldVersionAndSkipsCurrent(@TempDir Path dir) throws Exception {
+        MemorySource source = new MemorySource();
+        for (int i = 0; i < 25; i++) {
+            EncryptMacResult result = oldService.encryptMacBase64("id-" + i).getData();
+            source.rows.put(key(i), new ReEncryptRecord(key(i), result.getCipherBase64(), result.getMac()));
+        }
+        source.rows.put(key(25), new ReEncryptRecord(key(25), "plain", null));
+        source.rows.put(key(26), new ReEncryptRecord(key(26), newService.encryptBase64("id-26").getData(), null));
+
+        ReEncryptJob job = new ReEncryptJob("phone-v1", newService, source, new FileCheckpointStore(dir));
+        job.setBatchSize(4);
+        job.setParallelism(3);
+        job.setRecordsPerSecond(0);
+        job.run();
+
+        assertEquals(27, job.getScanned());
+        assertEquals(25, job.getReEncrypted());
+        assertEquals(key(26), new FileCheckpointStore(dir).load("phone-v1"));
+        for (int i = 0; i < 25; i++) {
+            ReEncryptRecord record = source.rows.get(key(i));
+            assertEquals(1, CipherEnvelope.keyVersion(record.getCipherBase64()));
+            assertEquals("id-" + i, newService.decryptMacBase64(
+                    new DecryptMacParam(record.getCipherBase64(), record.getMac())).getData());
+        }
+        assertEquals("plain", source.rows.get(key(25)).getCipherBase64());
+    }
+
+    @Test
+    void failedPageResumesFromCheckpoint(@TempDir Path dir) throws Exception {
+        MemorySource source = new MemorySource();
+        for (int i = 0; i < 10; i++) {
+            source.rows.put(key(i), new ReEncryptRecord(key(i), oldService.encryptByte(new byte[]{(byte) i}).getData(),
+                    null));
+        }
+        //第二页有未配置版本的密文，解密失败，整页不写回、不保存断点
+        source.rows.put(key(6), new ReEncryptRecord(key(6), CipherEnvelope.allocateKeyed(16, 9), null));
+
+        ReEncryptJob job = new ReEncryptJob("photo-v1", newService, source, new FileCheckpointStore(dir));
+        job.setBatchSize(5);
+        job.setParallelism(1);
+        assertThrows(ServiceException.class, job::run);
+        assertEquals(key(4), job.getCheckpoint());
+        assertEquals(0, CipherEnvelope.keyVersion(source.rows.get(key(5)).getCipherByte(), 7));
+
+        source.rows.put(key(6), new ReEncryptRecord(key(6), oldService.encryptByte(new byte[]{6}).getData(), null));
+        List<String> fetchedFrom = source.fetchedFrom;
+        fetchedFrom.clear();
+        ReEncryptJob resumed = new ReEncryptJob("photo-v1", newService, source, new FileCheckpointStore(dir));
+        resumed.setBatchSize(5);
+        resumed.setParallelism(1);
+        resumed.run();
+
+        assertEquals(key(4), fetchedFrom.get(0));
+        assertEquals(5, resumed.getReEncrypted());
+        for (int i = 0; i < 10; i++) {
+            byte[] cipher = source.rows.get(key(i)).getCipherByte();
+            assertEquals(1, CipherEnvelope.keyVersion(cipher, cipher.length));
+            assertEquals(i, newService.decryptByte(cipher).getData()[0]);
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("%04d", i);
+    }
+
+    /**
+     * 内存中的表，写回时按原密文条件更新
+     */
+    private static final class MemorySource implements ReEncryptSource {
+
+        private final TreeMap<String, ReEncryptRecord> rows = new TreeMap<>();
+
+        private final List<String> fetchedFrom = new ArrayList<>();
+
+        @Override
+        public synchronized List<ReEncryptRecord> fetch(String afterKey, int limit) {
+            fetchedFrom.add(afterKey);
+            Map<String, ReEncryptRecord> tail = null == afterKey ? rows : rows.tailMap(afterKey, false);
+            return tail.values().stream().limit(limit).toList();
+        }
+
+        @Override
+        public synchronized void update(List<ReEncryptRecord> records) {
+            for (ReEncryptRecord record : records) {
+                if (rows.get(record.getKey()) != record) continue;
+
+                rows.put(record.getKey(), null != record.getNewCipherByte()
+                        ? new ReEncryptRecord(record.getKey(), record.getNewCipherByte(), record.getNewMac())
+                        : new ReEncryptRecord(record.getKey(), record.getNewCipherBase64(), record.getNewMac()));
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.commoncipher.service.impl;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.thread.ThreadUtil;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EnvelopeCipherServiceImplTests {
+
+    private final HutoolBaffleServiceImpl hsm = new HutoolBaffleServiceImpl(
+            CipherKeyring.of("1:" + Base64.encode("abcdefghijklmnop"), 1));
+
+    @Test
+    void dataKeyIsReusedWithinLimits() {
+        EnvelopeCipherServiceImpl service = new EnvelopeCipherServiceImpl(hsm);
+        service.maxRecords = 10;
+
+        for (int i = 0; i < 25; i++) {
+            byte[] cipher = service.encryptByte(("photo-" + i).getBytes(StandardCharsets.UTF_8)).getData();
+            assertTrue(CipherEnvelope.isDataKey(cipher));
+            assertEquals(1, CipherEnvelope.keyVersion(cipher, cipher.length));
+            assertEquals("photo-" + i, new String(service.decryptByte(cipher).getData(), StandardCharsets.UTF_8));
+        }
+        assertEquals(3, service.getWrapCalls());
+        //生成时已缓存，读取本实例写入的数据不再调用加密机
+        assertEquals(0, service.getUnwrapCalls());
+
+        //相同明文每条随机IV
+        assertNotEquals(service.encryptBase64("13800000000").getData(), service.encryptBase64("13800000000").getData());
+    }
+
+    @Test
+    void otherInstanceUnwrapsOncePerDataKey() {
+        EnvelopeCipherServiceImpl writer = new EnvelopeCipherServiceImpl(hsm);
+        EnvelopeCipherServiceImpl reader = new EnvelopeCipherServiceImpl(hsm);
+
+        for (int i = 0; i < 5; i++) {
+            EncryptMacResult result = writer.encryptMacBase64("身份证-" + i).getData();
+            assertTrue(CipherEnvelope.isDataKey(result.getCipherBase64()));
+            assertEquals(1, CipherEnvelope.keyVersion(result.getCipherBase64()));
+            assertEquals("身份证-" + i, reader.decryptMacBase64(
+                    new DecryptMacParam(result.getCipherBase64(), result.getMac())).getData());
+        }
+        assertEquals(1, reader.getUnwrapCalls());
+
+        EncryptMacResult result = writer.encryptMacByte(new byte[]{1, 2, 3}).getData();
+        byte[] tampered = result.getCipherByte().clone();
+        tampered[tampered.length - 1] ^= 1;
+        assertFalse(reader.decryptMacByte(new DecryptMacParam(tampered, result.getMac())).isSuccess());
+        assertArrayEquals(new byte[]{1, 2, 3},
+                reader.decryptMacByte(new DecryptMacParam(result.getCipherByte(), result.getMac())).getData());
+    }
+
+    @Test
+    void concurrentReadersUnwrapDataKeyOnce() throws Exception {
+        EnvelopeCipherServiceImpl writer = new EnvelopeCipherServiceImpl(hsm);
+        String cipher = writer.encryptBase64("身份证").getData();
+
+        //加密机解密变慢，所有读取线程都在第一次解密结束前未命中缓存
+        HutoolBaffleServiceImpl slowHsm = new HutoolBaffleServiceImpl(
+                CipherKeyring.of("1:" + Base64.encode("abcdefghijklmnop"), 1)) {
+            @Override
+            public ExampleCommonResult<byte[]> decryptByte(byte[] cipherByte) {
+                ThreadUtil.sleep(200);
+                return super.decryptByte(cipherByte);
+            }
+        };
+        EnvelopeCipherServiceImpl reader = new EnvelopeCipherServiceImpl(slowHsm);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return reader.decryptBase64(cipher).getData();
+                }));
+            }
+            start.countDown();
+            for (Future<String> result : results) {
+                assertEquals("身份证", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, reader.getUnwrapCalls());
+    }
+
+    @Test
+    void cipherUsesDerivedSubkey() throws Exception {
+        EnvelopeCipherServiceImpl service = new EnvelopeCipherServiceImpl(hsm);
+        byte[] envelope = service.encryptByte("photo".getBytes(StandardCharsets.UTF_8)).getData();
+
+        int offset = CipherEnvelope.BINARY_HEADER_LENGTH;
+        int wrappedLength = (envelope[offset] & 0xFF) << 8 | envelope[offset + 1] & 0xFF;
+        byte[] dataKey = hsm.decryptByte(Arrays.copyOfRange(envelope, offset + 2, offset + 2 + wrappedLength)).getData();
+        int payload = offset + 2 + wrappedLength + 16;
+
+        //数据密钥本身不能解密
+        Cipher cipher = Cipher.getInstance("SM4/CBC/PKCS5Padding", "BC");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(dataKey, "SM4"),
+                new IvParameterSpec(envelope, payload - 16, 16));
+        byte[] raw = tryDecrypt(cipher, envelope, payload);
+        assertFalse(null != raw && Arrays.equals("photo".getBytes(StandardCharsets.UTF_8), raw));
+
+        Mac hmac = Mac.getInstance("HmacSM3", "BC");
+        hmac.init(new SecretKeySpec(dataKey, "HmacSM3"));
+        byte[] encKey = Arrays.copyOf(hmac.doFinal("enc".getBytes(StandardCharsets.US_ASCII)), 16);
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(encKey, "SM4"),
+                new IvParameterSpec(envelope, payload - 16, 16));
+        assertEquals("photo", new String(cipher.doFinal(envelope, payload, envelope.length - payload), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void corruptedCipherFailsWithoutThrowing() {
+        EnvelopeCipherServiceImpl service = new EnvelopeCipherServiceImpl(hsm);
+
+        //截掉最后一个字节，密文长度不再是分组长度的整数倍
+        byte[] cipher = service.encryptByte("photo".getBytes(StandardCharsets.UTF_8)).getData();
+        ExampleCommonResult<byte[]> bytes = service.decryptByte(Arrays.copyOf(cipher, cipher.length - 1));
+        assertFalse(bytes.isSuccess());
+        assertEquals("ENVELOPE_CRYPT_ERROR", bytes.getMessage());
+
+        String text = service.encryptBase64("photo").getData();
+        byte[] body = java.util.Base64.getDecoder().decode(text.substring(text.indexOf('$') + 1));
+        ExampleCommonResult<String> base64 = service.decryptBase64(text.substring(0, text.indexOf('$') + 1)
+                + java.util.Base64.getEncoder().encodeToString(Arrays.copyOf(body, body.length - 1)));
+        assertFalse(base64.isSuccess());
+        assertEquals("ENVELOPE_CRYPT_ERROR", base64.getMessage());
+    }
+
+    private static byte[] tryDecrypt(Cipher cipher, byte[] envelope, int payload) {
+        try {
+            return cipher.doFinal(envelope, payload, envelope.length - payload);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Test
+    void legacyCipherIsReadByKeyService() {
+        EnvelopeCipherServiceImpl service = new EnvelopeCipherServiceImpl(hsm);
+
+        //加密机直接加密的旧数据仍可读取
+        String legacy = hsm.encryptBase64("legacy").getData();
+        assertEquals("legacy", service.decryptBase64(legacy).getData());
+        assertEquals(legacy, service.encryptBase64(legacy).getData());
+        assertEquals(0, service.getWrapCalls());
+    }
+}
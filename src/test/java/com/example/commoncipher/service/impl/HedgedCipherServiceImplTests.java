@@ -0,0 +1,94 @@
+package com.example.commoncipher.service.impl;
+
+import cn.hutool.core.codec.Base64;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.result.ExampleCommonResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedCipherServiceImplTests {
+
+    private final HutoolBaffleServiceImpl baffle = new HutoolBaffleServiceImpl();
+
+    /**
+     * 注入延迟或失败的本地节点
+     */
+    static class FaultyBackend extends HutoolBaffleServiceImpl {
+
+        private final long delayMillis;
+
+        private final boolean failing;
+
+        FaultyBackend(long delayMillis, boolean failing) {
+            this.delayMillis = delayMillis;
+            this.failing = failing;
+        }
+
+        @Override
+        public ExampleCommonResult<String> encryptBase64(String plainBase64) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return failing ? ExampleCommonResult.fail("99999999", "NODE_DOWN") : super.encryptBase64(plainBase64);
+        }
+    }
+
+    private static HedgedCipherServiceImpl hedged(HutoolBaffleServiceImpl... backends) {
+        HedgedCipherServiceImpl service = new HedgedCipherServiceImpl(List.of(backends));
+        service.minHedgeDelay = 20;
+        return service;
+    }
+
+    @Test
+    void hedgeBypassesStalledNode() {
+        try (HedgedCipherServiceImpl service = hedged(new FaultyBackend(2000, false), new FaultyBackend(0, false))) {
+            for (int i = 0; i < 10; i++) {
+                long start = System.nanoTime();
+                ExampleCommonResult<String> result = service.encryptBase64("id-" + i);
+                long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+                assertEquals(baffle.encryptBase64("id-" + i).getData(), result.getData());
+                assertTrue(elapsedMillis < 1000, "elapsed " + elapsedMillis + "ms");
+            }
+        }
+    }
+
+    @Test
+    void failingNodeFailsOverAndIsEjected() {
+        try (HedgedCipherServiceImpl service = hedged(new FaultyBackend(0, true), new FaultyBackend(0, false))) {
+            for (int i = 0; i < 60; i++) {
+                assertTrue(service.encryptBase64("id-" + i).isSuccess());
+            }
+            assertArrayEquals(new boolean[]{true, false}, service.getEjected());
+        }
+
+        try (HedgedCipherServiceImpl service = hedged(new FaultyBackend(0, true), new FaultyBackend(0, true))) {
+            ExampleCommonResult<String> result = service.encryptBase64("id-0");
+            assertEquals("NODE_DOWN", result.getMessage());
+        }
+    }
+
+    @Test
+    void lookupVersionsReachNodes() {
+        CipherKeyring keyring = CipherKeyring.of("1:" + Base64.encode("abcdefghijklmnop") + ",2:"
+                + Base64.encode("ponmlkjihgfedcba"), 2, "1");
+        HutoolBaffleServiceImpl node = new HutoolBaffleServiceImpl(keyring);
+        try (HedgedCipherServiceImpl service = hedged(node, new HutoolBaffleServiceImpl(keyring))) {
+            assertArrayEquals(new int[]{2, 1}, service.getLookupKeyVersions());
+
+            //旧版本的查询参数由节点按该版本加密
+            ExampleCommonResult<List<String>> old = service.encryptBase64Batch(List.of("id-0"), 1);
+            assertTrue(old.isSuccess());
+            assertEquals(node.encryptBase64Batch(List.of("id-0"), 1).getData(), old.getData());
+            assertNotEquals(service.encryptBase64("id-0").getData(), old.getData().get(0));
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.commoncipher.service.impl;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.thread.NamedThreadFactory;
+import cn.hutool.crypto.SmUtil;
+import com.example.commoncipher.envelope.CipherEnvelope;
+import com.example.commoncipher.keyring.CipherKeyring;
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HutoolBaffleServiceImplTests {
+
+    //旧格式：[SM4] + base64密文，由改造前的版本生成
+    private static final byte[] LEGACY_CIPHER =
+            "[SM4]kl9qxfMMZx+eNNTCMnL6g5Mb1NTJ0KMNtkDP9cRukJQ=".getBytes(StandardCharsets.UTF_8);
+    private static final String LEGACY_MAC = "120f125de813ae31ef88f2e13bbde3383492d753eebbc35d6ba8d6f0976da8a9";
+    private static final byte[] PLAIN = "photo-bytes-0".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEY = "1234567887654321".getBytes(StandardCharsets.UTF_8);
+
+    private final HutoolBaffleServiceImpl service = new HutoolBaffleServiceImpl();
+
+    @Test
+    void decryptLegacyByteFormat() {
+        assertArrayEquals(PLAIN, service.decryptByte(LEGACY_CIPHER).getData());
+
+        ExampleCommonResult<byte[]> result = service.decryptMacByte(new DecryptMacParam(LEGACY_CIPHER, LEGACY_MAC));
+        assertTrue(result.isSuccess());
+        assertArrayEquals(PLAIN, result.getData());
+    }
+
+    @Test
+    void binaryEnvelopeRoundTrip() {
+        byte[] cipher = service.encryptByte(PLAIN).getData();
+        assertTrue(CipherEnvelope.isBinary(cipher));
+        assertTrue(cipher.length < LEGACY_CIPHER.length);
+        assertTrue(service.isEncrypt(cipher).getData());
+        assertArrayEquals(PLAIN, service.decryptByte(cipher).getData());
+
+        EncryptMacResult macResult = service.encryptMacByte(PLAIN).getData();
+        DecryptMacParam param = new DecryptMacParam(macResult.getCipherByte(), macResult.getMac());
+        assertArrayEquals(PLAIN, service.decryptMacByte(param).getData());
+
+        param.setMac(LEGACY_MAC);
+        assertFalse(service.decryptMacByte(param).isSuccess());
+    }
+
+    @Test
+    void legacyWriteFormatStillAvailable() {
+        HutoolBaffleServiceImpl legacyService = new HutoolBaffleServiceImpl();
+        legacyService.binaryEnvelope = false;
+
+        assertArrayEquals(LEGACY_CIPHER, legacyService.encryptByte(PLAIN).getData());
+        assertEquals(LEGACY_MAC, legacyService.encryptMacByte(PLAIN).getData().getMac());
+    }
+
+    @Test
+    void streamMatchesInMemoryEnvelope() {
+        byte[] plain = new byte[300_000];
+        new Random(1).nextBytes(plain);
+        service.streamChunkSize = 4096;
+
+        ByteArrayOutputStream cipherOut = new ByteArrayOutputStream();
+        String mac = service.encryptStream(new ByteArrayInputStream(plain), cipherOut).getData();
+        EncryptMacResult inMemory = service.encryptMacByte(plain).getData();
+        assertArrayEquals(inMemory.getCipherByte(), cipherOut.toByteArray());
+        assertEquals(inMemory.getMac(), mac);
+
+        ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+        assertTrue(service.decryptStream(new ByteArrayInputStream(cipherOut.toByteArray()), plainOut, mac).isSuccess());
+        assertArrayEquals(plain, plainOut.toByteArray());
+
+        plainOut.reset();
+        assertTrue(service.decryptStream(new ByteArrayInputStream(LEGACY_CIPHER), plainOut, LEGACY_MAC).isSuccess());
+        assertArrayEquals(PLAIN, plainOut.toByteArray());
+
+        assertFalse(service.decryptStream(new ByteArrayInputStream(LEGACY_CIPHER), new ByteArrayOutputStream(),
+                mac).isSuccess());
+    }
+
+    @Test
+    void fileMatchesInMemoryEnvelope(@TempDir Path dir) throws IOException {
+        for (int size : new int[]{1, 4096, 300_000}) {
+            byte[] plain = new byte[size];
+            new Random(size).nextBytes(plain);
+            service.fileSegmentSize = 4096;
+            //分段内按多个分块读写
+            service.streamChunkSize = 1024;
+
+            Path plainFile = Files.write(dir.resolve("plain-" + size), plain);
+            Path cipherFile = dir.resolve("cipher-" + size);
+            Path decryptedFile = dir.resolve("decrypted-" + size);
+
+            String mac = service.encryptFile(plainFile, cipherFile).getData();
+            EncryptMacResult inMemory = service.encryptMacByte(plain).getData();
+            assertArrayEquals(inMemory.getCipherByte(), Files.readAllBytes(cipherFile));
+            assertEquals(inMemory.getMac(), mac);
+
+            assertTrue(service.decryptFile(cipherFile, decryptedFile, mac).isSuccess());
+            assertArrayEquals(plain, Files.readAllBytes(decryptedFile));
+            assertFalse(service.decryptFile(cipherFile, dir.resolve("rejected-" + size), LEGACY_MAC).isSuccess());
+        }
+    }
+
+    @Test
+    void stringMacUnchanged() {
+        EncryptMacResult result = service.encryptMacBase64("id-0").getData();
+        assertEquals("[SM4]5hDg23TKHyFKnyPnBFMjeQ==", result.getCipherBase64());
+        assertEquals("edba02089e496856a91e84b97c86bfe569fc4a25aee32dd92b186b9c63d5e76d", result.getMac());
+        assertEquals(result.getMac(), service.generateMacBase64(result.getCipherBase64()).getData());
+
+        DecryptMacParam param = new DecryptMacParam(result.getCipherBase64(), result.getMac());
+        assertEquals("id-0", service.decryptMacBase64(param).getData());
+
+        param.setMac(LEGACY_MAC);
+        assertFalse(service.decryptMacBase64(param).isSuccess());
+    }
+
+    @Test
+    void envelopeFormatSelectsMac() {
+        EncryptMacResult result = service.encryptMacByte(PLAIN).getData();
+        assertEquals(CipherEnvelope.FORMAT_SM4_HMAC, CipherEnvelope.format(result.getCipherByte()));
+        assertEquals(result.getMac(), service.generateMacByte(result.getCipherByte()).getData());
+
+        //FORMAT_SM4_RAW：HMAC-SM3之前写入的二进制信封，mac为加盐SM3
+        byte[] raw = SmUtil.sm4(KEY).encrypt(PLAIN);
+        byte[] envelope = CipherEnvelope.allocateBinary(raw.length, CipherEnvelope.FORMAT_SM4_RAW);
+        System.arraycopy(raw, 0, envelope, CipherEnvelope.BINARY_HEADER_LENGTH, raw.length);
+        String rawMac = SmUtil.sm3WithSalt(KEY).digestHex(raw);
+
+        assertEquals(rawMac, service.generateMacByte(envelope).getData());
+        assertArrayEquals(PLAIN, service.decryptMacByte(new DecryptMacParam(envelope, rawMac)).getData());
+        assertFalse(service.decryptMacByte(new DecryptMacParam(envelope, result.getMac())).isSuccess());
+    }
+
+    @Test
+    void keyringReadsOldVersionsAndWritesCurrent(@TempDir Path dir) throws IOException {
+        HutoolBaffleServiceImpl rotated = new HutoolBaffleServiceImpl(
+                CipherKeyring.of("1:" + Base64.encode("abcdefghijklmnop"), 1));
+        assertEquals(1, rotated.getKeyVersion());
+        assertArrayEquals(PLAIN, rotated.decryptMacByte(new DecryptMacParam(LEGACY_CIPHER, LEGACY_MAC)).getData());
+
+        EncryptMacResult bytes = rotated.encryptMacByte(PLAIN).getData();
+        assertEquals(CipherEnvelope.FORMAT_SM4_HMAC_KEYED, CipherEnvelope.format(bytes.getCipherByte()));
+        assertEquals(1, CipherEnvelope.keyVersion(bytes.getCipherByte(), bytes.getCipherByte().length));
+        assertArrayEquals(PLAIN, rotated.decryptMacByte(
+                new DecryptMacParam(bytes.getCipherByte(), bytes.getMac())).getData());
+
+        EncryptMacResult text = rotated.encryptMacBase64("id-0").getData();
+        assertTrue(text.getCipherBase64().startsWith("[SM4]#1#"));
+        assertEquals(text.getMac(), rotated.generateMacBase64(text.getCipherBase64()).getData());
+        DecryptMacParam textParam = new DecryptMacParam(text.getCipherBase64(), text.getMac());
+        assertEquals("id-0", rotated.decryptMacBase64(textParam).getData());
+
+        Path cipherFile = dir.resolve("cipher");
+        String fileMac = rotated.encryptFile(Files.write(dir.resolve("plain"), PLAIN), cipherFile).getData();
+        assertArrayEquals(bytes.getCipherByte(), Files.readAllBytes(cipherFile));
+        ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+        assertTrue(rotated.decryptStream(Files.newInputStream(cipherFile), plainOut, fileMac).isSuccess());
+        assertArrayEquals(PLAIN, plainOut.toByteArray());
+
+        //不含版本1的服务无法解密
+        assertFalse(service.decryptByte(bytes.getCipherByte()).isSuccess());
+        assertFalse(service.decryptBase64(text.getCipherBase64()).isSuccess());
+    }
+
+    @Test
+    void verifyMacRejectsMalformedHex() {
+        DecryptMacParam param = new DecryptMacParam(LEGACY_CIPHER, LEGACY_MAC.toUpperCase());
+        assertTrue(service.verifyMacByte(param).isSuccess());
+
+        param.setMac(LEGACY_MAC.substring(2));
+        assertFalse(service.verifyMacByte(param).isSuccess());
+        param.setMac("zz" + LEGACY_MAC.substring(2));
+        assertFalse(service.verifyMacByte(param).isSuccess());
+    }
+
+    @Test
+    void asyncBatchCallsBatchOnce() {
+        AtomicInteger batchCalls = new AtomicInteger();
+        AtomicInteger singleCalls = new AtomicInteger();
+        List<String> threads = new ArrayList<>();
+        HutoolBaffleServiceImpl batchService = new HutoolBaffleServiceImpl() {
+            @Override
+            public ExampleCommonResult<String> encryptBase64(String plainBase64) {
+                singleCalls.incrementAndGet();
+                return super.encryptBase64(plainBase64);
+            }
+
+            @Override
+            public ExampleCommonResult<List<String>> encryptBase64Batch(List<String> plainBase64s) {
+                //模拟加密机批量接口，整批一次调用
+                batchCalls.incrementAndGet();
+                threads.add(Thread.currentThread().getName());
+                List<String> ciphers = new ArrayList<>();
+                plainBase64s.forEach(plain -> ciphers.add(service.encryptBase64(plain).getData()));
+                return ExampleCommonResult.success(ciphers);
+            }
+        };
+
+        List<String> plains = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            plains.add("id-" + i);
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("test-batch-", true));
+        try {
+            List<String> ciphers = batchService.encryptBase64BatchAsync(plains, executor).join().getData();
+            assertEquals(service.encryptBase64Batch(plains).getData(), ciphers);
+            assertEquals(1, batchCalls.get());
+            assertEquals(0, singleCalls.get());
+            assertEquals(List.of("test-batch-1"), threads);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
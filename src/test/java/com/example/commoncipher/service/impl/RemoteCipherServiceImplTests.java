@@ -0,0 +1,206 @@
+package com.example.commoncipher.service.impl;
+
+import com.example.commoncipher.param.DecryptMacParam;
+import com.example.commoncipher.remote.RemoteCipherClient;
+import com.example.commoncipher.remote.RemoteCipherProtocol;
+import com.example.commoncipher.remote.RemoteCipherProtocol.Frame;
+import com.example.commoncipher.remote.RemoteCipherServer;
+import com.example.commoncipher.result.EncryptMacResult;
+import com.example.commoncipher.result.ExampleCommonResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemoteCipherServiceImplTests {
+
+    private static final byte[] PLAIN = "photo-bytes-0".getBytes(StandardCharsets.UTF_8);
+
+    private final HutoolBaffleServiceImpl baffle = new HutoolBaffleServiceImpl();
+
+    private RemoteCipherServer server;
+
+    private RemoteCipherServiceImpl client;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new RemoteCipherServer(baffle, 0, 4).start();
+        client = client(server.getPort(), 1000);
+    }
+
+    @AfterEach
+    void stop() {
+        client.close();
+        server.close();
+    }
+
+    private static RemoteCipherServiceImpl client(int port, long requestTimeout) {
+        RemoteCipherServiceImpl client = new RemoteCipherServiceImpl();
+        client.port = port;
+        client.poolSize = 2;
+        client.requestTimeout = requestTimeout;
+        return client;
+    }
+
+    @Test
+    void matchesLocalBaffle() {
+        assertEquals(baffle.encryptBase64("id-0").getData(), client.encryptBase64("id-0").getData());
+        assertEquals("id-0", client.decryptBase64(client.encryptBase64("id-0").getData()).getData());
+
+        byte[] cipher = client.encryptByte(PLAIN).getData();
+        assertArrayEquals(baffle.encryptByte(PLAIN).getData(), cipher);
+        assertTrue(client.isEncrypt(cipher).getData());
+        assertArrayEquals(PLAIN, client.decryptByte(cipher).getData());
+
+        EncryptMacResult macResult = client.encryptMacByte(PLAIN).getData();
+        DecryptMacParam param = new DecryptMacParam(macResult.getCipherByte(), macResult.getMac());
+        assertTrue(client.verifyMacByte(param).getData());
+        assertArrayEquals(PLAIN, client.decryptMacByte(param).getData());
+
+        param.setMac(baffle.encryptMacBase64("id-0").getData().getMac());
+        ExampleCommonResult<byte[]> tampered = client.decryptMacByte(param);
+        assertFalse(tampered.isSuccess());
+        assertEquals(HutoolBaffleServiceImpl.MAC_ERROR_MSG, tampered.getMessage());
+    }
+
+    @Test
+    void onlyCurrentLookupVersionIsEncrypted() {
+        client.keyVersion = 1;
+        client.lookupVersions = "0, 2,1,2";
+        assertArrayEquals(new int[]{1, 2, 0}, client.getLookupKeyVersions());
+
+        //加密机只按当前版本加密，其他版本明确失败，不返回当前版本的密文
+        assertTrue(client.encryptBase64Batch(List.of("id-0"), 1).isSuccess());
+        assertEquals("UNSUPPORTED_KEY_VERSION", client.encryptBase64Batch(List.of("id-0"), 2).getMessage());
+    }
+
+    @Test
+    void pipelinedBatchKeepsOrder() {
+        List<String> plains = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            plains.add("id-" + i);
+        }
+
+        List<String> ciphers = client.encryptBase64Batch(plains).getData();
+        assertEquals(baffle.encryptBase64Batch(plains).getData(), ciphers);
+        assertEquals(plains, client.decryptBase64Batch(ciphers).getData());
+    }
+
+    @Test
+    void timeoutAndUnreachableFail() throws IOException {
+        HutoolBaffleServiceImpl slow = new HutoolBaffleServiceImpl() {
+            @Override
+            public ExampleCommonResult<String> encryptBase64(String plainBase64) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encryptBase64(plainBase64);
+            }
+        };
+
+        try (RemoteCipherServer slowServer = new RemoteCipherServer(slow, 0, 2).start();
+             RemoteCipherServiceImpl slowClient = client(slowServer.getPort(), 100)) {
+            ExampleCommonResult<String> result = slowClient.encryptBase64("id-0");
+            assertFalse(result.isSuccess());
+            assertEquals("99999999", result.getCode());
+
+            //超时后连接仍可用
+            assertEquals(baffle.generateMacBase64("id-0").getData(), slowClient.generateMacBase64("id-0").getData());
+        }
+
+        int port = server.getPort();
+        server.close();
+        try (RemoteCipherServiceImpl unreachable = client(port, 100)) {
+            assertFalse(unreachable.encryptBase64("id-0").isSuccess());
+        }
+    }
+
+    @Test
+    void connectRunsInBackground() throws Exception {
+        //不接受连接且等待队列已满的端口，新连接在超时前一直等待
+        try (ServerSocket blackHole = new ServerSocket(0, 1)) {
+            List<Socket> queued = new ArrayList<>();
+            try {
+                for (int i = 0; i < 8; i++) {
+                    Socket socket = new Socket();
+                    queued.add(socket);
+                    socket.connect(new InetSocketAddress("127.0.0.1", blackHole.getLocalPort()), 200);
+                }
+            } catch (SocketTimeoutException e) {
+                //等待队列已满
+            }
+
+            RemoteCipherClient stalled = new RemoteCipherClient("127.0.0.1", blackHole.getLocalPort(), 1, 1000, 3000, 3);
+            try {
+                CompletableFuture<Frame> future = stalled.call(RemoteCipherProtocol.ENCRYPT_BASE64,
+                        RemoteCipherProtocol.bytes("id-0"));
+                //调用线程不等待建立连接
+                assertFalse(future.isDone());
+                ExecutionException e = assertThrows(ExecutionException.class, future::get);
+                assertTrue(e.getCause() instanceof IOException, String.valueOf(e.getCause()));
+            } finally {
+                stalled.close();
+                for (Socket socket : queued) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    void unresponsiveConnectionIsReopened() throws Exception {
+        //接受连接但从不响应
+        try (ServerSocket silent = new ServerSocket(0)) {
+            List<Socket> accepted = new CopyOnWriteArrayList<>();
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) accepted.add(silent.accept());
+                } catch (IOException e) {
+                    //已关闭
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            RemoteCipherClient client = new RemoteCipherClient("127.0.0.1", silent.getLocalPort(), 1, 1000, 100, 2);
+            try {
+                byte[] plain = RemoteCipherProtocol.bytes("id-0");
+                CompletableFuture<Frame> first = client.call(RemoteCipherProtocol.ENCRYPT_BASE64, plain);
+                assertThrows(ExecutionException.class, first::get);
+                //一次超时后连接仍使用
+                CompletableFuture<Frame> second = client.call(RemoteCipherProtocol.ENCRYPT_BASE64, plain);
+                assertThrows(ExecutionException.class, second::get);
+                assertEquals(1, accepted.size());
+
+                //连续两次超时后重建连接
+                CompletableFuture<Frame> third = client.call(RemoteCipherProtocol.ENCRYPT_BASE64, plain);
+                assertThrows(ExecutionException.class, third::get);
+                assertEquals(2, accepted.size());
+            } finally {
+                client.close();
+                for (Socket socket : accepted) {
+                    socket.close();
+                }
+            }
+        }
+    }
+}